@@ -28,8 +28,6 @@ import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.concurrent.ScheduledExecutorService;
@@ -41,19 +39,18 @@ import java.util.logging.Logger;
 /**
  * {@link AudioCaptureStream} that utilizes gRPC as its transfer mechanism.
  *
- * <p>Utilizes Piped I/O streams with the gRPC call writing to the sending side of the pipe, and the
- * exposed methods from the {@link java.io.InputStream} class being passed to the receiving end of
- * the pipe.
+ * <p>Utilizes a {@link SpscByteRingBuffer} with the gRPC call writing to the buffer, and the
+ * exposed methods from the {@link java.io.InputStream} class reading from it.
  */
 public class GrpcAudioCaptureStream extends AudioCaptureStream {
     private static final Logger LOGGER = Logger.getLogger(GrpcAudioCaptureStream.class.getName());
 
     /**
-     * Size of the buffer used by the {@link PipedInputStream} to cache internal messages received
-     * over the gRPC connection before they are read by the client.
+     * Minimum size of the buffer used to cache internal messages received over the gRPC connection
+     * before they are read by the client.
      *
      * <p>This value is currently equal to 35 chunks, 8960 bytes, or just about 100ms of audio
-     * recorded at CD quality.
+     * recorded at CD quality. The actual buffer is rounded up to 16384 bytes.
      */
     private static final int BUFFER_SIZE = 35 * Defaults.CAPTURE_CHUNK_TARGET_SIZE_BYTES;
 
@@ -62,13 +59,12 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
     private static final int BYTES_PER_SAMPLE_16BIT = BITS_PER_SAMPLE_16BIT / 8;
 
     private final Context.CancellableContext mCancellableContext;
-    private final PipedInputStream mInputStream;
-    private final PipedOutputStream mOutputStream;
+    private final SpscByteRingBuffer mRingBuffer;
 
     /**
      * {@link Throwable} field used when the underlying gRPC call has an error. This error is
      * propagated back from the gRPC thread through a callback within the {@link
-     * PipedCaptureChunkStreamObserver}. This field is volatile, as it will only be read by or
+     * RingBufferCaptureChunkStreamObserver}. This field is volatile, as it will only be read by or
      * written to by single separate threads, but we want to make sure the reading thread is
      * immediately notified when an error occurs. Furthermore, this is safe since the underlying
      * Throwable will be immutable.
@@ -76,12 +72,9 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
     private volatile Throwable mGrpcError = null;
 
     private GrpcAudioCaptureStream(
-            Context.CancellableContext cancellableContext,
-            PipedInputStream inputStream,
-            PipedOutputStream outputStream) {
+            Context.CancellableContext cancellableContext, SpscByteRingBuffer ringBuffer) {
         mCancellableContext = cancellableContext;
-        mInputStream = inputStream;
-        mOutputStream = outputStream;
+        mRingBuffer = ringBuffer;
     }
 
     static GrpcAudioCaptureStream create(
@@ -92,15 +85,8 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         Preconditions.checkNotNull(
                 scheduledExecutorService, "scheduledExecutorService cannot be null.");
 
-        // Create the piped streams that back the stream stream itself.
-        PipedInputStream pipedInputStream = new PipedInputStream(BUFFER_SIZE);
-        PipedOutputStream pipedOutputStream;
-        try {
-            pipedOutputStream = new PipedOutputStream(pipedInputStream);
-        } catch (IOException ioe) {
-            throw new IOException(
-                    "Unable to create Capture Stream due to pipe creation failure", ioe);
-        }
+        // Create the ring buffer that backs the stream itself.
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(BUFFER_SIZE);
 
         // Start the gRPC call with a context that can be used for cancellation later.
         Context.CancellableContext grpcContext =
@@ -112,15 +98,15 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
                                 scheduledExecutorService);
 
         GrpcAudioCaptureStream captureStream =
-                new GrpcAudioCaptureStream(grpcContext, pipedInputStream, pipedOutputStream);
+                new GrpcAudioCaptureStream(grpcContext, ringBuffer);
 
         try {
             grpcContext.call(
                     () -> {
                         audioTestHarnessStub.capture(
                                 AudioTestHarnessService.CaptureRequest.getDefaultInstance(),
-                                new PipedCaptureChunkStreamObserver(
-                                        pipedOutputStream,
+                                new RingBufferCaptureChunkStreamObserver(
+                                        ringBuffer,
                                         (throwable) -> captureStream.mGrpcError = throwable));
                         return true;
                     });
@@ -138,7 +124,7 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         }
 
         try {
-            return mInputStream.read(b);
+            return mRingBuffer.read(b, 0, b.length);
         } catch (IOException ioe) {
             throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
         }
@@ -162,7 +148,7 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         }
 
         try {
-            return mInputStream.read(b, off, len);
+            return mRingBuffer.read(b, off, len);
         } catch (IOException ioe) {
             throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
         }
@@ -174,7 +160,7 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
             throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
         }
 
-        return mInputStream.skip(n);
+        return mRingBuffer.skip(n);
     }
 
     @Override
@@ -183,7 +169,7 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
             throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
         }
 
-        return mInputStream.available();
+        return mRingBuffer.available();
     }
 
     @Override
@@ -191,13 +177,7 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         mCancellableContext.cancel(
                 Status.CANCELLED.withDescription("Capture stopped by client").asException());
 
-        mInputStream.close();
-        mOutputStream.close();
-    }
-
-    @Override
-    public synchronized void mark(int readlimit) {
-        mInputStream.mark(readlimit);
+        mRingBuffer.closeReader();
     }
 
     @Override
@@ -207,25 +187,41 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
         }
 
         try {
-            mInputStream.reset();
+            super.reset();
         } catch (IOException ioe) {
             throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
         }
     }
 
     @Override
-    public boolean markSupported() {
-        return mInputStream.markSupported();
+    public int read() throws IOException {
+        if (mGrpcError != null) {
+            throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
+        }
+
+        try {
+            return mRingBuffer.read();
+        } catch (IOException ioe) {
+            throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
+        }
     }
 
-    @Override
-    public int read() throws IOException {
+    /**
+     * Reads up to {@link ByteBuffer#remaining()} bytes of raw audio data into the provided {@link
+     * ByteBuffer}, blocking until at least one byte is available.
+     *
+     * <p>This avoids an intermediate array when the data is consumed through a {@link ByteBuffer},
+     * for example to write it to a {@link java.nio.channels.FileChannel}.
+     *
+     * @return the number of bytes read, or -1 if the end of the stream was reached.
+     */
+    public int read(ByteBuffer dst) throws IOException {
         if (mGrpcError != null) {
             throw new IOException("Audio Test Harness gRPC Communication Error", mGrpcError);
         }
 
         try {
-            return mInputStream.read();
+            return mRingBuffer.read(dst);
         } catch (IOException ioe) {
             throw new IOException("Audio Test Harness gRPC Internal Error", ioe);
         }
@@ -279,26 +275,27 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
 
     /**
      * {@link StreamObserver} that publishes audio samples received over a gRPC connection to a
-     * piped output stream.
+     * {@link SpscByteRingBuffer}.
      */
-    private static final class PipedCaptureChunkStreamObserver
+    private static final class RingBufferCaptureChunkStreamObserver
             implements StreamObserver<AudioTestHarnessService.CaptureChunk> {
         private static final Logger LOGGER =
-                Logger.getLogger(PipedCaptureChunkStreamObserver.class.getName());
+                Logger.getLogger(RingBufferCaptureChunkStreamObserver.class.getName());
 
-        private final PipedOutputStream mPipedOutputStream;
+        private final SpscByteRingBuffer mRingBuffer;
         private final Consumer<Throwable> mOnErrorCallback;
 
-        private PipedCaptureChunkStreamObserver(
-                PipedOutputStream pipedOutputStream, Consumer<Throwable> onErrorCallback) {
-            mPipedOutputStream = pipedOutputStream;
+        private RingBufferCaptureChunkStreamObserver(
+                SpscByteRingBuffer ringBuffer, Consumer<Throwable> onErrorCallback) {
+            mRingBuffer = ringBuffer;
             mOnErrorCallback = onErrorCallback;
         }
 
         @Override
         public void onNext(AudioTestHarnessService.CaptureChunk value) {
             try {
-                mPipedOutputStream.write(value.getData().toByteArray());
+                // Copies the data straight from the message into the ring buffer.
+                mRingBuffer.write(value.getData().asReadOnlyByteBuffer());
             } catch (IOException ioe) {
                 LOGGER.log(
                         Level.WARNING,
@@ -313,18 +310,16 @@ public class GrpcAudioCaptureStream extends AudioCaptureStream {
             mOnErrorCallback.accept(t);
             LOGGER.log(Level.WARNING, "onError called: ", t);
 
-            // On error, close the stream so that any corresponding input streams will also
-            // throw exceptions when attempting to read.
-            try {
-                mPipedOutputStream.close();
-            } catch (IOException ioe) {
-                LOGGER.log(Level.WARNING, "Unable to close the pipedOutputStream", ioe);
-            }
+            // On error, close the buffer so that a reader waiting for data is released.
+            mRingBuffer.closeWriter();
         }
 
         @Override
         public void onCompleted() {
             LOGGER.log(Level.FINE, "onCompleted called");
+
+            // Let the reader reach the end of the stream once the remaining data is read.
+            mRingBuffer.closeWriter();
         }
     }
 }
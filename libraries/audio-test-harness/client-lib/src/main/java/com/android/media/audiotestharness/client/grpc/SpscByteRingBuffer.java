@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.client.grpc;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free byte ring buffer passing data from a single producer thread to a single consumer
+ * thread.
+ *
+ * <p>The producer and the consumer each own one of the two positions of the buffer, so data moves
+ * without any lock. A side waits for data or space by parking, and is unparked by the other side
+ * as soon as it makes progress, instead of polling like {@link java.io.PipedInputStream} does.
+ *
+ * <p>Unlike the piped streams, this class does not track the identity of the producer thread, so
+ * writes may come from different threads as long as they are not concurrent and happen-before each
+ * other, as is the case for the callbacks of a gRPC call. The same applies to reads.
+ */
+final class SpscByteRingBuffer {
+
+    private final byte[] mBuffer;
+
+    /** Mask used to map positions to indices, the capacity being a power of two. */
+    private final int mMask;
+
+    /** Total number of bytes read, only updated by the consumer. */
+    private final AtomicLong mReadPosition = new AtomicLong();
+
+    /** Total number of bytes written, only updated by the producer. */
+    private final AtomicLong mWritePosition = new AtomicLong();
+
+    /** The consumer thread while it is parked waiting for data, null otherwise. */
+    private volatile Thread mParkedReader;
+
+    /** The producer thread while it is parked waiting for space, null otherwise. */
+    private volatile Thread mParkedWriter;
+
+    /** Set once the producer is done, readers get the end of stream after the remaining data. */
+    private volatile boolean mWriterClosed;
+
+    /** Set once the consumer is done, any further read or write fails. */
+    private volatile boolean mReaderClosed;
+
+    private SpscByteRingBuffer(int capacity) {
+        mBuffer = new byte[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Creates a new {@link SpscByteRingBuffer} holding at least {@code minCapacity} bytes. The
+     * capacity is rounded up to the next power of two.
+     */
+    static SpscByteRingBuffer create(int minCapacity) {
+        Preconditions.checkArgument(
+                minCapacity > 0 && minCapacity <= 1 << 30, "Invalid capacity: %s", minCapacity);
+        return new SpscByteRingBuffer(
+                Integer.highestOneBit(minCapacity) == minCapacity
+                        ? minCapacity
+                        : Integer.highestOneBit(minCapacity) << 1);
+    }
+
+    int getCapacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * Writes all of the provided bytes, waiting for the consumer to make space when the buffer is
+     * full.
+     *
+     * @throws IOException if the consumer closed the buffer or the thread is interrupted.
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Writes all of the remaining bytes of the provided {@link ByteBuffer}, waiting for the
+     * consumer to make space when the buffer is full.
+     *
+     * @throws IOException if the consumer closed the buffer or the thread is interrupted.
+     */
+    void write(ByteBuffer src) throws IOException {
+        Preconditions.checkState(!mWriterClosed, "Cannot write after closeWriter().");
+        long writePosition = mWritePosition.get();
+        while (src.hasRemaining()) {
+            int count = Math.min(src.remaining(), awaitSpace(writePosition));
+            int index = (int) writePosition & mMask;
+            int firstPart = Math.min(count, mBuffer.length - index);
+            src.get(mBuffer, index, firstPart);
+            src.get(mBuffer, 0, count - firstPart);
+
+            writePosition += count;
+            mWritePosition.set(writePosition);
+            unpark(mParkedReader);
+        }
+    }
+
+    /**
+     * Signals that no more data will be written. The consumer reads the remaining data and then
+     * the end of the stream.
+     */
+    void closeWriter() {
+        mWriterClosed = true;
+        unpark(mParkedReader);
+    }
+
+    /**
+     * Reads up to {@code len} bytes into the provided array, waiting for at least one byte to be
+     * available.
+     *
+     * @return the number of bytes read, or -1 if the producer closed the buffer and all of the data
+     *     was read.
+     * @throws IOException if the consumer closed the buffer or the thread is interrupted.
+     */
+    int read(byte[] b, int off, int len) throws IOException {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Reads up to {@link ByteBuffer#remaining()} bytes into the provided {@link ByteBuffer},
+     * waiting for at least one byte to be available.
+     *
+     * @return the number of bytes read, or -1 if the producer closed the buffer and all of the data
+     *     was read.
+     * @throws IOException if the consumer closed the buffer or the thread is interrupted.
+     */
+    int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        long readPosition = mReadPosition.get();
+        int available = awaitData(readPosition);
+        if (available < 0) {
+            return -1;
+        }
+
+        int count = Math.min(dst.remaining(), available);
+        int index = (int) readPosition & mMask;
+        int firstPart = Math.min(count, mBuffer.length - index);
+        dst.put(mBuffer, index, firstPart);
+        dst.put(mBuffer, 0, count - firstPart);
+
+        release(readPosition + count);
+        return count;
+    }
+
+    /**
+     * Reads a single byte, waiting for it to be available.
+     *
+     * @return the byte as an int in the range 0 to 255, or -1 at the end of the stream.
+     */
+    int read() throws IOException {
+        long readPosition = mReadPosition.get();
+        if (awaitData(readPosition) < 0) {
+            return -1;
+        }
+        int value = mBuffer[(int) readPosition & mMask] & 0xFF;
+        release(readPosition + 1);
+        return value;
+    }
+
+    /**
+     * Discards up to {@code n} bytes, waiting for at least one byte to be available.
+     *
+     * @return the number of bytes discarded, 0 at the end of the stream.
+     */
+    long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long readPosition = mReadPosition.get();
+        int available = awaitData(readPosition);
+        if (available < 0) {
+            return 0;
+        }
+        long count = Math.min(n, available);
+        release(readPosition + count);
+        return count;
+    }
+
+    /** Returns the number of bytes that can be read without waiting. */
+    int available() throws IOException {
+        checkReaderOpen();
+        return (int) (mWritePosition.get() - mReadPosition.get());
+    }
+
+    /** Closes the buffer from the consumer side, releasing a producer waiting for space. */
+    void closeReader() {
+        mReaderClosed = true;
+        unpark(mParkedWriter);
+        unpark(mParkedReader);
+    }
+
+    /** Returns the free space for the producer, parking until there is some. */
+    private int awaitSpace(long writePosition) throws IOException {
+        while (true) {
+            if (mReaderClosed) {
+                throw new IOException("Ring buffer closed by the reader");
+            }
+            int free = mBuffer.length - (int) (writePosition - mReadPosition.get());
+            if (free > 0) {
+                return free;
+            }
+
+            // Publish the thread before checking again, so that the consumer either sees it or
+            // released space before the check below.
+            mParkedWriter = Thread.currentThread();
+            if (!mReaderClosed && writePosition - mReadPosition.get() == mBuffer.length) {
+                LockSupport.park(this);
+            }
+            mParkedWriter = null;
+            checkInterrupted();
+        }
+    }
+
+    /** Returns the number of bytes available to the consumer, parking until there are some. */
+    private int awaitData(long readPosition) throws IOException {
+        while (true) {
+            checkReaderOpen();
+            // Read the closed flag first so that data written before closing is not missed.
+            boolean writerClosed = mWriterClosed;
+            int available = (int) (mWritePosition.get() - readPosition);
+            if (available > 0) {
+                return available;
+            }
+            if (writerClosed) {
+                return -1;
+            }
+
+            // Publish the thread before checking again, so that the producer either sees it or
+            // published data before the check below.
+            mParkedReader = Thread.currentThread();
+            if (!mReaderClosed && !mWriterClosed && mWritePosition.get() == readPosition) {
+                LockSupport.park(this);
+            }
+            mParkedReader = null;
+            checkInterrupted();
+        }
+    }
+
+    private void release(long readPosition) {
+        mReadPosition.set(readPosition);
+        unpark(mParkedWriter);
+    }
+
+    private void checkReaderOpen() throws IOException {
+        if (mReaderClosed) {
+            throw new IOException("Ring buffer closed");
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on the ring buffer");
+        }
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.client.grpc;
+
+import com.android.media.audiotestharness.common.Defaults;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Microbenchmark comparing the {@link SpscByteRingBuffer} to the piped streams it replaced in
+ * {@link GrpcAudioCaptureStream}.
+ *
+ * <p>Each implementation is measured twice: once with chunks written as fast as possible to get the
+ * throughput, and once with chunks paced like a 192 KB/s capture (48kHz, 16-bit, stereo) to get
+ * the latency between a chunk being written and being read. Run with:
+ *
+ * <pre>java -cp ... com.android.media.audiotestharness.client.grpc.SpscByteRingBufferBenchmark
+ * [paced seconds]</pre>
+ */
+public final class SpscByteRingBufferBenchmark {
+
+    private static final int CHUNK_SIZE = Defaults.CAPTURE_CHUNK_TARGET_SIZE_BYTES;
+    private static final int BUFFER_SIZE = 35 * CHUNK_SIZE;
+    private static final int STREAM_BYTES_PER_SECOND = 192 * 1024;
+    private static final int THROUGHPUT_CHUNKS = 1 << 18;
+
+    /** The two sides of the implementation under test. */
+    private interface Pipe {
+        void write(byte[] b) throws IOException;
+
+        int read(byte[] b, int off, int len) throws IOException;
+    }
+
+    private SpscByteRingBufferBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int pacedSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int pacedChunks = pacedSeconds * STREAM_BYTES_PER_SECOND / CHUNK_SIZE;
+
+        // Warm up both implementations before measuring.
+        run(createRingBufferPipe(), THROUGHPUT_CHUNKS, /* paced= */ false);
+        run(createPipedPipe(), THROUGHPUT_CHUNKS, /* paced= */ false);
+
+        report("ring buffer", run(createRingBufferPipe(), THROUGHPUT_CHUNKS, false));
+        report("piped", run(createPipedPipe(), THROUGHPUT_CHUNKS, false));
+        report("ring buffer paced", run(createRingBufferPipe(), pacedChunks, true));
+        report("piped paced", run(createPipedPipe(), pacedChunks, true));
+    }
+
+    /**
+     * Writes {@code chunks} chunks through the pipe from another thread and returns the time at
+     * which each chunk was written followed by the time it was completely read, in nanoseconds.
+     */
+    private static long[][] run(Pipe pipe, int chunks, boolean paced) throws Exception {
+        long[] writeTimes = new long[chunks];
+        long[] readTimes = new long[chunks];
+        long intervalNs = TimeUnit.SECONDS.toNanos(1) * CHUNK_SIZE / STREAM_BYTES_PER_SECOND;
+
+        Thread writer =
+                new Thread(
+                        () -> {
+                            byte[] chunk = new byte[CHUNK_SIZE];
+                            long start = System.nanoTime();
+                            try {
+                                for (int i = 0; i < chunks; i++) {
+                                    if (paced) {
+                                        long deadline = start + i * intervalNs;
+                                        long now;
+                                        while ((now = System.nanoTime()) < deadline) {
+                                            LockSupport.parkNanos(deadline - now);
+                                        }
+                                    }
+                                    writeTimes[i] = System.nanoTime();
+                                    pipe.write(chunk);
+                                }
+                            } catch (IOException ioe) {
+                                throw new IllegalStateException(ioe);
+                            }
+                        });
+        writer.start();
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long total = 0;
+        while (total < (long) chunks * CHUNK_SIZE) {
+            int read = pipe.read(buffer, 0, buffer.length);
+            long now = System.nanoTime();
+            // Record the time at which every chunk completed by this read was fully received.
+            for (long c = total / CHUNK_SIZE; c < (total + read) / CHUNK_SIZE; c++) {
+                readTimes[(int) c] = now;
+            }
+            total += read;
+        }
+        writer.join();
+        return new long[][] {writeTimes, readTimes};
+    }
+
+    private static void report(String name, long[][] times) {
+        long[] writeTimes = times[0];
+        long[] readTimes = times[1];
+        int chunks = writeTimes.length;
+        long[] latencies = new long[chunks];
+        for (int i = 0; i < chunks; i++) {
+            latencies[i] = readTimes[i] - writeTimes[i];
+        }
+        Arrays.sort(latencies);
+
+        double seconds = (readTimes[chunks - 1] - writeTimes[0]) / 1e9;
+        System.out.printf(
+                "%-18s %8.1f MB/s  latency p50 %6d us  p99 %6d us  p99.9 %6d us  max %6d us%n",
+                name,
+                (double) chunks * CHUNK_SIZE / seconds / (1024 * 1024),
+                latencies[chunks / 2] / 1000,
+                latencies[(int) (chunks * 0.99)] / 1000,
+                latencies[(int) (chunks * 0.999)] / 1000,
+                latencies[chunks - 1] / 1000);
+    }
+
+    private static Pipe createRingBufferPipe() {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(BUFFER_SIZE);
+        return new Pipe() {
+            @Override
+            public void write(byte[] b) throws IOException {
+                ringBuffer.write(b, 0, b.length);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return ringBuffer.read(b, off, len);
+            }
+        };
+    }
+
+    private static Pipe createPipedPipe() throws IOException {
+        PipedInputStream inputStream = new PipedInputStream(BUFFER_SIZE);
+        PipedOutputStream outputStream = new PipedOutputStream(inputStream);
+        return new Pipe() {
+            @Override
+            public void write(byte[] b) throws IOException {
+                outputStream.write(b);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return inputStream.read(b, off, len);
+            }
+        };
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.client.grpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Tests for the {@link SpscByteRingBuffer}. */
+@RunWith(JUnit4.class)
+public class SpscByteRingBufferTests {
+
+    @Test
+    public void create_roundsCapacityUpToPowerOfTwo() throws Exception {
+        assertEquals(16384, SpscByteRingBuffer.create(/* minCapacity= */ 8960).getCapacity());
+        assertEquals(4096, SpscByteRingBuffer.create(/* minCapacity= */ 4096).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_throwsIllegalArgumentException_zeroCapacity() throws Exception {
+        SpscByteRingBuffer.create(/* minCapacity= */ 0);
+    }
+
+    @Test
+    public void read_returnsWrittenDataInOrder_acrossWraparound() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 8);
+        byte[] result = new byte[8];
+
+        ringBuffer.write(new byte[] {1, 2, 3, 4, 5, 6}, 0, 6);
+        assertEquals(4, ringBuffer.read(result, 0, 4));
+        ringBuffer.write(new byte[] {7, 8, 9, 10, 11}, 0, 5);
+
+        assertEquals(7, ringBuffer.read(result, 0, 8));
+        assertArrayEquals(new byte[] {5, 6, 7, 8, 9, 10, 11}, Arrays.copyOf(result, 7));
+        assertEquals(0, ringBuffer.available());
+    }
+
+    @Test
+    public void read_readsIntoByteBuffer() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 8);
+        ByteBuffer result = ByteBuffer.allocateDirect(4);
+
+        ringBuffer.write(new byte[] {1, 2, 3, 4, 5, 6}, 0, 6);
+
+        assertEquals(4, ringBuffer.read(result));
+        assertEquals(0, result.remaining());
+        result.flip();
+        assertEquals(0x01020304, result.getInt());
+        assertEquals(5, ringBuffer.read());
+        assertEquals(1, ringBuffer.skip(/* n= */ 10));
+    }
+
+    @Test
+    public void read_returnsEndOfStream_afterRemainingDataWhenWriterClosed() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 8);
+        byte[] result = new byte[8];
+
+        ringBuffer.write(new byte[] {1, 2}, 0, 2);
+        ringBuffer.closeWriter();
+
+        assertEquals(2, ringBuffer.read(result, 0, 8));
+        assertEquals(-1, ringBuffer.read(result, 0, 8));
+        assertEquals(-1, ringBuffer.read());
+    }
+
+    @Test
+    public void read_waitsForWriter() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 8);
+        Thread writer =
+                new Thread(
+                        () -> {
+                            try {
+                                Thread.sleep(/* millis= */ 50);
+                                ringBuffer.write(new byte[] {42}, 0, 1);
+                            } catch (InterruptedException | IOException e) {
+                                throw new AssertionError(e);
+                            }
+                        });
+
+        writer.start();
+
+        assertEquals(42, ringBuffer.read());
+        writer.join();
+    }
+
+    @Test(expected = IOException.class)
+    public void read_throwsIOException_whenReaderClosed() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 8);
+        ringBuffer.closeReader();
+
+        ringBuffer.read();
+    }
+
+    @Test
+    public void write_throwsIOException_whenReaderClosedWhileWaitingForSpace() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 4);
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer =
+                new Thread(
+                        () -> {
+                            try {
+                                ringBuffer.write(new byte[6], 0, 6);
+                            } catch (IOException ioe) {
+                                writerError.set(ioe);
+                            }
+                        });
+
+        writer.start();
+        while (ringBuffer.available() < 4) {
+            Thread.yield();
+        }
+        ringBuffer.closeReader();
+        writer.join(/* millis= */ 10000);
+
+        assertFalse(writer.isAlive());
+        assertEquals(IOException.class, writerError.get().getClass());
+    }
+
+    @Test
+    public void read_returnsAllData_concurrentWriter() throws Exception {
+        SpscByteRingBuffer ringBuffer = SpscByteRingBuffer.create(/* minCapacity= */ 64);
+        int totalBytes = 1 << 20;
+        Thread writer =
+                new Thread(
+                        () -> {
+                            byte[] chunk = new byte[100];
+                            try {
+                                for (int written = 0; written < totalBytes; ) {
+                                    int len = Math.min(chunk.length, totalBytes - written);
+                                    for (int i = 0; i < len; i++) {
+                                        chunk[i] = (byte) (written + i);
+                                    }
+                                    ringBuffer.write(chunk, 0, len);
+                                    written += len;
+                                }
+                            } catch (IOException ioe) {
+                                throw new AssertionError(ioe);
+                            }
+                            ringBuffer.closeWriter();
+                        });
+
+        writer.start();
+        byte[] result = new byte[37];
+        int total = 0;
+        int read;
+        while ((read = ringBuffer.read(result, 0, result.length)) != -1) {
+            for (int i = 0; i < read; i++) {
+                assertEquals((byte) (total + i), result[i]);
+            }
+            total += read;
+        }
+        writer.join();
+
+        assertEquals(totalBytes, total);
+    }
+}
@@ -29,13 +29,38 @@ import com.google.common.collect.ImmutableList;
 @AutoValue
 public abstract class SharedHostConfiguration {
 
+    /** What happens to captured audio when the capture buffer of a session is full. */
+    public enum CaptureOverflowPolicy {
+        /** The oldest buffered audio is dropped and counted to make room for new audio. */
+        DROP_OLDEST,
+        /**
+         * The capture thread waits until the client has consumed enough buffered audio.
+         *
+         * <p>The capture thread publishes to every session attached to the capturer, including all
+         * of the sessions sharing it when {@link SharedHostConfiguration#shareCaptureDevices()} is
+         * set. A single slow client thus stalls capture for all of them, and the audio that the
+         * device records in the meantime is lost.
+         */
+        BLOCK,
+    }
+
     public static SharedHostConfiguration create(
             ImmutableList<AudioDeviceOuterClass.AudioDevice> captureDevices) {
-        return new AutoValue_SharedHostConfiguration(captureDevices);
+        return builder().setCaptureDevices(captureDevices).build();
     }
 
     public static SharedHostConfiguration getDefault() {
-        return new AutoValue_SharedHostConfiguration(ImmutableList.of(Defaults.AUDIO_DEVICE));
+        return builder().build();
+    }
+
+    /** Returns a {@link Builder} initialized with the default configuration. */
+    public static Builder builder() {
+        return new AutoValue_SharedHostConfiguration.Builder()
+                .setCaptureDevices(ImmutableList.of(Defaults.AUDIO_DEVICE))
+                .setAggregateCaptureChunks(false)
+                .setShareCaptureDevices(false)
+                .setCaptureBufferSizeBytes(0)
+                .setCaptureOverflowPolicy(CaptureOverflowPolicy.DROP_OLDEST);
     }
 
     /**
@@ -45,4 +70,43 @@ public abstract class SharedHostConfiguration {
      * is actually used.
      */
     public abstract ImmutableList<AudioDeviceOuterClass.AudioDevice> captureDevices();
+
+    /**
+     * Whether captured audio is aggregated into chunks of several capturer reads instead of
+     * sending every read as its own chunk.
+     */
+    public abstract boolean aggregateCaptureChunks();
+
+    /**
+     * Whether concurrent Capture calls for the same device share a single running capturer, which
+     * is only closed once all of them are done, instead of each reopening the device.
+     */
+    public abstract boolean shareCaptureDevices();
+
+    /**
+     * The size of the buffer holding captured audio until the gRPC transport is ready to send it,
+     * or 0 to send captured audio as soon as it is read regardless of flow control.
+     */
+    public abstract int captureBufferSizeBytes();
+
+    /** What happens to captured audio when the capture buffer is full. */
+    public abstract CaptureOverflowPolicy captureOverflowPolicy();
+
+    /** Builder for {@link SharedHostConfiguration}s. */
+    @AutoValue.Builder
+    public abstract static class Builder {
+        public abstract Builder setCaptureDevices(
+                ImmutableList<AudioDeviceOuterClass.AudioDevice> captureDevices);
+
+        public abstract Builder setAggregateCaptureChunks(boolean aggregateCaptureChunks);
+
+        public abstract Builder setShareCaptureDevices(boolean shareCaptureDevices);
+
+        public abstract Builder setCaptureBufferSizeBytes(int captureBufferSizeBytes);
+
+        public abstract Builder setCaptureOverflowPolicy(
+                CaptureOverflowPolicy captureOverflowPolicy);
+
+        public abstract SharedHostConfiguration build();
+    }
 }
@@ -51,6 +51,12 @@ public interface AudioCapturer extends AutoCloseable {
     /** Attaches a specified {@link OutputStream} as an output for this capturer. */
     void attachOutput(OutputStream outputStream);
 
+    /**
+     * Detaches a previously attached {@link OutputStream} so that it no longer receives captured
+     * audio. Does nothing if the output is not attached.
+     */
+    void detachOutput(OutputStream outputStream);
+
     /**
      * Returns the {@link AudioFormat} corresponding to the raw audio samples produced by this
      * capturer.
@@ -148,6 +148,13 @@ public final class JavaAudioCapturer implements AudioCapturer {
         LOGGER.fine(String.format("Attatched new Output - %s", outputStream));
     }
 
+    @Override
+    public void detachOutput(OutputStream outputStream) {
+        if (mOutputs.remove(outputStream)) {
+            LOGGER.fine(String.format("Detached Output - %s", outputStream));
+        }
+    }
+
     @Override
     public AudioFormat getAudioFormat() {
         return mAudioFormat;
@@ -230,6 +237,13 @@ public final class JavaAudioCapturer implements AudioCapturer {
                                                 + " been lost (Buffer Size: %d, Output: %s)",
                                         BUFFER_SIZE, output),
                                 ioe);
+                    } catch (IllegalStateException ise) {
+                        // An output detached while this iteration was in progress may already be
+                        // closed, this must not stop publishing to the remaining outputs.
+                        LOGGER.log(
+                                Level.FINE,
+                                String.format("Skipped closed output %s", output),
+                                ise);
                     }
                 }
             } while (mRunning);
@@ -106,7 +106,10 @@ public class AudioCaptureSession {
                             mSessionId));
         }
         mCaptureChunkStreamObserverOutputStream.close();
-        LOGGER.info(String.format("id=%d - Capture Session Stopped", mSessionId));
+        LOGGER.info(
+                String.format(
+                        "id=%d - Capture Session Stopped (capture buffer %s)",
+                        mSessionId, getCaptureBufferStats()));
     }
 
     /**
@@ -142,4 +145,12 @@ public class AudioCaptureSession {
     public int getSessionId() {
         return mSessionId;
     }
+
+    /**
+     * Returns the usage of the flow control buffer of this session so far, final once the session
+     * is stopped.
+     */
+    public CaptureBufferStats getCaptureBufferStats() {
+        return mCaptureChunkStreamObserverOutputStream.getCaptureBufferStats();
+    }
 }
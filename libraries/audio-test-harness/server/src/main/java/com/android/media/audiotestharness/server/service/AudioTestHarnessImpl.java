@@ -54,6 +54,12 @@ public final class AudioTestHarnessImpl extends AudioTestHarnessGrpc.AudioTestHa
 
     private final SharedHostConfiguration mSharedHostConfiguration;
 
+    /**
+     * Pool of capturers shared between concurrent Capture calls, null if every call allocates its
+     * own capturer.
+     */
+    private final SharedAudioCapturerPool mSharedAudioCapturerPool;
+
     @Inject
     public AudioTestHarnessImpl(
             AudioSystemService audioSystemService,
@@ -62,6 +68,10 @@ public final class AudioTestHarnessImpl extends AudioTestHarnessGrpc.AudioTestHa
         mAudioSystemService = audioSystemService;
         mAudioCaptureSessionFactory = audioCaptureSessionFactory;
         mSharedHostConfiguration = sharedHostConfiguration;
+        mSharedAudioCapturerPool =
+                sharedHostConfiguration.shareCaptureDevices()
+                        ? SharedAudioCapturerPool.create(audioSystemService)
+                        : null;
     }
 
     @Override
@@ -79,7 +89,10 @@ public final class AudioTestHarnessImpl extends AudioTestHarnessGrpc.AudioTestHa
         try {
             // Attempt to allocate with the first requested device, this list should always contain
             // at least one device.
-            capturer = mAudioSystemService.createWithDefaultAudioFormat(captureDevice);
+            capturer =
+                    mSharedAudioCapturerPool != null
+                            ? mSharedAudioCapturerPool.acquire(captureDevice)
+                            : mAudioSystemService.createWithDefaultAudioFormat(captureDevice);
         } catch (IOException ioe) {
             LOGGER.log(
                     Level.SEVERE,
@@ -117,6 +130,9 @@ public final class AudioTestHarnessImpl extends AudioTestHarnessGrpc.AudioTestHa
             captureSession.start();
         } catch (IOException ioe) {
             LOGGER.log(Level.SEVERE, "Internal Error while Capturing", ioe);
+
+            // Release the capturer, which would otherwise keep a shared capturer referenced.
+            captureSession.stop();
             serverCallResponseObserver.onError(
                     Status.INTERNAL.withCause(ioe).withDescription(ioe.getMessage()).asException());
         }
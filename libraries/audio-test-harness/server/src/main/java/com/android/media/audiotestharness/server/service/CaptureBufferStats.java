@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.service;
+
+/**
+ * Snapshot of the flow control buffer usage of a capture session, see {@link CaptureRingBuffer}.
+ *
+ * <p>All values are 0 for sessions that send captured audio without buffering it.
+ */
+public final class CaptureBufferStats {
+
+    /** Stats of a session without a flow control buffer. */
+    public static final CaptureBufferStats EMPTY =
+            new CaptureBufferStats(
+                    /* capacityBytes= */ 0,
+                    /* bufferedBytes= */ 0,
+                    /* maxBufferedBytes= */ 0,
+                    /* droppedBytes= */ 0);
+
+    private final int mCapacityBytes;
+    private final int mBufferedBytes;
+    private final int mMaxBufferedBytes;
+    private final long mDroppedBytes;
+
+    private CaptureBufferStats(
+            int capacityBytes, int bufferedBytes, int maxBufferedBytes, long droppedBytes) {
+        mCapacityBytes = capacityBytes;
+        mBufferedBytes = bufferedBytes;
+        mMaxBufferedBytes = maxBufferedBytes;
+        mDroppedBytes = droppedBytes;
+    }
+
+    /** Takes a snapshot of the usage of the provided buffer. */
+    public static CaptureBufferStats of(CaptureRingBuffer ringBuffer) {
+        // Read under the buffer lock so that the values are consistent with each other.
+        synchronized (ringBuffer) {
+            return new CaptureBufferStats(
+                    ringBuffer.getCapacity(),
+                    ringBuffer.getSize(),
+                    ringBuffer.getMaxSize(),
+                    ringBuffer.getDroppedBytes());
+        }
+    }
+
+    public int getCapacityBytes() {
+        return mCapacityBytes;
+    }
+
+    /** Returns the number of bytes waiting for the client when the snapshot was taken. */
+    public int getBufferedBytes() {
+        return mBufferedBytes;
+    }
+
+    /** Returns the highest number of bytes that were waiting for the client at once. */
+    public int getMaxBufferedBytes() {
+        return mMaxBufferedBytes;
+    }
+
+    /**
+     * Returns the number of bytes that never reached the client, because the buffer overflowed or
+     * because they were still buffered when the session stopped.
+     */
+    public long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "max buffered: %d/%d bytes, buffered: %d bytes, dropped: %d bytes",
+                mMaxBufferedBytes, mCapacityBytes, mBufferedBytes, mDroppedBytes);
+    }
+}
@@ -16,11 +16,13 @@
 
 package com.android.media.audiotestharness.server.service;
 
+import com.android.media.audiotestharness.common.Defaults;
 import com.android.media.audiotestharness.proto.AudioTestHarnessService;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
 import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
@@ -31,6 +33,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+
 /**
  * {@link OutputStream} that streams data written to it to a provided {@link StreamObserver} in the
  * form of {@link AudioTestHarnessService.CaptureChunk}s.
@@ -40,12 +44,34 @@ import java.util.logging.Logger;
  * However, the {@link #awaitClose()} methods are provided so that other threads can wait on the
  * this {@link OutputStream} to be closed before continuing.
  *
+ * <p>By default, every write is sent as its own chunk. When created with a chunk size, writes are
+ * instead aggregated into a new array that is sent once it holds that many bytes or when the
+ * stream is flushed or closed. The array is wrapped rather than copied into the sent message and is
+ * never written to again, since transports such as the in-process one serialize the message after
+ * {@link StreamObserver#onNext} returns. In this mode the write, flush and close methods are
+ * synchronized.
+ *
+ * <p>When created with a {@link CaptureRingBuffer}, written data is buffered and only sent while
+ * the {@link ServerCallStreamObserver} is ready, the rest being sent from its on ready handler.
+ * This bounds the amount of data held by the server for a slow client, the ring buffer deciding
+ * what happens on overflow. Data that is still buffered when the stream is closed can no longer be
+ * sent and is counted as dropped, see {@link #getCaptureBufferStats()}.
+ *
  * <p>This class should not be extended, however is left non-final for mocking purposes.
  */
 public class CaptureChunkStreamObserverOutputStream extends OutputStream {
     private static final Logger LOGGER =
             Logger.getLogger(CaptureChunkStreamObserverOutputStream.class.getName());
 
+    /**
+     * Target size of the chunks sent when aggregating or draining buffered data.
+     *
+     * <p>A multiple of the 2048 bytes read at a time by the Java Sound capturer so that a read is
+     * never split across chunks. {@link Defaults#CAPTURE_CHUNK_TARGET_SIZE_BYTES} is much smaller
+     * and would split every read into several messages.
+     */
+    public static final int AGGREGATED_CHUNK_SIZE_BYTES = 4 * 2048;
+
     /**
      * Used for synchronizing actions during gRPC execution. Thus, a main thread can delegate
      * streaming actions to this {@link OutputStream} and then when done can take back control and
@@ -71,12 +97,52 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
      */
     private AtomicBoolean mClosed = new AtomicBoolean(false);
 
+    /** Size of the aggregated chunks, 0 if every write is sent as its own chunk. */
+    private final int mChunkSizeBytes;
+
+    /**
+     * Array holding the data of the chunk being aggregated, allocated on the first write after a
+     * send and handed over to the sent message once full.
+     */
+    private byte[] mChunk;
+
+    /** Number of bytes of {@link #mChunk} holding aggregated data. */
+    private int mChunkPosition;
+
+    /** Reused by {@link #write(int)} when writes are not aggregated. */
+    private final byte[] mSingleByte = new byte[1];
+
+    /** Buffer holding data until the observer is ready, null if data is sent immediately. */
+    private final CaptureRingBuffer mRingBuffer;
+
+    /** Maximum size of the chunks that buffered data is drained into. */
+    private final int mDrainChunkSizeBytes;
+
+    /**
+     * Guards draining, which happens both on the writing thread and on the gRPC on ready handler
+     * thread. Null if data is sent immediately.
+     */
+    private final Object mDrainLock;
+
     private CaptureChunkStreamObserverOutputStream(
             ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
                     captureChunkStreamObserver,
-            CountDownLatch countDownLatch) {
+            CountDownLatch countDownLatch,
+            int chunkSizeBytes,
+            CaptureRingBuffer ringBuffer) {
         mCaptureChunkStreamObserver = captureChunkStreamObserver;
         mCountDownLatch = countDownLatch;
+        mChunkSizeBytes = chunkSizeBytes;
+        mRingBuffer = ringBuffer;
+        mDrainChunkSizeBytes = chunkSizeBytes > 0 ? chunkSizeBytes : AGGREGATED_CHUNK_SIZE_BYTES;
+        if (mRingBuffer != null) {
+            mDrainLock = new Object();
+            // Must be set before the service method returns, which is the case since streams are
+            // created while handling the Capture procedure.
+            mCaptureChunkStreamObserver.setOnReadyHandler(this::drain);
+        } else {
+            mDrainLock = null;
+        }
         LOGGER.finest("new CaptureChunkStreamObserverOutputStream");
     }
 
@@ -86,14 +152,68 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
         return create(captureChunkStreamObserver, new CountDownLatch(1));
     }
 
+    /**
+     * Creates a new {@link CaptureChunkStreamObserverOutputStream} that aggregates written data
+     * into chunks of the provided size.
+     */
+    public static CaptureChunkStreamObserverOutputStream create(
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                    captureChunkStreamObserver,
+            int chunkSizeBytes) {
+        Preconditions.checkArgument(chunkSizeBytes > 0, "Chunk size must be positive.");
+        return create(captureChunkStreamObserver, new CountDownLatch(1), chunkSizeBytes);
+    }
+
+    /**
+     * Creates a new {@link CaptureChunkStreamObserverOutputStream} that buffers written data in
+     * the provided ring buffer until the observer is ready to send it.
+     *
+     * @param chunkSizeBytes the size of the sent chunks, or 0 to send chunks of {@link
+     *     #AGGREGATED_CHUNK_SIZE_BYTES} bytes
+     */
+    public static CaptureChunkStreamObserverOutputStream createFlowControlled(
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                    captureChunkStreamObserver,
+            int chunkSizeBytes,
+            CaptureRingBuffer ringBuffer) {
+        return create(
+                captureChunkStreamObserver,
+                new CountDownLatch(1),
+                chunkSizeBytes,
+                Preconditions.checkNotNull(ringBuffer));
+    }
+
     @VisibleForTesting
     static CaptureChunkStreamObserverOutputStream create(
             ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
                     captureChunkStreamObserver,
             CountDownLatch countDownLatch) {
+        return create(captureChunkStreamObserver, countDownLatch, /* chunkSizeBytes= */ 0);
+    }
+
+    @VisibleForTesting
+    static CaptureChunkStreamObserverOutputStream create(
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                    captureChunkStreamObserver,
+            CountDownLatch countDownLatch,
+            int chunkSizeBytes) {
+        return create(
+                captureChunkStreamObserver, countDownLatch, chunkSizeBytes, /* ringBuffer= */ null);
+    }
+
+    @VisibleForTesting
+    static CaptureChunkStreamObserverOutputStream create(
+            ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+                    captureChunkStreamObserver,
+            CountDownLatch countDownLatch,
+            int chunkSizeBytes,
+            @Nullable CaptureRingBuffer ringBuffer) {
+        Preconditions.checkArgument(chunkSizeBytes >= 0, "Chunk size cannot be negative.");
         return new CaptureChunkStreamObserverOutputStream(
                 Preconditions.checkNotNull(captureChunkStreamObserver),
-                Preconditions.checkNotNull(countDownLatch));
+                Preconditions.checkNotNull(countDownLatch),
+                chunkSizeBytes,
+                ringBuffer);
     }
 
     @Override
@@ -103,12 +223,10 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
                 "CaptureChunkStreamObserverOutputStream has already been closed and cannot be"
                         + " written to.");
 
-        byte[] toWrite = new byte[1];
-
         // Grab only the lowest byte per the docs for the write(int) method.
-        toWrite[0] = (byte) (b & 0xFF);
+        mSingleByte[0] = (byte) (b & 0xFF);
 
-        write(toWrite);
+        write(mSingleByte);
     }
 
     @Override
@@ -127,8 +245,145 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
                 "CaptureChunkStreamObserverOutputStream has already been closed and cannot be"
                         + " written to.");
 
-        ByteString chunkBytes = ByteString.copyFrom(b, off, len);
+        if (mRingBuffer != null) {
+            mRingBuffer.write(b, off, len);
+            drain();
+            return;
+        }
+
+        sendData(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+        if (mRingBuffer != null) {
+            drain();
+        } else if (mChunkSizeBytes > 0) {
+            flushAggregated();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mRingBuffer != null) {
+            // Held so that the on ready handler cannot send data while the stream is closing.
+            synchronized (mDrainLock) {
+                drain();
+                // Counts whatever the observer was not ready to take as dropped.
+                mRingBuffer.close();
+                mClosed.set(true);
+            }
+        } else if (mChunkSizeBytes > 0) {
+            closeAggregated();
+        }
+        mClosed.set(true);
+        mCountDownLatch.countDown();
+        LOGGER.info("Stream Closed");
+    }
+
+    /** Returns a snapshot of the usage of the flow control buffer of this stream. */
+    public CaptureBufferStats getCaptureBufferStats() {
+        return mRingBuffer != null
+                ? CaptureBufferStats.of(mRingBuffer)
+                : CaptureBufferStats.EMPTY;
+    }
+
+    /** Returns the number of bytes waiting for the observer to be ready. */
+    public int getBufferedBytes() {
+        return mRingBuffer != null ? mRingBuffer.getSize() : 0;
+    }
+
+    /** Returns the highest number of bytes that were waiting for the observer at once. */
+    public int getMaxBufferedBytes() {
+        return mRingBuffer != null ? mRingBuffer.getMaxSize() : 0;
+    }
+
+    /** Returns the number of bytes dropped because the buffer overflowed or the stream closed. */
+    public long getDroppedBytes() {
+        return mRingBuffer != null ? mRingBuffer.getDroppedBytes() : 0;
+    }
+
+    /**
+     * Sends buffered data for as long as the observer is ready to accept it. Each chunk is drained
+     * into its own array, which the sent message then wraps without copying.
+     */
+    private void drain() {
+        synchronized (mDrainLock) {
+            while (!mClosed.get()
+                    && !mCaptureChunkStreamObserver.isCancelled()
+                    && mCaptureChunkStreamObserver.isReady()) {
+                int size = mRingBuffer.getSize();
+                if (size == 0) {
+                    return;
+                }
+                byte[] chunk = new byte[Math.min(size, mDrainChunkSizeBytes)];
+                int read = mRingBuffer.read(chunk, 0, chunk.length);
+                sendChunk(UnsafeByteOperations.unsafeWrap(chunk, 0, read));
+            }
+        }
+    }
+
+    private void sendData(byte[] b, int off, int len) {
+        if (mChunkSizeBytes > 0) {
+            writeAggregated(b, off, len);
+            return;
+        }
+
+        sendChunk(ByteString.copyFrom(b, off, len));
+    }
+
+    public boolean isClosed() {
+        return mClosed.get();
+    }
+
+    /** Copies the data into the chunk array, sending the array every time it is filled. */
+    private synchronized void writeAggregated(byte[] b, int off, int len) {
+        // Checked again under the lock in case the stream was closed by another thread.
+        Preconditions.checkState(
+                !mClosed.get(),
+                "CaptureChunkStreamObserverOutputStream has already been closed and cannot be"
+                        + " written to.");
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        while (len > 0) {
+            if (mChunk == null) {
+                mChunk = new byte[mChunkSizeBytes];
+                mChunkPosition = 0;
+            }
+            int count = Math.min(len, mChunk.length - mChunkPosition);
+            System.arraycopy(b, off, mChunk, mChunkPosition, count);
+            mChunkPosition += count;
+            off += count;
+            len -= count;
+            if (mChunkPosition == mChunk.length) {
+                flushAggregated();
+            }
+        }
+    }
+
+    /**
+     * Sends the aggregated data, if any. The chunk array is dropped rather than reused since the
+     * transport may still read the message after onNext returns.
+     */
+    private synchronized void flushAggregated() {
+        if (mChunk == null) {
+            return;
+        }
+        if (mChunkPosition > 0) {
+            sendChunk(UnsafeByteOperations.unsafeWrap(mChunk, 0, mChunkPosition));
+        }
+        mChunk = null;
+        mChunkPosition = 0;
+    }
+
+    private synchronized void closeAggregated() {
+        if (mClosed.get()) {
+            return;
+        }
+        flushAggregated();
+        mClosed.set(true);
+    }
 
+    private void sendChunk(ByteString chunkBytes) {
         AudioTestHarnessService.CaptureChunk captureChunk =
                 AudioTestHarnessService.CaptureChunk.newBuilder().setData(chunkBytes).build();
 
@@ -145,17 +400,6 @@ public class CaptureChunkStreamObserverOutputStream extends OutputStream {
         }
     }
 
-    @Override
-    public void close() {
-        mClosed.set(true);
-        mCountDownLatch.countDown();
-        LOGGER.info("Stream Closed");
-    }
-
-    public boolean isClosed() {
-        return mClosed.get();
-    }
-
     /**
      * Causes the current thread to wait until the stream is closed.
      *
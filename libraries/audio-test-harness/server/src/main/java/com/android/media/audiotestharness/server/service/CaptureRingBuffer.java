@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.service;
+
+import com.android.media.audiotestharness.server.config.SharedHostConfiguration.CaptureOverflowPolicy;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded byte ring buffer that holds captured audio between the thread publishing it and the
+ * gRPC transport, so that a slow client cannot make the server buffer an unbounded amount of data.
+ *
+ * <p>When the buffer is full, new data either replaces the oldest buffered data, which is counted
+ * as dropped, or waits for space depending on the {@link CaptureOverflowPolicy}.
+ *
+ * <p>This class is thread safe.
+ */
+public class CaptureRingBuffer {
+
+    private final byte[] mBuffer;
+    private final CaptureOverflowPolicy mOverflowPolicy;
+
+    /** Index of the oldest buffered byte. */
+    private int mReadPosition;
+
+    /** Number of buffered bytes. */
+    private int mSize;
+
+    private long mDroppedBytes;
+    private int mMaxSize;
+    private boolean mClosed;
+
+    private CaptureRingBuffer(int capacity, CaptureOverflowPolicy overflowPolicy) {
+        mBuffer = new byte[capacity];
+        mOverflowPolicy = overflowPolicy;
+    }
+
+    public static CaptureRingBuffer create(int capacity, CaptureOverflowPolicy overflowPolicy) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+        return new CaptureRingBuffer(capacity, Preconditions.checkNotNull(overflowPolicy));
+    }
+
+    /**
+     * Adds the provided data to the buffer, applying the overflow policy if there is not enough
+     * space. Data written after {@link #close()}, or while the blocked thread is interrupted, is
+     * dropped.
+     */
+    public synchronized void write(byte[] b, int off, int len) {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        if (mClosed) {
+            mDroppedBytes += len;
+            return;
+        }
+
+        if (mOverflowPolicy == CaptureOverflowPolicy.DROP_OLDEST) {
+            if (len > mBuffer.length) {
+                // Only the most recent data fits, drop the head of the new data directly.
+                int skipped = len - mBuffer.length;
+                mDroppedBytes += skipped;
+                off += skipped;
+                len = mBuffer.length;
+            }
+            int overflow = len - (mBuffer.length - mSize);
+            if (overflow > 0) {
+                mReadPosition = (mReadPosition + overflow) % mBuffer.length;
+                mSize -= overflow;
+                mDroppedBytes += overflow;
+            }
+            copyIn(b, off, len);
+            return;
+        }
+
+        while (len > 0) {
+            while (mSize == mBuffer.length && !mClosed) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    mDroppedBytes += len;
+                    return;
+                }
+            }
+            if (mClosed) {
+                mDroppedBytes += len;
+                return;
+            }
+            int count = Math.min(len, mBuffer.length - mSize);
+            copyIn(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Moves up to {@code len} of the oldest buffered bytes into the provided array.
+     *
+     * @return the number of bytes read, 0 if the buffer is empty
+     */
+    public synchronized int read(byte[] b, int off, int len) {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        int count = Math.min(len, mSize);
+        int firstPart = Math.min(count, mBuffer.length - mReadPosition);
+        System.arraycopy(mBuffer, mReadPosition, b, off, firstPart);
+        System.arraycopy(mBuffer, 0, b, off + firstPart, count - firstPart);
+        mReadPosition = (mReadPosition + count) % mBuffer.length;
+        mSize -= count;
+        if (count > 0) {
+            notifyAll();
+        }
+        return count;
+    }
+
+    /**
+     * Closes the buffer, releasing any blocked writer. Data that is still buffered and any further
+     * data are dropped and counted.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        mDroppedBytes += mSize;
+        mSize = 0;
+        notifyAll();
+    }
+
+    public int getCapacity() {
+        return mBuffer.length;
+    }
+
+    /** Returns the number of bytes currently buffered. */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    /** Returns the highest number of bytes buffered at once. */
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /** Returns the number of bytes dropped because of overflows or because of close. */
+    public synchronized long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    private void copyIn(byte[] b, int off, int len) {
+        int writePosition = (mReadPosition + mSize) % mBuffer.length;
+        int firstPart = Math.min(len, mBuffer.length - writePosition);
+        System.arraycopy(b, off, mBuffer, writePosition, firstPart);
+        System.arraycopy(b, off + firstPart, mBuffer, 0, len - firstPart);
+        mSize += len;
+        mMaxSize = Math.max(mMaxSize, mSize);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.service;
+
+import com.android.media.audiotestharness.proto.AudioDeviceOuterClass.AudioDevice;
+import com.android.media.audiotestharness.proto.AudioFormatOuterClass.AudioFormat;
+import com.android.media.audiotestharness.server.core.AudioCapturer;
+import com.android.media.audiotestharness.server.core.AudioSystemService;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out {@link AudioCapturer}s that share a single underlying capturer per {@link
+ * AudioDevice}, so that several concurrent Capture calls can consume the same device without
+ * reopening it.
+ *
+ * <p>The underlying capturer is created on the first {@link #acquire(AudioDevice)} for a device,
+ * opened by the first {@link AudioCapturer#open()} and closed once every capturer handed out for
+ * that device has been closed. Closing a handed out capturer only detaches the outputs that were
+ * attached through it.
+ *
+ * <p>This class is thread safe.
+ */
+public class SharedAudioCapturerPool {
+    private static final Logger LOGGER = Logger.getLogger(SharedAudioCapturerPool.class.getName());
+
+    private final AudioSystemService mAudioSystemService;
+
+    /** The underlying capturers currently in use, guarded by this. */
+    private final Map<AudioDevice, SharedEntry> mEntries = new HashMap<>();
+
+    private SharedAudioCapturerPool(AudioSystemService audioSystemService) {
+        mAudioSystemService = audioSystemService;
+    }
+
+    public static SharedAudioCapturerPool create(AudioSystemService audioSystemService) {
+        return new SharedAudioCapturerPool(Preconditions.checkNotNull(audioSystemService));
+    }
+
+    /**
+     * Returns a new {@link AudioCapturer} for the provided device with the default {@link
+     * AudioFormat}, backed by the capturer already in use for that device if any.
+     *
+     * @throws IOException if a new underlying capturer is needed and could not be allocated.
+     */
+    public synchronized AudioCapturer acquire(AudioDevice device) throws IOException {
+        SharedEntry entry = mEntries.get(device);
+        if (entry == null) {
+            entry =
+                    new SharedEntry(
+                            device, mAudioSystemService.createWithDefaultAudioFormat(device));
+            mEntries.put(device, entry);
+            LOGGER.info(String.format("Allocated shared AudioCapturer for %s", device));
+        }
+        entry.mReferenceCount++;
+        return new SharedAudioCapturer(entry);
+    }
+
+    /** Returns the number of capturers handed out and not yet closed for the provided device. */
+    public synchronized int getReferenceCount(AudioDevice device) {
+        SharedEntry entry = mEntries.get(device);
+        return entry != null ? entry.mReferenceCount : 0;
+    }
+
+    private synchronized void open(SharedEntry entry) throws IOException {
+        if (!entry.mOpened) {
+            entry.mCapturer.open();
+            entry.mOpened = true;
+        }
+    }
+
+    private synchronized void release(SharedEntry entry) throws IOException {
+        entry.mReferenceCount--;
+        if (entry.mReferenceCount > 0) {
+            return;
+        }
+        mEntries.remove(entry.mDevice);
+        LOGGER.info(String.format("Closing shared AudioCapturer for %s", entry.mDevice));
+        entry.mCapturer.close();
+    }
+
+    /** Underlying capturer for a device and the number of capturers handed out for it. */
+    private static final class SharedEntry {
+        private final AudioDevice mDevice;
+        private final AudioCapturer mCapturer;
+        private int mReferenceCount;
+        private boolean mOpened;
+
+        private SharedEntry(AudioDevice device, AudioCapturer capturer) {
+            mDevice = device;
+            mCapturer = capturer;
+        }
+    }
+
+    /** {@link AudioCapturer} handed out to a single user of a shared underlying capturer. */
+    private final class SharedAudioCapturer implements AudioCapturer {
+        private final SharedEntry mEntry;
+
+        /** The outputs attached through this capturer, detached when it is closed. */
+        private final Set<OutputStream> mOutputs = new CopyOnWriteArraySet<>();
+
+        /** Outputs created by this capturer for attached files, closed along with it. */
+        private final Set<OutputStream> mOwnedOutputs = new CopyOnWriteArraySet<>();
+
+        private boolean mClosed;
+
+        private SharedAudioCapturer(SharedEntry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public synchronized void open() throws IOException {
+            Preconditions.checkState(
+                    !mClosed,
+                    "Cannot reopen a disposed AudioCapturer, a new one should be requested"
+                            + " instead.");
+            SharedAudioCapturerPool.this.open(mEntry);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            for (OutputStream output : mOutputs) {
+                mEntry.mCapturer.detachOutput(output);
+            }
+            for (OutputStream output : mOwnedOutputs) {
+                try {
+                    output.close();
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.WARNING, "Failed to close file output", ioe);
+                }
+            }
+            release(mEntry);
+        }
+
+        @Override
+        public void attachOutput(File file) {
+            try {
+                OutputStream output = new FileOutputStream(file);
+                mOwnedOutputs.add(output);
+                attachOutput(output);
+            } catch (FileNotFoundException fnfe) {
+                LOGGER.warning(
+                        String.format(
+                                "Failed to attach file %s as output to shared AudioCapturer",
+                                file));
+            }
+        }
+
+        @Override
+        public void attachOutput(OutputStream outputStream) {
+            Preconditions.checkNotNull(outputStream, "Cannot attach a null output");
+            mOutputs.add(outputStream);
+            mEntry.mCapturer.attachOutput(outputStream);
+        }
+
+        @Override
+        public void detachOutput(OutputStream outputStream) {
+            if (mOutputs.remove(outputStream)) {
+                mEntry.mCapturer.detachOutput(outputStream);
+            }
+        }
+
+        @Override
+        public AudioFormat getAudioFormat() {
+            return mEntry.mCapturer.getAudioFormat();
+        }
+
+        @Override
+        public AudioDevice getAudioDevice() {
+            return mEntry.mCapturer.getAudioDevice();
+        }
+    }
+}
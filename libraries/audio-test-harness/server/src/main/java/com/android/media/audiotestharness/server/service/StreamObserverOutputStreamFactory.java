@@ -17,6 +17,10 @@
 package com.android.media.audiotestharness.server.service;
 
 import com.android.media.audiotestharness.proto.AudioTestHarnessService;
+import com.android.media.audiotestharness.server.config.SharedHostConfiguration;
+import com.android.media.audiotestharness.server.config.SharedHostConfiguration.CaptureOverflowPolicy;
+
+import com.google.inject.Inject;
 
 import io.grpc.stub.ServerCallStreamObserver;
 
@@ -26,12 +30,43 @@ import io.grpc.stub.ServerCallStreamObserver;
  */
 public class StreamObserverOutputStreamFactory {
 
+    /** Size of the chunks sent by the created streams, 0 if capture chunks are not aggregated. */
+    private final int mChunkSizeBytes;
+
+    /** Size of the flow control buffer of each created stream, 0 if flow control is disabled. */
+    private final int mCaptureBufferSizeBytes;
+
+    private final CaptureOverflowPolicy mCaptureOverflowPolicy;
+
+    public StreamObserverOutputStreamFactory() {
+        this(SharedHostConfiguration.getDefault());
+    }
+
+    @Inject
+    public StreamObserverOutputStreamFactory(SharedHostConfiguration sharedHostConfiguration) {
+        mChunkSizeBytes =
+                sharedHostConfiguration.aggregateCaptureChunks()
+                        ? CaptureChunkStreamObserverOutputStream.AGGREGATED_CHUNK_SIZE_BYTES
+                        : 0;
+        mCaptureBufferSizeBytes = sharedHostConfiguration.captureBufferSizeBytes();
+        mCaptureOverflowPolicy = sharedHostConfiguration.captureOverflowPolicy();
+    }
+
     /**
      * Creates a new {@link CaptureChunkStreamObserverOutputStream} for the provided {@link
      * ServerCallStreamObserver}.
      */
     public CaptureChunkStreamObserverOutputStream createNewCaptureChunkStreamObserverOutputStream(
             ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk> streamObserver) {
+        if (mCaptureBufferSizeBytes > 0) {
+            return CaptureChunkStreamObserverOutputStream.createFlowControlled(
+                    streamObserver,
+                    mChunkSizeBytes,
+                    CaptureRingBuffer.create(mCaptureBufferSizeBytes, mCaptureOverflowPolicy));
+        }
+        if (mChunkSizeBytes > 0) {
+            return CaptureChunkStreamObserverOutputStream.create(streamObserver, mChunkSizeBytes);
+        }
         return CaptureChunkStreamObserverOutputStream.create(streamObserver);
     }
 }
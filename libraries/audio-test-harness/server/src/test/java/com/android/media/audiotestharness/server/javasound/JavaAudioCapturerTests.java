@@ -17,6 +17,7 @@
 package com.android.media.audiotestharness.server.javasound;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -196,6 +197,31 @@ public class JavaAudioCapturerTests {
         assertArrayEquals(expectedBytes, Files.readAllBytes(testFile.toPath()));
     }
 
+    @Test
+    public void detachOutput_stopsPublishingToOutput() throws Exception {
+        when(mTargetDataLine.isOpen()).thenReturn(true);
+        when(mTargetDataLine.isRunning()).thenReturn(false);
+        when(mTargetDataLine.read(any(), anyInt(), anyInt())).thenReturn(4);
+        ArgumentCaptor<Runnable> runnableArgCaptor = ArgumentCaptor.forClass(Runnable.class);
+
+        ByteArrayOutputStream detachedOutputStream = new ByteArrayOutputStream();
+        AudioCapturer capturer =
+                JavaAudioCapturer.create(TEST_DEVICE, TEST_FORMAT, mTargetDataLine, mExecutor);
+        capturer.attachOutput(detachedOutputStream);
+        capturer.open();
+        capturer.detachOutput(detachedOutputStream);
+
+        verify(mExecutor).execute(runnableArgCaptor.capture());
+        JavaAudioCapturer.TargetDataLineWatchingPublisher publisher =
+                (JavaAudioCapturer.TargetDataLineWatchingPublisher) runnableArgCaptor.getValue();
+
+        // Ensure the publisher only loops once by adding a stream that stops it.
+        capturer.attachOutput(new RunnableOutputStream(publisher::stop));
+        publisher.run();
+
+        assertEquals(0, detachedOutputStream.size());
+    }
+
     @Test
     public void close_stopsPublisherAsExpected() throws Exception {
         when(mTargetDataLine.isOpen()).thenReturn(true);
@@ -18,6 +18,7 @@ package com.android.media.audiotestharness.server.service;
 
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doThrow;
@@ -139,6 +140,17 @@ public class AudioCaptureSessionTests {
         // No need to assert since test should pass as long as no exception is thrown.
     }
 
+    @Test
+    public void getCaptureBufferStats_returnsOutputStreamStats() throws Exception {
+        AudioCaptureSession audioCaptureSession =
+                AudioCaptureSession.create(
+                        1, mAudioCapturer, mCaptureChunkStreamObserverOutputStream);
+        when(mCaptureChunkStreamObserverOutputStream.getCaptureBufferStats())
+                .thenReturn(CaptureBufferStats.EMPTY);
+
+        assertSame(CaptureBufferStats.EMPTY, audioCaptureSession.getCaptureBufferStats());
+    }
+
     /** Tests for the {@link AudioCaptureSession#awaitStop(long, TimeUnit)} method. */
     @Test
     public void awaitStop_waitsOnCaptureChunkStreamObserverToClose() throws Exception {
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.android.media.audiotestharness.proto.AudioTestHarnessService;
+import com.android.media.audiotestharness.server.config.SharedHostConfiguration.CaptureOverflowPolicy;
 
 import com.google.common.collect.ImmutableList;
 
@@ -49,6 +50,8 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /** Tests for the {@link CaptureChunkStreamObserverOutputStream}. */
 @RunWith(JUnitParamsRunner.class)
@@ -277,6 +280,165 @@ public class CaptureChunkStreamObserverOutputStreamTests {
         assertTrue(stream.awaitClose(/* timeout= */ 1, TimeUnit.HOURS));
     }
 
+    @Test
+    public void write_aggregatesIntoChunksOfChunkSize() throws Exception {
+        ArrayList<byte[]> writtenBytes = new ArrayList<>();
+        OutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createStreamObserverThatWritesTo(writtenBytes),
+                        mCountDownLatch,
+                        /* chunkSizeBytes= */ 8);
+        byte[][] testBytes = generateRandomByteArrayData(/* numArrays= */ 2);
+
+        stream.write(testBytes[0], /* off= */ 0, /* len= */ 5);
+        stream.write(testBytes[1], /* off= */ 3, /* len= */ 10);
+        stream.write(/* b= */ 42);
+        stream.close();
+
+        byte[] expected = new byte[16];
+        System.arraycopy(testBytes[0], 0, expected, 0, 5);
+        System.arraycopy(testBytes[1], 3, expected, 5, 10);
+        expected[15] = 42;
+        assertListsContainSameByteArrays(
+                "Aggregated",
+                ImmutableList.of(
+                        Arrays.copyOfRange(expected, 0, 8), Arrays.copyOfRange(expected, 8, 16)),
+                writtenBytes);
+    }
+
+    @Test
+    public void flush_sendsPartialChunk_whenAggregating() throws Exception {
+        ArrayList<byte[]> writtenBytes = new ArrayList<>();
+        OutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createStreamObserverThatWritesTo(writtenBytes),
+                        mCountDownLatch,
+                        /* chunkSizeBytes= */ 8);
+        byte[] testBytes = generateRandomByteArrayData(/* numArrays= */ 1)[0];
+
+        stream.write(testBytes, /* off= */ 0, /* len= */ 3);
+        stream.flush();
+        stream.flush();
+        stream.close();
+
+        assertListsContainSameByteArrays(
+                "Flushed", ImmutableList.of(Arrays.copyOfRange(testBytes, 0, 3)), writtenBytes);
+    }
+
+    @Test
+    public void write_sentChunksAreNotOverwritten_whenAggregating() throws Exception {
+        // Keeps the messages without serializing them, as the in-process transport does.
+        List<AudioTestHarnessService.CaptureChunk> chunks = new ArrayList<>();
+        OutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createStreamObserverThatKeeps(chunks),
+                        mCountDownLatch,
+                        /* chunkSizeBytes= */ 8);
+        byte[] testBytes = generateRandomByteArrayData(/* numArrays= */ 2)[1];
+
+        stream.write(testBytes);
+        stream.close();
+
+        assertEquals(2, chunks.size());
+        assertArrayEquals(
+                Arrays.copyOfRange(testBytes, 0, 8), chunks.get(0).getData().toByteArray());
+        assertArrayEquals(
+                Arrays.copyOfRange(testBytes, 8, 16), chunks.get(1).getData().toByteArray());
+    }
+
+    @Test
+    public void write_buffersUntilObserverReady_whenFlowControlled() throws Exception {
+        ArrayList<byte[]> writtenBytes = new ArrayList<>();
+        AtomicBoolean ready = new AtomicBoolean(false);
+        AtomicReference<Runnable> onReadyHandler = new AtomicReference<>();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createFlowControlledStreamObserverThatWritesTo(
+                                writtenBytes, ready, onReadyHandler),
+                        mCountDownLatch,
+                        /* chunkSizeBytes= */ 0,
+                        CaptureRingBuffer.create(
+                                /* capacity= */ 64, CaptureOverflowPolicy.DROP_OLDEST));
+        byte[][] testBytes = generateRandomByteArrayData(/* numArrays= */ 2);
+
+        stream.write(testBytes[0]);
+        stream.write(testBytes[1]);
+        assertTrue(writtenBytes.isEmpty());
+        assertEquals(24, stream.getBufferedBytes());
+
+        ready.set(true);
+        onReadyHandler.get().run();
+
+        byte[] expected = new byte[24];
+        System.arraycopy(testBytes[0], 0, expected, 0, 8);
+        System.arraycopy(testBytes[1], 0, expected, 8, 16);
+        assertListsContainSameByteArrays(
+                "Flow Controlled", ImmutableList.of(expected), writtenBytes);
+        assertEquals(0, stream.getBufferedBytes());
+        assertEquals(24, stream.getMaxBufferedBytes());
+        assertEquals(0, stream.getDroppedBytes());
+    }
+
+    @Test
+    public void write_dropsOldestData_whenFlowControlledBufferFull() throws Exception {
+        ArrayList<byte[]> writtenBytes = new ArrayList<>();
+        AtomicBoolean ready = new AtomicBoolean(false);
+        AtomicReference<Runnable> onReadyHandler = new AtomicReference<>();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createFlowControlledStreamObserverThatWritesTo(
+                                writtenBytes, ready, onReadyHandler),
+                        mCountDownLatch,
+                        /* chunkSizeBytes= */ 0,
+                        CaptureRingBuffer.create(
+                                /* capacity= */ 16, CaptureOverflowPolicy.DROP_OLDEST));
+        byte[] testBytes = generateRandomByteArrayData(/* numArrays= */ 3)[2];
+
+        stream.write(testBytes);
+        ready.set(true);
+        stream.close();
+
+        assertListsContainSameByteArrays(
+                "Dropped Oldest",
+                ImmutableList.of(Arrays.copyOfRange(testBytes, 8, 24)),
+                writtenBytes);
+        assertEquals(8, stream.getDroppedBytes());
+    }
+
+    @Test
+    public void close_countsUnsentDataAsDropped_whenFlowControlled() throws Exception {
+        ArrayList<byte[]> writtenBytes = new ArrayList<>();
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createFlowControlledStreamObserverThatWritesTo(
+                                writtenBytes, new AtomicBoolean(false), new AtomicReference<>()),
+                        mCountDownLatch,
+                        /* chunkSizeBytes= */ 0,
+                        CaptureRingBuffer.create(
+                                /* capacity= */ 64, CaptureOverflowPolicy.DROP_OLDEST));
+
+        stream.write(generateRandomByteArrayData(/* numArrays= */ 2)[1]);
+        stream.close();
+
+        assertTrue(writtenBytes.isEmpty());
+        CaptureBufferStats stats = stream.getCaptureBufferStats();
+        assertEquals(64, stats.getCapacityBytes());
+        assertEquals(0, stats.getBufferedBytes());
+        assertEquals(16, stats.getMaxBufferedBytes());
+        assertEquals(16, stats.getDroppedBytes());
+    }
+
+    @Test
+    public void getCaptureBufferStats_returnsEmptyStats_whenNotFlowControlled() throws Exception {
+        CaptureChunkStreamObserverOutputStream stream =
+                CaptureChunkStreamObserverOutputStream.create(
+                        createStreamObserverThatWritesTo(new ArrayList<>()), mCountDownLatch);
+
+        stream.write(new byte[8]);
+
+        assertEquals(CaptureBufferStats.EMPTY, stream.getCaptureBufferStats());
+    }
+
     /**
      * Asserts that the two provided {@link List}s contain the same byte arrays in the same order.
      *
@@ -369,4 +531,109 @@ public class CaptureChunkStreamObserverOutputStreamTests {
             public void onCompleted() {}
         };
     }
+
+    /**
+     * Creates a new {@link StreamObserver} that keeps the chunks passed to it in the provided list
+     * without reading their data.
+     */
+    private static ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+            createStreamObserverThatKeeps(
+                    final List<AudioTestHarnessService.CaptureChunk> chunks) {
+        return new ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>() {
+            @Override
+            public boolean isReady() {
+                return false;
+            }
+
+            @Override
+            public void setOnReadyHandler(Runnable onReadyHandler) {}
+
+            @Override
+            public void disableAutoInboundFlowControl() {}
+
+            @Override
+            public void request(int count) {}
+
+            @Override
+            public void setMessageCompression(boolean enable) {}
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public void setOnCancelHandler(Runnable onCancelHandler) {}
+
+            @Override
+            public void setCompression(String compression) {}
+
+            @Override
+            public void onNext(AudioTestHarnessService.CaptureChunk value) {
+                chunks.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {}
+
+            @Override
+            public void onCompleted() {}
+        };
+    }
+
+    /**
+     * Creates a new {@link ServerCallStreamObserver} that is ready when the provided flag is set,
+     * stores its on ready handler in the provided reference and writes the results of the write
+     * actions to the provided list.
+     */
+    private static ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>
+            createFlowControlledStreamObserverThatWritesTo(
+                    final List<byte[]> writtenBytes,
+                    final AtomicBoolean ready,
+                    final AtomicReference<Runnable> onReadyHandler) {
+        ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk> delegate =
+                createStreamObserverThatWritesTo(writtenBytes);
+        return new ServerCallStreamObserver<AudioTestHarnessService.CaptureChunk>() {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+
+            @Override
+            public void setOnReadyHandler(Runnable handler) {
+                onReadyHandler.set(handler);
+            }
+
+            @Override
+            public void disableAutoInboundFlowControl() {}
+
+            @Override
+            public void request(int count) {}
+
+            @Override
+            public void setMessageCompression(boolean enable) {}
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public void setOnCancelHandler(Runnable onCancelHandler) {}
+
+            @Override
+            public void setCompression(String compression) {}
+
+            @Override
+            public void onNext(AudioTestHarnessService.CaptureChunk value) {
+                delegate.onNext(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {}
+
+            @Override
+            public void onCompleted() {}
+        };
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.android.media.audiotestharness.server.config.SharedHostConfiguration.CaptureOverflowPolicy;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+/** Tests for the {@link CaptureRingBuffer}. */
+@RunWith(JUnit4.class)
+public class CaptureRingBufferTests {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_throwsIllegalArgumentException_zeroCapacity() throws Exception {
+        CaptureRingBuffer.create(/* capacity= */ 0, CaptureOverflowPolicy.DROP_OLDEST);
+    }
+
+    @Test
+    public void read_returnsWrittenDataInOrder_acrossWraparound() throws Exception {
+        CaptureRingBuffer ringBuffer =
+                CaptureRingBuffer.create(/* capacity= */ 8, CaptureOverflowPolicy.DROP_OLDEST);
+        byte[] result = new byte[8];
+
+        ringBuffer.write(new byte[] {1, 2, 3, 4, 5, 6}, 0, 6);
+        assertEquals(4, ringBuffer.read(result, 0, 4));
+        ringBuffer.write(new byte[] {7, 8, 9, 10, 11}, 0, 5);
+
+        assertEquals(7, ringBuffer.read(result, 0, 8));
+        assertArrayEquals(new byte[] {5, 6, 7, 8, 9, 10, 11}, Arrays.copyOf(result, 7));
+        assertEquals(0, ringBuffer.getSize());
+        assertEquals(0, ringBuffer.getDroppedBytes());
+    }
+
+    @Test
+    public void write_dropsOldestData_whenFull() throws Exception {
+        CaptureRingBuffer ringBuffer =
+                CaptureRingBuffer.create(/* capacity= */ 4, CaptureOverflowPolicy.DROP_OLDEST);
+        byte[] result = new byte[4];
+
+        ringBuffer.write(new byte[] {1, 2, 3}, 0, 3);
+        ringBuffer.write(new byte[] {4, 5, 6, 7, 8, 9}, 0, 6);
+
+        assertEquals(4, ringBuffer.read(result, 0, 4));
+        assertArrayEquals(new byte[] {6, 7, 8, 9}, result);
+        assertEquals(5, ringBuffer.getDroppedBytes());
+        assertEquals(4, ringBuffer.getMaxSize());
+    }
+
+    @Test
+    public void write_blocksUntilRead_whenFullWithBlockPolicy() throws Exception {
+        CaptureRingBuffer ringBuffer =
+                CaptureRingBuffer.create(/* capacity= */ 4, CaptureOverflowPolicy.BLOCK);
+        Thread writer = new Thread(() -> ringBuffer.write(new byte[] {1, 2, 3, 4, 5, 6}, 0, 6));
+        byte[] result = new byte[6];
+
+        writer.start();
+        int read = 0;
+        while (read < 6) {
+            read += ringBuffer.read(result, read, 6 - read);
+        }
+        writer.join();
+
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, result);
+        assertEquals(0, ringBuffer.getDroppedBytes());
+    }
+
+    @Test
+    public void close_releasesBlockedWriter_withBlockPolicy() throws Exception {
+        CaptureRingBuffer ringBuffer =
+                CaptureRingBuffer.create(/* capacity= */ 4, CaptureOverflowPolicy.BLOCK);
+        Thread writer = new Thread(() -> ringBuffer.write(new byte[6], 0, 6));
+
+        writer.start();
+        while (ringBuffer.getSize() < 4) {
+            Thread.yield();
+        }
+        ringBuffer.close();
+        writer.join(/* millis= */ 10000);
+
+        assertFalse(writer.isAlive());
+        // The 4 buffered bytes are dropped on close, then the 2 the writer could not add.
+        assertEquals(6, ringBuffer.getDroppedBytes());
+    }
+
+    @Test
+    public void close_countsBufferedDataAsDropped() throws Exception {
+        CaptureRingBuffer ringBuffer =
+                CaptureRingBuffer.create(/* capacity= */ 8, CaptureOverflowPolicy.DROP_OLDEST);
+
+        ringBuffer.write(new byte[] {1, 2, 3, 4, 5}, 0, 5);
+        ringBuffer.read(new byte[2], 0, 2);
+        ringBuffer.close();
+        ringBuffer.write(new byte[] {6}, 0, 1);
+
+        assertEquals(0, ringBuffer.getSize());
+        assertEquals(4, ringBuffer.getDroppedBytes());
+        assertEquals(0, ringBuffer.read(new byte[8], 0, 8));
+    }
+}
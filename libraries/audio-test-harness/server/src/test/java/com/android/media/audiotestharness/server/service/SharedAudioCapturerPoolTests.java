@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.media.audiotestharness.server.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.android.media.audiotestharness.common.Defaults;
+import com.android.media.audiotestharness.server.core.AudioCapturer;
+import com.android.media.audiotestharness.server.core.AudioSystemService;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+/** Tests for the {@link SharedAudioCapturerPool} class. */
+@RunWith(JUnit4.class)
+public class SharedAudioCapturerPoolTests {
+
+    @Rule public MockitoRule mMockitoRule = MockitoJUnit.rule();
+
+    @Mock AudioSystemService mAudioSystemService;
+
+    @Mock AudioCapturer mAudioCapturer;
+
+    private SharedAudioCapturerPool mSharedAudioCapturerPool;
+
+    @Before
+    public void setUp() throws Exception {
+        when(mAudioSystemService.createWithDefaultAudioFormat(any())).thenReturn(mAudioCapturer);
+        mSharedAudioCapturerPool = SharedAudioCapturerPool.create(mAudioSystemService);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void create_throwsNullPointerException_nullAudioSystemService() throws Exception {
+        SharedAudioCapturerPool.create(/* audioSystemService= */ null);
+    }
+
+    @Test
+    public void acquire_allocatesSingleCapturer_sameDevice() throws Exception {
+        mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+        mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+
+        verify(mAudioSystemService).createWithDefaultAudioFormat(Defaults.AUDIO_DEVICE);
+        assertEquals(2, mSharedAudioCapturerPool.getReferenceCount(Defaults.AUDIO_DEVICE));
+    }
+
+    @Test
+    public void open_opensUnderlyingCapturerOnce() throws Exception {
+        AudioCapturer first = mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+        AudioCapturer second = mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+
+        first.open();
+        second.open();
+
+        verify(mAudioCapturer, times(1)).open();
+    }
+
+    @Test
+    public void close_closesUnderlyingCapturer_onlyAfterLastClose() throws Exception {
+        AudioCapturer first = mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+        AudioCapturer second = mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+        first.open();
+        second.open();
+
+        first.close();
+        first.close();
+        verify(mAudioCapturer, never()).close();
+
+        second.close();
+        verify(mAudioCapturer).close();
+        assertEquals(0, mSharedAudioCapturerPool.getReferenceCount(Defaults.AUDIO_DEVICE));
+    }
+
+    @Test
+    public void close_detachesOnlyOwnOutputs() throws Exception {
+        AudioCapturer first = mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+        AudioCapturer second = mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+        OutputStream firstOutput = new ByteArrayOutputStream();
+        OutputStream secondOutput = new ByteArrayOutputStream();
+        first.attachOutput(firstOutput);
+        second.attachOutput(secondOutput);
+
+        first.close();
+
+        verify(mAudioCapturer).detachOutput(firstOutput);
+        verify(mAudioCapturer, never()).detachOutput(secondOutput);
+    }
+
+    @Test
+    public void acquire_allocatesNewCapturer_afterAllClosed() throws Exception {
+        mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE).close();
+
+        mSharedAudioCapturerPool.acquire(Defaults.AUDIO_DEVICE);
+
+        verify(mAudioSystemService, times(2)).createWithDefaultAudioFormat(Defaults.AUDIO_DEVICE);
+    }
+}
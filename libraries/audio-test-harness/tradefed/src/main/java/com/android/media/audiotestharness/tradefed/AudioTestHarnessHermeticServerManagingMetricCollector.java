@@ -33,6 +33,7 @@ import com.android.tradefed.metrics.proto.MetricMeasurement;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -83,6 +84,36 @@ public class AudioTestHarnessHermeticServerManagingMetricCollector
             description = "The capture device(s) to use for test " + "execution.")
     private final List<String> mCaptureDevices;
 
+    @Option(
+            name = "aggregate-capture-chunks",
+            description =
+                    "Batch several capturer reads into each captured audio chunk instead of"
+                            + " sending every read as its own chunk.")
+    private boolean mAggregateCaptureChunks = false;
+
+    @Option(
+            name = "share-capture-devices",
+            description =
+                    "Share a single running capturer between concurrent captures of the same"
+                            + " device instead of reopening the device for each of them.")
+    private boolean mShareCaptureDevices = false;
+
+    @Option(
+            name = "capture-buffer-size-bytes",
+            description =
+                    "Size of the buffer holding captured audio until the client is ready to"
+                            + " receive it, 0 to send captured audio regardless of flow control.")
+    private int mCaptureBufferSizeBytes = 0;
+
+    @Option(
+            name = "capture-overflow-policy",
+            description =
+                    "What happens to captured audio when the capture buffer is full. BLOCK stalls"
+                            + " the capture of every client of the device, including those"
+                            + " sharing it with share-capture-devices.")
+    private SharedHostConfiguration.CaptureOverflowPolicy mCaptureOverflowPolicy =
+            SharedHostConfiguration.CaptureOverflowPolicy.DROP_OLDEST;
+
     public AudioTestHarnessHermeticServerManagingMetricCollector() {
         this(AudioTestHarnessGrpcServerFactory.createFactory(), new ArrayList<>());
     }
@@ -102,24 +133,32 @@ public class AudioTestHarnessHermeticServerManagingMetricCollector
     public void onTestRunStart(DeviceMetricData runData) {
         LogUtil.CLog.i("Starting Audio Test Harness...");
 
-        // Use the default configuration if no devices are specified, otherwise, create a
-        // configuration containing the specified devices.
-        SharedHostConfiguration sharedHostConfiguration =
+        // Use the default configuration if no devices or options are specified, otherwise,
+        // create a configuration containing the specified devices and options.
+        ImmutableList<AudioDeviceOuterClass.AudioDevice> captureDevices =
                 mCaptureDevices.isEmpty()
-                        ? null
-                        : SharedHostConfiguration.create(
-                                mCaptureDevices.stream()
-                                        .map(
-                                                (name) ->
-                                                        AudioDeviceOuterClass.AudioDevice
-                                                                .newBuilder()
-                                                                .setName(name)
-                                                                .addCapabilities(
-                                                                        AudioDeviceOuterClass
-                                                                                .AudioDevice
-                                                                                .Capability.CAPTURE)
-                                                                .build())
-                                        .collect(toImmutableList()));
+                        ? ImmutableList.of(Defaults.AUDIO_DEVICE)
+                        : mCaptureDevices.stream()
+                                .map(
+                                        (name) ->
+                                                AudioDeviceOuterClass.AudioDevice.newBuilder()
+                                                        .setName(name)
+                                                        .addCapabilities(
+                                                                AudioDeviceOuterClass.AudioDevice
+                                                                        .Capability.CAPTURE)
+                                                        .build())
+                                .collect(toImmutableList());
+        SharedHostConfiguration sharedHostConfiguration =
+                SharedHostConfiguration.builder()
+                        .setCaptureDevices(captureDevices)
+                        .setAggregateCaptureChunks(mAggregateCaptureChunks)
+                        .setShareCaptureDevices(mShareCaptureDevices)
+                        .setCaptureBufferSizeBytes(mCaptureBufferSizeBytes)
+                        .setCaptureOverflowPolicy(mCaptureOverflowPolicy)
+                        .build();
+        if (sharedHostConfiguration.equals(SharedHostConfiguration.getDefault())) {
+            sharedHostConfiguration = null;
+        }
 
         mAudioTestHarnessGrpcServer =
                 mAudioTestHarnessGrpcServerFactory.createOnNextAvailablePort(
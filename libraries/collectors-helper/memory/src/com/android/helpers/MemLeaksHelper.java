@@ -25,6 +25,7 @@ import androidx.test.uiautomator.UiDevice;
 import java.io.IOException;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,10 +36,9 @@ public class MemLeaksHelper implements ICollectorHelper<Long> {
     private static final String MEM_LEAKS_PATTERN =
             "(?<bytes>[0-9]+) bytes in (?<allocations>[0-9]+) unreachable allocations";
 
-    @VisibleForTesting public static final String ALL_PROCESS_CMD = "ps -A";
+    @VisibleForTesting public static final String ALL_PROCESS_CMD = ProcessTable.ALL_PROCESSES_CMD;
     @VisibleForTesting
     public static final String DUMPSYS_MEMIFNO_CMD = "dumpsys meminfo --unreachable %d";
-    @VisibleForTesting public static final String PIDOF_CMD = "pidof %s";
     @VisibleForTesting public static final String PROC_MEM_BYTES = "proc_unreachable_memory_bytes_";
     @VisibleForTesting
     public static final String PROC_ALLOCATIONS = "proc_unreachable_allocations_";
@@ -46,7 +46,6 @@ public class MemLeaksHelper implements ICollectorHelper<Long> {
     private boolean mDiffOnFlag = true;
     private boolean mCollectAllProcFlag = true;
     private String[] mProcessNames;
-    private String mPidOutput;
     private UiDevice mUiDevice;
     private Map<String, Long> mPrevious = new HashMap<>();
 
@@ -64,6 +63,7 @@ public class MemLeaksHelper implements ICollectorHelper<Long> {
 
     @Override
     public boolean startCollecting() {
+        ProcessTable.getInstance().onCollectionBoundary();
         if (mDiffOnFlag) {
             mPrevious = getMeminfo();
         }
@@ -77,6 +77,7 @@ public class MemLeaksHelper implements ICollectorHelper<Long> {
 
     @Override
     public Map<String, Long> getMetrics() {
+        ProcessTable.getInstance().onCollectionBoundary();
         Map<String, Long> current = getMeminfo();
         Map<String, Long> results = new HashMap<>();
 
@@ -162,41 +163,35 @@ public class MemLeaksHelper implements ICollectorHelper<Long> {
     private Map<Integer, String> getPids() {
         // return pids
         Map<Integer, String> pids = new HashMap<>();
+        ProcessTable.Snapshot processSnapshot;
+        try {
+            processSnapshot = ProcessTable.getInstance().getSnapshot(this::executeShellCommand);
+        } catch (IOException ioe) {
+            Log.e(TAG, "Failed to get pid of all processes.", ioe);
+            return new HashMap<>();
+        }
         if (mCollectAllProcFlag) {
-            try {
-                String pidOutput = executeShellCommand(ALL_PROCESS_CMD);
-                // Sample output for the process info
-                // Sample command : "ps -A"
-                // Sample output :
-                // system   4533   410 13715708 78536 do_freezer_trap 0 S    com.android.keychain
-                // root    32552     2        0     0   worker_thread 0 I [kworker/6:0-memlat_wq]
-                String[] lines = pidOutput.split(System.lineSeparator());
-                for (String line : lines) {
-                    String[] splitLine = line.split("\\s+");
-                    // Skip the first (i.e header) line from "ps -A" output.
-                    if (splitLine[1].equalsIgnoreCase("PID")) {
-                        continue;
-                    }
-                    String processName = splitLine[splitLine.length - 1].replace("\n", "").trim();
-                    // Skip the process names enclosed in "[]"
-                    if (processName.startsWith("[") && processName.endsWith("]")) {
-                        continue;
-                    }
-                    pids.put(Integer.parseInt(splitLine[1]), processName);
+            for (Map.Entry<Integer, String> process : processSnapshot.getProcesses().entrySet()) {
+                String processName = process.getValue();
+                // Skip the process names enclosed in "[]"
+                if (processName.startsWith("[") && processName.endsWith("]")) {
+                    continue;
                 }
-            } catch (IOException ioe) {
-                Log.e(TAG, "Failed to get pid of all processes.", ioe);
-                return new HashMap<>();
+                pids.put(process.getKey(), processName);
+            }
+            if (pids.isEmpty()) {
+                Log.e(TAG, "Failed to get pid of all processes.");
             }
         } else if (mProcessNames.length > 0) {
-            for (int i = 0; i < mProcessNames.length; i++) {
-                try {
-                    mPidOutput = executeShellCommand(String.format(PIDOF_CMD, mProcessNames[i]));
-                } catch (IOException ioe) {
-                    Log.e(TAG, "Failed to run " + String.format(PIDOF_CMD, mProcessNames[i]), ioe);
+            for (String processName : mProcessNames) {
+                List<Integer> processPids = processSnapshot.getPids(processName);
+                if (processPids.isEmpty()) {
+                    Log.e(TAG, "Failed to get pid of " + processName);
                     continue;
                 }
-                pids.put(Integer.parseInt(mPidOutput.replace("\n", "").trim()), mProcessNames[i]);
+                for (Integer pid : processPids) {
+                    pids.put(pid, processName);
+                }
             }
         } else {
             Log.w(TAG, "No process names were provided.");
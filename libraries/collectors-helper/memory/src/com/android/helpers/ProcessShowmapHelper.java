@@ -18,7 +18,6 @@ package com.android.helpers;
 
 import static com.android.helpers.MetricUtility.constructKey;
 
-import android.icu.text.NumberFormat;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -27,9 +26,9 @@ import androidx.test.InstrumentationRegistry;
 import androidx.test.uiautomator.UiDevice;
 
 import java.io.IOException;
-import java.text.ParseException;
 import java.util.HashMap;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -50,8 +49,6 @@ public class ProcessShowmapHelper implements ICollectorHelper<Long> {
     private static final String TAG = ProcessShowmapHelper.class.getSimpleName();
     // Command to get the showmap for a process
     private static final String SHOWMAP_CMD = "showmap %d";
-    // Command to get the process id from the process name
-    private static final String PIDOF_CMD = "pidof %s";
     private static final String PSS = "pss";
     private static final String RSS = "rss";
     private static final String VSS = "vss";
@@ -80,6 +77,7 @@ public class ProcessShowmapHelper implements ICollectorHelper<Long> {
 
     @Override
     public boolean startCollecting() {
+        ProcessTable.getInstance().onCollectionBoundary();
         mTestStartMetrics = sampleMemoryOfProcesses(mProcessNames);
         return mTestStartMetrics != null;
     }
@@ -88,6 +86,7 @@ public class ProcessShowmapHelper implements ICollectorHelper<Long> {
     public Map<String, Long> getMetrics() {
         // Collect end sample.
         HashMap<String, Long> showmapFinalMap = new HashMap<>();
+        ProcessTable.getInstance().onCollectionBoundary();
         mTestEndMetrics = sampleMemoryOfProcesses(mProcessNames);
         if (mTestEndMetrics == null) {
             Log.e(TAG, "Unable to collect any showmap metrics at end. Returning empty metrics");
@@ -153,17 +152,21 @@ public class ProcessShowmapHelper implements ICollectorHelper<Long> {
      * @return metrics object with pss, rss, and vss
      */
     private @Nullable ShowmapMetrics sampleMemory(@NonNull String processName) {
-        // Get pid
-        int pid;
+        // Get pid from the process table shared with the other collectors.
+        // Note that only the first pid of the process will be used.
+        List<Integer> pids;
         try {
-            // Note that only the first pid returned by "pidof" will be used.
-            String pidofOutput = mUiDevice.executeShellCommand(
-                String.format(PIDOF_CMD, processName));
-            pid = NumberFormat.getInstance().parse(pidofOutput).intValue();
-        } catch (IOException | ParseException e) {
+            pids = ProcessTable.getInstance().getSnapshot(mUiDevice::executeShellCommand)
+                    .getPids(processName);
+        } catch (IOException e) {
             Log.e(TAG, String.format("Unable to get pid of %s ", processName), e);
             return null;
         }
+        if (pids.isEmpty()) {
+            Log.e(TAG, String.format("Unable to get pid of %s ", processName));
+            return null;
+        }
+        int pid = pids.get(0);
 
         // Read showmap for process
         String showmapOutput;
@@ -18,27 +18,40 @@ package com.android.helpers;
 
 import static com.android.helpers.MetricUtility.constructKey;
 
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 import androidx.test.InstrumentationRegistry;
 import androidx.test.uiautomator.UiDevice;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.InputMismatchException;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -49,11 +62,16 @@ import java.util.stream.Collectors;
 public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
     private static final String TAG = ShowmapSnapshotHelper.class.getSimpleName();
     private static final String DROP_CACHES_CMD = "echo %d > /proc/sys/vm/drop_caches";
-    private static final String PIDOF_CMD = "pidof %s";
-    public static final String ALL_PROCESSES_CMD = "ps -A";
+    public static final String ALL_PROCESSES_CMD = ProcessTable.ALL_PROCESSES_CMD;
     private static final String SHOWMAP_CMD = "showmap -v %d";
-    private static final String CHILD_PROCESSES_CMD = "ps -A --ppid %d";
     @VisibleForTesting public static final String OOM_SCORE_ADJ_CMD = "cat /proc/%d/oom_score_adj";
+    // Prints "<path>:<score>" for every readable path, missing processes are skipped.
+    @VisibleForTesting public static final String OOM_SCORE_ADJ_BATCH_CMD = "grep -H . %s";
+    private static final String OOM_SCORE_ADJ_PATH = "/proc/%d/oom_score_adj";
+    private static final String PROC_PATH_PREFIX = "/proc/";
+    // Directory under the output directory holding the raw showmap output of each pid collected
+    // in parallel, until it is appended to the output file in process order.
+    private static final String PARALLEL_RAW_OUTPUT_DIR = "showmap_parallel_raw";
     private static final int PROCESS_OOM_SCORE_IMPERCEPTIBLE = 200;
     private static final int PROCESS_OOM_SCORE_CACHED = 899;
     private static final String ACTIVITY_LRU_CMD = "dumpsys activity lru";
@@ -87,6 +105,10 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
     private UiDevice mUiDevice;
     private boolean mRunGcPrecollection;
     private boolean mRunCountThreads;
+    private boolean mStreamingParse;
+    private int mParallelism;
+    // Pool of the parallel collection, created on first use and shut down in stopCollecting.
+    private ExecutorService mExecutor;
 
     // Map to maintain per-process memory info
     private Map<String, String> mMemoryMap = new HashMap<>();
@@ -101,11 +123,14 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         mDropCacheOption = 0;
         mRunGcPrecollection = false;
         mRunCountThreads = false;
+        mStreamingParse = false;
+        mParallelism = 1;
         mUiDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
     }
 
     @Override
     public boolean startCollecting() {
+        ProcessTable.getInstance().onCollectionBoundary();
         if (mTestOutputDir == null) {
             Log.e(TAG, String.format("Invalid test setup"));
             return false;
@@ -150,6 +175,7 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
 
     @Override
     public Map<String, String> getMetrics() {
+        ProcessTable.getInstance().onCollectionBoundary();
         try {
             if (mRunCountThreads) {
                 mMemoryMap.putAll(execCountThreads());
@@ -168,7 +194,13 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
                 return mMemoryMap;
             }
             HashSet<Integer> zygoteChildrenPids = getZygoteChildrenPids();
-            FileWriter writer = new FileWriter(new File(mTestOutputFile), true);
+            OutputStream fileStream =
+                    new BufferedOutputStream(new FileOutputStream(mTestOutputFile, true));
+            Writer writer = new OutputStreamWriter(fileStream);
+            // Metric names in the same order as the values returned by the summary parser.
+            String[] metricNames = mMetricNameIndexMap.keySet().toArray(new String[0]);
+            ShowmapSummaryParser summaryParser =
+                    mStreamingParse ? createSummaryParser(metricNames) : null;
 
             try {
                 // dump the activity lru to better understand the process state
@@ -178,26 +210,90 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
                 Log.e(TAG, String.format("Failed to execute %s", ACTIVITY_LRU_CMD));
             }
 
-            for (String processName : mProcessNames) {
-                List<Integer> pids = new ArrayList<>();
-                // Collect required data
-                try {
-                    pids = getPids(processName);
-                    for (Integer pid : pids) {
-                        // Force Garbage collect to trim transient objects before taking memory
-                        // measurements as memory tests aim to track persistent memory regression
-                        // instead of transient memory which also allows for de-noising and reducing
-                        // likelihood of false alerts.
-                        if (mRunGcPrecollection && zygoteChildrenPids.contains(pid)) {
-                            // Skip native processes from sending GC signal.
-                            android.os.Trace.beginSection("IssueGCForPid: " + pid);
-                            // Perform a synchronous GC which happens when we request meminfo
-                            // This save us the need of setting up timeouts that may or may not
-                            // match with the end time of GC.
-                            mUiDevice.executeShellCommand("dumpsys meminfo -a " + pid);
-                            android.os.Trace.endSection();
-                        }
+            if (mParallelism > 1) {
+                collectInParallel(
+                        zygoteChildrenPids, metricNames, summaryParser, writer, fileStream);
+            } else {
+                collectSerially(
+                        zygoteChildrenPids, metricNames, summaryParser, writer, fileStream);
+            }
+            // To track total number of process with child processes.
+            if (mMemoryMap.size() != 0) {
+                Set<String> parentWithChildProcessSet = mMemoryMap.keySet()
+                        .stream()
+                        .filter(s -> s.startsWith(CHILD_PROCESS_COUNT_PREFIX))
+                        .collect(Collectors.toSet());
+                mMemoryMap.put(PROCESS_WITH_CHILD_PROCESS_COUNT,
+                        Long.toString(parentWithChildProcessSet.size()));
+            }
+            // Store the unique process count. -1 to exclude the "ps" process name.
+            mMemoryMap.put(PROCESS_COUNT, Integer.toString(mProcessNames.length - 1));
+            writer.close();
+            mMemoryMap.put(OUTPUT_FILE_PATH_KEY, mTestOutputFile);
+        } catch (RuntimeException e) {
+            Log.e(TAG, e.getMessage(), e.getCause());
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Failed to write output file %s", mTestOutputFile), e);
+        }
+        return mMemoryMap;
+    }
+
+    /**
+     * Collects showmap metrics for all processes one after another.
+     *
+     * @param zygoteChildrenPids pids of the zygote children, which can be sent a GC
+     * @param metricNames metric names in the order of the parser results
+     * @param summaryParser streaming summary parser, null to parse the buffered output
+     * @param writer writer of the result file
+     * @param fileStream stream the {@code writer} writes to
+     */
+    private void collectSerially(
+            Set<Integer> zygoteChildrenPids,
+            String[] metricNames,
+            ShowmapSummaryParser summaryParser,
+            Writer writer,
+            OutputStream fileStream)
+            throws IOException {
+        for (String processName : mProcessNames) {
+            List<Integer> pids = new ArrayList<>();
+            // Collect required data
+            try {
+                pids = getPids(processName);
+                for (Integer pid : pids) {
+                    // Force Garbage collect to trim transient objects before taking memory
+                    // measurements as memory tests aim to track persistent memory regression
+                    // instead of transient memory which also allows for de-noising and reducing
+                    // likelihood of false alerts.
+                    if (mRunGcPrecollection && zygoteChildrenPids.contains(pid)) {
+                        // Skip native processes from sending GC signal.
+                        android.os.Trace.beginSection("IssueGCForPid: " + pid);
+                        // Perform a synchronous GC which happens when we request meminfo
+                        // This save us the need of setting up timeouts that may or may not
+                        // match with the end time of GC.
+                        mUiDevice.executeShellCommand("dumpsys meminfo -a " + pid);
+                        android.os.Trace.endSection();
+                    }
 
+                    if (summaryParser != null) {
+                        // Mark the imperceptible process for showmap and child process count
+                        String metricPattern =
+                                isProcessOomScoreAbove(
+                                                processName,
+                                                pid,
+                                                PROCESS_OOM_SCORE_IMPERCEPTIBLE)
+                                        ? OUTPUT_IMPERCEPTIBLE_METRIC_PATTERN
+                                        : OUTPUT_METRIC_PATTERN;
+                        android.os.Trace.beginSection("StreamShowmap");
+                        streamAndUpdateMemoryInfo(
+                                processName,
+                                pid,
+                                metricPattern,
+                                metricNames,
+                                summaryParser,
+                                writer,
+                                fileStream);
+                        android.os.Trace.endSection();
+                    } else {
                         android.os.Trace.beginSection("ExecuteShowmap");
                         String showmapOutput = execShowMap(processName, pid);
                         android.os.Trace.endSection();
@@ -207,7 +303,8 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
                             Log.i(
                                     TAG,
                                     String.format(
-                                            "This process is imperceptible: %s", processName));
+                                            "This process is imperceptible: %s",
+                                            processName));
                             parseAndUpdateMemoryInfo(
                                     processName,
                                     showmapOutput,
@@ -220,75 +317,315 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
                         // Store showmap output into file. If there are more than one process
                         // with same name write the individual showmap associated with pid.
                         storeToFile(mTestOutputFile, processName, pid, showmapOutput, writer);
-                        // Parse number of child processes for the given pid and update the
-                        // total number of child process count for the process name that pid
-                        // is associated with.
-                        updateChildProcessesDetails(processName, pid);
                     }
-                } catch (RuntimeException e) {
-                    Log.e(TAG, e.getMessage(), e.getCause());
-                    // Skip this process and continue with the next one
+                    // Parse number of child processes for the given pid and update the
+                    // total number of child process count for the process name that pid
+                    // is associated with.
+                    updateChildProcessesDetails(processName, pid);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, e.getMessage(), e.getCause());
+                // Skip this process and continue with the next one
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Collects showmap metrics for all processes on a bounded pool of {@code mParallelism}
+     * threads. The per pid results are merged in the same order as {@link #collectSerially}, so
+     * the metrics and the output file are identical to the serial collection.
+     *
+     * @param zygoteChildrenPids pids of the zygote children, which can be sent a GC
+     * @param metricNames metric names in the order of the parser results
+     * @param summaryParser streaming summary parser, null to parse the buffered output
+     * @param writer writer of the result file
+     * @param fileStream stream the {@code writer} writes to
+     */
+    private void collectInParallel(
+            Set<Integer> zygoteChildrenPids,
+            String[] metricNames,
+            ShowmapSummaryParser summaryParser,
+            Writer writer,
+            OutputStream fileStream)
+            throws IOException {
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(mParallelism);
+        }
+        ExecutorService executor = mExecutor;
+        File rawOutputDir = null;
+        if (summaryParser != null) {
+            rawOutputDir = new File(mTestOutputDir, PARALLEL_RAW_OUTPUT_DIR);
+            // Drop what a previous collection may have left behind.
+            deleteRawOutputs(rawOutputDir);
+            if (!rawOutputDir.mkdirs()) {
+                throw new IOException("Unable to create " + rawOutputDir);
+            }
+        }
+        File taskRawOutputDir = rawOutputDir;
+        // Resolve all pids first, so that the oom scores can be read with one command.
+        List<PidResult> tasks = new ArrayList<>();
+        for (String processName : mProcessNames) {
+            try {
+                for (Integer pid : getPids(processName)) {
+                    tasks.add(new PidResult(processName, pid));
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, e.getMessage(), e.getCause());
+            }
+        }
+        Map<Integer, Integer> oomScores = getOomScores(tasks);
+
+        // Keep a bounded window of pending pids so that finished results waiting for an
+        // earlier one to be merged do not pile up in memory.
+        Deque<Future<PidResult>> pending = new ArrayDeque<>();
+        try {
+            int nextTask = 0;
+            String skippedProcessName = null;
+            for (int index = 0; index < tasks.size(); index++) {
+                while (nextTask < tasks.size() && nextTask - index < mParallelism * 2) {
+                    PidResult task = tasks.get(nextTask++);
+                    pending.add(
+                            executor.submit(
+                                    () ->
+                                            collectPid(
+                                                    task,
+                                                    zygoteChildrenPids,
+                                                    oomScores,
+                                                    metricNames,
+                                                    taskRawOutputDir)));
+                }
+                PidResult result = getResult(pending.poll());
+                // Like the serial collection, skip the remaining pids of a failed process.
+                if (result.processName.equals(skippedProcessName)) {
+                    if (result.rawOutputFile != null) {
+                        result.rawOutputFile.delete();
+                    }
                     continue;
                 }
+                skippedProcessName = null;
+                mergePidResult(result, metricNames, writer, fileStream);
+                if (result.error != null) {
+                    Log.e(TAG, result.error.getMessage(), result.error.getCause());
+                    skippedProcessName = result.processName;
+                }
             }
-            // To track total number of process with child processes.
-            if (mMemoryMap.size() != 0) {
-                Set<String> parentWithChildProcessSet = mMemoryMap.keySet()
-                        .stream()
-                        .filter(s -> s.startsWith(CHILD_PROCESS_COUNT_PREFIX))
-                        .collect(Collectors.toSet());
-                mMemoryMap.put(PROCESS_WITH_CHILD_PROCESS_COUNT,
-                        Long.toString(parentWithChildProcessSet.size()));
+        } finally {
+            // Cancels the collections still pending if the merge failed, the pool itself is
+            // kept until stopCollecting.
+            for (Future<PidResult> future : pending) {
+                future.cancel(true);
             }
-            // Store the unique process count. -1 to exclude the "ps" process name.
-            mMemoryMap.put(PROCESS_COUNT, Integer.toString(mProcessNames.length - 1));
-            writer.close();
-            mMemoryMap.put(OUTPUT_FILE_PATH_KEY, mTestOutputFile);
-        } catch (RuntimeException e) {
-            Log.e(TAG, e.getMessage(), e.getCause());
+            if (rawOutputDir != null) {
+                deleteRawOutputs(rawOutputDir);
+            }
+        }
+    }
+
+    /** Deletes the raw output directory of the parallel collection and its content. */
+    private static void deleteRawOutputs(File rawOutputDir) {
+        File[] files = rawOutputDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        rawOutputDir.delete();
+    }
+
+    /**
+     * Collects the showmap and child process data for a single pid. Runs on the collection pool
+     * and must not touch the shared metrics map.
+     *
+     * @param rawOutputDir directory receiving the raw output while it is parsed as a stream, null
+     *     to parse the buffered output
+     */
+    private PidResult collectPid(
+            PidResult result,
+            Set<Integer> zygoteChildrenPids,
+            Map<Integer, Integer> oomScores,
+            String[] metricNames,
+            File rawOutputDir) {
+        String processName = result.processName;
+        int pid = result.pid;
+        try {
+            if (mRunGcPrecollection && zygoteChildrenPids.contains(pid)) {
+                // Skip native processes from sending GC signal.
+                android.os.Trace.beginSection("IssueGCForPid: " + pid);
+                mUiDevice.executeShellCommand("dumpsys meminfo -a " + pid);
+                android.os.Trace.endSection();
+            }
+            Integer oomScore = oomScores.get(pid);
+            boolean imperceptible =
+                    oomScore != null
+                            ? oomScore > PROCESS_OOM_SCORE_IMPERCEPTIBLE
+                            : isProcessOomScoreAbove(
+                                    processName, pid, PROCESS_OOM_SCORE_IMPERCEPTIBLE);
+            String metricPattern =
+                    imperceptible ? OUTPUT_IMPERCEPTIBLE_METRIC_PATTERN : OUTPUT_METRIC_PATTERN;
+
+            if (rawOutputDir != null) {
+                android.os.Trace.beginSection("StreamShowmap");
+                File rawOutputFile = new File(rawOutputDir, pid + ".txt");
+                try (InputStream showmapStream =
+                                executeShellCommandStream(String.format(SHOWMAP_CMD, pid));
+                        OutputStream rawOutput =
+                                new BufferedOutputStream(new FileOutputStream(rawOutputFile))) {
+                    result.metricValues =
+                            createSummaryParser(metricNames).parse(showmapStream, rawOutput);
+                } catch (InputMismatchException e) {
+                    throw new RuntimeException(
+                            String.format("Unexpected showmap format for %s ", processName), e);
+                }
+                result.rawOutputFile = rawOutputFile;
+                android.os.Trace.endSection();
+            } else {
+                android.os.Trace.beginSection("ExecuteShowmap");
+                String showmapOutput = execShowMap(processName, pid);
+                android.os.Trace.endSection();
+                result.metricValues = parseMemoryInfo(processName, showmapOutput, metricNames);
+                result.showmapOutput = showmapOutput;
+            }
+            result.metricPattern = metricPattern;
+            result.childProcessNames = getChildProcessNames(processName, pid);
         } catch (IOException e) {
-            Log.e(TAG, String.format("Failed to write output file %s", mTestOutputFile), e);
+            result.error =
+                    new RuntimeException(
+                            String.format("Unable to collect showmap for %s ", processName), e);
+        } catch (RuntimeException e) {
+            result.error = e;
         }
-        return mMemoryMap;
+        return result;
     }
 
-    public HashSet<Integer> getZygoteChildrenPids() {
-        HashSet<Integer> allZygoteChildren;
-        allZygoteChildren = getChildrenPids("zygote");
-        HashSet<Integer> zyg64children = getChildrenPids("zygote64");
-        allZygoteChildren.addAll(zyg64children);
-        return allZygoteChildren;
+    /**
+     * Applies the result of a single pid to the metrics and the output file, in the same way as
+     * the serial collection does.
+     */
+    private void mergePidResult(
+            PidResult result, String[] metricNames, Writer writer, OutputStream fileStream)
+            throws IOException {
+        if (result.metricPattern == null) {
+            return;
+        }
+        if (OUTPUT_IMPERCEPTIBLE_METRIC_PATTERN.equals(result.metricPattern)) {
+            Log.i(TAG, String.format("This process is imperceptible: %s", result.processName));
+        }
+        updateMemoryInfo(
+                result.processName, result.metricPattern, metricNames, result.metricValues);
+        if (result.rawOutputFile != null) {
+            writer.write(String.format(">>> %s (%d) <<<\n", result.processName, result.pid));
+            writer.flush();
+            Files.copy(result.rawOutputFile.toPath(), fileStream);
+            writer.write('\n');
+            result.rawOutputFile.delete();
+        } else {
+            storeToFile(
+                    mTestOutputFile, result.processName, result.pid, result.showmapOutput, writer);
+        }
+        if (result.childProcessNames != null) {
+            updateChildProcessMetrics(result.processName, result.childProcessNames);
+        }
     }
 
-    public HashSet<Integer> getChildrenPids(String processName) {
-        HashSet<Integer> childrenPids = new HashSet<>();
-        String childrenCmdOutput = "";
+    /**
+     * Reads the oom adjustment scores of all the given pids with a single shell command.
+     *
+     * @return map of pid to score, pids which could not be read are missing
+     */
+    private Map<Integer, Integer> getOomScores(List<PidResult> tasks) {
+        Map<Integer, Integer> oomScores = new HashMap<>();
+        if (tasks.isEmpty()) {
+            return oomScores;
+        }
+        StringBuilder paths = new StringBuilder();
+        for (PidResult task : tasks) {
+            if (paths.length() > 0) {
+                paths.append(' ');
+            }
+            paths.append(String.format(OOM_SCORE_ADJ_PATH, task.pid));
+        }
         try {
-            // Execute shell does not support shell substitution so it has to be executed twice.
-            childrenCmdOutput = mUiDevice.executeShellCommand(
-                "pgrep -P " + mUiDevice.executeShellCommand("pidof " + processName));
+            String output =
+                    executeShellCommand(String.format(OOM_SCORE_ADJ_BATCH_CMD, paths.toString()));
+            // Sample output line: /proc/603/oom_score_adj:-900
+            for (String line : output.split("\\n")) {
+                int pidEnd = line.indexOf('/', PROC_PATH_PREFIX.length());
+                int scoreStart = line.lastIndexOf(':');
+                if (!line.startsWith(PROC_PATH_PREFIX) || pidEnd < 0 || scoreStart < 0) {
+                    continue;
+                }
+                try {
+                    oomScores.put(
+                            Integer.parseInt(line.substring(PROC_PATH_PREFIX.length(), pidEnd)),
+                            Integer.parseInt(line.substring(scoreStart + 1).trim()));
+                } catch (NumberFormatException e) {
+                    // Fall back to reading the score of this pid on its own.
+                }
+            }
         } catch (IOException e) {
-            Log.e(TAG, "Exception occurred reading children for process " + processName);
+            Log.e(TAG, "Unable to read oom_score_adj of all processes", e);
         }
-        String[] lines = childrenCmdOutput.split("\\R");
-        for (String line : lines) {
-            try {
-                int pid = Integer.parseInt(line);
-                childrenPids.add(pid);
-            } catch (NumberFormatException e) {
-                // If the process does not exist or the shell command fails
-                // just skip the pid, this is because there could be some
-                // devices that contain a process while others do not.
+        return oomScores;
+    }
+
+    /** Waits for {@code future} and rethrows a failure of the task as a runtime exception. */
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while collecting showmap", e);
         }
-        return childrenPids;
+    }
+
+    /** Data collected for a single pid by the parallel collection. */
+    private static class PidResult {
+        final String processName;
+        final int pid;
+        // Set once the showmap output was parsed.
+        String metricPattern;
+        long[] metricValues;
+        // Only one of the outputs is set, depending on the parse mode.
+        String showmapOutput;
+        File rawOutputFile;
+        List<String> childProcessNames;
+        RuntimeException error;
+
+        PidResult(String processName, int pid) {
+            this.processName = processName;
+            this.pid = pid;
+        }
+    }
+
+    public HashSet<Integer> getZygoteChildrenPids() {
+        return new HashSet<>(getProcessSnapshot().getZygoteChildrenPids());
+    }
+
+    public HashSet<Integer> getChildrenPids(String processName) {
+        // If the process does not exist the set is empty, this is because there could be some
+        // devices that contain a process while others do not.
+        return new HashSet<>(getProcessSnapshot().getChildrenOf(processName));
     }
 
     @Override
     public boolean stopCollecting() {
+        shutdownExecutor();
         return true;
     }
 
+    private void shutdownExecutor() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
     /**
      * Sets option for running GC prior to collection.
      *
@@ -298,6 +635,35 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         mRunGcPrecollection = shouldGcOnPrecollect;
     }
 
+    /**
+     * Sets option for parsing showmap output while it is being read instead of buffering the whole
+     * output of each process.
+     *
+     * @param shouldStreamParse whether showmap output should be parsed as a stream
+     */
+    public void setStreamingParseOption(boolean shouldStreamParse) {
+        mStreamingParse = shouldStreamParse;
+    }
+
+    /**
+     * Sets the number of processes collected concurrently. Results are merged in the same order
+     * as the serial collection, so metrics and the output file do not depend on it.
+     *
+     * @param parallelism number of concurrent collections, 1 to collect serially
+     * @return true on success, false if input option is invalid
+     */
+    public boolean setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            return false;
+        }
+        if (parallelism != mParallelism) {
+            // The pool is sized for the previous parallelism.
+            shutdownExecutor();
+        }
+        mParallelism = parallelism;
+        return true;
+    }
+
     /**
      * Sets option for counting the threads for all processes.
      *
@@ -343,22 +709,11 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      * @return pid's of the specified process
      */
     private List<Integer> getPids(String processName) throws RuntimeException {
-        try {
-            String pidofOutput = mUiDevice
-                    .executeShellCommand(String.format(PIDOF_CMD, processName));
-
-            // Sample output for the process with more than 1 pid.
-            // Sample command : "pidof init"
-            // Sample output : 1 559
-            String[] pids = pidofOutput.split("\\s+");
-            List<Integer> pidList = new ArrayList<>();
-            for (String pid : pids) {
-                pidList.add(Integer.parseInt(pid.trim()));
-            }
-            return pidList;
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("Unable to get pid of %s ", processName), e);
+        List<Integer> pidList = getProcessSnapshot().getPids(processName);
+        if (pidList.isEmpty()) {
+            throw new RuntimeException(String.format("Unable to get pid of %s ", processName));
         }
+        return pidList;
     }
 
     /**
@@ -422,6 +777,26 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
     private void parseAndUpdateMemoryInfo(
             String processName, String showmapOutput, String metricPattern)
             throws RuntimeException {
+        String[] metricNames = mMetricNameIndexMap.keySet().toArray(new String[0]);
+        updateMemoryInfo(
+                processName,
+                metricPattern,
+                metricNames,
+                parseMemoryInfo(processName, showmapOutput, metricNames));
+    }
+
+    /**
+     * Extract memory metrics from showmap command output for the process with {@code processName}
+     * name.
+     *
+     * @param processName name of the process to extract memory info for
+     * @param showmapOutput showmap command output
+     * @param metricNames metric names to extract
+     * @return the summed values in kB, one entry per metric name
+     */
+    private long[] parseMemoryInfo(
+            String processName, String showmapOutput, String[] metricNames)
+            throws RuntimeException {
         try {
 
             // -------- -------- -------- -------- -------- -------- -------- -------- ----- ------
@@ -435,28 +810,109 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
             int pos = showmapOutput.lastIndexOf("----");
             String summarySplit[] = showmapOutput.substring(pos).trim().split("\\s+");
 
-            for (Map.Entry<String, List<Integer>> entry : mMetricNameIndexMap.entrySet()) {
-                Long metricValue = 0L;
-                String metricKey =
-                        constructKey(String.format(metricPattern, entry.getKey()), processName);
-                for (int index = 0; index < entry.getValue().size(); index++) {
-                    metricValue += Long.parseLong(summarySplit[entry.getValue().get(index) + 1]);
-                }
-                // If there are multiple pids associated with the process name then update the
-                // existing entry in the map otherwise add new entry in the map.
-                if (mMemoryMap.containsKey(metricKey)) {
-                    long currValue = Long.parseLong(mMemoryMap.get(metricKey));
-                    mMemoryMap.put(metricKey, Long.toString(currValue + metricValue * 1024));
-                } else {
-                    mMemoryMap.put(metricKey, Long.toString(metricValue * 1024));
+            long[] metricValues = new long[metricNames.length];
+            for (int metric = 0; metric < metricNames.length; metric++) {
+                for (Integer index : mMetricNameIndexMap.get(metricNames[metric])) {
+                    metricValues[metric] += Long.parseLong(summarySplit[index + 1]);
                 }
             }
+            return metricValues;
         } catch (IndexOutOfBoundsException | InputMismatchException e) {
             throw new RuntimeException(
                     String.format("Unexpected showmap format for %s ", processName), e);
         }
     }
 
+    /**
+     * Executes showmap for the process with {@code processName} name and {@code pid} pid, parses
+     * the summary while the output is read and copies the raw output into the result file.
+     *
+     * @param processName name of the process to extract memory info for
+     * @param pid pid of the process to run showmap for
+     * @param metricPattern pattern used to construct the metric keys
+     * @param metricNames metric names in the order of the parser results
+     * @param summaryParser parser for the showmap summary
+     * @param writer writer of the result file
+     * @param fileStream stream the {@code writer} writes to
+     */
+    private void streamAndUpdateMemoryInfo(
+            String processName,
+            long pid,
+            String metricPattern,
+            String[] metricNames,
+            ShowmapSummaryParser summaryParser,
+            Writer writer,
+            OutputStream fileStream)
+            throws RuntimeException {
+        long[] metricValues;
+        try (InputStream showmapStream =
+                executeShellCommandStream(String.format(SHOWMAP_CMD, pid))) {
+            writer.write(String.format(">>> %s (%d) <<<\n", processName, pid));
+            // The raw output bypasses the writer, so anything it buffered must go first.
+            writer.flush();
+            metricValues = summaryParser.parse(showmapStream, fileStream);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(
+                    String.format("Unable to execute showmap command for %s ", processName), e);
+        } catch (InputMismatchException e) {
+            throw new RuntimeException(
+                    String.format("Unexpected showmap format for %s ", processName), e);
+        }
+        updateMemoryInfo(processName, metricPattern, metricNames, metricValues);
+    }
+
+    /**
+     * Creates the showmap summary parser for the configured metric name and index map.
+     *
+     * @param metricNames metric names in the order the parser should report them
+     */
+    private ShowmapSummaryParser createSummaryParser(String[] metricNames) {
+        int[][] metricColumns = new int[metricNames.length][];
+        for (int metric = 0; metric < metricNames.length; metric++) {
+            List<Integer> indexList = mMetricNameIndexMap.get(metricNames[metric]);
+            metricColumns[metric] = new int[indexList.size()];
+            for (int index = 0; index < indexList.size(); index++) {
+                metricColumns[metric][index] = indexList.get(index);
+            }
+        }
+        return new ShowmapSummaryParser(metricColumns);
+    }
+
+    /**
+     * Adds showmap values of one pid to the metrics of the process with {@code processName} name.
+     *
+     * @param processName name of the process
+     * @param metricPattern pattern used to construct the metric keys
+     * @param metricNames metric names in the order of {@code metricValues}
+     * @param metricValues values in kB
+     */
+    private void updateMemoryInfo(
+            String processName, String metricPattern, String[] metricNames, long[] metricValues) {
+        for (int index = 0; index < metricNames.length; index++) {
+            String metricKey =
+                    constructKey(String.format(metricPattern, metricNames[index]), processName);
+            updateMemoryInfo(metricKey, metricValues[index]);
+        }
+    }
+
+    /**
+     * Adds a showmap value to the metric with {@code metricKey} key. If there are multiple pids
+     * associated with the process name then the existing entry in the map is updated otherwise a
+     * new entry is added in the map.
+     *
+     * @param metricKey key of the metric
+     * @param metricValue value in kB
+     */
+    private void updateMemoryInfo(String metricKey, long metricValue) {
+        if (mMemoryMap.containsKey(metricKey)) {
+            long currValue = Long.parseLong(mMemoryMap.get(metricKey));
+            mMemoryMap.put(metricKey, Long.toString(currValue + metricValue * 1024));
+        } else {
+            mMemoryMap.put(metricKey, Long.toString(metricValue * 1024));
+        }
+    }
+
     /**
      * Store test results for one process into file.
      *
@@ -467,7 +923,7 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      * @param writer file writer to write the data
      */
     private void storeToFile(String fileName, String processName, long pid, String showmapOutput,
-            FileWriter writer) throws RuntimeException {
+            Writer writer) throws RuntimeException {
         try {
             writer.write(String.format(">>> %s (%d) <<<\n", processName, pid));
             writer.write(showmapOutput);
@@ -533,62 +989,70 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      * @param pid
      */
     private void updateChildProcessesDetails(String processName, long pid) {
-        String childProcessName;
-        String childPID;
-        String completeChildProcessMetric;
-        try {
-            Log.i(TAG,
-                    String.format("Retrieving child processes count for process name: %s with"
-                            + " process id %d.", processName, pid));
-            String childProcessesStr = mUiDevice
-                    .executeShellCommand(String.format(CHILD_PROCESSES_CMD, pid));
-            Log.i(TAG, String.format("Child processes cmd output: %s", childProcessesStr));
-
-            int childProcessCount = 0;
-            String[] childProcessStrSplit = childProcessesStr.split("\\n");
-            for (String line : childProcessStrSplit) {
-                // To discard the header line in the command output.
-                if (Objects.equals(line, childProcessStrSplit[0])) continue;
-                String[] childProcessSplit = line.trim().split("\\s+");
-                /**
-                 * final metric will be of following format
-                 * parent_process_<process>_child_process_<process>
-                 * parent_process_zygote64_child_process_system_server
-                 */
-                childPID = childProcessSplit[1];
-                childProcessName = childProcessSplit[8];
-                // Skip the logcat and sh processes in child process count
-                if (SKIP_PROCESS.contains(childProcessName)
-                        || isProcessOomScoreAbove(
-                                childProcessName,
-                                Long.parseLong(childPID),
-                                PROCESS_OOM_SCORE_CACHED)) {
-                    Log.i(
-                            TAG,
-                            String.format(
-                                    "Skip the child process %s in the parent process %s.",
-                                    childProcessName, processName));
-                    continue;
-                }
-                childProcessCount++;
-                completeChildProcessMetric =
-                        String.join(
-                                METRIC_VALUE_SEPARATOR,
-                                PARENT_PROCESS_STRING,
-                                processName,
-                                CHILD_PROCESS_STRING,
-                                childProcessName);
-                mMemoryMap.put(completeChildProcessMetric, "1");
-            }
-            String childCountMetricKey = String.format(OUTPUT_CHILD_PROCESS_COUNT_KEY, processName);
-            if (childProcessCount > 0) {
-                mMemoryMap.put(childCountMetricKey,
-                        Long.toString(
-                                Long.parseLong(mMemoryMap.getOrDefault(childCountMetricKey, "0"))
-                                        + childProcessCount));
+        updateChildProcessMetrics(processName, getChildProcessNames(processName, pid));
+    }
+
+    /**
+     * Retrieves the names of the child processes for the given process id, skipping the logcat,
+     * sh and cached processes.
+     *
+     * @param processName name of the process that pid is associated with
+     * @param pid pid of the parent process
+     * @return names of the child processes to report
+     */
+    private List<String> getChildProcessNames(String processName, long pid) {
+        List<String> childProcessNames = new ArrayList<>();
+        Log.i(TAG,
+                String.format("Retrieving child processes count for process name: %s with"
+                        + " process id %d.", processName, pid));
+        ProcessTable.Snapshot processSnapshot = getProcessSnapshot();
+        for (Integer childPid : processSnapshot.getChildren((int) pid)) {
+            String childProcessName = processSnapshot.getName(childPid);
+            // Skip the logcat and sh processes in child process count
+            if (SKIP_PROCESS.contains(childProcessName)
+                    || isProcessOomScoreAbove(
+                            childProcessName, childPid, PROCESS_OOM_SCORE_CACHED)) {
+                Log.i(
+                        TAG,
+                        String.format(
+                                "Skip the child process %s in the parent process %s.",
+                                childProcessName, processName));
+                continue;
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to run child process command.", e);
+            childProcessNames.add(childProcessName);
+        }
+        return childProcessNames;
+    }
+
+    /**
+     * Adds a child process metric for each child process and updates the total child process
+     * count of the process with {@code processName} name.
+     *
+     * @param processName name of the parent process
+     * @param childProcessNames names of the child processes of one pid
+     */
+    private void updateChildProcessMetrics(String processName, List<String> childProcessNames) {
+        for (String childProcessName : childProcessNames) {
+            /**
+             * final metric will be of following format
+             * parent_process_<process>_child_process_<process>
+             * parent_process_zygote64_child_process_system_server
+             */
+            String completeChildProcessMetric =
+                    String.join(
+                            METRIC_VALUE_SEPARATOR,
+                            PARENT_PROCESS_STRING,
+                            processName,
+                            CHILD_PROCESS_STRING,
+                            childProcessName);
+            mMemoryMap.put(completeChildProcessMetric, "1");
+        }
+        String childCountMetricKey = String.format(OUTPUT_CHILD_PROCESS_COUNT_KEY, processName);
+        if (!childProcessNames.isEmpty()) {
+            mMemoryMap.put(childCountMetricKey,
+                    Long.toString(
+                            Long.parseLong(mMemoryMap.getOrDefault(childCountMetricKey, "0"))
+                                    + childProcessNames.size()));
         }
     }
 
@@ -604,38 +1068,41 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      */
     private String[] getAllProcessNames() {
         Set<String> allProcessNames = new LinkedHashSet<>();
-        try {
-            String psOutput = mUiDevice.executeShellCommand(ALL_PROCESSES_CMD);
-            // Split the lines
-            String allProcesses[] = psOutput.split("\\n");
-            for (String invidualProcessDetails : allProcesses) {
-                Log.i(TAG, String.format("Process detail: %s", invidualProcessDetails));
-                // Sample process detail line
-                // system 603 1 41532 5396 SyS_epoll+ 0 S servicemanager
-                String processSplit[] = invidualProcessDetails.split("\\s+");
-                // Parse process name
-                String processName = processSplit[processSplit.length - 1].trim();
-                // Include the process name which are not enclosed in [].
-                if (!processName.startsWith("[") && !processName.endsWith("]")) {
-                    // Skip the first (i.e header) line from "ps -A" output.
-                    if (processName.equalsIgnoreCase("NAME")) {
-                        continue;
-                    }
-                    Log.i(TAG, String.format("Including the process %s", processName));
-                    allProcessNames.add(processName);
-                }
+        for (String processName : getProcessSnapshot().getProcesses().values()) {
+            // Include the process name which are not enclosed in [].
+            if (!processName.startsWith("[") && !processName.endsWith("]")) {
+                Log.i(TAG, String.format("Including the process %s", processName));
+                allProcessNames.add(processName);
             }
-        } catch (IOException ioe) {
-            throw new RuntimeException(
-                    String.format("Unable execute all processes command %s ", ALL_PROCESSES_CMD),
-                    ioe);
         }
         return allProcessNames.toArray(new String[0]);
     }
 
+    /** Get the process table snapshot shared with the other collectors. */
+    private ProcessTable.Snapshot getProcessSnapshot() {
+        try {
+            return ProcessTable.getInstance().getSnapshot(this::executeShellCommand);
+        } catch (IOException e) {
+            throw new RuntimeException(
+                    String.format("Unable to execute all processes command %s ",
+                            ProcessTable.ALL_PROCESSES_CMD),
+                    e);
+        }
+    }
+
     /* Execute a shell command and return its output. */
     @VisibleForTesting
     public String executeShellCommand(String command) throws IOException {
         return mUiDevice.executeShellCommand(command);
     }
+
+    /* Execute a shell command and return a stream of its output. */
+    @VisibleForTesting
+    public InputStream executeShellCommandStream(String command) throws IOException {
+        ParcelFileDescriptor pfd =
+                InstrumentationRegistry.getInstrumentation()
+                        .getUiAutomation()
+                        .executeShellCommand(command);
+        return new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+    }
 }
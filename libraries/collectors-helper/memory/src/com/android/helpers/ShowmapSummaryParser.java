@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+
+/**
+ * Streaming parser for the summary line of {@code showmap -v} output.
+ *
+ * <p>The summary is the line following the last dashed separator line:
+ *
+ * <pre>
+ * ------- -------- -------- -------- -------- -------- -------- -------- ------ -----
+ * 10810272 5400 1585 3800 168 264 1168 0 0 TOTAL
+ * </pre>
+ *
+ * <p>The output is consumed in fixed size chunks and the requested summary columns are
+ * accumulated directly into primitive arrays, so parsing does not allocate per line. The parser
+ * is not thread safe but can be reused for any number of outputs.
+ */
+public class ShowmapSummaryParser {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    // Summary columns to add up for each metric.
+    private final int[][] mMetricColumns;
+    // Number of leading summary columns that need to be parsed.
+    private final int mColumnCount;
+
+    // Scratch values of the line being parsed and of the latest complete summary line.
+    private final long[] mLineValues;
+    private final long[] mSummaryValues;
+    // Tokens that are not plain numbers are marked as invalid.
+    private final boolean[] mLineValid;
+    private final boolean[] mSummaryValid;
+    private int mLineTokenCount;
+    private int mSummaryTokenCount;
+
+    /**
+     * @param metricColumns for each metric, the summary column indexes whose values are added up
+     */
+    public ShowmapSummaryParser(int[][] metricColumns) {
+        mMetricColumns = metricColumns;
+        int maxColumn = -1;
+        for (int[] columns : metricColumns) {
+            for (int column : columns) {
+                if (column < 0) {
+                    throw new IllegalArgumentException("Invalid showmap column index " + column);
+                }
+                maxColumn = Math.max(maxColumn, column);
+            }
+        }
+        mColumnCount = maxColumn + 1;
+        mLineValues = new long[mColumnCount];
+        mSummaryValues = new long[mColumnCount];
+        mLineValid = new boolean[mColumnCount];
+        mSummaryValid = new boolean[mColumnCount];
+    }
+
+    /**
+     * Parses showmap output from {@code in} until the end of the stream.
+     *
+     * @param in the showmap output
+     * @param tee if not null, receives an exact copy of the consumed output
+     * @return the summed summary values in kB, one entry per metric in constructor order
+     * @throws InputMismatchException if the output does not contain a valid summary line
+     */
+    public long[] parse(InputStream in, OutputStream tee) throws IOException {
+        // Line state
+        boolean lineStart = true;
+        boolean separatorCandidate = false;
+        int dashCount = 0;
+        // Whether the current line follows a separator line and must be tokenized.
+        boolean inSummary = false;
+        boolean afterSeparator = false;
+        boolean inToken = false;
+        boolean tokenNumeric = false;
+        long tokenValue = 0;
+        boolean foundSummary = false;
+
+        mLineTokenCount = 0;
+        mSummaryTokenCount = 0;
+
+        int read;
+        while ((read = in.read(mBuffer)) != -1) {
+            if (tee != null) {
+                tee.write(mBuffer, 0, read);
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = mBuffer[i];
+                if (lineStart) {
+                    separatorCandidate = true;
+                    dashCount = 0;
+                    inSummary = afterSeparator;
+                    if (inSummary) {
+                        mLineTokenCount = 0;
+                    }
+                    inToken = false;
+                    lineStart = false;
+                }
+                if (b == '\n') {
+                    if (inToken) {
+                        endToken(tokenNumeric, tokenValue);
+                    }
+                    if (separatorCandidate && dashCount >= 4) {
+                        afterSeparator = true;
+                    } else if (inSummary && mLineTokenCount > 0) {
+                        commitSummaryLine();
+                        foundSummary = true;
+                        afterSeparator = false;
+                    }
+                    // Blank lines after a separator keep looking for the summary.
+                    lineStart = true;
+                    continue;
+                }
+                boolean whitespace = b == ' ' || b == '\t' || b == '\r';
+                if (separatorCandidate) {
+                    if (b == '-') {
+                        dashCount++;
+                    } else if (!whitespace) {
+                        separatorCandidate = false;
+                    }
+                }
+                if (!inSummary) {
+                    if (!separatorCandidate) {
+                        // Nothing else is needed from this line, skip to its end.
+                        while (i + 1 < read && mBuffer[i + 1] != '\n') {
+                            i++;
+                        }
+                    }
+                    continue;
+                }
+                if (whitespace) {
+                    if (inToken) {
+                        endToken(tokenNumeric, tokenValue);
+                        inToken = false;
+                    }
+                } else {
+                    if (!inToken) {
+                        inToken = true;
+                        tokenNumeric = true;
+                        tokenValue = 0;
+                    }
+                    if (tokenNumeric && b >= '0' && b <= '9') {
+                        tokenValue = tokenValue * 10 + (b - '0');
+                    } else {
+                        tokenNumeric = false;
+                    }
+                }
+            }
+        }
+        // Output may not end with a new line.
+        if (!lineStart && inSummary) {
+            if (inToken) {
+                endToken(tokenNumeric, tokenValue);
+            }
+            if (mLineTokenCount > 0 && !(separatorCandidate && dashCount >= 4)) {
+                commitSummaryLine();
+                foundSummary = true;
+            }
+        }
+        if (!foundSummary) {
+            throw new InputMismatchException("No summary line found in showmap output");
+        }
+        return sumMetrics();
+    }
+
+    private void endToken(boolean numeric, long value) {
+        if (mLineTokenCount < mColumnCount) {
+            mLineValues[mLineTokenCount] = value;
+            mLineValid[mLineTokenCount] = numeric;
+        }
+        mLineTokenCount++;
+    }
+
+    private void commitSummaryLine() {
+        int count = Math.min(mLineTokenCount, mColumnCount);
+        System.arraycopy(mLineValues, 0, mSummaryValues, 0, count);
+        System.arraycopy(mLineValid, 0, mSummaryValid, 0, count);
+        Arrays.fill(mSummaryValid, count, mColumnCount, false);
+        mSummaryTokenCount = mLineTokenCount;
+    }
+
+    private long[] sumMetrics() {
+        long[] result = new long[mMetricColumns.length];
+        for (int metric = 0; metric < mMetricColumns.length; metric++) {
+            long sum = 0;
+            for (int column : mMetricColumns[metric]) {
+                if (column >= mSummaryTokenCount || !mSummaryValid[column]) {
+                    throw new InputMismatchException(
+                            String.format("Invalid value at showmap summary column %d", column));
+                }
+                sum += mSummaryValues[column];
+            }
+            result[metric] = sum;
+        }
+        return result;
+    }
+}
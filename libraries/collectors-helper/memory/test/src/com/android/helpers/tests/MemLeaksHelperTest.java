@@ -21,12 +21,16 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.matches;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import androidx.test.runner.AndroidJUnit4;
 
 import com.android.helpers.MemLeaksHelper;
+import com.android.helpers.ProcessTable;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -49,6 +53,13 @@ public class MemLeaksHelperTest {
     public void setUp() {
         mMemLeaksHelper = new MemLeaksHelper();
         MockitoAnnotations.initMocks(this);
+        // Do not share the process table between tests.
+        ProcessTable.getInstance().invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        ProcessTable.getInstance().invalidate();
     }
 
     /**
@@ -556,7 +567,6 @@ public class MemLeaksHelperTest {
                     "com.google.android.apps.scone",
                     "com.google.android.googlequicksearchbox:search"
                 };
-        String memLeaksPidofSampleOutput1 = "2041\n";
         String memLeaksSampleOutput1 =
                 "Applications Memory Usage (in Kilobytes):\n"
                     + "Uptime: 3116837476 Realtime: 3125160587\n"
@@ -674,7 +684,6 @@ public class MemLeaksHelperTest {
                     + "   7985459c10: ae 00 00 00 00 00 00 00                         ........\n"
                     + "\n";
 
-        String memLeaksPidofSampleOutput2 = "4293\n";
         String memLeaksSampleOutput2 =
                 "Applications Memory Usage (in Kilobytes):\n"
                     + "Uptime: 3120462758 Realtime: 3128785870\n"
@@ -776,7 +785,6 @@ public class MemLeaksHelperTest {
                     + " ................\n"
                     + "\n";
 
-        String memLeaksPidofSampleOutput3 = "8683\n";
         String memLeaksSampleOutput3 =
                 "Applications Memory Usage (in Kilobytes):\n"
                     + "Uptime: 3120310343 Realtime: 3128633455\n"
@@ -908,34 +916,26 @@ public class MemLeaksHelperTest {
                     + "\n"
                     + "j";
 
-        doReturn(memLeaksPidofSampleOutput1)
+        String memLeaksPidSampleOutput =
+                "u0_a135        2041    410 15335764 196644 do_epoll_wait       0 S"
+                        + " com.android.systemui\n"
+                        + "u0_a216        4293    410 14032920  98472 do_epoll_wait       0 S"
+                        + " com.google.android.apps.scone\n"
+                        + "u0_a141        8683    410 14523456 143224 do_epoll_wait       0 S"
+                        + " com.google.android.googlequicksearchbox:search\n";
+        doReturn(memLeaksPidSampleOutput)
                 .when(mMemLeaksHelper)
-                .executeShellCommand(
-                        matches(String.format(mMemLeaksHelper.PIDOF_CMD, "com.android.systemui")));
+                .executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
         doReturn(memLeaksSampleOutput1)
                 .when(mMemLeaksHelper)
                 .executeShellCommand(
                         matches(String.format(mMemLeaksHelper.DUMPSYS_MEMIFNO_CMD, 2041)));
 
-        doReturn(memLeaksPidofSampleOutput2)
-                .when(mMemLeaksHelper)
-                .executeShellCommand(
-                        matches(
-                                String.format(
-                                        mMemLeaksHelper.PIDOF_CMD,
-                                        "com.google.android.apps.scone")));
         doReturn(memLeaksSampleOutput2)
                 .when(mMemLeaksHelper)
                 .executeShellCommand(
                         matches(String.format(mMemLeaksHelper.DUMPSYS_MEMIFNO_CMD, 4293)));
 
-        doReturn(memLeaksPidofSampleOutput3)
-                .when(mMemLeaksHelper)
-                .executeShellCommand(
-                        matches(
-                                String.format(
-                                        mMemLeaksHelper.PIDOF_CMD,
-                                        "com.google.android.googlequicksearchbox:search")));
         doReturn(memLeaksSampleOutput3)
                 .when(mMemLeaksHelper)
                 .executeShellCommand(
@@ -1002,7 +1002,6 @@ public class MemLeaksHelperTest {
                     "com.google.android.apps.scone",
                     "com.google.android.googlequicksearchbox:search"
                 };
-        String memLeaksPidofSampleOutput1 = "2041\n";
         String memLeaksSampleOutput1 =
                 "Applications Memory Usage (in Kilobytes):\n"
                     + "Uptime: 3116837476 Realtime: 3125160587\n"
@@ -1120,7 +1119,6 @@ public class MemLeaksHelperTest {
                     + "   7985459c10: ae 00 00 00 00 00 00 00                         ........\n"
                     + "\n";
 
-        String memLeaksPidofSampleOutput2 = "4293\n";
         String memLeaksSampleOutput2 =
                 "Applications Memory Usage (in Kilobytes):\n"
                     + "Uptime: 3120462758 Realtime: 3128785870\n"
@@ -1222,7 +1220,6 @@ public class MemLeaksHelperTest {
                     + " ................\n"
                     + "\n";
 
-        String memLeaksPidofSampleOutput3 = "8683\n";
         String memLeaksSampleOutput3 =
                 "Applications Memory Usage (in Kilobytes):\n"
                     + "Uptime: 3120310343 Realtime: 3128633455\n"
@@ -1354,34 +1351,26 @@ public class MemLeaksHelperTest {
                     + "\n"
                     + "j";
 
-        doReturn(memLeaksPidofSampleOutput1)
+        String memLeaksPidSampleOutput =
+                "u0_a135        2041    410 15335764 196644 do_epoll_wait       0 S"
+                        + " com.android.systemui\n"
+                        + "u0_a216        4293    410 14032920  98472 do_epoll_wait       0 S"
+                        + " com.google.android.apps.scone\n"
+                        + "u0_a141        8683    410 14523456 143224 do_epoll_wait       0 S"
+                        + " com.google.android.googlequicksearchbox:search\n";
+        doReturn(memLeaksPidSampleOutput)
                 .when(mMemLeaksHelper)
-                .executeShellCommand(
-                        matches(String.format(mMemLeaksHelper.PIDOF_CMD, "com.android.systemui")));
+                .executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
         doReturn(memLeaksSampleOutput1)
                 .when(mMemLeaksHelper)
                 .executeShellCommand(
                         matches(String.format(mMemLeaksHelper.DUMPSYS_MEMIFNO_CMD, 2041)));
 
-        doReturn(memLeaksPidofSampleOutput2)
-                .when(mMemLeaksHelper)
-                .executeShellCommand(
-                        matches(
-                                String.format(
-                                        mMemLeaksHelper.PIDOF_CMD,
-                                        "com.google.android.apps.scone")));
         doReturn(memLeaksSampleOutput2)
                 .when(mMemLeaksHelper)
                 .executeShellCommand(
                         matches(String.format(mMemLeaksHelper.DUMPSYS_MEMIFNO_CMD, 4293)));
 
-        doReturn(memLeaksPidofSampleOutput3)
-                .when(mMemLeaksHelper)
-                .executeShellCommand(
-                        matches(
-                                String.format(
-                                        mMemLeaksHelper.PIDOF_CMD,
-                                        "com.google.android.googlequicksearchbox:search")));
         doReturn(memLeaksSampleOutput3)
                 .when(mMemLeaksHelper)
                 .executeShellCommand(
@@ -1448,4 +1437,39 @@ public class MemLeaksHelperTest {
         Map<String, Long> metrics = mMemLeaksHelper.getMetrics();
         assertTrue(metrics.isEmpty());
     }
+
+    /**
+     * Test collectors which reach the same collection boundary share one process table snapshot,
+     * and that it is read again at the next boundary.
+     */
+    @Test
+    public void testProcessTableSharedAtBoundary() throws IOException {
+        ProcessTable processTable = ProcessTable.getInstance();
+        String psOutput =
+                "root          8616     2       0      0 worker_thread       0 I [dio/dm-46]\n";
+        MemLeaksHelper otherHelper = spy(new MemLeaksHelper());
+        doReturn(psOutput)
+                .when(mMemLeaksHelper)
+                .executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
+        doReturn(psOutput)
+                .when(otherHelper)
+                .executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
+        mMemLeaksHelper.setUp(true, true, new String[] {});
+        otherHelper.setUp(true, true, new String[] {});
+
+        processTable.enterCollectionBoundary("testStart");
+        assertTrue(mMemLeaksHelper.startCollecting());
+        assertTrue(otherHelper.startCollecting());
+        processTable.exitCollectionBoundary();
+        verify(mMemLeaksHelper).executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
+
+        // Read again even though the test was short.
+        processTable.enterCollectionBoundary("testEnd");
+        mMemLeaksHelper.getMetrics();
+        otherHelper.getMetrics();
+        processTable.exitCollectionBoundary();
+        verify(mMemLeaksHelper, times(2))
+                .executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
+        verify(otherHelper, never()).executeShellCommand(matches(mMemLeaksHelper.ALL_PROCESS_CMD));
+    }
 }
@@ -18,14 +18,18 @@ package com.android.helpers.tests;
 
 import static com.android.helpers.MetricUtility.constructKey;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
@@ -33,6 +37,7 @@ import static org.mockito.Mockito.verify;
 
 import androidx.test.runner.AndroidJUnit4;
 
+import com.android.helpers.ProcessTable;
 import com.android.helpers.ShowmapSnapshotHelper;
 
 import org.junit.Before;
@@ -41,7 +46,12 @@ import org.junit.runner.RunWith;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -95,6 +105,8 @@ public class ShowmapSnapshotHelperTest {
     public void setUp() {
         mShowmapSnapshotHelper = new ShowmapSnapshotHelper();
         MockitoAnnotations.initMocks(this);
+        // Do not share the process table between tests.
+        ProcessTable.getInstance().invalidate();
     }
 
     /**
@@ -125,6 +137,15 @@ public class ShowmapSnapshotHelperTest {
         assertTrue(mShowmapSnapshotHelper.setDropCacheOption(3));
     }
 
+    /** Test invalid options for parallelism. */
+    @Test
+    public void testInvalidParallelism() {
+        assertFalse(mShowmapSnapshotHelper.setParallelism(0));
+        assertFalse(mShowmapSnapshotHelper.setParallelism(-1));
+        assertTrue(mShowmapSnapshotHelper.setParallelism(1));
+        assertTrue(mShowmapSnapshotHelper.setParallelism(8));
+    }
+
     /**
      * Test no metrics are sampled if process name is empty.
      */
@@ -169,6 +190,68 @@ public class ShowmapSnapshotHelperTest {
         testProcessList(METRIC_INDEX_STR, TWO_PROCESS_LIST);
     }
 
+    /**
+     * Test parallel collection reports the same metrics and writes the same snapshot file as the
+     * serial collection, with the oom scores of the parallel collection read in one batch.
+     */
+    @Test
+    public void testGetMetrics_Parallel() throws IOException {
+        stubProcesses();
+        mShowmapSnapshotHelper.setUp(VALID_OUTPUT_DIR, TWO_PROCESS_LIST);
+        mShowmapSnapshotHelper.setMetricNameIndex(METRIC_INDEX_STR);
+        mShowmapSnapshotHelper.setStreamingParseOption(true);
+        assertTrue(mShowmapSnapshotHelper.startCollecting());
+        Map<String, String> serialMetrics = new HashMap<>(mShowmapSnapshotHelper.getMetrics());
+
+        clearInvocations(mShowmapSnapshotHelper);
+        mShowmapSnapshotHelper.setParallelism(4);
+        assertTrue(mShowmapSnapshotHelper.startCollecting());
+        Map<String, String> parallelMetrics = mShowmapSnapshotHelper.getMetrics();
+
+        // The oom scores of the collected pids come from the batch command only.
+        verify(mShowmapSnapshotHelper).executeShellCommand(startsWith("grep -H"));
+        for (int pid : new int[] {1000, 2000, 2001}) {
+            verify(mShowmapSnapshotHelper, never())
+                    .executeShellCommand(
+                            String.format(ShowmapSnapshotHelper.OOM_SCORE_ADJ_CMD, pid));
+        }
+        assertEquals(
+                Long.toString(1000 * 1024),
+                parallelMetrics.get(
+                        constructKey(
+                                String.format(ShowmapSnapshotHelper.OUTPUT_METRIC_PATTERN, "rss"),
+                                "com.android.systemui")));
+        assertEquals(
+                Long.toString(2000 * 1024),
+                parallelMetrics.get(
+                        constructKey(
+                                String.format(ShowmapSnapshotHelper.OUTPUT_METRIC_PATTERN, "rss"),
+                                "system_server")));
+        assertEquals(
+                Long.toString(2001 * 1024),
+                parallelMetrics.get(
+                        constructKey(
+                                String.format(
+                                        ShowmapSnapshotHelper.OUTPUT_IMPERCEPTIBLE_METRIC_PATTERN,
+                                        "rss"),
+                                "system_server")));
+        assertEquals(
+                "1",
+                parallelMetrics.get(
+                        String.format(
+                                ShowmapSnapshotHelper.OUTPUT_CHILD_PROCESS_COUNT_KEY,
+                                "system_server")));
+
+        // Everything but the snapshot file path is the same, and so are the file contents.
+        Map<String, String> parallelValues = new HashMap<>(parallelMetrics);
+        String serialFile = serialMetrics.remove(ShowmapSnapshotHelper.OUTPUT_FILE_PATH_KEY);
+        String parallelFile = parallelValues.remove(ShowmapSnapshotHelper.OUTPUT_FILE_PATH_KEY);
+        assertEquals(serialMetrics, parallelValues);
+        assertEquals(
+                new String(Files.readAllBytes(Paths.get(serialFile)), StandardCharsets.UTF_8),
+                new String(Files.readAllBytes(Paths.get(parallelFile)), StandardCharsets.UTF_8));
+    }
+
     /** Test that cached processes are skipped for showmap metrics. */
     @Test
     public void testGetMetrics_MixedProcess() {
@@ -357,6 +440,70 @@ public class ShowmapSnapshotHelperTest {
         assertTrue(parentWithChildProcessSet.size() > 0);
     }
 
+    /**
+     * Stubs the process table, the oom scores and the showmap output of a fixed set of processes:
+     * com.android.systemui (1000), system_server (2000 and the imperceptible 2001) and a child of
+     * system_server (3000). The rss and pss of each pid are its pid and half its pid.
+     */
+    private void stubProcesses() throws IOException {
+        Map<Integer, Integer> oomScores = new HashMap<>();
+        oomScores.put(1000, 0);
+        oomScores.put(2000, 0);
+        oomScores.put(2001, 900);
+        oomScores.put(3000, 0);
+        doReturn(
+                        "USER PID PPID VSZ RSS WCHAN ADDR S NAME\n"
+                                + "root 1 0 0 0 0 0 S init\n"
+                                + "system 1000 1 0 0 0 0 S com.android.systemui\n"
+                                + "system 2000 1 0 0 0 0 S system_server\n"
+                                + "system 2001 1 0 0 0 0 S system_server\n"
+                                + "system 3000 2000 0 0 0 0 S com.example.child\n")
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(ShowmapSnapshotHelper.ALL_PROCESSES_CMD);
+        doReturn("").when(mShowmapSnapshotHelper).executeShellCommand("dumpsys activity lru");
+        doAnswer(
+                        invocation -> {
+                            String command = invocation.getArgument(0);
+                            int pid = Integer.parseInt(command.split("/")[2]);
+                            return oomScores.get(pid) + "\n";
+                        })
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(matches("cat /proc/\\d+/oom_score_adj"));
+        doAnswer(
+                        invocation -> {
+                            StringBuilder output = new StringBuilder();
+                            for (String path : ((String) invocation.getArgument(0)).split(" ")) {
+                                if (path.startsWith("/proc/")) {
+                                    int pid = Integer.parseInt(path.split("/")[2]);
+                                    output.append(path)
+                                            .append(':')
+                                            .append(oomScores.get(pid))
+                                            .append('\n');
+                                }
+                            }
+                            return output.toString();
+                        })
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(startsWith("grep -H"));
+        doAnswer(
+                        invocation -> {
+                            String command = invocation.getArgument(0);
+                            long pid =
+                                    Long.parseLong(
+                                            command.substring(command.lastIndexOf(' ') + 1));
+                            String output =
+                                    "-------- -------- -------- -------- -------- -------- "
+                                            + "-------- -------- -------- ------ ------\n"
+                                            + String.format(
+                                                    "%d %d %d 0 0 0 0 0 0 TOTAL\n",
+                                                    pid * 4, pid, pid / 2);
+                            return new ByteArrayInputStream(
+                                    output.getBytes(StandardCharsets.UTF_8));
+                        })
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommandStream(startsWith("showmap"));
+    }
+
     private boolean verifyDefaultMetrics(Map<String, String> metrics) {
         if(metrics.size() == 0) {
             return false;
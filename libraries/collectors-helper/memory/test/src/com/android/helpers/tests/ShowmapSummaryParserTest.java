@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.helpers.ShowmapSummaryParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.InputMismatchException;
+
+/**
+ * Android Unit tests for {@link ShowmapSummaryParser}.
+ *
+ * <p>To run: atest CollectorsHelperAospTest:ShowmapSummaryParserTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class ShowmapSummaryParserTest {
+    private static final String TAG = ShowmapSummaryParserTest.class.getSimpleName();
+
+    private static final String HEADER =
+            " virtual                     shared   shared  private  private\n"
+                    + "    size      RSS      PSS    clean    dirty    clean    dirty     swap "
+                    + " swapPSS flags object\n"
+                    + "-------- -------- -------- -------- -------- -------- -------- -------- "
+                    + "-------- ------ ------------------------------\n";
+    private static final String MAPPING =
+            "    2048      128       64        0        0      128        0        0        0"
+                    + " r--    /system/lib64/libc.so\n";
+    private static final String SUMMARY =
+            "-------- -------- -------- -------- -------- -------- -------- -------- -------- "
+                    + "------ ------------------------------\n"
+                    + "10810272     5400     1585     3800      168      264     1168        0  "
+                    + "      0        TOTAL\n";
+
+    // rss:1,pss:2,privatedirty:6:7
+    private static final int[][] METRIC_COLUMNS = {{1}, {2}, {6, 7}};
+    private static final long[] EXPECTED = {5400, 1585, 1168};
+
+    /** Test the summary columns are extracted and summed. */
+    @Test
+    public void testParseSummary() throws IOException {
+        String output = buildOutput(10);
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(METRIC_COLUMNS);
+        assertArrayEquals(EXPECTED, parser.parse(toStream(output), null));
+    }
+
+    /** Test the output is copied unchanged when a tee stream is given. */
+    @Test
+    public void testParseTee() throws IOException {
+        String output = buildOutput(5000);
+        ByteArrayOutputStream tee = new ByteArrayOutputStream();
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(METRIC_COLUMNS);
+        assertArrayEquals(EXPECTED, parser.parse(toStream(output), tee));
+        assertEquals(output, tee.toString());
+    }
+
+    /** Test a summary without a trailing new line. */
+    @Test
+    public void testParseNoTrailingNewLine() throws IOException {
+        String output = buildOutput(3).trim();
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(METRIC_COLUMNS);
+        assertArrayEquals(EXPECTED, parser.parse(toStream(output), null));
+    }
+
+    /** Test the parser can be reused for several outputs. */
+    @Test
+    public void testParseReuse() throws IOException {
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(METRIC_COLUMNS);
+        assertArrayEquals(EXPECTED, parser.parse(toStream(buildOutput(3)), null));
+        assertArrayEquals(EXPECTED, parser.parse(toStream(buildOutput(7)), null));
+    }
+
+    /** Test output without a summary is rejected. */
+    @Test
+    public void testParseMissingSummary() throws IOException {
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(METRIC_COLUMNS);
+        try {
+            parser.parse(toStream(HEADER), new ByteArrayOutputStream());
+            fail("Should have thrown an exception due to missing summary.");
+        } catch (InputMismatchException e) {
+            // Expected
+        }
+    }
+
+    /** Test a column pointing at a non numeric value is rejected. */
+    @Test
+    public void testParseNonNumericColumn() throws IOException {
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(new int[][] {{9}});
+        try {
+            parser.parse(toStream(buildOutput(1)), null);
+            fail("Should have thrown an exception due to non numeric column.");
+        } catch (InputMismatchException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Compare the streaming parser against the string based parsing used by {@link
+     * com.android.helpers.ShowmapSnapshotHelper} on a large output.
+     */
+    @Test
+    public void testParseMatchesStringParsing() throws IOException {
+        byte[] output = buildOutput(20000).getBytes(StandardCharsets.UTF_8);
+        ShowmapSummaryParser parser = new ShowmapSummaryParser(METRIC_COLUMNS);
+        int iterations = 20;
+
+        long streamStart = System.nanoTime();
+        long[] streamResult = null;
+        for (int i = 0; i < iterations; i++) {
+            streamResult = parser.parse(new ByteArrayInputStream(output), null);
+        }
+        long streamNanos = System.nanoTime() - streamStart;
+
+        long stringStart = System.nanoTime();
+        long[] stringResult = null;
+        for (int i = 0; i < iterations; i++) {
+            stringResult = parseAsString(new ByteArrayInputStream(output));
+        }
+        long stringNanos = System.nanoTime() - stringStart;
+
+        assertArrayEquals(stringResult, streamResult);
+        Log.i(
+                TAG,
+                String.format(
+                        "Parsed %d bytes: streaming %d us, string %d us per output",
+                        output.length,
+                        streamNanos / iterations / 1000,
+                        stringNanos / iterations / 1000));
+    }
+
+    private static long[] parseAsString(ByteArrayInputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        String showmapOutput = buffer.toString();
+        int pos = showmapOutput.lastIndexOf("----");
+        String[] summarySplit = showmapOutput.substring(pos).trim().split("\\s+");
+        long[] result = new long[METRIC_COLUMNS.length];
+        for (int metric = 0; metric < METRIC_COLUMNS.length; metric++) {
+            for (int column : METRIC_COLUMNS[metric]) {
+                result[metric] += Long.parseLong(summarySplit[column + 1]);
+            }
+        }
+        return result;
+    }
+
+    private static String buildOutput(int mappingCount) {
+        StringBuilder builder = new StringBuilder(HEADER);
+        for (int i = 0; i < mappingCount; i++) {
+            builder.append(MAPPING);
+        }
+        return builder.append(SUMMARY).toString();
+    }
+
+    private static ByteArrayInputStream toStream(String output) {
+        return new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+    }
+}
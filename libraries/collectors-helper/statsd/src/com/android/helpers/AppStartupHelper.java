@@ -34,7 +34,7 @@ import java.util.stream.Collectors;
  * performance metrics and retrieve the necessary information from
  * statsd using the config id.
  */
-public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
+public class AppStartupHelper implements IMetricSeriesCollectorHelper {
 
     private static final String LOG_TAG = AppStartupHelper.class.getSimpleName();
 
@@ -76,9 +76,9 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
      * Collect the app startup metrics tracked during the app startup occurred from the statsd.
      */
     @Override
-    public Map<String, StringBuilder> getMetrics() {
+    public Map<String, MetricSeries> getMetricSeries() {
         List<StatsLog.EventMetricData> eventMetricData = mStatsdHelper.getEventMetrics();
-        Map<String, StringBuilder> appStartResultMap = new HashMap<>();
+        Map<String, MetricSeries> appStartResultMap = new HashMap<>();
         Map<String, Integer> appStartCountMap = new HashMap<>();
         Map<String, Integer> tempResultCountMap = new HashMap<>();
         for (StatsLog.EventMetricData dataItem : eventMetricData) {
@@ -130,14 +130,15 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
                     totalCountKey = MetricUtility.constructKey(typeKey, TOTAL_COUNT);
 
                     // Update the windows drawn delay metrics.
-                    MetricUtility.addMetric(metricTypeKey, windowsDrawnMillis, appStartResultMap);
+                    MetricUtility.addSeriesMetric(metricTypeKey, windowsDrawnMillis,
+                            appStartResultMap);
                     MetricUtility.addMetric(metricCountKey, appStartCountMap);
                     MetricUtility.addMetric(totalCountKey, appStartCountMap);
 
                     // Update the transition delay metrics.
                     metricTransitionKey = MetricUtility.constructKey(typeKey,
                             TRANSITION_DELAY_MILLIS, pkgName);
-                    MetricUtility.addMetric(metricTransitionKey, transitionDelayMillis,
+                    MetricUtility.addSeriesMetric(metricTransitionKey, transitionDelayMillis,
                             appStartResultMap);
                 }
                 if (appStartAtom.sourceEventDelayMillis != 0) {
@@ -147,7 +148,7 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
 
                     String metricEventDelayKey = MetricUtility.constructKey(
                             SOURCE_EVENT_DELAY_MILLIS, pkgName);
-                    MetricUtility.addMetric(metricEventDelayKey, sourceEventDelayMillis,
+                    MetricUtility.addSeriesMetric(metricEventDelayKey, sourceEventDelayMillis,
                             appStartResultMap);
                 }
             }
@@ -179,7 +180,7 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
                         break;
                 }
                 if (!metricKey.isEmpty()) {
-                    MetricUtility.addMetric(metricKey, startupTimeMillis, appStartResultMap);
+                    MetricUtility.addSeriesMetric(metricKey, startupTimeMillis, appStartResultMap);
                 }
             }
             // ProcessStartTime reports startup time for both foreground and background process.
@@ -230,7 +231,7 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
                     if (isProcStartDetailsDisabled) {
                         MetricUtility.addMetric(metricCountKey, tempResultCountMap);
                     } else {
-                        MetricUtility.addMetric(metricKey, processStartDelayMillis,
+                        MetricUtility.addSeriesMetric(metricKey, processStartDelayMillis,
                                 appStartResultMap);
                         MetricUtility.addMetric(metricCountKey, appStartCountMap);
                     }
@@ -247,14 +248,14 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
             }
         }
 
-        // Cast to StringBuilder as the raw app startup metric could be comma separated values
-        // if there are multiple app launches.
-        Map<String, StringBuilder> finalCountMap = appStartCountMap
+        // The raw app startup metric could hold several values if there are multiple app
+        // launches, while the counts hold a single value.
+        Map<String, MetricSeries> finalCountMap = appStartCountMap
                 .entrySet()
                 .stream()
                 .collect(
                         Collectors.toMap(Map.Entry::getKey,
-                                e -> new StringBuilder(Integer.toString(e.getValue()))));
+                                e -> MetricSeries.of(e.getValue())));
         // Add the count map in the app start result map.
         appStartResultMap.putAll(finalCountMap);
         return appStartResultMap;
@@ -31,7 +31,7 @@ import java.util.Map;
  * Helper consisting of helper methods to set system interactions configs in statsd and retrieve the
  * necessary information from statsd using the config id.
  */
-public class UiActionLatencyHelper implements ICollectorHelper<StringBuilder> {
+public class UiActionLatencyHelper implements IMetricSeriesCollectorHelper {
 
     private static final String LOG_TAG = UiActionLatencyHelper.class.getSimpleName();
 
@@ -51,9 +51,9 @@ public class UiActionLatencyHelper implements ICollectorHelper<StringBuilder> {
 
     /** Collect the system actions latency metrics from the statsd. */
     @Override
-    public Map<String, StringBuilder> getMetrics() {
+    public Map<String, MetricSeries> getMetricSeries() {
         Log.i(LOG_TAG, "get metrics.");
-        Map<String, StringBuilder> latenciesMap = new HashMap<>();
+        Map<String, MetricSeries> latenciesMap = new HashMap<>();
         for (StatsLog.EventMetricData dataItem : mStatsdHelper.getEventMetrics()) {
             final AtomsProto.Atom atom = dataItem.atom;
             if (atom.hasUiActionLatencyReported()) {
@@ -61,7 +61,7 @@ public class UiActionLatencyHelper implements ICollectorHelper<StringBuilder> {
                         atom.getUiActionLatencyReported();
                 final String action =
                         LatencyTracker.getNameOfAction(uiActionLatencyReported.action);
-                MetricUtility.addMetric(
+                MetricUtility.addSeriesMetric(
                         MetricUtility.constructKey("latency", action),
                         uiActionLatencyReported.latencyMillis,
                         latenciesMap);
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.helpers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Android Unit tests for {@link MetricSeries}.
+ *
+ * <p>To run: atest CollectorsHelperTest:com.android.helpers.MetricSeriesTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class MetricSeriesTest {
+
+    /** Test long samples are formatted like the StringBuilder based metrics. */
+    @Test
+    public void testLongSeriesMatchesStringBuilder() {
+        Map<String, MetricSeries> series = new HashMap<>();
+        Map<String, StringBuilder> legacy = new HashMap<>();
+        for (long value = 0; value < 100; value++) {
+            MetricUtility.addSeriesMetric("key", value * 7, series);
+            MetricUtility.addMetric("key", value * 7, legacy);
+        }
+        assertEquals(100, series.get("key").size());
+        assertFalse(series.get("key").isDouble());
+        assertEquals(693, series.get("key").getLong(99));
+        assertEquals(legacy.get("key").toString(), series.get("key").toString());
+    }
+
+    /** Test double samples are formatted like the StringBuilder based metrics. */
+    @Test
+    public void testDoubleSeriesMatchesStringBuilder() {
+        Map<String, MetricSeries> series = new HashMap<>();
+        Map<String, StringBuilder> legacy = new HashMap<>();
+        double[] values = {0.5, 12.3456789, 100};
+        for (double value : values) {
+            MetricUtility.addSeriesMetric("key", value, series);
+            MetricUtility.addMetric("key", value, legacy);
+        }
+        assertTrue(series.get("key").isDouble());
+        assertEquals(legacy.get("key").toString(), series.get("key").toString());
+        assertArrayEquals(values, series.get("key").toDoubleArray(), 0);
+        assertEquals(
+                MetricUtility.getMetricDoubles("key", legacy),
+                MetricUtility.getMetricDoubles("key", MetricSeries.toStringBuilders(series)));
+    }
+
+    /** Test integral and floating point samples cannot be mixed in one series. */
+    @Test
+    public void testMixedSamples() {
+        try {
+            MetricSeries.of(1).add(1.5);
+            fail("Should have thrown an exception due to mixed samples.");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
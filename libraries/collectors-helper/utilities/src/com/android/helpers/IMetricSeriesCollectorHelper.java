@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import java.util.Map;
+
+/**
+ * Collector helper that reports repeated samples per metric key as {@link MetricSeries}.
+ *
+ * <p>{@link #getMetrics()} keeps returning the comma separated values so that existing callers
+ * see the same output.
+ */
+public interface IMetricSeriesCollectorHelper extends ICollectorHelper<StringBuilder> {
+
+    /** This method will retrieve the metrics as primitive series. */
+    Map<String, MetricSeries> getMetricSeries();
+
+    /** Formats the series returned by {@link #getMetricSeries()}. */
+    @Override
+    default Map<String, StringBuilder> getMetrics() {
+        return MetricSeries.toStringBuilders(getMetricSeries());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MetricSeries holds the samples reported for one metric key in a growable primitive array.
+ *
+ * <p>A series is either integral or floating point, decided by its first sample. The samples are
+ * only formatted when the series is converted to a string, which produces the same comma
+ * separated value as {@link MetricUtility#addMetric(String, long, Map)} and {@link
+ * MetricUtility#addMetric(String, double, Map)}.
+ */
+public final class MetricSeries {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final String DOUBLE_PATTERN = "#0.000001";
+
+    private long[] mLongs;
+    private double[] mDoubles;
+    private int mSize;
+
+    /** Returns a series holding the single {@code value}. */
+    public static MetricSeries of(long value) {
+        return new MetricSeries().add(value);
+    }
+
+    /** Returns a series holding the single {@code value}. */
+    public static MetricSeries of(double value) {
+        return new MetricSeries().add(value);
+    }
+
+    /**
+     * Appends an integral sample.
+     *
+     * @throws IllegalStateException if the series holds floating point samples
+     */
+    public MetricSeries add(long value) {
+        if (mDoubles != null) {
+            throw new IllegalStateException("Cannot add a long sample to a double series.");
+        }
+        if (mLongs == null) {
+            mLongs = new long[INITIAL_CAPACITY];
+        } else if (mSize == mLongs.length) {
+            mLongs = Arrays.copyOf(mLongs, mSize * 2);
+        }
+        mLongs[mSize++] = value;
+        return this;
+    }
+
+    /**
+     * Appends a floating point sample.
+     *
+     * @throws IllegalStateException if the series holds integral samples
+     */
+    public MetricSeries add(double value) {
+        if (mLongs != null) {
+            throw new IllegalStateException("Cannot add a double sample to a long series.");
+        }
+        if (mDoubles == null) {
+            mDoubles = new double[INITIAL_CAPACITY];
+        } else if (mSize == mDoubles.length) {
+            mDoubles = Arrays.copyOf(mDoubles, mSize * 2);
+        }
+        mDoubles[mSize++] = value;
+        return this;
+    }
+
+    /** Returns the number of samples. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Returns true if the series holds floating point samples. */
+    public boolean isDouble() {
+        return mDoubles != null;
+    }
+
+    /** Returns the sample at {@code index} as a double. */
+    public double getDouble(int index) {
+        checkIndex(index);
+        return mDoubles != null ? mDoubles[index] : mLongs[index];
+    }
+
+    /**
+     * Returns the sample at {@code index}.
+     *
+     * @throws IllegalStateException if the series holds floating point samples
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+        if (mDoubles != null) {
+            throw new IllegalStateException("Cannot read a long sample from a double series.");
+        }
+        return mLongs[index];
+    }
+
+    /** Returns a copy of the samples as doubles. */
+    public double[] toDoubleArray() {
+        double[] result = new double[mSize];
+        for (int i = 0; i < mSize; i++) {
+            result[i] = mDoubles != null ? mDoubles[i] : mLongs[i];
+        }
+        return result;
+    }
+
+    /** Formats the samples as {@link MetricUtility#METRIC_SEPARATOR} separated values. */
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /** Appends the formatted samples to {@code builder}. */
+    public StringBuilder appendTo(StringBuilder builder) {
+        // DecimalFormat is not thread safe, so use one per call instead of a shared instance.
+        DecimalFormat format = mDoubles != null ? new DecimalFormat(DOUBLE_PATTERN) : null;
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                builder.append(MetricUtility.METRIC_SEPARATOR);
+            }
+            if (format != null) {
+                builder.append(format.format(mDoubles[i]));
+            } else {
+                builder.append(mLongs[i]);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Converts the series to the comma separated values returned by the {@link StringBuilder}
+     * based collector helpers.
+     */
+    public static Map<String, StringBuilder> toStringBuilders(Map<String, MetricSeries> series) {
+        Map<String, StringBuilder> result = new LinkedHashMap<>();
+        for (Map.Entry<String, MetricSeries> entry : series.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().appendTo(new StringBuilder()));
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Index %d out of bounds for %d samples", index, mSize));
+        }
+    }
+}
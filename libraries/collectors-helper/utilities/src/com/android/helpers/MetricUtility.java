@@ -64,6 +64,30 @@ public class MetricUtility {
                                 .append(DOUBLE_FORMAT.format(metric)));
     }
 
+    /**
+     * Add metric to the series map. If metric key already exist append the new metric.
+     *
+     * @param metricKey Unique key to track the metric.
+     * @param metric metric to track.
+     * @param seriesMap map of all the metric series.
+     */
+    public static void addSeriesMetric(
+            String metricKey, long metric, Map<String, MetricSeries> seriesMap) {
+        seriesMap.computeIfAbsent(metricKey, key -> new MetricSeries()).add(metric);
+    }
+
+    /**
+     * Add metric to the series map. If metric key already exist append the new metric.
+     *
+     * @param metricKey Unique key to track the metric.
+     * @param metric metric to track.
+     * @param seriesMap map of all the metric series.
+     */
+    public static void addSeriesMetric(
+            String metricKey, double metric, Map<String, MetricSeries> seriesMap) {
+        seriesMap.computeIfAbsent(metricKey, key -> new MetricSeries()).add(metric);
+    }
+
     /**
      * Add metric to the result map. If metric key already exist increment the value by 1.
      *
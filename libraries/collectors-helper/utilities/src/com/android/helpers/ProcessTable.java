@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * ProcessTable caches a snapshot of the process table so that a collection pass reads it with a
+ * single "ps -A" call instead of forking "pidof" and "ps --ppid" shells per process.
+ *
+ * <p>Collectors call {@link #onCollectionBoundary()} at the start of startCollecting and
+ * getMetrics, so that processes which restarted or died since the previous pass are not looked up
+ * with stale pids. Listeners that run several collectors at the same boundary wrap each callback
+ * in {@link #enterCollectionBoundary(Object)} and {@link #exitCollectionBoundary()} with a token
+ * identifying the callback: the collectors of one boundary then share a single "ps -A" call, and
+ * a new snapshot is taken as soon as a different boundary is entered.
+ */
+public class ProcessTable {
+    public static final String ALL_PROCESSES_CMD = "ps -A";
+    private static final String[] ZYGOTE_NAMES = {"zygote", "zygote64"};
+
+    private static final ProcessTable sInstance = new ProcessTable();
+
+    private Snapshot mSnapshot;
+    // The boundary the snapshot was taken in, null if taken outside of a declared boundary.
+    private Object mSnapshotBoundary;
+    // The boundary declared by the listener being notified, null outside of its callbacks.
+    private Object mBoundary;
+
+    /** Executes a shell command and returns its output. */
+    public interface ShellExecutor {
+        String executeShellCommand(String command) throws IOException;
+    }
+
+    /** Returns the process table shared by all the collector helpers. */
+    public static ProcessTable getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached snapshot, taking a new one with {@code executor} if it was invalidated.
+     *
+     * @param executor used to run the shell command when a new snapshot is needed
+     * @throws IOException if the process table cannot be read, nothing is cached in that case
+     */
+    public synchronized Snapshot getSnapshot(ShellExecutor executor) throws IOException {
+        if (mSnapshot != null) {
+            return mSnapshot;
+        }
+        mSnapshot = parse(executor.executeShellCommand(ALL_PROCESSES_CMD));
+        mSnapshotBoundary = mBoundary;
+        return mSnapshot;
+    }
+
+    /**
+     * Marks a collection boundary. Drops the cached snapshot unless a boundary was entered, in
+     * which case {@link #enterCollectionBoundary(Object)} already decided whether it is current.
+     */
+    public synchronized void onCollectionBoundary() {
+        if (mBoundary == null) {
+            mSnapshot = null;
+        }
+    }
+
+    /**
+     * Enters the collection boundary identified by {@code boundary}, such as a listener callback
+     * and its test description. Drops the cached snapshot unless it was taken in an equal
+     * boundary, i.e. by another collector notified of the same callback.
+     */
+    public synchronized void enterCollectionBoundary(Object boundary) {
+        mBoundary = Objects.requireNonNull(boundary);
+        if (!boundary.equals(mSnapshotBoundary)) {
+            mSnapshot = null;
+        }
+    }
+
+    /** Exits the boundary entered with {@link #enterCollectionBoundary(Object)}. */
+    public synchronized void exitCollectionBoundary() {
+        mBoundary = null;
+    }
+
+    /** Drops the cached snapshot so that the next lookup reads the process table again. */
+    public synchronized void invalidate() {
+        mSnapshot = null;
+        mSnapshotBoundary = null;
+        mBoundary = null;
+    }
+
+    /**
+     * Parses the output of "ps -A".
+     *
+     * @param psOutput output of {@link #ALL_PROCESSES_CMD}
+     */
+    public static Snapshot parse(String psOutput) {
+        Snapshot snapshot = new Snapshot();
+        // Sample output :
+        // USER           PID  PPID        VSZ    RSS WCHAN            ADDR S NAME
+        // system         603     1      41532   5396 SyS_epoll+          0 S servicemanager
+        // root         32552     2          0      0 worker_thread       0 I [kworker/6:0]
+        for (String line : psOutput.split("\\n")) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length < 3) {
+                continue;
+            }
+            int pid;
+            int ppid;
+            try {
+                pid = Integer.parseInt(columns[1]);
+                ppid = Integer.parseInt(columns[2]);
+            } catch (NumberFormatException e) {
+                // Skip the header line.
+                continue;
+            }
+            String name = columns[columns.length - 1];
+            snapshot.mNames.put(pid, name);
+            snapshot.mPidsByName.computeIfAbsent(name, k -> new ArrayList<>()).add(pid);
+            snapshot.mChildren.computeIfAbsent(ppid, k -> new ArrayList<>()).add(pid);
+        }
+        return snapshot;
+    }
+
+    /** An immutable view of the process table at one point in time. */
+    public static final class Snapshot {
+        private final Map<Integer, String> mNames = new LinkedHashMap<>();
+        private final Map<String, List<Integer>> mPidsByName = new HashMap<>();
+        private final Map<Integer, List<Integer>> mChildren = new HashMap<>();
+
+        private Snapshot() {}
+
+        /** Returns the pids of the processes with {@code processName} name, like "pidof". */
+        public List<Integer> getPids(String processName) {
+            return Collections.unmodifiableList(
+                    mPidsByName.getOrDefault(processName, Collections.emptyList()));
+        }
+
+        /** Returns the name of the process with {@code pid}, or null if it is not running. */
+        public String getName(int pid) {
+            return mNames.get(pid);
+        }
+
+        /** Returns the pids of the direct children of {@code pid}, like "ps -A --ppid". */
+        public List<Integer> getChildren(int pid) {
+            return Collections.unmodifiableList(
+                    mChildren.getOrDefault(pid, Collections.emptyList()));
+        }
+
+        /** Returns the pids of the direct children of all processes named {@code processName}. */
+        public Set<Integer> getChildrenOf(String processName) {
+            Set<Integer> children = new HashSet<>();
+            for (Integer pid : getPids(processName)) {
+                children.addAll(getChildren(pid));
+            }
+            return children;
+        }
+
+        /** Returns the pids of the processes forked by the zygotes. */
+        public Set<Integer> getZygoteChildrenPids() {
+            Set<Integer> children = new HashSet<>();
+            for (String zygote : ZYGOTE_NAMES) {
+                children.addAll(getChildrenOf(zygote));
+            }
+            return children;
+        }
+
+        /** Returns the name of every process by pid, in the order listed by "ps -A". */
+        public Map<Integer, String> getProcesses() {
+            return Collections.unmodifiableMap(mNames);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.helpers.ProcessTable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Android Unit tests for {@link ProcessTable}.
+ *
+ * <p>To run: atest CollectorsHelperAospTest:ProcessTableTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProcessTableTest {
+    private static final String PS_OUTPUT =
+            "USER           PID  PPID        VSZ    RSS WCHAN            ADDR S NAME\n"
+                    + "root             1     0   10932260  11456 do_epoll_wait       0 S init\n"
+                    + "root             2     0          0      0 kthreadd            0 S"
+                    + " [kthreadd]\n"
+                    + "root           410     1   14711440 150248 do_sys_poll         0 S"
+                    + " zygote64\n"
+                    + "root           411     1    1876576  98380 do_sys_poll         0 S"
+                    + " zygote\n"
+                    + "system         603     1      41532   5396 SyS_epoll+          0 S"
+                    + " servicemanager\n"
+                    + "system        1320   410   19305212 317424 do_epoll_wait       0 S"
+                    + " system_server\n"
+                    + "u0_a135       2041   410   15335764 196644 do_epoll_wait       0 S"
+                    + " com.android.systemui\n"
+                    + "u0_a90        3122   411    1702856  80124 do_epoll_wait       0 S"
+                    + " com.android.webview:sandboxed_process0\n"
+                    + "u0_a135       4001   410   15335764 196644 do_epoll_wait       0 S"
+                    + " com.android.systemui\n";
+
+    /** Test lookups on a parsed process table. */
+    @Test
+    public void testParse() {
+        ProcessTable.Snapshot snapshot = ProcessTable.parse(PS_OUTPUT);
+        assertEquals(9, snapshot.getProcesses().size());
+        assertEquals(Arrays.asList(2041, 4001), snapshot.getPids("com.android.systemui"));
+        assertTrue(snapshot.getPids("missing").isEmpty());
+        assertEquals("servicemanager", snapshot.getName(603));
+        assertNull(snapshot.getName(12345));
+        assertEquals(Arrays.asList(410, 411, 603), snapshot.getChildren(1));
+        assertEquals(
+                new HashSet<>(Arrays.asList(1320, 2041, 3122, 4001)),
+                snapshot.getZygoteChildrenPids());
+    }
+
+    /** Test the snapshot is reused until it is invalidated. */
+    @Test
+    public void testSnapshotCache() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        ProcessTable.ShellExecutor executor =
+                command -> {
+                    calls.incrementAndGet();
+                    assertEquals(ProcessTable.ALL_PROCESSES_CMD, command);
+                    return PS_OUTPUT;
+                };
+        ProcessTable processTable = ProcessTable.getInstance();
+        processTable.invalidate();
+        ProcessTable.Snapshot snapshot = processTable.getSnapshot(executor);
+        assertSame(snapshot, processTable.getSnapshot(executor));
+        assertEquals(1, calls.get());
+
+        processTable.invalidate();
+        processTable.getSnapshot(executor);
+        assertEquals(2, calls.get());
+        processTable.invalidate();
+    }
+
+    /** Test a failure to read the process table is reported and not cached as an empty table. */
+    @Test
+    public void testSnapshotFailure() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        ProcessTable.ShellExecutor executor =
+                command -> {
+                    if (calls.incrementAndGet() == 1) {
+                        throw new IOException("ps failed");
+                    }
+                    return PS_OUTPUT;
+                };
+        ProcessTable processTable = ProcessTable.getInstance();
+        processTable.invalidate();
+        try {
+            processTable.getSnapshot(executor);
+            fail("The failure to read the process table was not reported.");
+        } catch (IOException expected) {
+            // Expected.
+        }
+        assertEquals(
+                Arrays.asList(603),
+                processTable.getSnapshot(executor).getPids("servicemanager"));
+        assertEquals(2, calls.get());
+        processTable.invalidate();
+    }
+
+    /** Test the snapshot is dropped at every boundary that was not entered. */
+    @Test
+    public void testCollectionBoundary() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        ProcessTable.ShellExecutor executor =
+                command -> {
+                    calls.incrementAndGet();
+                    return PS_OUTPUT;
+                };
+        ProcessTable processTable = ProcessTable.getInstance();
+        processTable.invalidate();
+        processTable.onCollectionBoundary();
+        processTable.getSnapshot(executor);
+        processTable.onCollectionBoundary();
+        processTable.getSnapshot(executor);
+        assertEquals(2, calls.get());
+        processTable.invalidate();
+    }
+
+    /** Test the collectors of an entered boundary share the snapshot, however long they take. */
+    @Test
+    public void testEnteredCollectionBoundary() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        ProcessTable.ShellExecutor executor =
+                command -> {
+                    calls.incrementAndGet();
+                    return PS_OUTPUT;
+                };
+        ProcessTable processTable = ProcessTable.getInstance();
+        processTable.invalidate();
+        try {
+            processTable.enterCollectionBoundary(Arrays.asList("testStart", "test"));
+            processTable.onCollectionBoundary();
+            ProcessTable.Snapshot snapshot = processTable.getSnapshot(executor);
+            processTable.exitCollectionBoundary();
+
+            // Another collector notified of the same callback.
+            processTable.enterCollectionBoundary(Arrays.asList("testStart", "test"));
+            processTable.onCollectionBoundary();
+            assertSame(snapshot, processTable.getSnapshot(executor));
+            processTable.exitCollectionBoundary();
+            assertEquals(1, calls.get());
+
+            // The next callback, right after the previous one.
+            processTable.enterCollectionBoundary(Arrays.asList("testEnd", "test"));
+            processTable.onCollectionBoundary();
+            processTable.getSnapshot(executor);
+            processTable.exitCollectionBoundary();
+            assertEquals(2, calls.get());
+
+            // A collector run outside of a listener callback.
+            processTable.onCollectionBoundary();
+            processTable.getSnapshot(executor);
+            assertEquals(3, calls.get());
+        } finally {
+            processTable.invalidate();
+        }
+    }
+}
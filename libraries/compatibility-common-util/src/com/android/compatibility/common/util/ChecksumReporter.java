@@ -24,6 +24,10 @@ import com.google.common.hash.Funnels;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -31,15 +35,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /***
  * Calculate and store checksum values for files and test results
@@ -53,13 +64,28 @@ public final class ChecksumReporter implements Serializable {
     private static final String SEPARATOR = "/";
     private static final String ID_SEPARATOR = "@";
     private static final String NAME_SEPARATOR = ".";
+    // Files at least this large are hashed from memory mapped regions of MAPPED_REGION_SIZE.
+    private static final long MAPPED_FILE_THRESHOLD = 1 << 20;
+    private static final long MAPPED_REGION_SIZE = 64 << 20;
 
     private static final short CURRENT_VERSION = 1;
     // Serialized format Id (ie magic number) used to identify serialized data.
     static final short SERIALIZED_FORMAT_CODE = 650;
+    // Format Id of the binary format, which a serialized stream cannot start with.
+    static final short BINARY_FORMAT_CODE = 651;
+    private static final int DIGEST_LENGTH = 32;
+    // Digest length, digest padded to DIGEST_LENGTH, file size and last modification time.
+    private static final int FILE_RECORD_LENGTH = 1 + DIGEST_LENGTH + 8 + 8;
+    // Every this many paths, a path is written in full instead of after the previous one.
+    private static final int PATH_RESTART_INTERVAL = 16;
 
     private final BloomFilter<CharSequence> mResultChecksum;
     private final HashMap<String, byte[]> mFileChecksum;
+    // Size and last modification time of the files of mFileChecksum when they were hashed.
+    private final HashMap<String, long[]> mFileStamps;
+    // Files read from the binary format, looked up in place. Null when created or deserialized,
+    // and once saved since the file it is mapped from may be overwritten.
+    private transient FileTable mFileTable;
     private final short mVersion;
 
     /***
@@ -71,11 +97,32 @@ public final class ChecksumReporter implements Serializable {
     public static boolean tryCreateChecksum(File dir, IInvocationResult result) {
         try {
             int totalCount = countTestResults(result);
-            ChecksumReporter checksumReporter =
-                    new ChecksumReporter(totalCount, DEFAULT_FPP, CURRENT_VERSION);
+            ChecksumReporter checksumReporter = create(totalCount);
             checksumReporter.addInvocation(result);
-            checksumReporter.addDirectory(dir);
-            checksumReporter.saveToFile(dir);
+            return checksumReporter.tryAddDirectoryAndSave(dir);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /***
+     * Create new instance of ChecksumReporter with the default false positive percentage and
+     * version, for results added one by one instead of with {@link #addInvocation}
+     * @param testCount the number of test results and twice the number of modules to be stored
+     */
+    static ChecksumReporter create(int testCount) {
+        return new ChecksumReporter(testCount, DEFAULT_FPP, CURRENT_VERSION);
+    }
+
+    /***
+     * Calculate checksum of files in result directory and write to disk
+     * @param dir test results directory
+     * @return true if successful, false if unable to calculate or store the checksum
+     */
+    boolean tryAddDirectoryAndSave(File dir) {
+        try {
+            addDirectory(dir);
+            saveToFile(dir);
         } catch (Exception e) {
             return false;
         }
@@ -97,31 +144,108 @@ public final class ChecksumReporter implements Serializable {
     }
 
     /***
-     * Deserialize checksum from file
+     * Load checksum from file, in the binary format or the serialized format written by earlier
+     * versions
      * @param directory the parent directory containing the checksum file
      * @throws ChecksumValidationException
      */
     public ChecksumReporter(File directory) throws ChecksumValidationException {
-        File file = new File(directory, ChecksumReporter.NAME);
+        this(read(new File(directory, ChecksumReporter.NAME)));
+        if (mVersion > CURRENT_VERSION) {
+            throw new ChecksumValidationException(
+                    "File contains a newer version of ChecksumReporter");
+        }
+    }
+
+    private ChecksumReporter(ChecksumReporter loaded) {
+        this(loaded.mVersion, loaded.mResultChecksum, loaded.mFileChecksum, loaded.mFileStamps,
+                loaded.mFileTable);
+    }
+
+    private ChecksumReporter(short version, BloomFilter<CharSequence> resultChecksum,
+            HashMap<String, byte[]> fileChecksum, HashMap<String, long[]> fileStamps,
+            FileTable fileTable) {
+        mVersion = version;
+        mResultChecksum = resultChecksum;
+        mFileChecksum = fileChecksum;
+        mFileStamps = fileStamps;
+        mFileTable = fileTable;
+    }
+
+    private static ChecksumReporter read(File file) throws ChecksumValidationException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() >= 2 && buffer.getShort(0) == BINARY_FORMAT_CODE) {
+                return readBinary(buffer);
+            }
+        } catch (Exception e) {
+            throw new ChecksumValidationException("Unable to load checksum from file", e);
+        }
+        return readSerialized(file);
+    }
+
+    /***
+     * Read the binary format written by {@link #saveToFile}. The test result checksums are read
+     * in bulk, while file checksums are left in the mapped file until they are looked up.
+     */
+    private static ChecksumReporter readBinary(ByteBuffer buffer) throws IOException {
+        buffer.getShort(); // BINARY_FORMAT_CODE
+        short version = buffer.getShort();
+        int fileCount = buffer.getInt();
+        byte[] resultChecksum = new byte[buffer.getInt()];
+        buffer.get(resultChecksum);
+        ByteBuffer records = slice(buffer, fileCount * FILE_RECORD_LENGTH);
+        ByteBuffer restarts = slice(buffer, buffer.getInt() * Integer.BYTES);
+        ByteBuffer paths = slice(buffer, buffer.getInt());
+        return new ChecksumReporter(version,
+                BloomFilter.readFrom(new ByteArrayInputStream(resultChecksum),
+                        Funnels.unencodedCharsFunnel()),
+                new HashMap<>(), new HashMap<>(),
+                new FileTable(fileCount, records, restarts, paths));
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static ChecksumReporter readSerialized(File file)
+            throws ChecksumValidationException {
         try (FileInputStream fileStream = new FileInputStream(file);
             InputStream outputStream = new BufferedInputStream(fileStream);
             ObjectInput objectInput = new ObjectInputStream(outputStream)) {
             short magicNumber = objectInput.readShort();
             switch (magicNumber) {
                 case SERIALIZED_FORMAT_CODE:
-                   mVersion = objectInput.readShort();
-                    mResultChecksum = (BloomFilter<CharSequence>) objectInput.readObject();
-                    mFileChecksum = (HashMap<String, byte[]>) objectInput.readObject();
-                    break;
+                    short version = objectInput.readShort();
+                    BloomFilter<CharSequence> resultChecksum =
+                            (BloomFilter<CharSequence>) objectInput.readObject();
+                    HashMap<String, byte[]> fileChecksum =
+                            (HashMap<String, byte[]>) objectInput.readObject();
+                    return new ChecksumReporter(version, resultChecksum, fileChecksum,
+                            readFileStamps(objectInput), null);
                 default:
                     throw new ChecksumValidationException("Unknown format of serialized data.");
             }
         } catch (Exception e) {
             throw new ChecksumValidationException("Unable to load checksum from file", e);
         }
-        if (mVersion > CURRENT_VERSION) {
-            throw new ChecksumValidationException(
-                    "File contains a newer version of ChecksumReporter");
+    }
+
+    /***
+     * Read the file stamps saved after the file checksums, which files written before they were
+     * added do not have
+     */
+    private static HashMap<String, long[]> readFileStamps(ObjectInput objectInput)
+            throws IOException, ClassNotFoundException {
+        try {
+            @SuppressWarnings("unchecked")
+            HashMap<String, long[]> stamps = (HashMap<String, long[]>) objectInput.readObject();
+            return stamps;
+        } catch (EOFException e) {
+            return new HashMap<>();
         }
     }
 
@@ -131,10 +255,8 @@ public final class ChecksumReporter implements Serializable {
      * @param fpp the false positive percentage for result lookup misses
      */
     public ChecksumReporter(int testCount, double fpp, short version) {
-        mResultChecksum = BloomFilter.create(Funnels.unencodedCharsFunnel(),
-                testCount, fpp);
-        mFileChecksum = new HashMap<>();
-        mVersion = version;
+        this(version, BloomFilter.create(Funnels.unencodedCharsFunnel(), testCount, fpp),
+                new HashMap<>(), new HashMap<>(), null);
     }
 
     /***
@@ -158,49 +280,105 @@ public final class ChecksumReporter implements Serializable {
      * @param path part of the key to identify the files crc
      */
     public void addFile(File file, String path) {
-        byte[] crc;
-        try {
-            crc = calculateFileChecksum(file);
-        } catch (ChecksumValidationException e) {
-            crc = new byte[0];
-        }
         String key = path + SEPARATOR + file.getName();
-        mFileChecksum.put(key, crc);
+        // The stamp is taken first so that a file modified while it is hashed is hashed again.
+        mFileStamps.put(key, getFileStamp(file));
+        mFileChecksum.put(key, calculateFileChecksumOrEmpty(file));
     }
 
+    /***
+     * Check whether the file matches its stored checksum. Files whose size and last modification
+     * time did not change since they were hashed are not hashed again.
+     */
     @VisibleForTesting
     public boolean containsFile(File file, String path) {
         String key = path + SEPARATOR + file.getName();
-        if (mFileChecksum.containsKey(key))
-        {
-            try {
-                byte[] crc = calculateFileChecksum(file);
-                return Arrays.equals(mFileChecksum.get(key), crc);
-            } catch (ChecksumValidationException e) {
-                return false;
+        byte[] expected = mFileChecksum.get(key);
+        long[] stamp = mFileStamps.get(key);
+        if (expected == null && mFileTable != null) {
+            int index = mFileTable.indexOf(key);
+            if (index >= 0) {
+                expected = mFileTable.getDigest(index);
+                stamp = mFileTable.getStamp(index);
             }
         }
-        return false;
+        if (expected == null) {
+            return false;
+        }
+        if (expected.length > 0 && Arrays.equals(stamp, getFileStamp(file))) {
+            return true;
+        }
+        try {
+            byte[] crc = calculateFileChecksum(file);
+            return Arrays.equals(expected, crc);
+        } catch (ChecksumValidationException e) {
+            return false;
+        }
     }
 
     /***
-     * Adds all child files recursively through all sub directories
+     * Adds all child files recursively through all sub directories, hashing files on all the
+     * available processors
      * @param directory target that is deeply searched for files
      */
     public void addDirectory(File directory) {
-        addDirectory(directory, directory.getName());
+        addDirectory(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /***
+     * Adds all child files recursively through all sub directories
+     * @param directory target that is deeply searched for files
+     * @param parallelism the number of threads walking the directory and hashing files
+     */
+    public void addDirectory(File directory, int parallelism) {
+        Map<String, byte[]> checksums = new ConcurrentHashMap<>();
+        Map<String, long[]> stamps = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new AddDirectoryTask(directory, directory.getName(), checksums, stamps));
+        } finally {
+            pool.shutdown();
+        }
+        mFileChecksum.putAll(checksums);
+        mFileStamps.putAll(stamps);
     }
 
     /***
-     * @param path the relative path to the current directory from the base directory
+     * Hashes a file, or forks a task for every child of a directory
      */
-    private void addDirectory(File directory, String path) {
-        for(String childName : directory.list()) {
-            File child = new File(directory, childName);
-            if (child.isDirectory()) {
-                addDirectory(child, path + SEPARATOR + child.getName());
+    private static class AddDirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mFile;
+        // the relative path to the parent directory of the file from the base directory
+        private final String mPath;
+        private final Map<String, byte[]> mChecksums;
+        private final Map<String, long[]> mStamps;
+
+        AddDirectoryTask(File file, String path, Map<String, byte[]> checksums,
+                Map<String, long[]> stamps) {
+            mFile = file;
+            mPath = path;
+            mChecksums = checksums;
+            mStamps = stamps;
+        }
+
+        @Override
+        protected void compute() {
+            if (mFile.isDirectory()) {
+                String[] childNames = mFile.list();
+                List<AddDirectoryTask> tasks = new ArrayList<>(childNames.length);
+                for (String childName : childNames) {
+                    File child = new File(mFile, childName);
+                    String childPath = child.isDirectory()
+                            ? mPath + SEPARATOR + child.getName() : mPath;
+                    tasks.add(new AddDirectoryTask(child, childPath, mChecksums, mStamps));
+                }
+                invokeAll(tasks);
             } else {
-                addFile(child, path);
+                String key = mPath + SEPARATOR + mFile.getName();
+                mStamps.put(key, getFileStamp(mFile));
+                mChecksums.put(key, calculateFileChecksumOrEmpty(mFile));
             }
         }
     }
@@ -232,10 +410,28 @@ public final class ChecksumReporter implements Serializable {
      * @param buildFingerprint the fingerprint the test execution is running against
      */
     public void addModuleResult(IModuleResult moduleResult, String buildFingerprint) {
+        addModuleResult(moduleResult.getId(), moduleResult.isDone(),
+                moduleResult.countResults(TestStatus.FAIL), buildFingerprint);
+    }
+
+    /***
+     * Same as {@link #addModuleResult(IModuleResult, String)}, for a module that is not in memory
+     */
+    void addModuleResult(String moduleId, boolean done, int failed, String buildFingerprint) {
         mResultChecksum.put(
-                generateModuleResultSignature(moduleResult, buildFingerprint));
+                generateModuleResultSignature(moduleId, done, failed, buildFingerprint));
         mResultChecksum.put(
-                generateModuleSummarySignature(moduleResult, buildFingerprint));
+                generateModuleSummarySignature(moduleId, failed, buildFingerprint));
+    }
+
+    /***
+     * Same as {@link #addTestResult(ITestResult, IModuleResult, String)}, for a test result that
+     * is not in memory
+     */
+    void addTestResult(String moduleId, String fullName, String status, String stacktrace,
+            String buildFingerprint) {
+        mResultChecksum.put(generateTestResultSignature(
+                moduleId, fullName, status, stacktrace, buildFingerprint));
     }
 
     @VisibleForTesting
@@ -247,19 +443,89 @@ public final class ChecksumReporter implements Serializable {
     /***
      * Write the checksum data to disk.
      * Overwrites existing file
+     *
+     * <p>The file starts with {@link #BINARY_FORMAT_CODE}, the version, the number of files and
+     * the test result checksums as written by {@link BloomFilter#writeTo}. Then come the file
+     * records sorted by path, each holding a digest and the stamp of the file, followed by the
+     * file paths in the same order. Paths are encoded in UTF-8 as the length of the prefix
+     * shared with the previous path and the rest of the path, except for every
+     * {@link #PATH_RESTART_INTERVAL}th path which is written in full and whose offset is
+     * written before the paths, so that they can be binary searched in place.
      * @param directory
      * @throws IOException
      */
     public void saveToFile(File directory) throws IOException {
-        File file = new File(directory, NAME);
+        if (mFileTable != null) {
+            // The table is copied and dropped before anything is written, since it may be mapped
+            // from the file being overwritten.
+            HashMap<String, byte[]> fileChecksum = new HashMap<>();
+            HashMap<String, long[]> fileStamps = new HashMap<>();
+            mFileTable.copyTo(fileChecksum, fileStamps);
+            fileChecksum.putAll(mFileChecksum);
+            fileStamps.putAll(mFileStamps);
+            mFileChecksum.putAll(fileChecksum);
+            mFileStamps.putAll(fileStamps);
+            mFileTable = null;
+        }
+        List<byte[]> paths = new ArrayList<>(mFileChecksum.size());
+        for (String path : mFileChecksum.keySet()) {
+            paths.add(path.getBytes(StandardCharsets.UTF_8));
+        }
+        paths.sort(Arrays::compareUnsigned);
+
+        ByteArrayOutputStream resultChecksum = new ByteArrayOutputStream();
+        mResultChecksum.writeTo(resultChecksum);
+        ByteArrayOutputStream pathTable = new ByteArrayOutputStream();
+        DataOutputStream pathOutput = new DataOutputStream(pathTable);
+        List<Integer> restarts = new ArrayList<>();
+        byte[] previous = new byte[0];
+        for (int i = 0; i < paths.size(); i++) {
+            byte[] path = paths.get(i);
+            if (path.length > 0xFFFF) {
+                throw new IOException("Path is too long to be saved");
+            }
+            int shared = 0;
+            if (i % PATH_RESTART_INTERVAL == 0) {
+                restarts.add(pathOutput.size());
+            } else {
+                int maxShared = Math.min(previous.length, path.length);
+                while (shared < maxShared && previous[shared] == path[shared]) {
+                    shared++;
+                }
+            }
+            pathOutput.writeShort(shared);
+            pathOutput.writeShort(path.length - shared);
+            pathOutput.write(path, shared, path.length - shared);
+            previous = path;
+        }
 
+        File file = new File(directory, NAME);
         try (FileOutputStream fileStream = new FileOutputStream(file, false);
-             OutputStream outputStream = new BufferedOutputStream(fileStream);
-             ObjectOutput objectOutput = new ObjectOutputStream(outputStream)) {
-            objectOutput.writeShort(SERIALIZED_FORMAT_CODE);
-            objectOutput.writeShort(mVersion);
-            objectOutput.writeObject(mResultChecksum);
-            objectOutput.writeObject(mFileChecksum);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+            output.writeShort(BINARY_FORMAT_CODE);
+            output.writeShort(mVersion);
+            output.writeInt(paths.size());
+            output.writeInt(resultChecksum.size());
+            resultChecksum.writeTo(output);
+            for (byte[] path : paths) {
+                String key = new String(path, StandardCharsets.UTF_8);
+                byte[] digest = mFileChecksum.get(key);
+                long[] stamp = mFileStamps.get(key);
+                if (digest.length > DIGEST_LENGTH) {
+                    throw new IOException("Unexpected digest length " + digest.length);
+                }
+                output.writeByte(digest.length);
+                output.write(digest);
+                output.write(new byte[DIGEST_LENGTH - digest.length]);
+                output.writeLong(stamp != null ? stamp[0] : -1);
+                output.writeLong(stamp != null ? stamp[1] : -1);
+            }
+            output.writeInt(restarts.size());
+            for (int restart : restarts) {
+                output.writeInt(restart);
+            }
+            output.writeInt(pathTable.size());
+            pathTable.writeTo(output);
         }
     }
 
@@ -272,17 +538,23 @@ public final class ChecksumReporter implements Serializable {
 
     static String generateTestResultSignature(ITestResult testResult, IModuleResult module,
             String buildFingerprint) {
+        return generateTestResultSignature(module.getId(), testResult.getFullName(),
+                testResult.getResultStatus().getValue(), testResult.getStackTrace(),
+                buildFingerprint);
+    }
+
+    private static String generateTestResultSignature(String moduleId, String fullName,
+            String status, String stacktrace, String buildFingerprint) {
         StringBuilder sb = new StringBuilder();
-        String stacktrace = testResult.getStackTrace();
 
         stacktrace = stacktrace == null ? "" : stacktrace.trim();
         // Line endings for stacktraces are somewhat unpredictable and there is no need to
         // actually read the result they are all removed for consistency.
         stacktrace = stacktrace.replaceAll("\\r?\\n|\\r", "");
         sb.append(buildFingerprint).append(SEPARATOR)
-                .append(module.getId()).append(SEPARATOR)
-                .append(testResult.getFullName()).append(SEPARATOR)
-                .append(testResult.getResultStatus().getValue()).append(SEPARATOR)
+                .append(moduleId).append(SEPARATOR)
+                .append(fullName).append(SEPARATOR)
+                .append(status).append(SEPARATOR)
                 .append(stacktrace).append(SEPARATOR);
         return sb.toString();
     }
@@ -327,25 +599,45 @@ public final class ChecksumReporter implements Serializable {
 
     private static String generateModuleResultSignature(IModuleResult module,
             String buildFingerprint) {
+        return generateModuleResultSignature(module.getId(), module.isDone(),
+                module.countResults(TestStatus.FAIL), buildFingerprint);
+    }
+
+    private static String generateModuleResultSignature(String moduleId, boolean done,
+            int failed, String buildFingerprint) {
         StringBuilder sb = new StringBuilder();
         sb.append(buildFingerprint).append(SEPARATOR)
-                .append(module.getId()).append(SEPARATOR)
-                .append(module.isDone()).append(SEPARATOR)
-                .append(module.countResults(TestStatus.FAIL));
+                .append(moduleId).append(SEPARATOR)
+                .append(done).append(SEPARATOR)
+                .append(failed);
         return sb.toString();
     }
 
-    private static String generateModuleSummarySignature(IModuleResult module,
+    private static String generateModuleSummarySignature(String moduleId, int failed,
             String buildFingerprint) {
         StringBuilder sb = new StringBuilder();
         sb.append(buildFingerprint).append(SEPARATOR)
-                .append(module.getId()).append(SEPARATOR)
-                .append(module.countResults(TestStatus.FAIL));
+                .append(moduleId).append(SEPARATOR)
+                .append(failed);
         return sb.toString();
     }
 
-    static byte[] calculateFileChecksum(File file) throws ChecksumValidationException {
+    private static long[] getFileStamp(File file) {
+        return new long[] {file.length(), file.lastModified()};
+    }
+
+    private static byte[] calculateFileChecksumOrEmpty(File file) {
+        try {
+            return calculateFileChecksum(file);
+        } catch (ChecksumValidationException e) {
+            return new byte[0];
+        }
+    }
 
+    static byte[] calculateFileChecksum(File file) throws ChecksumValidationException {
+        if (file.length() >= MAPPED_FILE_THRESHOLD) {
+            return calculateMappedFileChecksum(file);
+        }
         try (FileInputStream fis = new FileInputStream(file);
              InputStream inputStream = new BufferedInputStream(fis)) {
             MessageDigest hashSum = MessageDigest.getInstance("SHA-256");
@@ -368,6 +660,28 @@ public final class ChecksumReporter implements Serializable {
         }
     }
 
+    /***
+     * Same as {@link #calculateFileChecksum}, reading the file from memory mapped regions instead
+     * of copying it through a buffer
+     */
+    private static byte[] calculateMappedFileChecksum(File file)
+            throws ChecksumValidationException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest hashSum = MessageDigest.getInstance("SHA-256");
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                hashSum.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAPPED_REGION_SIZE, size - position)));
+            }
+
+            byte[] partialHash = new byte[32];
+            hashSum.digest(partialHash, 0, 32);
+            return partialHash;
+        } catch (NoSuchAlgorithmException | IOException | DigestException e) {
+            throw new ChecksumValidationException("Unable to hash file.", e);
+        }
+    }
+
 
     private static int countTestResults(IInvocationResult invocation) {
         int count = 0;
@@ -381,6 +695,112 @@ public final class ChecksumReporter implements Serializable {
         return count;
     }
 
+    /***
+     * File checksums and stamps of the binary format, looked up in place
+     */
+    private static final class FileTable {
+        private final int mFileCount;
+        private final ByteBuffer mRecords;
+        private final ByteBuffer mRestarts;
+        private final ByteBuffer mPaths;
+
+        FileTable(int fileCount, ByteBuffer records, ByteBuffer restarts, ByteBuffer paths) {
+            mFileCount = fileCount;
+            mRecords = records;
+            mRestarts = restarts;
+            mPaths = paths;
+        }
+
+        /***
+         * @return the index of the given path, or -1 if it is not in the table
+         */
+        int indexOf(String path) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            // Find the last restart path that is not greater than the key, then scan from it.
+            int low = 0;
+            int high = mRestarts.limit() / Integer.BYTES - 1;
+            int restart = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int position = mRestarts.getInt(middle * Integer.BYTES);
+                byte[] restartPath = new byte[mPaths.getShort(position + 2) & 0xFFFF];
+                getBytes(position + 4, restartPath, 0);
+                int comparison = Arrays.compareUnsigned(restartPath, key);
+                if (comparison == 0) {
+                    return middle * PATH_RESTART_INTERVAL;
+                } else if (comparison < 0) {
+                    restart = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (restart < 0) {
+                return -1;
+            }
+            int position = mRestarts.getInt(restart * Integer.BYTES);
+            byte[] previous = new byte[0];
+            int end = Math.min(mFileCount, (restart + 1) * PATH_RESTART_INTERVAL);
+            for (int index = restart * PATH_RESTART_INTERVAL; index < end; index++) {
+                byte[] current = readPath(position, previous);
+                int comparison = Arrays.compareUnsigned(current, key);
+                if (comparison == 0) {
+                    return index;
+                } else if (comparison > 0) {
+                    return -1;
+                }
+                position += 4 + current.length - (mPaths.getShort(position) & 0xFFFF);
+                previous = current;
+            }
+            return -1;
+        }
+
+        byte[] getDigest(int index) {
+            int position = index * FILE_RECORD_LENGTH;
+            byte[] digest = new byte[mRecords.get(position) & 0xFF];
+            for (int i = 0; i < digest.length; i++) {
+                digest[i] = mRecords.get(position + 1 + i);
+            }
+            return digest;
+        }
+
+        long[] getStamp(int index) {
+            int position = index * FILE_RECORD_LENGTH + 1 + DIGEST_LENGTH;
+            long size = mRecords.getLong(position);
+            return size < 0 ? null : new long[] {size, mRecords.getLong(position + 8)};
+        }
+
+        void copyTo(Map<String, byte[]> fileChecksum, Map<String, long[]> fileStamps) {
+            int position = 0;
+            byte[] previous = new byte[0];
+            for (int index = 0; index < mFileCount; index++) {
+                byte[] current = readPath(position, previous);
+                position += 4 + current.length - (mPaths.getShort(position) & 0xFFFF);
+                previous = current;
+                String path = new String(current, StandardCharsets.UTF_8);
+                fileChecksum.put(path, getDigest(index));
+                long[] stamp = getStamp(index);
+                if (stamp != null) {
+                    fileStamps.put(path, stamp);
+                }
+            }
+        }
+
+        private byte[] readPath(int position, byte[] previous) {
+            int shared = mPaths.getShort(position) & 0xFFFF;
+            byte[] path = new byte[shared + (mPaths.getShort(position + 2) & 0xFFFF)];
+            System.arraycopy(previous, 0, path, 0, shared);
+            getBytes(position + 4, path, shared);
+            return path;
+        }
+
+        private void getBytes(int position, byte[] destination, int offset) {
+            for (int i = offset; i < destination.length; i++) {
+                destination[i] = mPaths.get(position + i - offset);
+            }
+        }
+    }
+
     public static class ChecksumValidationException extends Exception {
         public ChecksumValidationException(String detailMessage) {
             super(detailMessage);
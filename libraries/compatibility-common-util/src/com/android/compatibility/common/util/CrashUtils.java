@@ -23,6 +23,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -63,6 +65,8 @@ public class CrashUtils {
     // Matches the smallest blob that has the appropriate header and footer
     private static final Pattern sCrashBlobPattern =
             Pattern.compile("DEBUG\\s+?:( [*]{3})+?.*?DEBUG\\s+?:\\s+?backtrace:", Pattern.DOTALL);
+    // Matches the header of a crash, where sCrashBlobPattern starts
+    private static final Pattern sCrashHeaderPattern = Pattern.compile("DEBUG\\s+?: [*]{3}");
     // Matches process id and name line and captures them
     private static final Pattern sPidtidNamePattern =
             Pattern.compile("pid: (\\d+?), tid: (\\d+?), name: ([^\\s]+?\\s+?)*?>>> (.*?) <<<");
@@ -309,29 +313,282 @@ public class CrashUtils {
                                 backtraceFrameMatcher.group("method")));
             }
 
-            try {
-                JSONObject crash = new JSONObject();
-                crash.put(PID, pid);
-                crash.put(TID, tid);
-                crash.put(NAME, name);
-                crash.put(PROCESS, process);
-                crash.put(FAULT_ADDRESS, faultAddress == null ? null : faultAddress.toString(16));
-                crash.put(SIGNAL, signal);
-                crash.put(ABORT_MESSAGE, abortMessage);
-                JSONArray backtrace = new JSONArray();
-                for (BacktraceFrameInfo frame : backtraceFrames) {
-                    backtrace.put(
-                            new JSONObject()
-                                    .put(FILENAME, frame.getFilename())
-                                    .put(METHOD, frame.getMethod()));
-                }
-                crash.put(BACKTRACE, backtrace);
-                crashes.put(crash);
-            } catch (JSONException e) {}
+            putCrash(crashes, pid, tid, name, process, faultAddress, signal, abortMessage,
+                    backtraceFrames);
         }
         return crashes;
     }
 
+    /**
+     * Adds all crashes found in the input as JSONObjects to the given JSONArray, reading the input
+     * one line at a time.
+     *
+     * <p>This finds the same crashes as {@link #addAllCrashes(String, JSONArray)} without holding
+     * the whole logcat in memory: lines without a crash_dump {@code DEBUG} tag are skipped without
+     * running any regex, and the crash header, its fields, the end of the crash and the backtrace
+     * frames are recognized by a single pass over the lines. Unlike the String version, a field
+     * split over several lines is not matched, which crash_dump never writes.
+     *
+     * @param input the logcat to read, which is not closed
+     * @param crashes the array to add the crashes to
+     * @return the given array
+     * @throws IOException if failed to read the input
+     */
+    public static JSONArray addAllCrashes(Reader input, JSONArray crashes) throws IOException {
+        new CrashScanner(crashes).scan(input);
+        return crashes;
+    }
+
+    private static void putCrash(JSONArray crashes, int pid, int tid, String name,
+            String process, BigInteger faultAddress, String signal, String abortMessage,
+            List<BacktraceFrameInfo> backtraceFrames) {
+        try {
+            JSONObject crash = new JSONObject();
+            crash.put(PID, pid);
+            crash.put(TID, tid);
+            crash.put(NAME, name);
+            crash.put(PROCESS, process);
+            crash.put(FAULT_ADDRESS, faultAddress == null ? null : faultAddress.toString(16));
+            crash.put(SIGNAL, signal);
+            crash.put(ABORT_MESSAGE, abortMessage);
+            JSONArray backtrace = new JSONArray();
+            for (BacktraceFrameInfo frame : backtraceFrames) {
+                backtrace.put(
+                        new JSONObject()
+                                .put(FILENAME, frame.getFilename())
+                                .put(METHOD, frame.getMethod()));
+            }
+            crash.put(BACKTRACE, backtrace);
+            crashes.put(crash);
+        } catch (JSONException e) {}
+    }
+
+    /**
+     * Line-oriented state machine behind {@link #addAllCrashes(Reader, JSONArray)}. It looks for
+     * a crash header, then collects the first pid, fault and abort message lines of the crash
+     * until the backtrace line, then collects the backtrace frames until a line that is not one.
+     * Like the String version, a new crash header is only looked for once a crash is complete.
+     */
+    private static final class CrashScanner {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final char[] DEBUG_TAG = "DEBUG".toCharArray();
+
+        private enum State {
+            /** Looking for the header of a crash. */
+            SEARCH,
+            /** In a crash, looking for its fields and for the backtrace line ending it. */
+            CRASH,
+            /** After the backtrace line of a crash, collecting its frames. */
+            BACKTRACE,
+        }
+
+        private final JSONArray mCrashes;
+        private final Matcher mHeaderMatcher = sCrashHeaderPattern.matcher("");
+        private final Matcher mEndMatcher = sEndofCrashPattern.matcher("");
+        private final Matcher mPidtidNameMatcher = sPidtidNamePattern.matcher("");
+        private final Matcher mFaultLineMatcher = sFaultLinePattern.matcher("");
+        private final Matcher mAbortMessageMatcher = sAbortMessagePattern.matcher("");
+        private final Matcher mNoteMatcher = sBacktraceNotePattern.matcher("");
+        private final Matcher mFrameWithBuildIdMatcher =
+                sBacktraceFrameWithBuildIdPattern.matcher("");
+        private final Matcher mFrameWithoutBuildIdMatcher =
+                sBacktraceFrameWithoutBuildIdPattern.matcher("");
+
+        private State mState = State.SEARCH;
+        private int mPid;
+        private int mTid;
+        private BigInteger mFaultAddress;
+        private String mName;
+        private String mProcess;
+        private String mSignal;
+        private String mAbortMessage;
+        private boolean mHasPidtidName;
+        private boolean mHasFaultLine;
+        private List<BacktraceFrameInfo> mBacktraceFrames;
+
+        CrashScanner(JSONArray crashes) {
+            mCrashes = crashes;
+        }
+
+        void scan(Reader input) throws IOException {
+            char[] buffer = new char[BUFFER_SIZE];
+            // Part of a line that spans several reads of the buffer.
+            char[] line = new char[256];
+            int lineLength = 0;
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                int start = 0;
+                for (int i = 0; i < count; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    if (lineLength == 0) {
+                        onLine(buffer, start, i, /* terminated= */ true);
+                    } else {
+                        line = append(line, lineLength, buffer, start, i);
+                        onLine(line, 0, lineLength + i - start, /* terminated= */ true);
+                        lineLength = 0;
+                    }
+                    start = i + 1;
+                }
+                line = append(line, lineLength, buffer, start, count);
+                lineLength += count - start;
+            }
+            if (lineLength > 0) {
+                onLine(line, 0, lineLength, /* terminated= */ false);
+            }
+            if (mState == State.BACKTRACE) {
+                endCrash();
+            }
+        }
+
+        /**
+         * Handles one line, {@code terminated} telling whether it ends with a newline: like the
+         * String version, the last line of the input is never read as a backtrace frame.
+         */
+        private void onLine(char[] chars, int start, int end, boolean terminated) {
+            if (mState == State.SEARCH) {
+                int debug = indexOfDebugTag(chars, start, end);
+                if (debug < 0) {
+                    return;
+                }
+                String line = new String(chars, start, end - start);
+                if (!mHeaderMatcher.reset(line).find(debug - start)) {
+                    return;
+                }
+                startCrash();
+                onCrashLine(line, mHeaderMatcher.start(), mHeaderMatcher.end());
+            } else if (mState == State.CRASH) {
+                String line = new String(chars, start, end - start);
+                onCrashLine(line, 0, 0);
+            } else {
+                if (terminated && indexOfDebugTag(chars, start, end) >= 0) {
+                    String line = new String(chars, start, end - start);
+                    if (mNoteMatcher.reset(line).matches()) {
+                        return;
+                    }
+                    Matcher frameMatcher = null;
+                    if (mFrameWithBuildIdMatcher.reset(line).matches()) {
+                        frameMatcher = mFrameWithBuildIdMatcher;
+                    } else if (mFrameWithoutBuildIdMatcher.reset(line).matches()) {
+                        frameMatcher = mFrameWithoutBuildIdMatcher;
+                    }
+                    if (frameMatcher != null) {
+                        mBacktraceFrames.add(new BacktraceFrameInfo(
+                                frameMatcher.group("filename"), frameMatcher.group("method")));
+                        return;
+                    }
+                }
+                endCrash();
+                // The line ending the backtrace may be the header of the next crash.
+                onLine(chars, start, end, terminated);
+            }
+        }
+
+        /**
+         * Looks for the fields of the crash and for its end in the given line of the crash,
+         * starting at {@code start} for the fields and at {@code endSearchStart} for the end.
+         */
+        private void onCrashLine(String line, int start, int endSearchStart) {
+            // The literal checks avoid running the regexes on every line when a crash header is
+            // never followed by a backtrace line.
+            int end = line.length();
+            if (line.indexOf("backtrace:", endSearchStart) >= 0
+                    && mEndMatcher.reset(line).find(endSearchStart)) {
+                end = mEndMatcher.end();
+                mState = State.BACKTRACE;
+            }
+            if (!mHasPidtidName
+                    && line.indexOf("pid: ", start) >= 0
+                    && mPidtidNameMatcher.reset(line).region(start, end).find()) {
+                mHasPidtidName = true;
+                try {
+                    mPid = Integer.parseInt(mPidtidNameMatcher.group(1));
+                } catch (NumberFormatException e) {
+                }
+                try {
+                    mTid = Integer.parseInt(mPidtidNameMatcher.group(2));
+                } catch (NumberFormatException e) {
+                }
+                mName = mPidtidNameMatcher.group(3).trim();
+                mProcess = mPidtidNameMatcher.group(4).trim();
+            }
+            if (!mHasFaultLine
+                    && line.indexOf("fault addr", start) >= 0
+                    && mFaultLineMatcher.reset(line).region(start, end).find()) {
+                mHasFaultLine = true;
+                mSignal = mFaultLineMatcher.group(1);
+                String faultAddrMatch = mFaultLineMatcher.group(2);
+                if (faultAddrMatch != null) {
+                    try {
+                        mFaultAddress = new BigInteger(faultAddrMatch, 16);
+                    } catch (NumberFormatException e) {
+                    }
+                }
+            }
+            if (mAbortMessage == null
+                    && containsIgnoreCase(line, "abort message: ", start)
+                    && mAbortMessageMatcher.reset(line).region(start, end).find()) {
+                mAbortMessage = mAbortMessageMatcher.group(1);
+            }
+        }
+
+        private void startCrash() {
+            mState = State.CRASH;
+            mPid = 0;
+            mTid = 0;
+            mFaultAddress = null;
+            mName = null;
+            mProcess = null;
+            mSignal = null;
+            mAbortMessage = null;
+            mHasPidtidName = false;
+            mHasFaultLine = false;
+            mBacktraceFrames = new ArrayList<>();
+        }
+
+        private void endCrash() {
+            putCrash(mCrashes, mPid, mTid, mName, mProcess, mFaultAddress, mSignal,
+                    mAbortMessage, mBacktraceFrames);
+            mState = State.SEARCH;
+        }
+
+        private static boolean containsIgnoreCase(String line, String text, int start) {
+            for (int i = start; i <= line.length() - text.length(); i++) {
+                if (line.regionMatches(/* ignoreCase= */ true, i, text, 0, text.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int indexOfDebugTag(char[] chars, int start, int end) {
+            for (int i = start; i <= end - DEBUG_TAG.length; i++) {
+                if (chars[i] != DEBUG_TAG[0]) {
+                    continue;
+                }
+                int j = 1;
+                while (j < DEBUG_TAG.length && chars[i + j] == DEBUG_TAG[j]) {
+                    j++;
+                }
+                if (j == DEBUG_TAG.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Appends {@code chars[start, end)} to the first {@code length} chars of the line. */
+        private static char[] append(char[] line, int length, char[] chars, int start, int end) {
+            int newLength = length + end - start;
+            if (newLength > line.length) {
+                line = Arrays.copyOf(line, Math.max(newLength, line.length * 2));
+            }
+            System.arraycopy(chars, start, line, length, end - start);
+            return line;
+        }
+    }
+
     public static class BacktraceFrameInfo {
         private final String filename;
         private final String method;
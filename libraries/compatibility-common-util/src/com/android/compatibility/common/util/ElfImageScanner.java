@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scans a whole image, such as an extracted system or vendor partition, for ELF files and indexes
+ * their dynamic linking information so that it can be queried across files.
+ *
+ * <p>Directories are walked and files are parsed with {@link ReadElf#readMapped(File)} in a
+ * {@link ForkJoinPool}. Every file is opened once to check the ELF magic and once more only if it
+ * is an ELF file. Symbolic links are not followed.
+ */
+public class ElfImageScanner {
+    private static final byte[] ELF_MAGIC = {(byte) 0x7F, (byte) 'E', (byte) 'L', (byte) 'F'};
+
+    private ElfImageScanner() {}
+
+    /** Dynamic linking information of a single ELF file. */
+    public static class ElfFile {
+        private final File mFile;
+        private final String mArchitecture;
+        private final int mBits;
+        private final List<String> mNeededLibraries;
+        private final Set<String> mExportedSymbols;
+        private final Set<String> mUndefinedSymbols;
+        private final Set<String> mWeakUndefinedSymbols;
+        private final Map<String, Set<String>> mVersionNeeds;
+        private final Set<String> mVersionDefinitions;
+
+        private ElfFile(File file, ReadElf elf) throws IOException {
+            mFile = file;
+            mArchitecture = elf.getArchitecture();
+            mBits = elf.getBits();
+            mNeededLibraries =
+                    elf.isDynamic()
+                            ? Collections.unmodifiableList(elf.getDynamicDependencies())
+                            : Collections.emptyList();
+
+            Set<String> exported = new HashSet<>();
+            Set<String> undefined = new HashSet<>();
+            Set<String> weakUndefined = new HashSet<>();
+            Map<String, Set<String>> versionNeeds = new TreeMap<>();
+            Set<String> versionDefinitions = new LinkedHashSet<>();
+            ReadElf.Symbol[] symbols = elf.isDynamic() ? elf.getDynSymArr() : null;
+            if (symbols != null) {
+                // Both tables share the version index space of the versym entries.
+                Map<Integer, String> definedVersions = new HashMap<>();
+                for (ReadElf.VerDef verDef : elf.getVersionDefinitions()) {
+                    if ((verDef.vd_flags & ReadElf.VerDef.VER_FLG_BASE) == 0) {
+                        // vda_lib_name is lowercased, the needed versions of other files are not.
+                        definedVersions.put(
+                                verDef.vd_ndx,
+                                elf.getDynStrTabEntry(verDef.vd_verdaux[0].vda_name));
+                    }
+                }
+                Map<Integer, String> neededFiles = new HashMap<>();
+                Map<Integer, String> neededVersions = new HashMap<>();
+                for (ReadElf.VerNeed verNeed : elf.getVersionNeeds()) {
+                    for (ReadElf.VerNAux verNAux : verNeed.vn_vernaux) {
+                        neededFiles.put(verNAux.vna_other, verNeed.vn_file_name);
+                        neededVersions.put(verNAux.vna_other, verNAux.vna_lib_name);
+                    }
+                }
+                int[] versions = elf.getDynSymVersions();
+
+                for (int i = 0; i < symbols.length; i++) {
+                    ReadElf.Symbol symbol = symbols[i];
+                    if (symbol == null || symbol.name.isEmpty()) {
+                        continue;
+                    }
+                    // Indexes 0 and 1 are unversioned local and global symbols, found in neither.
+                    int version = i < versions.length ? versions[i] & ReadElf.VERSYM_VERSION : 0;
+                    if (symbol.isExtern()) {
+                        exported.add(symbol.name);
+                        String definedVersion = definedVersions.get(version);
+                        if (definedVersion != null) {
+                            versionDefinitions.add(definedVersion);
+                        }
+                    } else if (symbol.isGlobalUnd()) {
+                        if (symbol.bind == ReadElf.Symbol.STB_WEAK) {
+                            weakUndefined.add(symbol.name);
+                        } else {
+                            undefined.add(symbol.name);
+                        }
+                        String library = neededFiles.get(version);
+                        if (library != null) {
+                            versionNeeds
+                                    .computeIfAbsent(library, k -> new LinkedHashSet<>())
+                                    .add(neededVersions.get(version));
+                        }
+                    }
+                }
+            }
+            mExportedSymbols = Collections.unmodifiableSet(exported);
+            mUndefinedSymbols = Collections.unmodifiableSet(undefined);
+            mWeakUndefinedSymbols = Collections.unmodifiableSet(weakUndefined);
+            mVersionNeeds = Collections.unmodifiableMap(versionNeeds);
+            mVersionDefinitions = Collections.unmodifiableSet(versionDefinitions);
+        }
+
+        public File getFile() {
+            return mFile;
+        }
+
+        /** Gets the architecture, as returned by {@link ReadElf#getArchitecture()}. */
+        public String getArchitecture() {
+            return mArchitecture;
+        }
+
+        public int getBits() {
+            return mBits;
+        }
+
+        /** Gets the DT_NEEDED entries, in order. */
+        public List<String> getNeededLibraries() {
+            return mNeededLibraries;
+        }
+
+        /** Gets the names of the dynamic symbols defined by this file. */
+        public Set<String> getExportedSymbols() {
+            return mExportedSymbols;
+        }
+
+        /** Gets the names of the non-weak dynamic symbols this file expects another to define. */
+        public Set<String> getUndefinedSymbols() {
+            return mUndefinedSymbols;
+        }
+
+        /** Gets the names of the weak dynamic symbols that may be left undefined. */
+        public Set<String> getWeakUndefinedSymbols() {
+            return mWeakUndefinedSymbols;
+        }
+
+        /** Gets the symbol versions required by this file, keyed by library file name. */
+        public Map<String, Set<String>> getVersionNeeds() {
+            return mVersionNeeds;
+        }
+
+        /** Gets the symbol versions defined by this file. */
+        public Set<String> getVersionDefinitions() {
+            return mVersionDefinitions;
+        }
+
+        private boolean isCompatibleWith(ElfFile other) {
+            return mBits == other.mBits && mArchitecture.equals(other.mArchitecture);
+        }
+    }
+
+    /** The ELF files of a scanned image. This class is thread safe once returned. */
+    public static class Index {
+        private final Map<File, ElfFile> mFiles;
+        private final Map<File, String> mFailures;
+        private final Map<String, List<ElfFile>> mFilesByName = new TreeMap<>();
+
+        private Index(Map<File, ElfFile> files, Map<File, String> failures) {
+            mFiles = Collections.unmodifiableMap(new TreeMap<>(files));
+            mFailures = Collections.unmodifiableMap(new TreeMap<>(failures));
+            for (ElfFile file : mFiles.values()) {
+                mFilesByName
+                        .computeIfAbsent(file.getFile().getName(), k -> new ArrayList<>())
+                        .add(file);
+            }
+        }
+
+        /** Gets all the ELF files that were parsed, sorted by path. */
+        public Map<File, ElfFile> getFiles() {
+            return mFiles;
+        }
+
+        /** Gets the ELF files that could not be parsed, with the reason, sorted by path. */
+        public Map<File, String> getFailures() {
+            return mFailures;
+        }
+
+        /** Gets an ELF file by path, or null if it is not part of the index. */
+        public ElfFile getFile(File file) {
+            return mFiles.get(file);
+        }
+
+        /** Gets all the ELF files with the given file name, such as "libc.so". */
+        public List<ElfFile> getFilesByName(String name) {
+            List<ElfFile> files = mFilesByName.get(name);
+            return files != null ? Collections.unmodifiableList(files) : Collections.emptyList();
+        }
+
+        /**
+         * Gets the libraries an ELF file loads directly or transitively, in breadth-first order.
+         * A needed library is looked up by file name among the files of the same architecture and
+         * bitness; the first one by path is used when there are several.
+         */
+        public List<ElfFile> getDependencies(ElfFile file) {
+            return resolveDependencies(file, null);
+        }
+
+        /**
+         * Gets the names of the libraries an ELF file loads directly or transitively that are not
+         * part of the image.
+         */
+        public Set<String> getMissingDependencies(ElfFile file) {
+            Set<String> missing = new LinkedHashSet<>();
+            resolveDependencies(file, missing);
+            return missing;
+        }
+
+        /**
+         * Gets the non-weak undefined symbols of an ELF file that none of its dependencies export.
+         * Symbols expected from missing dependencies are reported as well.
+         */
+        public Set<String> getUnresolvedSymbols(ElfFile file) {
+            List<ElfFile> dependencies = getDependencies(file);
+            Set<String> unresolved = new LinkedHashSet<>();
+            for (String symbol : file.getUndefinedSymbols()) {
+                boolean resolved = false;
+                for (ElfFile dependency : dependencies) {
+                    if (dependency.getExportedSymbols().contains(symbol)) {
+                        resolved = true;
+                        break;
+                    }
+                }
+                if (!resolved) {
+                    unresolved.add(symbol);
+                }
+            }
+            return unresolved;
+        }
+
+        /** Gets the unresolved symbols of every ELF file that has some, sorted by path. */
+        public Map<File, Set<String>> getUnresolvedSymbols() {
+            Map<File, Set<String>> result = new TreeMap<>();
+            for (ElfFile file : mFiles.values()) {
+                Set<String> unresolved = getUnresolvedSymbols(file);
+                if (!unresolved.isEmpty()) {
+                    result.put(file.getFile(), unresolved);
+                }
+            }
+            return result;
+        }
+
+        private List<ElfFile> resolveDependencies(ElfFile file, Set<String> missing) {
+            List<ElfFile> result = new ArrayList<>();
+            Set<String> visited = new HashSet<>();
+            Deque<ElfFile> queue = new ArrayDeque<>();
+            visited.add(file.getFile().getName());
+            queue.add(file);
+            while (!queue.isEmpty()) {
+                for (String name : queue.poll().getNeededLibraries()) {
+                    if (!visited.add(name)) {
+                        continue;
+                    }
+                    ElfFile dependency = findLibrary(name, file);
+                    if (dependency == null) {
+                        if (missing != null) {
+                            missing.add(name);
+                        }
+                        continue;
+                    }
+                    result.add(dependency);
+                    queue.add(dependency);
+                }
+            }
+            return result;
+        }
+
+        private ElfFile findLibrary(String name, ElfFile requester) {
+            for (ElfFile candidate : getFilesByName(name)) {
+                if (candidate.isCompatibleWith(requester)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Scans the given file or directory using all the available processors. */
+    public static Index scan(File root) {
+        return scan(root, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Scans the given file or directory using the given number of threads. */
+    public static Index scan(File root, int parallelism) {
+        Map<File, ElfFile> files = new ConcurrentHashMap<>();
+        Map<File, String> failures = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ScanTask(root, files, failures));
+        } finally {
+            pool.shutdown();
+        }
+        return new Index(files, failures);
+    }
+
+    /**
+     * Checks whether the given file starts with the ELF magic, reading only the first bytes.
+     * Unlike {@link ReadElf#isElf(File)}, this does not throw and catch an exception for every
+     * file that is not an ELF file.
+     */
+    static boolean hasElfMagic(File file) {
+        byte[] magic = new byte[ELF_MAGIC.length];
+        try (InputStream input = new FileInputStream(file)) {
+            int read = 0;
+            while (read < magic.length) {
+                int count = input.read(magic, read, magic.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != ELF_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Scans a file, or forks a task for every entry of a directory. */
+    private static class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mFile;
+        private final Map<File, ElfFile> mFiles;
+        private final Map<File, String> mFailures;
+
+        ScanTask(File file, Map<File, ElfFile> files, Map<File, String> failures) {
+            mFile = file;
+            mFiles = files;
+            mFailures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            if (Files.isSymbolicLink(mFile.toPath())) {
+                return;
+            }
+            if (mFile.isDirectory()) {
+                File[] children = mFile.listFiles();
+                if (children == null) {
+                    return;
+                }
+                List<ScanTask> tasks = new ArrayList<>(children.length);
+                for (File child : children) {
+                    tasks.add(new ScanTask(child, mFiles, mFailures));
+                }
+                invokeAll(tasks);
+            } else if (mFile.isFile() && hasElfMagic(mFile)) {
+                try (ReadElf elf = ReadElf.readMapped(mFile)) {
+                    mFiles.put(mFile, new ElfFile(mFile, elf));
+                } catch (IOException | RuntimeException e) {
+                    // Unsupported machines and truncated or corrupted files end up here.
+                    mFailures.put(mFile, String.valueOf(e));
+                }
+            }
+        }
+    }
+}
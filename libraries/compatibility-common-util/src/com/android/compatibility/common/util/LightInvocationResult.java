@@ -69,6 +69,33 @@ public class LightInvocationResult implements IInvocationResult {
         }
     }
 
+    /**
+     * Constructor for an empty result, to be filled from a summary of a result instead of the
+     * result itself.
+     */
+    LightInvocationResult() {
+        mInvocationInfo = new HashMap<String, String>();
+        mSerials = new HashSet<String>();
+        mRetryChecksumStatus = RetryChecksumStatus.NotRetry;
+        mModuleIds = new HashSet<String>();
+        mResultCounts = new HashMap<TestStatus, Integer>();
+        for (TestStatus status : TestStatus.values()) {
+            mResultCounts.put(status, 0);
+        }
+    }
+
+    void setResultCount(TestStatus status, int count) {
+        mResultCounts.put(status, count);
+    }
+
+    void setNotExecuted(int notExecuted) {
+        mNotExecuted = notExecuted;
+    }
+
+    void setModuleCompleteCount(int moduleCompleteCount) {
+        mModuleCompleteCount = moduleCompleteCount;
+    }
+
     /**
      * {@inheritDoc}
      */
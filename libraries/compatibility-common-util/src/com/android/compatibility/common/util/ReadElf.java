@@ -18,10 +18,15 @@ package com.android.compatibility.common.util;
 
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +34,10 @@ import java.util.Map;
 /**
  * A poor man's implementation of the readelf command. This program is designed to parse ELF
  * (Executable and Linkable Format) files.
+ *
+ * <p>Files opened with {@link #read(File)} are read through a {@link RandomAccessFile}, issuing
+ * a system call for every field. Files opened with {@link #readMapped(File)} are memory-mapped
+ * instead, which is much faster when reading the symbol tables of many files.
  */
 // ToDo: consolidate with com.android.compatibility.common.util
 public class ReadElf implements AutoCloseable {
@@ -77,6 +86,9 @@ public class ReadElf implements AutoCloseable {
     private static final int SHT_GNU_VERNEED = 0x6ffffffe;
     private static final int SHT_GNU_VERSYM = 0x6fffffff;
 
+    /** Mask of the version index in a SHT_GNU_versym entry, the top bit marks hidden symbols. */
+    public static final int VERSYM_VERSION = 0x7fff;
+
     public static class Symbol {
         public static final int STB_LOCAL = 0;
         public static final int STB_GLOBAL = 1;
@@ -355,6 +367,9 @@ public class ReadElf implements AutoCloseable {
     }
 
     public static class VerDef {
+        /** The vd_flags bit of the version definition of the file itself. */
+        public static final int VER_FLG_BASE = 0x1;
+
         public final int vd_version;
         public final int vd_flags;
         public final int vd_ndx;
@@ -459,8 +474,18 @@ public class ReadElf implements AutoCloseable {
     }
 
     private final String mPath;
+
+    /** The file being read, null when the file is memory-mapped. */
     private final RandomAccessFile mFile;
+
+    /** Little-endian view of the memory-mapped file, null when reading through {@link #mFile}. */
+    private final ByteBuffer mMappedFile;
+
     private final byte[] mBuffer = new byte[512];
+
+    /** Strings already read from the string tables, by file offset. */
+    private final Map<Long, String> mStrings = new HashMap<>();
+
     private int mEndian;
     private boolean mIsDynamic;
     private boolean mIsPIE;
@@ -572,7 +597,15 @@ public class ReadElf implements AutoCloseable {
     private byte[] mRoData;
 
     public static ReadElf read(File file) throws IOException {
-        return new ReadElf(file);
+        return new ReadElf(file, false);
+    }
+
+    /**
+     * Same as {@link #read(File)}, but memory-maps the file instead of reading it with a system
+     * call per field. Files too large to be mapped are read as with {@link #read(File)}.
+     */
+    public static ReadElf readMapped(File file) throws IOException {
+        return new ReadElf(file, true);
     }
 
     public static void main(String[] args) throws IOException {
@@ -699,6 +732,46 @@ public class ReadElf implements AutoCloseable {
         return mDynSymArr;
     }
 
+    /**
+     * Gets the SHT_GNU_versym entry of every dynamic symbol, in the order of {@link
+     * #getDynSymArr()}. Mask an entry with {@link #VERSYM_VERSION} to get the version index that
+     * {@link #getVersionDefinitions()} and {@link #getVersionNeeds()} refer to.
+     */
+    public int[] getDynSymVersions() throws IOException {
+        return getVerSym().clone();
+    }
+
+    /**
+     * Gets all the entries of the SHT_GNU_verdef section, in file order. Each entry is identified
+     * by its vd_ndx, the first one usually being the {@link VerDef#VER_FLG_BASE} definition of the
+     * file itself.
+     */
+    public VerDef[] getVersionDefinitions() throws IOException {
+        VerDef[] verDefArr = getVerDef();
+        // Skips the *local* and *global* placeholders.
+        return Arrays.copyOfRange(verDefArr, 2, verDefArr.length);
+    }
+
+    /**
+     * Gets all the entries of the SHT_GNU_verneed section, in file order. Each entry lists every
+     * version needed from one file, identified by the vna_other of its {@link VerNAux}.
+     */
+    public VerNeed[] getVersionNeeds() throws IOException {
+        VerNeed[] verNeedArr = getVerNeedArr();
+        // Skips the *local* and *global* placeholders.
+        return Arrays.copyOfRange(verNeedArr, 2, verNeedArr.length);
+    }
+
+    /**
+     * Gets the string at {@code offset} in the dynamic string table with its original case, such
+     * as the vda_name of a {@link VerDAux} whose vda_lib_name is lowercased.
+     *
+     * @return the string, or null if the offset is outside the table
+     */
+    public String getDynStrTabEntry(long offset) throws IOException {
+        return readDynStrTabEntry(offset);
+    }
+
     public boolean isDynamic() {
         return mIsDynamic;
     }
@@ -711,21 +784,40 @@ public class ReadElf implements AutoCloseable {
         return mIsPIE;
     }
 
-    private ReadElf(File file) throws IOException {
+    private ReadElf(File file, boolean mapped) throws IOException {
         mHasRodata = false;
         mRoData = null;
         mPath = file.getPath();
-        mFile = new RandomAccessFile(file, "r");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
 
-        if (mFile.length() < EI_NIDENT) {
+        if (randomAccessFile.length() < EI_NIDENT) {
+            randomAccessFile.close();
             throw new IllegalArgumentException("Too small to be an ELF file: " + file);
         }
 
+        if (mapped && randomAccessFile.length() <= Integer.MAX_VALUE) {
+            // The mapping stays valid once the file is closed.
+            try (FileChannel channel = randomAccessFile.getChannel()) {
+                mMappedFile =
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                                .order(ByteOrder.LITTLE_ENDIAN);
+            } finally {
+                randomAccessFile.close();
+            }
+            mFile = null;
+        } else {
+            mMappedFile = null;
+            mFile = randomAccessFile;
+        }
+
         readHeader();
     }
 
     @Override
     public void close() {
+        if (mFile == null) {
+            return;
+        }
         try {
             mFile.close();
         } catch (IOException ignored) {
@@ -742,8 +834,8 @@ public class ReadElf implements AutoCloseable {
     }
 
     private void readHeader() throws IOException {
-        mFile.seek(0);
-        mFile.readFully(mBuffer, 0, EI_NIDENT);
+        seek(0);
+        readFully(mBuffer, 0, EI_NIDENT);
 
         if (mBuffer[0] != ELFMAG[0]
                 || mBuffer[1] != ELFMAG[1]
@@ -823,7 +915,7 @@ public class ReadElf implements AutoCloseable {
             throws IOException {
         // Read the Section Header String Table offset first.
         {
-            mFile.seek(sh_off + e_shstrndx * e_shentsize);
+            seek(sh_off + e_shstrndx * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -845,7 +937,7 @@ public class ReadElf implements AutoCloseable {
                 continue;
             }
 
-            mFile.seek(sh_off + i * e_shentsize);
+            seek(sh_off + i * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -950,7 +1042,7 @@ public class ReadElf implements AutoCloseable {
 
     private void readProgramHeaders(long ph_off, int e_phnum, int e_phentsize) throws IOException {
         for (int i = 0; i < e_phnum; ++i) {
-            mFile.seek(ph_off + i * e_phentsize);
+            seek(ph_off + i * e_phentsize);
 
             long p_type = readWord();
             if (p_type == PT_LOAD) {
@@ -978,9 +1070,9 @@ public class ReadElf implements AutoCloseable {
             long tableSize)
             throws IOException {
         HashMap<String, Symbol> result = new HashMap<String, Symbol>();
-        mFile.seek(tableOffset);
+        seek(tableOffset);
         int i = 0;
-        while (mFile.getFilePointer() < tableOffset + tableSize) {
+        while (getFilePointer() < tableOffset + tableSize) {
             long st_name = readWord();
             int st_info;
             int st_shndx;
@@ -1057,7 +1149,7 @@ public class ReadElf implements AutoCloseable {
 
     private int[] getVerSym() throws IOException {
         if (mVerSym == null) {
-            mFile.seek(mVerSymTabOffset);
+            seek(mVerSymTabOffset);
             int cnt = (int) mVerSymTabSize / 2;
             mVerSym = new int[cnt];
             for (int i = 0; i < cnt; i++) {
@@ -1096,7 +1188,7 @@ public class ReadElf implements AutoCloseable {
 
             long idx = mVerNeedTabOffset;
             for (int i = 2; i < mVerNeedEntryCnt + 2; i++) {
-                mFile.seek(idx);
+                seek(idx);
                 mVerNeedArr[i] =
                         new VerNeed(readHalf(), readHalf(), readWord(), readWord(), readWord());
                 mVerNeedArr[i].vn_file_name = readDynStrTabEntry(mVerNeedArr[i].vn_file).toLowerCase();
@@ -1104,7 +1196,7 @@ public class ReadElf implements AutoCloseable {
                 mVerNeedArr[i].vn_vernaux = new VerNAux[mVerNeedArr[i].vn_cnt];
                 long idxAux = idx + mVerNeedArr[i].vn_aux;
                 for (int j = 0; j < mVerNeedArr[i].vn_cnt; j++) {
-                    mFile.seek(idxAux);
+                    seek(idxAux);
                     mVerNeedArr[i].vn_vernaux[j] =
                             new VerNAux(readWord(), readHalf(), readHalf(), readWord(), readWord());
                     mVerNeedArr[i].vn_vernaux[j].vna_lib_name =
@@ -1130,7 +1222,7 @@ public class ReadElf implements AutoCloseable {
 
             long idx = mVerDefTabOffset;
             for (int i = 2; i < mVerDefEntryCnt + 2; i++) {
-                mFile.seek(idx);
+                seek(idx);
                 mVerDefArr[i] =
                         new VerDef(
                                 readHalf(),
@@ -1144,7 +1236,7 @@ public class ReadElf implements AutoCloseable {
                 mVerDefArr[i].vd_verdaux = new VerDAux[mVerDefArr[i].vd_cnt];
                 long idxAux = idx + mVerDefArr[i].vd_aux;
                 for (int j = 0; j < mVerDefArr[i].vd_cnt; j++) {
-                    mFile.seek(idxAux);
+                    seek(idxAux);
                     mVerDefArr[i].vd_verdaux[j] = new VerDAux(readWord(), readWord());
                     mVerDefArr[i].vd_verdaux[j].vda_lib_name =
                             readDynStrTabEntry(mVerDefArr[i].vd_verdaux[j].vda_name).toLowerCase();
@@ -1174,7 +1266,22 @@ public class ReadElf implements AutoCloseable {
     }
 
     private long readX(int byteCount) throws IOException {
-        mFile.readFully(mBuffer, 0, byteCount);
+        if (mMappedFile != null) {
+            if (mMappedFile.remaining() < byteCount) {
+                throw new EOFException(mPath);
+            }
+            switch (byteCount) {
+                case 2:
+                    return mMappedFile.getShort() & 0xffff;
+                case 4:
+                    return mMappedFile.getInt();
+                default:
+                    // Same as the int accumulation below, which only keeps the low 32 bits.
+                    return (int) mMappedFile.getLong();
+            }
+        }
+
+        readFully(mBuffer, 0, byteCount);
 
         int answer = 0;
         if (mEndian == ELFDATA2LSB) {
@@ -1192,10 +1299,32 @@ public class ReadElf implements AutoCloseable {
     }
 
     private String readString(long offset) throws IOException {
-        long originalOffset = mFile.getFilePointer();
-        mFile.seek(offset);
-        mFile.readFully(mBuffer, 0, (int) Math.min(mBuffer.length, mFile.length() - offset));
-        mFile.seek(originalOffset);
+        // Tables reference the same strings many times, such as the names of version dependencies.
+        String result = mStrings.get(offset);
+        if (result == null && !mStrings.containsKey(offset)) {
+            result = readStringAt(offset);
+            mStrings.put(offset, result);
+        }
+        return result;
+    }
+
+    private String readStringAt(long offset) throws IOException {
+        if (mMappedFile != null) {
+            int length = (int) Math.min(mBuffer.length, mMappedFile.limit() - offset);
+            for (int i = 0; i < length; ++i) {
+                byte b = mMappedFile.get((int) offset + i);
+                if (b == 0) {
+                    return new String(mBuffer, 0, i);
+                }
+                mBuffer[i] = b;
+            }
+            return null;
+        }
+
+        long originalOffset = getFilePointer();
+        seek(offset);
+        readFully(mBuffer, 0, (int) Math.min(mBuffer.length, mFile.length() - offset));
+        seek(originalOffset);
 
         for (int i = 0; i < mBuffer.length; ++i) {
             if (mBuffer[i] == 0) {
@@ -1207,9 +1336,40 @@ public class ReadElf implements AutoCloseable {
     }
 
     private int readByte() throws IOException {
+        if (mMappedFile != null) {
+            return mMappedFile.hasRemaining() ? mMappedFile.get() & 0xff : 0xff;
+        }
         return mFile.read() & 0xff;
     }
 
+    private void seek(long offset) throws IOException {
+        if (mMappedFile == null) {
+            mFile.seek(offset);
+        } else if (offset < 0 || offset > mMappedFile.limit()) {
+            throw new EOFException(mPath);
+        } else {
+            mMappedFile.position((int) offset);
+        }
+    }
+
+    private long getFilePointer() throws IOException {
+        return mMappedFile != null ? mMappedFile.position() : mFile.getFilePointer();
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        if (mMappedFile == null) {
+            mFile.readFully(b, off, len);
+        } else if (mMappedFile.remaining() < len) {
+            throw new EOFException(mPath);
+        } else {
+            mMappedFile.get(b, off, len);
+        }
+    }
+
+    private void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
     /** Gets the symbol by name. */
     @CanIgnoreReturnValue
     public Symbol getSymbol(String name) {
@@ -1270,7 +1430,7 @@ public class ReadElf implements AutoCloseable {
         if (mDynamicArr == null) {
             int entryNo = 0;
             mDynamicArr = new ArrayList<>();
-            mFile.seek(mDynamicTabOffset);
+            seek(mDynamicTabOffset);
             System.out.println(
                     String.format(
                             "mDynamicTabOffset 0x%x, mDynamicTabSize %d",
@@ -1335,8 +1495,8 @@ public class ReadElf implements AutoCloseable {
     public byte[] getRoData() throws IOException {
         if (mHasRodata && mRoData == null) {
             mRoData = new byte[mRodataSize];
-            mFile.seek(mRodataOffset);
-            mFile.readFully(mRoData);
+            seek(mRodataOffset);
+            readFully(mRoData);
         }
 
         return mRoData;
@@ -19,6 +19,9 @@ import com.android.compatibility.common.util.ChecksumReporter.ChecksumValidation
 
 import com.google.common.base.Strings;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -32,19 +35,26 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -66,6 +76,7 @@ public class ResultHandler {
     private static final String NS = null;
     private static final String RESULT_FILE_VERSION = "5.0";
     public static final String TEST_RESULT_FILE_NAME = "test_result.xml";
+    public static final String TEST_RESULT_SUMMARY_FILE_NAME = "test_result_summary.json";
     public static final String FAILURE_REPORT_NAME = "test_result_failures.html";
     private static final String FAILURE_XSL_FILE_NAME = "compatibility_failures.xsl";
 
@@ -130,6 +141,16 @@ public class ResultHandler {
 
     private static final String LATEST_RESULT_DIR = "latest";
 
+    // Keys of the summary file written next to the result file.
+    private static final int SUMMARY_FILE_VERSION = 1;
+    private static final String SUMMARY_VERSION_KEY = "version";
+    private static final String SUMMARY_RESULT_LENGTH_KEY = "result_length";
+    private static final String SUMMARY_RESULT_MODIFIED_KEY = "result_last_modified";
+    private static final String SUMMARY_NOT_EXECUTED_KEY = "not_executed";
+    private static final String SUMMARY_BUILD_KEY = "build";
+    private static final String SUMMARY_MODULES_KEY = "modules";
+    private static final String SUMMARY_ID_KEY = "id";
+
     /**
      * Returns IInvocationResults that can be queried for general reporting information, but that
      * do not store underlying module data. Useful for summarizing invocation history.
@@ -142,10 +163,9 @@ public class ResultHandler {
             if (LATEST_RESULT_DIR.equals(resultDir.getName())) {
                 continue;
             }
-            IInvocationResult result = getResultFromDir(resultDir, false);
+            IInvocationResult result = getLightResultFromDir(resultDir);
             if (result != null) {
-                results.add(new LightInvocationResult(result));
-                result = null; // ensure all references are removed to free memory
+                results.add(result);
             }
         }
         // Sort the table entries on each entry's timestamp.
@@ -155,6 +175,168 @@ public class ResultHandler {
         return results;
     }
 
+    /**
+     * Returns a {@link LightInvocationResult} for the result in the given directory, read from
+     * the summary file when it is present and up to date with the result file. Otherwise, the
+     * result file is scanned without building its modules, cases and tests.
+     *
+     * @return the light result, or null upon error
+     */
+    static IInvocationResult getLightResultFromDir(File resultDir) {
+        File resultFile = new File(resultDir, TEST_RESULT_FILE_NAME);
+        if (!resultFile.exists()) {
+            return null;
+        }
+        File summaryFile = new File(resultDir, TEST_RESULT_SUMMARY_FILE_NAME);
+        if (summaryFile.exists()) {
+            try {
+                IInvocationResult result = readSummary(resultDir, resultFile, summaryFile);
+                if (result != null) {
+                    return result;
+                }
+            } catch (IOException | JSONException e) {
+                System.out.println(
+                        String.format("Ignoring invalid summary %s: %s",
+                                summaryFile.getAbsolutePath(), e));
+            }
+        }
+        try {
+            return scanLightResult(resultDir, resultFile);
+        } catch (XmlPullParserException | IOException | RuntimeException e) {
+            System.out.println(
+                    String.format("Exception when trying to load %s",
+                            resultFile.getAbsolutePath()));
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the summary written by {@link #writeResults}, or returns null if the result file
+     * changed since.
+     */
+    private static IInvocationResult readSummary(File resultDir, File resultFile,
+            File summaryFile) throws IOException, JSONException {
+        JSONObject summary = new JSONObject(
+                new String(Files.readAllBytes(summaryFile.toPath()), StandardCharsets.UTF_8));
+        if (summary.getInt(SUMMARY_VERSION_KEY) != SUMMARY_FILE_VERSION
+                || summary.getLong(SUMMARY_RESULT_LENGTH_KEY) != resultFile.length()
+                || summary.getLong(SUMMARY_RESULT_MODIFIED_KEY) != resultFile.lastModified()) {
+            return null;
+        }
+        LightInvocationResult invocation = new LightInvocationResult();
+        invocation.setRetryDirectory(resultDir);
+        invocation.setStartTime(summary.getLong(START_TIME_ATTR));
+        invocation.setTestPlan(summary.getString(SUITE_PLAN_ATTR));
+        invocation.setCommandLineArgs(summary.getString(COMMAND_LINE_ARGS));
+        for (String device : summary.getString(DEVICES_ATTR).split(",")) {
+            invocation.addDeviceSerial(device);
+        }
+        JSONObject build = summary.getJSONObject(SUMMARY_BUILD_KEY);
+        for (String key : new String[] {BUILD_ID, BUILD_PRODUCT, RUN_HISTORY_ATTR}) {
+            if (build.has(key)) {
+                invocation.addInvocationInfo(key, build.getString(key));
+            }
+        }
+        if (summary.has(BUILD_FINGERPRINT)) {
+            invocation.setBuildFingerprint(summary.getString(BUILD_FINGERPRINT));
+        }
+        invocation.setResultCount(TestStatus.PASS, summary.getInt(PASS_ATTR));
+        invocation.setResultCount(TestStatus.FAIL, summary.getInt(FAILED_ATTR));
+        invocation.setNotExecuted(summary.getInt(SUMMARY_NOT_EXECUTED_KEY));
+        int modulesDone = 0;
+        JSONArray modules = summary.getJSONArray(SUMMARY_MODULES_KEY);
+        for (int i = 0; i < modules.length(); i++) {
+            JSONObject module = modules.getJSONObject(i);
+            invocation.getOrCreateModule(module.getString(SUMMARY_ID_KEY));
+            if (module.getBoolean(DONE_ATTR)) {
+                modulesDone++;
+            }
+        }
+        invocation.setModuleCompleteCount(modulesDone);
+        return invocation;
+    }
+
+    /**
+     * Scans a result file for the information held by a {@link LightInvocationResult}. Unlike
+     * {@link #getResultFromDir(File)}, no module, case or test is kept in memory.
+     *
+     * <p>The counts of the Summary tag cannot be trusted as they are not updated when result files
+     * are edited or merged by hand, so tests are still counted one by one.
+     */
+    private static IInvocationResult scanLightResult(File resultDir, File resultFile)
+            throws XmlPullParserException, IOException {
+        LightInvocationResult invocation = new LightInvocationResult();
+        invocation.setRetryDirectory(resultDir);
+        try (FileReader reader = new FileReader(resultFile)) {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(reader);
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, RESULT_TAG);
+            invocation.setStartTime(Long.valueOf(parser.getAttributeValue(NS, START_TIME_ATTR)));
+            invocation.setTestPlan(parser.getAttributeValue(NS, SUITE_PLAN_ATTR));
+            invocation.setCommandLineArgs(parser.getAttributeValue(NS, COMMAND_LINE_ARGS));
+            for (String device : parser.getAttributeValue(NS, DEVICES_ATTR).split(",")) {
+                invocation.addDeviceSerial(device);
+            }
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, BUILD_TAG);
+            invocation.addInvocationInfo(BUILD_ID, parser.getAttributeValue(NS, BUILD_ID));
+            invocation.addInvocationInfo(BUILD_PRODUCT,
+                    parser.getAttributeValue(NS, BUILD_PRODUCT));
+            String runHistoryValue = parser.getAttributeValue(NS, RUN_HISTORY_ATTR);
+            if (runHistoryValue != null) {
+                invocation.addInvocationInfo(RUN_HISTORY_ATTR, runHistoryValue);
+            }
+            String unalteredFingerprint = parser.getAttributeValue(NS, BUILD_FINGERPRINT_UNALTERED);
+            invocation.setBuildFingerprint(Strings.isNullOrEmpty(unalteredFingerprint)
+                    ? parser.getAttributeValue(NS, BUILD_FINGERPRINT) : unalteredFingerprint);
+
+            // Only the Module, TestCase and Test start tags are of interest past the Build tag,
+            // everything else is skipped as tokens without being kept.
+            Map<String, Boolean> moduleDone = new HashMap<>();
+            Map<TestStatus, Integer> counts = new HashMap<>();
+            int depth = 2;
+            while (depth > 0) {
+                int event = parser.next();
+                if (event == XmlPullParser.END_TAG) {
+                    depth--;
+                } else if (event == XmlPullParser.START_TAG) {
+                    depth++;
+                    if (depth == 2 && MODULE_TAG.equals(parser.getName())) {
+                        String moduleId = AbiUtils.createId(
+                                parser.getAttributeValue(NS, ABI_ATTR),
+                                parser.getAttributeValue(NS, NAME_ATTR));
+                        moduleDone.put(moduleId,
+                                Boolean.parseBoolean(parser.getAttributeValue(NS, DONE_ATTR)));
+                    } else if (depth == 4 && TEST_TAG.equals(parser.getName())) {
+                        TestStatus status = getTestStatus(parser);
+                        if (status != null) {
+                            counts.merge(status, 1, Integer::sum);
+                        }
+                    }
+                } else if (event == XmlPullParser.END_DOCUMENT) {
+                    throw new XmlPullParserException("Unexpected end of " + resultFile);
+                }
+            }
+
+            int modulesDone = 0;
+            for (Entry<String, Boolean> entry : moduleDone.entrySet()) {
+                invocation.getOrCreateModule(entry.getKey());
+                if (entry.getValue()) {
+                    modulesDone++;
+                }
+            }
+            invocation.setModuleCompleteCount(modulesDone);
+            for (Entry<TestStatus, Integer> entry : counts.entrySet()) {
+                invocation.setResultCount(entry.getKey(), entry.getValue());
+            }
+        }
+        return invocation;
+    }
+
     /**
      * @param resultDir
      * @return an IInvocationResult for this result, or null upon error
@@ -253,78 +435,26 @@ public class ResultHandler {
                 module.initializeDone(done);
                 long runtime = Long.parseLong(parser.getAttributeValue(NS, RUNTIME_ATTR));
                 module.addRuntime(runtime);
-                while (parser.nextTag() == XmlPullParser.START_TAG) {
-                    // If a reason for not done exists, handle it.
-                    if (parser.getName().equals(MODULES_NOT_DONE_REASON)) {
-                        parser.require(XmlPullParser.START_TAG, NS, MODULES_NOT_DONE_REASON);
-                        parser.nextTag();
-                        parser.require(XmlPullParser.END_TAG, NS, MODULES_NOT_DONE_REASON);
-                        continue;
-                    }
-                    parser.require(XmlPullParser.START_TAG, NS, CASE_TAG);
-                    String caseName = parser.getAttributeValue(NS, NAME_ATTR);
-                    ICaseResult testCase = module.getOrCreateResult(caseName);
-                    while (parser.nextTag() == XmlPullParser.START_TAG) {
-                        parser.require(XmlPullParser.START_TAG, NS, TEST_TAG);
-                        String testName = parser.getAttributeValue(NS, NAME_ATTR);
-                        ITestResult test = testCase.getOrCreateResult(testName);
-                        String result = parser.getAttributeValue(NS, RESULT_ATTR);
-                        String skipped = parser.getAttributeValue(NS, SKIPPED_ATTR);
-                        if (skipped != null && Boolean.parseBoolean(skipped)) {
-                            // mark test passed and skipped
-                            test.skipped();
-                        } else {
-                            // only apply result status directly if test was not skipped
-                            test.setResultStatus(TestStatus.getStatus(result));
-                        }
-                        test.setRetry(true);
-                        while (parser.nextTag() == XmlPullParser.START_TAG) {
-                            if (parser.getName().equals(FAILURE_TAG)) {
-                                test.setMessage(parser.getAttributeValue(NS, MESSAGE_ATTR));
-                                if (parser.nextTag() == XmlPullParser.START_TAG) {
-                                    parser.require(XmlPullParser.START_TAG, NS, STACK_TAG);
-                                    test.setStackTrace(parser.nextText());
-                                    parser.require(XmlPullParser.END_TAG, NS, STACK_TAG);
-                                    parser.nextTag();
-                                }
-                                parser.require(XmlPullParser.END_TAG, NS, FAILURE_TAG);
-                            } else if (parser.getName().equals(BUGREPORT_TAG)) {
-                                test.setBugReport(parser.nextText());
-                                parser.require(XmlPullParser.END_TAG, NS, BUGREPORT_TAG);
-                            } else if (parser.getName().equals(LOGCAT_TAG)) {
-                                test.setLog(parser.nextText());
-                                parser.require(XmlPullParser.END_TAG, NS, LOGCAT_TAG);
-                            } else if (parser.getName().equals(SCREENSHOT_TAG)) {
-                                test.setScreenshot(parser.nextText());
-                                parser.require(XmlPullParser.END_TAG, NS, SCREENSHOT_TAG);
-                            } else if (SUMMARY_TAG.equals(parser.getName())) {
-                                test.setReportLog(ReportLog.parse(parser));
-                            } else if (METRIC_TAG.equals(parser.getName())) {
-                                // Ignore the new format in the old parser.
-                                parser.nextText();
-                                parser.require(XmlPullParser.END_TAG, NS, METRIC_TAG);
-                            } else if (RUN_HISTORY_TAG.equals(parser.getName())) {
-                                // Ignore the test result history since it only exists in
-                                // CTS Verifier, which will not use parsing feature.
-                                skipCurrentTag(parser);
-                            } else {
-                                parser.nextTag();
+                parseModule(parser, module);
+                if (invocationUseChecksum) {
+                    for (ICaseResult testCase : module.getResults()) {
+                        for (ITestResult test : testCase.getResults()) {
+                            if (test.getResultStatus() == null) {
+                                continue;
+                            }
+                            // If the fingerprint was altered, then checksum against the
+                            // fingerprint originally reported
+                            Boolean checksumMismatch =
+                                 !checksumReporter.containsTestResult(
+                                     test, module, reportFingerprint)
+                                 && (fingerprintWasAltered ? !checksumReporter.containsTestResult(
+                                     test, module, unalteredFingerprint) : true);
+                            if (checksumMismatch) {
+                                test.removeResult();
                             }
-                        }
-                        parser.require(XmlPullParser.END_TAG, NS, TEST_TAG);
-                        // If the fingerprint was altered, then checksum against the fingerprint
-                        // originally reported
-                        Boolean checksumMismatch = invocationUseChecksum &&
-                             !checksumReporter.containsTestResult(test, module, reportFingerprint)
-                             && (fingerprintWasAltered ? !checksumReporter.containsTestResult(
-                                 test, module, unalteredFingerprint) : true);
-                        if (checksumMismatch) {
-                            test.removeResult();
                         }
                     }
-                    parser.require(XmlPullParser.END_TAG, NS, CASE_TAG);
                 }
-                parser.require(XmlPullParser.END_TAG, NS, MODULE_TAG);
                 // If the fingerprint was altered, then checksum against the fingerprint
                 // originally reported
                 Boolean checksumMismatch = invocationUseChecksum &&
@@ -346,6 +476,93 @@ public class ResultHandler {
         }
     }
 
+    /**
+     * Parses the test cases of the current Module tag into the given module, leaving the parser
+     * on the end tag of the module.
+     */
+    private static void parseModule(XmlPullParser parser, IModuleResult module)
+            throws XmlPullParserException, IOException {
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            // If a reason for not done exists, handle it.
+            if (parser.getName().equals(MODULES_NOT_DONE_REASON)) {
+                parser.require(XmlPullParser.START_TAG, NS, MODULES_NOT_DONE_REASON);
+                parser.nextTag();
+                parser.require(XmlPullParser.END_TAG, NS, MODULES_NOT_DONE_REASON);
+                continue;
+            }
+            parser.require(XmlPullParser.START_TAG, NS, CASE_TAG);
+            String caseName = parser.getAttributeValue(NS, NAME_ATTR);
+            ICaseResult testCase = module.getOrCreateResult(caseName);
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                parseTest(parser, testCase);
+            }
+            parser.require(XmlPullParser.END_TAG, NS, CASE_TAG);
+        }
+        parser.require(XmlPullParser.END_TAG, NS, MODULE_TAG);
+    }
+
+    /** Parses the current Test tag into the given test case. */
+    private static void parseTest(XmlPullParser parser, ICaseResult testCase)
+            throws XmlPullParserException, IOException {
+        parser.require(XmlPullParser.START_TAG, NS, TEST_TAG);
+        String testName = parser.getAttributeValue(NS, NAME_ATTR);
+        ITestResult test = testCase.getOrCreateResult(testName);
+        String result = parser.getAttributeValue(NS, RESULT_ATTR);
+        String skipped = parser.getAttributeValue(NS, SKIPPED_ATTR);
+        if (skipped != null && Boolean.parseBoolean(skipped)) {
+            // mark test passed and skipped
+            test.skipped();
+        } else {
+            // only apply result status directly if test was not skipped
+            test.setResultStatus(TestStatus.getStatus(result));
+        }
+        test.setRetry(true);
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            if (parser.getName().equals(FAILURE_TAG)) {
+                test.setMessage(parser.getAttributeValue(NS, MESSAGE_ATTR));
+                if (parser.nextTag() == XmlPullParser.START_TAG) {
+                    parser.require(XmlPullParser.START_TAG, NS, STACK_TAG);
+                    test.setStackTrace(parser.nextText());
+                    parser.require(XmlPullParser.END_TAG, NS, STACK_TAG);
+                    parser.nextTag();
+                }
+                parser.require(XmlPullParser.END_TAG, NS, FAILURE_TAG);
+            } else if (parser.getName().equals(BUGREPORT_TAG)) {
+                test.setBugReport(parser.nextText());
+                parser.require(XmlPullParser.END_TAG, NS, BUGREPORT_TAG);
+            } else if (parser.getName().equals(LOGCAT_TAG)) {
+                test.setLog(parser.nextText());
+                parser.require(XmlPullParser.END_TAG, NS, LOGCAT_TAG);
+            } else if (parser.getName().equals(SCREENSHOT_TAG)) {
+                test.setScreenshot(parser.nextText());
+                parser.require(XmlPullParser.END_TAG, NS, SCREENSHOT_TAG);
+            } else if (SUMMARY_TAG.equals(parser.getName())) {
+                test.setReportLog(ReportLog.parse(parser));
+            } else if (METRIC_TAG.equals(parser.getName())) {
+                // Ignore the new format in the old parser.
+                parser.nextText();
+                parser.require(XmlPullParser.END_TAG, NS, METRIC_TAG);
+            } else if (RUN_HISTORY_TAG.equals(parser.getName())) {
+                // Ignore the test result history since it only exists in
+                // CTS Verifier, which will not use parsing feature.
+                skipCurrentTag(parser);
+            } else {
+                parser.nextTag();
+            }
+        }
+        parser.require(XmlPullParser.END_TAG, NS, TEST_TAG);
+    }
+
+    /**
+     * Gets the status of the current Test tag, as parsed by {@link #parseTest}, or null if the
+     * result is unknown.
+     */
+    private static TestStatus getTestStatus(XmlPullParser parser) {
+        return Boolean.parseBoolean(parser.getAttributeValue(NS, SKIPPED_ATTR))
+                ? TestStatus.PASS
+                : TestStatus.getStatus(parser.getAttributeValue(NS, RESULT_ATTR));
+    }
+
     /** Parse and replay all run history information. */
     private static void parseRunHistory(XmlPullParser parser)
             throws IOException, XmlPullParserException {
@@ -404,81 +621,118 @@ public class ResultHandler {
         int passed = result.countResults(TestStatus.PASS);
         int failed = result.countResults(TestStatus.FAIL);
         File resultFile = new File(resultDir, TEST_RESULT_FILE_NAME);
-        OutputStream stream = new FileOutputStream(resultFile);
-        XmlSerializer serializer = XmlPullParserFactory.newInstance(TYPE, null).newSerializer();
-        serializer.setOutput(stream, ENCODING);
-        serializer.startDocument(ENCODING, false);
-        serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
-        serializer.processingInstruction(
-                "xml-stylesheet type=\"text/xsl\" href=\"compatibility_result.xsl\"");
-        serializer.startTag(NS, RESULT_TAG);
-        serializer.attribute(NS, START_TIME_ATTR, String.valueOf(startTime));
-        serializer.attribute(NS, END_TIME_ATTR, String.valueOf(endTime));
-        serializer.attribute(NS, START_DISPLAY_TIME_ATTR, toReadableDateString(startTime));
-        serializer.attribute(NS, END_DISPLAY_TIME_ATTR, toReadableDateString(endTime));
-
-        serializer.attribute(NS, SUITE_NAME_ATTR, suiteName);
-        serializer.attribute(NS, SUITE_VERSION_ATTR, suiteVersion);
-        serializer.attribute(NS, SUITE_PLAN_ATTR, suitePlan);
-        serializer.attribute(NS, SUITE_BUILD_ATTR, suiteBuild);
-        serializer.attribute(NS, REPORT_VERSION_ATTR, RESULT_FILE_VERSION);
-        serializer.attribute(NS, COMMAND_LINE_ARGS, nullToEmpty(commandLineArgs));
+        Map<String, String> attributes = new LinkedHashMap<>();
+        putTimeAttributes(attributes, startTime, endTime);
+
+        attributes.put(SUITE_NAME_ATTR, suiteName);
+        attributes.put(SUITE_VERSION_ATTR, suiteVersion);
+        attributes.put(SUITE_PLAN_ATTR, suitePlan);
+        attributes.put(SUITE_BUILD_ATTR, suiteBuild);
+        attributes.put(REPORT_VERSION_ATTR, RESULT_FILE_VERSION);
+        attributes.put(COMMAND_LINE_ARGS, nullToEmpty(commandLineArgs));
 
         if (resultAttributes != null) {
-            for (Entry<String, String> entry : resultAttributes.entrySet()) {
-                serializer.attribute(NS, entry.getKey(), entry.getValue());
-            }
+            attributes.putAll(resultAttributes);
         }
 
         if (referenceUrl != null) {
-            serializer.attribute(NS, REFERENCE_URL_ATTR, referenceUrl);
+            attributes.put(REFERENCE_URL_ATTR, referenceUrl);
         }
 
         if (logUrl != null) {
-            serializer.attribute(NS, LOG_URL_ATTR, logUrl);
+            attributes.put(LOG_URL_ATTR, logUrl);
         }
 
         // Device Info
-        Set<String> devices = result.getDeviceSerials();
-        StringBuilder deviceList = new StringBuilder();
-        boolean first = true;
-        for (String device : devices) {
-            if (first) {
-                first = false;
-            } else {
-                deviceList.append(",");
-            }
-            deviceList.append(device);
-        }
-        serializer.attribute(NS, DEVICES_ATTR, deviceList.toString());
+        String devices = String.join(",", result.getDeviceSerials());
+        attributes.put(DEVICES_ATTR, devices);
 
         // Host Info
         String hostName = "";
         try {
             hostName = InetAddress.getLocalHost().getHostName();
         } catch (UnknownHostException ignored) {}
-        serializer.attribute(NS, HOST_NAME_ATTR, hostName);
-        serializer.attribute(NS, OS_NAME_ATTR, System.getProperty("os.name"));
-        serializer.attribute(NS, OS_VERSION_ATTR, System.getProperty("os.version"));
-        serializer.attribute(NS, OS_ARCH_ATTR, System.getProperty("os.arch"));
-        serializer.attribute(NS, JAVA_VENDOR_ATTR, System.getProperty("java.vendor"));
-        serializer.attribute(NS, JAVA_VERSION_ATTR, System.getProperty("java.version"));
+        attributes.put(HOST_NAME_ATTR, hostName);
+        attributes.put(OS_NAME_ATTR, System.getProperty("os.name"));
+        attributes.put(OS_VERSION_ATTR, System.getProperty("os.version"));
+        attributes.put(OS_ARCH_ATTR, System.getProperty("os.arch"));
+        attributes.put(JAVA_VENDOR_ATTR, System.getProperty("java.vendor"));
+        attributes.put(JAVA_VERSION_ATTR, System.getProperty("java.version"));
+
+        // Build Info
+        Map<String, String> invocationInfo = result.getInvocationInfo();
+        if (Strings.isNullOrEmpty(result.getBuildFingerprint())
+                && invocationInfo.containsKey(BUILD_FINGERPRINT)) {
+            result.setBuildFingerprint(invocationInfo.get(BUILD_FINGERPRINT));
+        }
+
+        Map<String, Boolean> modulesDone = new LinkedHashMap<>();
+        for (IModuleResult module : result.getModules()) {
+            modulesDone.put(module.getId(), module.isDone());
+        }
+        try (OutputStream stream = new FileOutputStream(resultFile)) {
+            XmlSerializer serializer =
+                    startResultDocument(stream, attributes, invocationInfo,
+                            ((InvocationResult) result).getRunHistories(), passed, failed,
+                            result.getModuleCompleteCount(), modulesDone.size());
+
+            // Results
+            for (IModuleResult module : result.getModules()) {
+                serializeModule(serializer, module);
+            }
+            serializer.endDocument();
+        }
+        writeSummary(resultDir, resultFile, startTime, endTime, suitePlan,
+                nullToEmpty(commandLineArgs), devices, invocationInfo, passed, failed,
+                result.getNotExecuted(), modulesDone);
+        createChecksum(resultDir, result);
+        return resultFile;
+    }
+
+    private static void putTimeAttributes(
+            Map<String, String> attributes, long startTime, long endTime) {
+        attributes.put(START_TIME_ATTR, String.valueOf(startTime));
+        attributes.put(END_TIME_ATTR, String.valueOf(endTime));
+        attributes.put(START_DISPLAY_TIME_ATTR, toReadableDateString(startTime));
+        attributes.put(END_DISPLAY_TIME_ATTR, toReadableDateString(endTime));
+    }
+
+    /**
+     * Creates a serializer writing a result file to the given stream, and writes everything up to
+     * the first Module tag. Shared by {@link #writeResults} and {@link #mergeResults}.
+     *
+     * @param attributes the attributes of the Result tag, in order
+     * @param invocationInfo the attributes of the Build tag
+     * @param runHistories the start and end times of the previous runs
+     * @param passed the number of passed tests of the Summary tag
+     * @param failed the number of failed tests of the Summary tag
+     * @param modulesDone the number of done modules of the Summary tag
+     * @param modulesTotal the number of modules of the Summary tag
+     */
+    private static XmlSerializer startResultDocument(OutputStream stream,
+            Map<String, String> attributes, Map<String, String> invocationInfo,
+            Collection<InvocationResult.RunHistory> runHistories, int passed, int failed,
+            int modulesDone, int modulesTotal) throws IOException, XmlPullParserException {
+        XmlSerializer serializer = XmlPullParserFactory.newInstance(TYPE, null).newSerializer();
+        serializer.setOutput(stream, ENCODING);
+        serializer.startDocument(ENCODING, false);
+        serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        serializer.processingInstruction(
+                "xml-stylesheet type=\"text/xsl\" href=\"compatibility_result.xsl\"");
+        serializer.startTag(NS, RESULT_TAG);
+        for (Entry<String, String> entry : attributes.entrySet()) {
+            serializer.attribute(NS, entry.getKey(), entry.getValue());
+        }
 
         // Build Info
         serializer.startTag(NS, BUILD_TAG);
-        for (Entry<String, String> entry : result.getInvocationInfo().entrySet()) {
+        for (Entry<String, String> entry : invocationInfo.entrySet()) {
             serializer.attribute(NS, entry.getKey(), entry.getValue());
-            if (Strings.isNullOrEmpty(result.getBuildFingerprint()) &&
-                entry.getKey().equals(BUILD_FINGERPRINT)) {
-                result.setBuildFingerprint(entry.getValue());
-            }
         }
         serializer.endTag(NS, BUILD_TAG);
 
         // Run history - this contains a list of start and end times of previous runs. More
         // information may be added in the future.
-        Collection<InvocationResult.RunHistory> runHistories =
-                ((InvocationResult) result).getRunHistories();
         if (!runHistories.isEmpty()) {
             serializer.startTag(NS, RUN_HISTORY_TAG);
             for (InvocationResult.RunHistory runHistory : runHistories) {
@@ -494,87 +748,530 @@ public class ResultHandler {
         serializer.startTag(NS, SUMMARY_TAG);
         serializer.attribute(NS, PASS_ATTR, Integer.toString(passed));
         serializer.attribute(NS, FAILED_ATTR, Integer.toString(failed));
-        serializer.attribute(NS, MODULES_DONE_ATTR,
-                Integer.toString(result.getModuleCompleteCount()));
-        serializer.attribute(NS, MODULES_TOTAL_ATTR,
-                Integer.toString(result.getModules().size()));
+        serializer.attribute(NS, MODULES_DONE_ATTR, Integer.toString(modulesDone));
+        serializer.attribute(NS, MODULES_TOTAL_ATTR, Integer.toString(modulesTotal));
         serializer.endTag(NS, SUMMARY_TAG);
+        return serializer;
+    }
 
-        // Results
-        for (IModuleResult module : result.getModules()) {
-            serializer.startTag(NS, MODULE_TAG);
-            serializer.attribute(NS, NAME_ATTR, module.getName());
-            serializer.attribute(NS, ABI_ATTR, module.getAbi());
-            serializer.attribute(NS, RUNTIME_ATTR, String.valueOf(module.getRuntime()));
-            serializer.attribute(NS, DONE_ATTR, Boolean.toString(module.isDone()));
-            serializer.attribute(NS, PASS_ATTR,
-                    Integer.toString(module.countResults(TestStatus.PASS)));
-            for (ICaseResult cr : module.getResults()) {
-                serializer.startTag(NS, CASE_TAG);
-                serializer.attribute(NS, NAME_ATTR, cr.getName());
-                for (ITestResult r : cr.getResults()) {
-                    TestStatus status = r.getResultStatus();
-                    if (status == null) {
-                        continue; // test was not executed, don't report
-                    }
-                    serializer.startTag(NS, TEST_TAG);
-                    serializer.attribute(NS, RESULT_ATTR, status.getValue());
-                    serializer.attribute(NS, NAME_ATTR, r.getName());
-                    if (r.isSkipped()) {
-                        serializer.attribute(NS, SKIPPED_ATTR, Boolean.toString(true));
+    /**
+     * Gets the fingerprint of the device under test from the attributes of a Build tag, ignoring
+     * the overrides made by test suites (namely STS) for APFE build association.
+     */
+    private static String getBuildFingerprint(Map<String, String> invocationInfo) {
+        String unalteredFingerprint = invocationInfo.get(BUILD_FINGERPRINT_UNALTERED);
+        return Strings.isNullOrEmpty(unalteredFingerprint)
+                ? invocationInfo.get(BUILD_FINGERPRINT)
+                : unalteredFingerprint;
+    }
+
+    private static void serializeModule(XmlSerializer serializer, IModuleResult module)
+            throws IOException {
+        serializer.startTag(NS, MODULE_TAG);
+        serializer.attribute(NS, NAME_ATTR, module.getName());
+        serializer.attribute(NS, ABI_ATTR, module.getAbi());
+        serializer.attribute(NS, RUNTIME_ATTR, String.valueOf(module.getRuntime()));
+        serializer.attribute(NS, DONE_ATTR, Boolean.toString(module.isDone()));
+        serializer.attribute(NS, PASS_ATTR,
+                Integer.toString(module.countResults(TestStatus.PASS)));
+        for (ICaseResult cr : module.getResults()) {
+            serializeCase(serializer, cr);
+        }
+        serializer.endTag(NS, MODULE_TAG);
+    }
+
+    private static void serializeCase(XmlSerializer serializer, ICaseResult cr)
+            throws IOException {
+        serializer.startTag(NS, CASE_TAG);
+        serializer.attribute(NS, NAME_ATTR, cr.getName());
+        for (ITestResult r : cr.getResults()) {
+            serializeTest(serializer, r);
+        }
+        serializer.endTag(NS, CASE_TAG);
+    }
+
+    private static void serializeTest(XmlSerializer serializer, ITestResult r)
+            throws IOException {
+        TestStatus status = r.getResultStatus();
+        if (status == null) {
+            return; // test was not executed, don't report
+        }
+        serializer.startTag(NS, TEST_TAG);
+        serializer.attribute(NS, RESULT_ATTR, status.getValue());
+        serializer.attribute(NS, NAME_ATTR, r.getName());
+        if (r.isSkipped()) {
+            serializer.attribute(NS, SKIPPED_ATTR, Boolean.toString(true));
+        }
+        String message = r.getMessage();
+        if (message != null) {
+            serializer.startTag(NS, FAILURE_TAG);
+            serializer.attribute(NS, MESSAGE_ATTR, message);
+            String stackTrace = r.getStackTrace();
+            if (stackTrace != null) {
+                serializer.startTag(NS, STACK_TAG);
+                serializer.text(stackTrace);
+                serializer.endTag(NS, STACK_TAG);
+            }
+            serializer.endTag(NS, FAILURE_TAG);
+        }
+        String bugreport = r.getBugReport();
+        if (bugreport != null) {
+            serializer.startTag(NS, BUGREPORT_TAG);
+            serializer.text(bugreport);
+            serializer.endTag(NS, BUGREPORT_TAG);
+        }
+        String logcat = r.getLog();
+        if (logcat != null) {
+            serializer.startTag(NS, LOGCAT_TAG);
+            serializer.text(logcat);
+            serializer.endTag(NS, LOGCAT_TAG);
+        }
+        String screenshot = r.getScreenshot();
+        if (screenshot != null) {
+            serializer.startTag(NS, SCREENSHOT_TAG);
+            serializer.text(screenshot);
+            serializer.endTag(NS, SCREENSHOT_TAG);
+        }
+        ReportLog report = r.getReportLog();
+        if (report != null) {
+            ReportLog.serialize(serializer, report);
+        }
+
+        // Test result history contains a list of execution time for each test item.
+        List<TestResultHistory> testResultHistories = r.getTestResultHistories();
+        if (testResultHistories != null) {
+            for (TestResultHistory resultHistory : testResultHistories) {
+                TestResultHistory.serialize(serializer, resultHistory, r.getName());
+            }
+        }
+
+        serializer.endTag(NS, TEST_TAG);
+    }
+
+    /**
+     * Merges new module results into the result of a previous session and writes the merged
+     * result file, without loading the previous result in memory.
+     *
+     * <p>The merged result is the same as the one {@link #writeResults} writes for the result of
+     * {@link #getResultFromDir(File)} with every module of {@code newResult} merged in with
+     * {@link IInvocationResult#mergeModuleResult(IModuleResult)}, except that:
+     * <ul>
+     *   <li>the attributes of the Result tag are kept, but for the start and end times and the
+     *       devices which also include the devices of {@code newResult};</li>
+     *   <li>the attributes of the Build tag are kept, updated with the invocation info of
+     *       {@code newResult};</li>
+     *   <li>the run history is the one of {@code newResult}, or the previous one if it has
+     *       none;</li>
+     *   <li>the previous result is not validated against its checksum.</li>
+     * </ul>
+     *
+     * <p>The previous result file is read twice with an {@link XmlPullParser}: once to count the
+     * results for the Summary tag, and once to write the merged result. Modules without new
+     * results are copied tag by tag, so only the previous results of the module being merged are
+     * held in memory at a time. Modules are expected to be sorted by id in the previous result
+     * file, as written by {@link #writeResults}.
+     *
+     * @param previousResultDir the directory of the result to merge into
+     * @param newResult the new module results
+     * @param resultDir the directory to write the merged result to
+     * @param startTime
+     * @param endTime
+     * @return The result file created.
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public static File mergeResults(
+            File previousResultDir,
+            IInvocationResult newResult,
+            File resultDir,
+            long startTime,
+            long endTime)
+            throws IOException, XmlPullParserException {
+        File previousResultFile = new File(previousResultDir, TEST_RESULT_FILE_NAME);
+        File resultFile = new File(resultDir, TEST_RESULT_FILE_NAME);
+        if (previousResultFile.getCanonicalFile().equals(resultFile.getCanonicalFile())) {
+            throw new IllegalArgumentException(
+                    String.format("Cannot merge %s into itself", previousResultFile));
+        }
+        Map<String, IModuleResult> newModules = new TreeMap<>();
+        for (IModuleResult module : newResult.getModules()) {
+            newModules.put(module.getId(), module);
+        }
+
+        // First pass, count the results of the merged modules.
+        Map<String, ModuleCounts> previousModules =
+                countMergedModules(previousResultFile, newModules);
+        List<IModuleResult> addedModules = new ArrayList<>();
+        ModuleCounts total = new ModuleCounts();
+        for (ModuleCounts counts : previousModules.values()) {
+            total.add(counts);
+        }
+        int notExecuted = 0;
+        for (IModuleResult module : newModules.values()) {
+            if (!previousModules.containsKey(module.getId())) {
+                addedModules.add(module);
+                total.add(new ModuleCounts(module));
+            }
+            notExecuted += module.getNotExecuted();
+        }
+        int modulesTotal = previousModules.size() + addedModules.size();
+
+        // Second pass, copy the previous result to the merged result while merging modules in.
+        ChecksumReporter checksum = ChecksumReporter.create(2 * modulesTotal + total.mTestCount);
+        Map<String, Boolean> modulesDone = new LinkedHashMap<>();
+        Map<String, String> invocationInfo = new LinkedHashMap<>();
+        String suitePlan;
+        String commandLineArgs;
+        String devices;
+        try (FileReader reader = new FileReader(previousResultFile);
+                OutputStream stream = new FileOutputStream(resultFile)) {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(reader);
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, RESULT_TAG);
+            suitePlan = parser.getAttributeValue(NS, SUITE_PLAN_ATTR);
+            commandLineArgs = nullToEmpty(parser.getAttributeValue(NS, COMMAND_LINE_ARGS));
+            Set<String> deviceSerials = new LinkedHashSet<>(
+                    Arrays.asList(parser.getAttributeValue(NS, DEVICES_ATTR).split(",")));
+            deviceSerials.addAll(newResult.getDeviceSerials());
+            devices = String.join(",", deviceSerials);
+            Map<String, String> resultAttributes = getAttributes(parser);
+            putTimeAttributes(resultAttributes, startTime, endTime);
+            resultAttributes.put(DEVICES_ATTR, devices);
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, BUILD_TAG);
+            invocationInfo.putAll(getAttributes(parser));
+            invocationInfo.putAll(newResult.getInvocationInfo());
+            skipCurrentTag(parser);
+            String fingerprint = getBuildFingerprint(invocationInfo);
+
+            Collection<InvocationResult.RunHistory> runHistories =
+                    newResult instanceof InvocationResult
+                            ? ((InvocationResult) newResult).getRunHistories()
+                            : Collections.emptyList();
+            parser.nextTag();
+            if (RUN_HISTORY_TAG.equals(parser.getName())) {
+                Collection<InvocationResult.RunHistory> previousRunHistories =
+                        readRunHistories(parser);
+                if (runHistories.isEmpty()) {
+                    runHistories = previousRunHistories;
+                }
+                parser.nextTag();
+            }
+
+            parser.require(XmlPullParser.START_TAG, NS, SUMMARY_TAG);
+            skipCurrentTag(parser);
+            XmlSerializer serializer =
+                    startResultDocument(stream, resultAttributes, invocationInfo, runHistories,
+                            total.mPassed, total.mFailed, total.mModulesDone, modulesTotal);
+
+            // Modules that only have new results are written in order among the previous ones.
+            Iterator<IModuleResult> added = addedModules.iterator();
+            IModuleResult nextAdded = added.hasNext() ? added.next() : null;
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                parser.require(XmlPullParser.START_TAG, NS, MODULE_TAG);
+                String moduleId = getModuleId(parser);
+                while (nextAdded != null && nextAdded.getId().compareTo(moduleId) < 0) {
+                    writeMergedModule(serializer, nextAdded, checksum, fingerprint);
+                    modulesDone.put(nextAdded.getId(), nextAdded.isDone());
+                    nextAdded = added.hasNext() ? added.next() : null;
+                }
+                IModuleResult newModule = newModules.get(moduleId);
+                if (newModule == null) {
+                    ModuleCounts counts = previousModules.get(moduleId);
+                    copyModule(parser, serializer, moduleId, checksum, fingerprint);
+                    checksum.addModuleResult(moduleId, counts.mModulesDone > 0, counts.mFailed,
+                            fingerprint);
+                    modulesDone.put(moduleId, counts.mModulesDone > 0);
+                } else {
+                    IModuleResult module = parseMergedModule(parser, newModule);
+                    writeMergedModule(serializer, module, checksum, fingerprint);
+                    modulesDone.put(moduleId, module.isDone());
+                }
+            }
+            parser.require(XmlPullParser.END_TAG, NS, RESULT_TAG);
+            while (nextAdded != null) {
+                writeMergedModule(serializer, nextAdded, checksum, fingerprint);
+                modulesDone.put(nextAdded.getId(), nextAdded.isDone());
+                nextAdded = added.hasNext() ? added.next() : null;
+            }
+            serializer.endDocument();
+        }
+        writeSummary(resultDir, resultFile, startTime, endTime, suitePlan, commandLineArgs,
+                devices, invocationInfo, total.mPassed, total.mFailed, notExecuted, modulesDone);
+        if (newResult.getRetryChecksumStatus() == RetryChecksumStatus.RetryWithoutChecksum) {
+            copyRetryChecksum(resultDir, previousResultDir);
+        } else {
+            // Do not disrupt the process if there is a problem generating checksum.
+            boolean unused = checksum.tryAddDirectoryAndSave(resultDir);
+        }
+        return resultFile;
+    }
+
+    /** Counts of the results of one or several modules of a merged result. */
+    private static final class ModuleCounts {
+        int mPassed;
+        int mFailed;
+        int mModulesDone;
+        int mTestCount;
+
+        ModuleCounts() {}
+
+        ModuleCounts(IModuleResult module) {
+            mPassed = module.countResults(TestStatus.PASS);
+            mFailed = module.countResults(TestStatus.FAIL);
+            mModulesDone = module.isDone() ? 1 : 0;
+            for (ICaseResult caseResult : module.getResults()) {
+                for (ITestResult testResult : caseResult.getResults()) {
+                    // Tests without a result are not written.
+                    if (testResult.getResultStatus() != null) {
+                        mTestCount++;
                     }
-                    String message = r.getMessage();
-                    if (message != null) {
-                        serializer.startTag(NS, FAILURE_TAG);
-                        serializer.attribute(NS, MESSAGE_ATTR, message);
-                        String stackTrace = r.getStackTrace();
-                        if (stackTrace != null) {
-                            serializer.startTag(NS, STACK_TAG);
-                            serializer.text(stackTrace);
-                            serializer.endTag(NS, STACK_TAG);
+                }
+            }
+        }
+
+        void add(ModuleCounts counts) {
+            mPassed += counts.mPassed;
+            mFailed += counts.mFailed;
+            mModulesDone += counts.mModulesDone;
+            mTestCount += counts.mTestCount;
+        }
+    }
+
+    /**
+     * Counts the results of every module of a result file once merged with the given modules,
+     * keyed by module id in file order. Only the modules with new results are parsed.
+     */
+    private static Map<String, ModuleCounts> countMergedModules(File resultFile,
+            Map<String, IModuleResult> newModules) throws XmlPullParserException, IOException {
+        Map<String, ModuleCounts> modules = new LinkedHashMap<>();
+        try (FileReader reader = new FileReader(resultFile)) {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(reader);
+
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, RESULT_TAG);
+            parser.nextTag();
+            parser.require(XmlPullParser.START_TAG, NS, BUILD_TAG);
+            skipCurrentTag(parser);
+            parser.nextTag();
+            if (RUN_HISTORY_TAG.equals(parser.getName())) {
+                skipCurrentTag(parser);
+                parser.nextTag();
+            }
+            parser.require(XmlPullParser.START_TAG, NS, SUMMARY_TAG);
+            skipCurrentTag(parser);
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                parser.require(XmlPullParser.START_TAG, NS, MODULE_TAG);
+                String moduleId = getModuleId(parser);
+                IModuleResult newModule = newModules.get(moduleId);
+                if (newModule != null) {
+                    modules.put(moduleId, new ModuleCounts(parseMergedModule(parser, newModule)));
+                    continue;
+                }
+                ModuleCounts counts = new ModuleCounts();
+                counts.mModulesDone =
+                        Boolean.parseBoolean(parser.getAttributeValue(NS, DONE_ATTR)) ? 1 : 0;
+                int depth = 1;
+                while (depth > 0) {
+                    int event = parser.next();
+                    if (event == XmlPullParser.END_TAG) {
+                        depth--;
+                    } else if (event == XmlPullParser.START_TAG) {
+                        depth++;
+                        if (depth == 3 && TEST_TAG.equals(parser.getName())) {
+                            TestStatus status = getTestStatus(parser);
+                            if (status == TestStatus.PASS) {
+                                counts.mPassed++;
+                            } else if (status == TestStatus.FAIL) {
+                                counts.mFailed++;
+                            }
+                            if (status != null) {
+                                counts.mTestCount++;
+                            }
                         }
-                        serializer.endTag(NS, FAILURE_TAG);
-                    }
-                    String bugreport = r.getBugReport();
-                    if (bugreport != null) {
-                        serializer.startTag(NS, BUGREPORT_TAG);
-                        serializer.text(bugreport);
-                        serializer.endTag(NS, BUGREPORT_TAG);
+                    } else if (event == XmlPullParser.END_DOCUMENT) {
+                        throw new XmlPullParserException("Unexpected end of " + resultFile);
                     }
-                    String logcat = r.getLog();
-                    if (logcat != null) {
-                        serializer.startTag(NS, LOGCAT_TAG);
-                        serializer.text(logcat);
-                        serializer.endTag(NS, LOGCAT_TAG);
+                }
+                modules.put(moduleId, counts);
+            }
+            parser.require(XmlPullParser.END_TAG, NS, RESULT_TAG);
+        }
+        return modules;
+    }
+
+    /** Gets the id of the module of the current Module tag. */
+    private static String getModuleId(XmlPullParser parser) {
+        return AbiUtils.createId(parser.getAttributeValue(NS, ABI_ATTR),
+                parser.getAttributeValue(NS, NAME_ATTR));
+    }
+
+    /** Gets the attributes of the current start tag, in order. */
+    private static Map<String, String> getAttributes(XmlPullParser parser) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            attributes.put(parser.getAttributeName(i), parser.getAttributeValue(i));
+        }
+        return attributes;
+    }
+
+    /**
+     * Parses the current Module tag and merges the given module into it, as
+     * {@link #getResultFromDir(File)} followed by
+     * {@link IInvocationResult#mergeModuleResult(IModuleResult)} would.
+     */
+    private static IModuleResult parseMergedModule(XmlPullParser parser, IModuleResult newModule)
+            throws XmlPullParserException, IOException {
+        IModuleResult module = new ModuleResult(newModule.getId());
+        module.initializeDone(Boolean.parseBoolean(parser.getAttributeValue(NS, DONE_ATTR)));
+        module.addRuntime(Long.parseLong(parser.getAttributeValue(NS, RUNTIME_ATTR)));
+        parseModule(parser, module);
+        module.mergeFrom(newModule);
+        return module;
+    }
+
+    private static void writeMergedModule(XmlSerializer serializer, IModuleResult module,
+            ChecksumReporter checksum, String buildFingerprint) throws IOException {
+        serializeModule(serializer, module);
+        checksum.addModuleResult(module, buildFingerprint);
+        for (ICaseResult caseResult : module.getResults()) {
+            for (ITestResult testResult : caseResult.getResults()) {
+                // Tests without a result are not written.
+                if (testResult.getResultStatus() != null) {
+                    checksum.addTestResult(testResult, module, buildFingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the current Module tag and its content to the serializer, adding the checksum of
+     * every test along the way.
+     */
+    private static void copyModule(XmlPullParser parser, XmlSerializer serializer,
+            String moduleId, ChecksumReporter checksum, String buildFingerprint)
+            throws XmlPullParserException, IOException {
+        copyStartTag(parser, serializer);
+        String caseName = null;
+        String testName = null;
+        TestStatus status = null;
+        StringBuilder stackTrace = null;
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    copyStartTag(parser, serializer);
+                    if (depth == 2 && CASE_TAG.equals(parser.getName())) {
+                        caseName = parser.getAttributeValue(NS, NAME_ATTR);
+                    } else if (depth == 3 && TEST_TAG.equals(parser.getName())) {
+                        testName = parser.getAttributeValue(NS, NAME_ATTR);
+                        status = getTestStatus(parser);
+                        stackTrace = null;
+                    } else if (depth == 5 && STACK_TAG.equals(parser.getName())) {
+                        stackTrace = new StringBuilder();
                     }
-                    String screenshot = r.getScreenshot();
-                    if (screenshot != null) {
-                        serializer.startTag(NS, SCREENSHOT_TAG);
-                        serializer.text(screenshot);
-                        serializer.endTag(NS, SCREENSHOT_TAG);
+                    break;
+                case XmlPullParser.TEXT:
+                    // Indentation is written by the serializer.
+                    if (!parser.isWhitespace()) {
+                        serializer.text(parser.getText());
+                        if (depth == 5 && stackTrace != null) {
+                            stackTrace.append(parser.getText());
+                        }
                     }
-                    ReportLog report = r.getReportLog();
-                    if (report != null) {
-                        ReportLog.serialize(serializer, report);
+                    break;
+                case XmlPullParser.END_TAG:
+                    if (depth == 3 && TEST_TAG.equals(parser.getName()) && status != null) {
+                        checksum.addTestResult(moduleId, caseName + "#" + testName,
+                                status.getValue(),
+                                stackTrace != null ? stackTrace.toString() : null,
+                                buildFingerprint);
                     }
+                    serializer.endTag(NS, parser.getName());
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document");
+            }
+        }
+    }
 
-                    // Test result history contains a list of execution time for each test item.
-                    List<TestResultHistory> testResultHistories = r.getTestResultHistories();
-                    if (testResultHistories != null) {
-                        for (TestResultHistory resultHistory : testResultHistories) {
-                            TestResultHistory.serialize(serializer, resultHistory, r.getName());
-                        }
-                    }
+    /** Reads the Run tags of the current RunHistory tag, leaving the parser on its end tag. */
+    private static Collection<InvocationResult.RunHistory> readRunHistories(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        List<InvocationResult.RunHistory> runHistories = new ArrayList<>();
+        while (parser.nextTag() == XmlPullParser.START_TAG) {
+            parser.require(XmlPullParser.START_TAG, NS, RUN_TAG);
+            InvocationResult.RunHistory runHistory = new InvocationResult.RunHistory();
+            runHistory.startTime = Long.parseLong(parser.getAttributeValue(NS, START_TIME_ATTR));
+            runHistory.endTime = Long.parseLong(parser.getAttributeValue(NS, END_TIME_ATTR));
+            runHistories.add(runHistory);
+            skipCurrentTag(parser);
+        }
+        parser.require(XmlPullParser.END_TAG, NS, RUN_HISTORY_TAG);
+        return runHistories;
+    }
 
-                    serializer.endTag(NS, TEST_TAG);
+    private static void copyStartTag(XmlPullParser parser, XmlSerializer serializer)
+            throws IOException {
+        serializer.startTag(NS, parser.getName());
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            serializer.attribute(NS, parser.getAttributeName(i), parser.getAttributeValue(i));
+        }
+    }
+
+    /**
+     * Writes the summary file read by {@link #getLightResults(File)}, holding the same information
+     * as a {@link LightInvocationResult} parsed from the result file written from the given result.
+     */
+    private static void writeSummary(File resultDir, File resultFile, long startTime,
+            long endTime, String suitePlan, String commandLineArgs, String devices,
+            Map<String, String> invocationInfo, int passed, int failed, int notExecuted,
+            Map<String, Boolean> modulesDone) {
+        try {
+            JSONObject build = new JSONObject();
+            for (String key : new String[] {BUILD_ID, BUILD_PRODUCT, RUN_HISTORY_ATTR}) {
+                if (invocationInfo.containsKey(key)) {
+                    build.put(key, invocationInfo.get(key));
                 }
-                serializer.endTag(NS, CASE_TAG);
             }
-            serializer.endTag(NS, MODULE_TAG);
+            String fingerprint = getBuildFingerprint(invocationInfo);
+
+            JSONArray modules = new JSONArray();
+            for (Entry<String, Boolean> module : modulesDone.entrySet()) {
+                modules.put(new JSONObject()
+                        .put(SUMMARY_ID_KEY, module.getKey())
+                        .put(DONE_ATTR, module.getValue()));
+            }
+
+            JSONObject summary = new JSONObject()
+                    .put(SUMMARY_VERSION_KEY, SUMMARY_FILE_VERSION)
+                    .put(SUMMARY_RESULT_LENGTH_KEY, resultFile.length())
+                    .put(SUMMARY_RESULT_MODIFIED_KEY, resultFile.lastModified())
+                    .put(START_TIME_ATTR, startTime)
+                    .put(END_TIME_ATTR, endTime)
+                    .put(SUITE_PLAN_ATTR, suitePlan)
+                    .put(COMMAND_LINE_ARGS, commandLineArgs)
+                    .put(DEVICES_ATTR, devices)
+                    .put(SUMMARY_BUILD_KEY, build)
+                    .put(PASS_ATTR, passed)
+                    .put(FAILED_ATTR, failed)
+                    .put(SUMMARY_NOT_EXECUTED_KEY, notExecuted)
+                    .put(SUMMARY_MODULES_KEY, modules);
+            if (fingerprint != null) {
+                summary.put(BUILD_FINGERPRINT, fingerprint);
+            }
+            Files.write(new File(resultDir, TEST_RESULT_SUMMARY_FILE_NAME).toPath(),
+                    summary.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            // Do not disrupt the process, results are listed from the result file instead.
+            System.out.println(String.format("Failed to write result summary: %s", e));
         }
-        serializer.endDocument();
-        createChecksum(resultDir, result);
-        return resultFile;
     }
 
     /**
@@ -601,28 +1298,32 @@ public class ResultHandler {
                 boolean unused = ChecksumReporter.tryCreateChecksum(resultDir, invocationResult);
                 break;
             case RetryWithoutChecksum:
-                // If the previous run has an invalid checksum file,
-                // copy it into current results folder for future troubleshooting
-                File retryDirectory = invocationResult.getRetryDirectory();
-                Path retryChecksum = FileSystems.getDefault().getPath(
-                        retryDirectory.getAbsolutePath(), ChecksumReporter.NAME);
-                if (!retryChecksum.toFile().exists()) {
-                    // if no checksum file, check for a copy from a previous retry
-                    retryChecksum = FileSystems.getDefault().getPath(
-                            retryDirectory.getAbsolutePath(), ChecksumReporter.PREV_NAME);
-                }
-
-                if (retryChecksum.toFile().exists()) {
-                    File checksumCopy = new File(resultDir, ChecksumReporter.PREV_NAME);
-                    try (FileOutputStream stream = new FileOutputStream(checksumCopy)) {
-                        Files.copy(retryChecksum, stream);
-                    } catch (IOException e) {
-                        // Do not disrupt the process if there is a problem copying checksum
-                    }
-                }
+                copyRetryChecksum(resultDir, invocationResult.getRetryDirectory());
         }
     }
 
+    /**
+     * If the previous run has an invalid checksum file, copy it into current results folder for
+     * future troubleshooting.
+     */
+    private static void copyRetryChecksum(File resultDir, File retryDirectory) {
+        Path retryChecksum = FileSystems.getDefault().getPath(
+                retryDirectory.getAbsolutePath(), ChecksumReporter.NAME);
+        if (!retryChecksum.toFile().exists()) {
+            // if no checksum file, check for a copy from a previous retry
+            retryChecksum = FileSystems.getDefault().getPath(
+                    retryDirectory.getAbsolutePath(), ChecksumReporter.PREV_NAME);
+        }
+
+        if (retryChecksum.toFile().exists()) {
+            File checksumCopy = new File(resultDir, ChecksumReporter.PREV_NAME);
+            try (FileOutputStream stream = new FileOutputStream(checksumCopy)) {
+                Files.copy(retryChecksum, stream);
+            } catch (IOException e) {
+                // Do not disrupt the process if there is a problem copying checksum
+            }
+        }
+    }
 
     /**
      * Find the IInvocationResult for the given sessionId.
@@ -18,20 +18,50 @@ package com.android.compatibility.common.util;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class ZipUtil {
 
+    /** Extensions of already compressed files, which are stored without deflating them. */
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            ".7z", ".apk", ".gz", ".jar", ".jpeg", ".jpg", ".mp4", ".perfetto-trace", ".png",
+            ".webm", ".webp", ".xz", ".zip", ".zst"));
+
+    /** Deflated entries up to this size are kept in memory rather than in a temporary file. */
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 1 << 20;
+
+    /** Number of entries compressed ahead of the one being written, per thread. */
+    private static final int ENTRIES_IN_FLIGHT_PER_THREAD = 4;
+
     /**
      * Utility method to create a zip file containing the given directory and
      * all its contents.
@@ -70,6 +100,418 @@ public class ZipUtil {
         }
     }
 
+    /**
+     * Creates a zip file containing the given directory and all its contents, deflating files
+     * with the given number of threads.
+     *
+     * @see #createZip(List, File, int)
+     */
+    public static void createZip(File dir, File zipFile, int parallelism) throws IOException {
+        createZip(Collections.singletonList(dir), zipFile, parallelism);
+    }
+
+    /**
+     * Creates a zip file containing the given files and directories and all their contents,
+     * deflating files with the given number of threads.
+     *
+     * <p>The entries are the same and in the same order as the ones of {@link #createZip(List,
+     * File)}. Each file is deflated on its own into a memory buffer, or into a temporary file next
+     * to the zip file if it is large, and the writing thread appends the deflated entries to the
+     * archive in order. Already compressed files, such as screenshots, zips and perfetto traces,
+     * and files that deflate does not make smaller are stored as is.
+     *
+     * @param files list of files or directories to zip
+     * @param zipFile the zip file to create - it should not already exist
+     * @param parallelism the number of threads deflating files
+     * @throws IOException if failed to create zip file
+     */
+    public static void createZip(List<File> files, File zipFile, int parallelism)
+            throws IOException {
+        List<ZipSource> sources = new ArrayList<>();
+        for (File file : files) {
+            listSources(file, "", sources);
+        }
+        File tempDir = zipFile.getAbsoluteFile().getParentFile();
+        int maxInFlight = Math.max(1, parallelism) * ENTRIES_IN_FLIGHT_PER_THREAD;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        ArrayDeque<Future<DeflatedEntry>> pending = new ArrayDeque<>();
+        try (RawZipWriter writer = new RawZipWriter(zipFile)) {
+            int next = 0;
+            for (int i = 0; i < sources.size(); i++) {
+                while (next < sources.size() && pending.size() < maxInFlight) {
+                    ZipSource source = sources.get(next++);
+                    pending.add(executor.submit(() -> deflate(source, tempDir)));
+                }
+                DeflatedEntry entry = getEntry(pending.remove());
+                try {
+                    writer.write(entry);
+                } finally {
+                    entry.deleteTempFile();
+                }
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            discard(executor, pending);
+            zipFile.delete();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Lists the entries of the given file and its contents, in the order of addToZip. */
+    private static void listSources(File file, String parentPath, List<ZipSource> sources)
+            throws IOException {
+        if (!file.isDirectory()) {
+            sources.add(new ZipSource(parentPath + file.getName(), file, false));
+            return;
+        }
+        String path = parentPath + file.getName() + "/";
+        sources.add(new ZipSource(path, file, true));
+        File[] subFiles = file.listFiles();
+        if (subFiles == null) {
+            throw new IOException(String.format("Could not read directory %s",
+                    file.getAbsolutePath()));
+        }
+        for (File subFile : subFiles) {
+            listSources(subFile, path, sources);
+        }
+    }
+
+    /** Waits for an entry to be deflated, rethrowing the failure of the task if any. */
+    private static DeflatedEntry getEntry(Future<DeflatedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating zip file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Stops the deflating tasks and deletes the temporary files of the ones that completed. */
+    private static void discard(
+            ExecutorService executor, ArrayDeque<Future<DeflatedEntry>> pending) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<DeflatedEntry> future : pending) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get().deleteTempFile();
+                } catch (InterruptedException | ExecutionException e) {
+                    // Nothing to delete.
+                }
+            }
+        }
+    }
+
+    /**
+     * Deflates the given file into a memory buffer or a temporary file in the given directory,
+     * or only computes its checksum if it is stored as is.
+     */
+    private static DeflatedEntry deflate(ZipSource source, File tempDir) throws IOException {
+        DeflatedEntry entry = new DeflatedEntry(source);
+        if (source.mIsDirectory) {
+            return entry;
+        }
+        CRC32 crc = new CRC32();
+        if (isStored(source.mFile)) {
+            try (InputStream input = new CheckedInputStream(
+                    new FileInputStream(source.mFile), crc)) {
+                entry.mSize = skipAll(input);
+            }
+            entry.mCrc = crc.getValue();
+            entry.mCompressedSize = entry.mSize;
+            return entry;
+        }
+        ByteArrayOutputStream buffer = null;
+        OutputStream output;
+        if (source.mFile.length() <= MAX_BUFFERED_ENTRY_SIZE) {
+            buffer = new ByteArrayOutputStream((int) source.mFile.length() / 2 + 64);
+            output = buffer;
+        } else {
+            entry.mTempFile = File.createTempFile("zip", ".tmp", tempDir);
+            output = new BufferedOutputStream(new FileOutputStream(entry.mTempFile));
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap= */ true);
+        try (InputStream input = new CheckedInputStream(
+                        new FileInputStream(source.mFile), crc);
+                DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater)) {
+            StreamUtil.copyStreams(input, deflated);
+            deflated.finish();
+            entry.mSize = deflater.getBytesRead();
+            entry.mCompressedSize = deflater.getBytesWritten();
+        } catch (IOException | RuntimeException e) {
+            entry.deleteTempFile();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        entry.mCrc = crc.getValue();
+        if (entry.mCompressedSize >= entry.mSize) {
+            // Deflating did not help, store the file instead.
+            entry.deleteTempFile();
+            entry.mCompressedSize = entry.mSize;
+            return entry;
+        }
+        entry.mMethod = ZipEntry.DEFLATED;
+        entry.mBuffer = buffer != null ? buffer.toByteArray() : null;
+        return entry;
+    }
+
+    private static boolean isStored(File file) {
+        String name = file.getName().toLowerCase(Locale.US);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    private static long skipAll(InputStream input) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** A file or directory to add to the zip file, with its entry name. */
+    private static final class ZipSource {
+        final String mName;
+        final File mFile;
+        final boolean mIsDirectory;
+
+        ZipSource(String name, File file, boolean isDirectory) {
+            mName = name;
+            mFile = file;
+            mIsDirectory = isDirectory;
+        }
+    }
+
+    /**
+     * An entry ready to be appended to the zip file. Its data is either in {@link #mBuffer}, in
+     * {@link #mTempFile} or, for stored entries, in the source file itself.
+     */
+    private static final class DeflatedEntry {
+        final ZipSource mSource;
+        final long mTime;
+        int mMethod = ZipEntry.STORED;
+        long mCrc;
+        long mSize;
+        long mCompressedSize;
+        byte[] mBuffer;
+        File mTempFile;
+
+        DeflatedEntry(ZipSource source) {
+            mSource = source;
+            mTime = source.mFile.lastModified();
+        }
+
+        void writeData(OutputStream output) throws IOException {
+            if (mBuffer != null) {
+                output.write(mBuffer);
+                return;
+            }
+            if (mSource.mIsDirectory) {
+                return;
+            }
+            File file = mTempFile != null ? mTempFile : mSource.mFile;
+            long copied;
+            try (InputStream input = new FileInputStream(file)) {
+                copied = copy(input, output, mCompressedSize);
+            }
+            if (copied != mCompressedSize) {
+                throw new IOException(String.format("%s changed while creating zip file",
+                        mSource.mFile.getAbsolutePath()));
+            }
+        }
+
+        void deleteTempFile() {
+            if (mTempFile != null) {
+                mTempFile.delete();
+                mTempFile = null;
+            }
+        }
+
+        private static long copy(InputStream input, OutputStream output, long limit)
+                throws IOException {
+            byte[] buffer = new byte[64 * 1024];
+            long total = 0;
+            int count;
+            while (total < limit && (count = input.read(buffer, 0,
+                    (int) Math.min(buffer.length, limit - total))) != -1) {
+                output.write(buffer, 0, count);
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Writes entries whose data is already deflated, which {@link ZipOutputStream} does not
+     * support. Sizes and checksums are known before each entry is written, so no data descriptor
+     * is needed, and zip64 records are only written when an entry or the archive needs them.
+     */
+    private static final class RawZipWriter implements AutoCloseable {
+        private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+        private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+        private static final int END_SIGNATURE = 0x06054b50;
+        private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+        private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+        private static final short ZIP64_EXTRA_ID = 0x0001;
+        private static final short VERSION = 20;
+        private static final short ZIP64_VERSION = 45;
+        /** General purpose flag telling that names are UTF-8, as set by ZipOutputStream. */
+        private static final short UTF8_FLAG = 0x800;
+        private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+        private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+        private final OutputStream mOutput;
+        private final ByteArrayOutputStream mCentralDirectory = new ByteArrayOutputStream();
+        private long mOffset;
+        private long mCount;
+
+        RawZipWriter(File zipFile) throws IOException {
+            mOutput = new BufferedOutputStream(new FileOutputStream(zipFile), 64 * 1024);
+        }
+
+        void write(DeflatedEntry entry) throws IOException {
+            byte[] name = entry.mSource.mName.getBytes(StandardCharsets.UTF_8);
+            int dosTime = toDosTime(entry.mTime);
+            boolean zip64 = entry.mSize >= ZIP64_MAGIC || entry.mCompressedSize >= ZIP64_MAGIC;
+            ByteBuffer header = newBuffer(30 + name.length + (zip64 ? 20 : 0));
+            header.putInt(LOCAL_HEADER_SIGNATURE);
+            header.putShort(zip64 ? ZIP64_VERSION : VERSION);
+            header.putShort(UTF8_FLAG);
+            header.putShort((short) entry.mMethod);
+            header.putInt(dosTime);
+            header.putInt((int) entry.mCrc);
+            header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.mCompressedSize));
+            header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.mSize));
+            header.putShort((short) name.length);
+            header.putShort((short) (zip64 ? 20 : 0));
+            header.put(name);
+            if (zip64) {
+                header.putShort(ZIP64_EXTRA_ID);
+                header.putShort((short) 16);
+                header.putLong(entry.mSize);
+                header.putLong(entry.mCompressedSize);
+            }
+            mOutput.write(header.array());
+            entry.writeData(mOutput);
+
+            // Only the values that do not fit in the central header go in its zip64 extra field.
+            int extraLength = (entry.mSize >= ZIP64_MAGIC ? 8 : 0)
+                    + (entry.mCompressedSize >= ZIP64_MAGIC ? 8 : 0)
+                    + (mOffset >= ZIP64_MAGIC ? 8 : 0);
+            ByteBuffer central =
+                    newBuffer(46 + name.length + (extraLength > 0 ? 4 + extraLength : 0));
+            central.putInt(CENTRAL_HEADER_SIGNATURE);
+            central.putShort(zip64 || extraLength > 0 ? ZIP64_VERSION : VERSION);
+            central.putShort(zip64 || extraLength > 0 ? ZIP64_VERSION : VERSION);
+            central.putShort(UTF8_FLAG);
+            central.putShort((short) entry.mMethod);
+            central.putInt(dosTime);
+            central.putInt((int) entry.mCrc);
+            central.putInt((int) Math.min(entry.mCompressedSize, ZIP64_MAGIC));
+            central.putInt((int) Math.min(entry.mSize, ZIP64_MAGIC));
+            central.putShort((short) name.length);
+            central.putShort((short) (extraLength > 0 ? 4 + extraLength : 0));
+            central.putShort((short) 0); // comment length
+            central.putShort((short) 0); // disk number
+            central.putShort((short) 0); // internal attributes
+            central.putInt(0); // external attributes
+            central.putInt((int) Math.min(mOffset, ZIP64_MAGIC));
+            central.put(name);
+            if (extraLength > 0) {
+                central.putShort(ZIP64_EXTRA_ID);
+                central.putShort((short) extraLength);
+                if (entry.mSize >= ZIP64_MAGIC) {
+                    central.putLong(entry.mSize);
+                }
+                if (entry.mCompressedSize >= ZIP64_MAGIC) {
+                    central.putLong(entry.mCompressedSize);
+                }
+                if (mOffset >= ZIP64_MAGIC) {
+                    central.putLong(mOffset);
+                }
+            }
+            mCentralDirectory.write(central.array());
+            mOffset += header.capacity() + entry.mCompressedSize;
+            mCount++;
+        }
+
+        void finish() throws IOException {
+            long centralOffset = mOffset;
+            long centralSize = mCentralDirectory.size();
+            mCentralDirectory.writeTo(mOutput);
+            if (mCount >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC
+                    || centralSize >= ZIP64_MAGIC) {
+                ByteBuffer zip64End = newBuffer(56 + 20);
+                zip64End.putInt(ZIP64_END_SIGNATURE);
+                zip64End.putLong(44); // size of the remaining record
+                zip64End.putShort(ZIP64_VERSION);
+                zip64End.putShort(ZIP64_VERSION);
+                zip64End.putInt(0); // disk number
+                zip64End.putInt(0); // disk of the central directory
+                zip64End.putLong(mCount);
+                zip64End.putLong(mCount);
+                zip64End.putLong(centralSize);
+                zip64End.putLong(centralOffset);
+                zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+                zip64End.putInt(0); // disk of the zip64 end record
+                zip64End.putLong(centralOffset + centralSize);
+                zip64End.putInt(1); // number of disks
+                mOutput.write(zip64End.array());
+            }
+            ByteBuffer end = newBuffer(22);
+            end.putInt(END_SIGNATURE);
+            end.putShort((short) 0); // disk number
+            end.putShort((short) 0); // disk of the central directory
+            end.putShort((short) Math.min(mCount, ZIP64_MAGIC_COUNT));
+            end.putShort((short) Math.min(mCount, ZIP64_MAGIC_COUNT));
+            end.putInt((int) Math.min(centralSize, ZIP64_MAGIC));
+            end.putInt((int) Math.min(centralOffset, ZIP64_MAGIC));
+            end.putShort((short) 0); // comment length
+            mOutput.write(end.array());
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOutput.close();
+        }
+
+        private static ByteBuffer newBuffer(int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /** Converts a time in milliseconds to the MS-DOS date and time of zip headers. */
+        private static int toDosTime(long time) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(time);
+            int year = calendar.get(Calendar.YEAR);
+            if (year < 1980) {
+                return (1 << 21) | (1 << 16); // 1980-01-01 00:00:00
+            }
+            return (year - 1980) << 25
+                    | (calendar.get(Calendar.MONTH) + 1) << 21
+                    | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                    | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                    | calendar.get(Calendar.MINUTE) << 5
+                    | calendar.get(Calendar.SECOND) >> 1;
+        }
+    }
+
     /**
      * Recursively adds given file and its contents to ZipOutputStream
      *
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import org.json.JSONArray;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Benchmark comparing {@link CrashUtils#addAllCrashes(String, JSONArray)} on a logcat read into a
+ * String with {@link CrashUtils#addAllCrashes(Reader, JSONArray)} on the logcat file.
+ *
+ * <p>A synthetic logcat is generated from ordinary log lines, with the crashes of the logcat.txt
+ * test asset inserted every few megabytes. For example:
+ *
+ * <pre>java -Xmx4g -cp compatibility-common-util-benchmarks.jar \
+ *     com.android.compatibility.common.util.CrashUtilsBenchmark 500 5</pre>
+ *
+ * <p>The arguments are the size of the logcat in megabytes, 200 by default, and the number of
+ * times both versions are run, 3 by default. Reading the file is included in both times.
+ */
+public final class CrashUtilsBenchmark {
+
+    private static final int CRASH_INTERVAL = 4 * 1024 * 1024;
+    private static final String[] TAGS = {
+        "ActivityManager", "WindowManager", "TestRunner", "PackageManager", "audioserver"
+    };
+
+    private CrashUtilsBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 200) << 20;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File logcat = File.createTempFile("logcat", ".txt");
+        try {
+            writeLogcat(logcat, size, readCrashes());
+            System.err.println(String.format("Generated %d MB logcat", logcat.length() >> 20));
+
+            // The first iterations include the JIT warm up of both versions.
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                String input =
+                        new String(Files.readAllBytes(logcat.toPath()), StandardCharsets.UTF_8);
+                JSONArray stringCrashes = CrashUtils.addAllCrashes(input, new JSONArray());
+                long stringMs = (System.nanoTime() - start) / 1000000;
+                input = null;
+
+                start = System.nanoTime();
+                JSONArray readerCrashes;
+                try (Reader reader = Files.newBufferedReader(logcat.toPath())) {
+                    readerCrashes = CrashUtils.addAllCrashes(reader, new JSONArray());
+                }
+                long readerMs = (System.nanoTime() - start) / 1000000;
+                System.err.println(String.format(
+                        "addAllCrashes(String): %d ms, addAllCrashes(Reader): %d ms, %d crashes",
+                        stringMs, readerMs, readerCrashes.length()));
+                if (!stringCrashes.toString().equals(readerCrashes.toString())) {
+                    throw new AssertionError("The crashes found differ");
+                }
+            }
+        } finally {
+            logcat.delete();
+        }
+    }
+
+    private static String readCrashes() throws Exception {
+        try (InputStream input =
+                CrashUtilsBenchmark.class.getClassLoader().getResourceAsStream("logcat.txt")) {
+            return StreamUtil.readInputStream(input);
+        }
+    }
+
+    private static void writeLogcat(File file, long size, String crashes) throws Exception {
+        Random random = new Random(0);
+        long written = 0;
+        long nextCrash = CRASH_INTERVAL;
+        try (BufferedWriter writer =
+                Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; written < size; i++) {
+                String line = String.format(
+                        "01-01 00:%02d:%02d.%03d %5d %5d I %s: event %d value %x\n",
+                        i / 60000 % 60, i / 1000 % 60, i % 1000, 1000 + random.nextInt(30000),
+                        1000 + random.nextInt(30000), TAGS[random.nextInt(TAGS.length)], i,
+                        random.nextInt());
+                writer.write(line);
+                written += line.length();
+                if (written >= nextCrash) {
+                    writer.write(crashes);
+                    written += crashes.length();
+                    nextCrash += CRASH_INTERVAL;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+
+/**
+ * Benchmark comparing the peak heap usage and time of merging a retry into a large result with
+ * {@link ResultHandler#mergeResults} and with the in-memory tree of {@link
+ * ResultHandler#getResultFromDir(File)} and {@link ResultHandler#writeResults}.
+ *
+ * <p>A synthetic result file with the given number of tests, 1% of them failed, is generated and
+ * the failed tests of a few modules are retried and pass. Each mode should run in its own JVM so
+ * that the peak of one does not hide the other, for example:
+ *
+ * <pre>java -Xmx1g -cp compatibility-common-util-benchmarks.jar \
+ *     com.android.compatibility.common.util.ResultMergeBenchmark stream
+ * java -Xmx1g -cp compatibility-common-util-benchmarks.jar \
+ *     com.android.compatibility.common.util.ResultMergeBenchmark tree</pre>
+ *
+ * <p>The number of tests, 2 million by default, can be given as a second argument.
+ */
+public final class ResultMergeBenchmark {
+
+    private static final int CASES_PER_MODULE = 10;
+    private static final int TESTS_PER_CASE = 100;
+    private static final int FAILURE_INTERVAL = 100;
+    private static final int RETRIED_MODULES = 20;
+    private static final String ABI = "arm64-v8a";
+    private static final String FINGERPRINT = "generic/aosp_arm64/generic:14/UP1A/1:userdebug/test";
+
+    private ResultMergeBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        boolean streaming = !"tree".equals(args.length > 0 ? args[0] : "stream");
+        int testCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        int moduleCount = Math.max(1, testCount / (CASES_PER_MODULE * TESTS_PER_CASE));
+
+        File root = Files.createTempDirectory("result-merge-benchmark").toFile();
+        try {
+            File previousDir = new File(root, "previous");
+            File mergedDir = new File(root, "merged");
+            previousDir.mkdirs();
+            mergedDir.mkdirs();
+            File previousFile = new File(previousDir, ResultHandler.TEST_RESULT_FILE_NAME);
+            writeSyntheticResult(previousFile, moduleCount);
+            System.err.println(String.format("Generated %d tests in %d modules, %d MB",
+                    moduleCount * CASES_PER_MODULE * TESTS_PER_CASE, moduleCount,
+                    previousFile.length() >> 20));
+            IInvocationResult retry = createRetry(moduleCount);
+
+            System.gc();
+            resetPeakHeapUsage();
+            long start = System.nanoTime();
+            if (streaming) {
+                ResultHandler.mergeResults(previousDir, retry, mergedDir, 0, 1);
+            } else {
+                IInvocationResult result = ResultHandler.getResultFromDir(previousDir);
+                for (IModuleResult module : retry.getModules()) {
+                    result.mergeModuleResult(module);
+                }
+                ResultHandler.writeResults("CTS", "14", "cts", "1", result, mergedDir, 0, 1,
+                        null, null, null, null);
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1000000;
+            System.err.println(String.format("%s: %d ms, peak heap %d MB",
+                    streaming ? "mergeResults" : "getResultFromDir + writeResults",
+                    elapsedMs, getPeakHeapUsage() >> 20));
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    /** Writes a result file with the given number of modules, without building it in memory. */
+    private static void writeSyntheticResult(File file, int moduleCount) throws Exception {
+        try (OutputStream stream = new FileOutputStream(file)) {
+            XmlSerializer serializer = XmlPullParserFactory.newInstance().newSerializer();
+            serializer.setOutput(stream, "UTF-8");
+            serializer.startDocument("UTF-8", false);
+            serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+            serializer.startTag(null, "Result");
+            serializer.attribute(null, "start", "0");
+            serializer.attribute(null, "end", "1");
+            serializer.attribute(null, "suite_name", "CTS");
+            serializer.attribute(null, "suite_plan", "cts");
+            serializer.attribute(null, "command_line_args", "cts");
+            serializer.attribute(null, "devices", "device1");
+            serializer.startTag(null, "Build");
+            serializer.attribute(null, "build_fingerprint", FINGERPRINT);
+            serializer.attribute(null, "build_id", "UP1A");
+            serializer.attribute(null, "build_product", "aosp_arm64");
+            serializer.endTag(null, "Build");
+            serializer.startTag(null, "Summary");
+            serializer.endTag(null, "Summary");
+            int testIndex = 0;
+            for (int m = 0; m < moduleCount; m++) {
+                serializer.startTag(null, "Module");
+                serializer.attribute(null, "name", getModuleName(m));
+                serializer.attribute(null, "abi", ABI);
+                serializer.attribute(null, "runtime", "1000");
+                serializer.attribute(null, "done", "true");
+                for (int c = 0; c < CASES_PER_MODULE; c++) {
+                    serializer.startTag(null, "TestCase");
+                    serializer.attribute(null, "name", getCaseName(c));
+                    for (int t = 0; t < TESTS_PER_CASE; t++, testIndex++) {
+                        boolean failed = testIndex % FAILURE_INTERVAL == 0;
+                        serializer.startTag(null, "Test");
+                        serializer.attribute(null, "result", failed ? "fail" : "pass");
+                        serializer.attribute(null, "name", getTestName(t));
+                        if (failed) {
+                            serializer.startTag(null, "Failure");
+                            serializer.attribute(null, "message", "expected:<1> but was:<2>");
+                            serializer.startTag(null, "StackTrace");
+                            serializer.text("junit.framework.AssertionFailedError: expected:<1> "
+                                    + "but was:<2>\n\tat " + getCaseName(c) + "."
+                                    + getTestName(t) + "(Test.java:" + t + ")");
+                            serializer.endTag(null, "StackTrace");
+                            serializer.endTag(null, "Failure");
+                        }
+                        serializer.endTag(null, "Test");
+                    }
+                    serializer.endTag(null, "TestCase");
+                }
+                serializer.endTag(null, "Module");
+            }
+            serializer.endTag(null, "Result");
+            serializer.endDocument();
+        }
+    }
+
+    /** Creates a retry in which the failed tests of the first modules now pass. */
+    private static IInvocationResult createRetry(int moduleCount) {
+        IInvocationResult retry = new InvocationResult();
+        retry.setRetryChecksumStatus(RetryChecksumStatus.RetryWithChecksum);
+        int testIndex = 0;
+        for (int m = 0; m < Math.min(RETRIED_MODULES, moduleCount); m++) {
+            IModuleResult module =
+                    retry.getOrCreateModule(AbiUtils.createId(ABI, getModuleName(m)));
+            module.setDone(true);
+            for (int c = 0; c < CASES_PER_MODULE; c++) {
+                for (int t = 0; t < TESTS_PER_CASE; t++, testIndex++) {
+                    if (testIndex % FAILURE_INTERVAL == 0) {
+                        module.getOrCreateResult(getCaseName(c)).getOrCreateResult(getTestName(t))
+                                .setResultStatus(TestStatus.PASS);
+                    }
+                }
+            }
+        }
+        return retry;
+    }
+
+    private static String getModuleName(int index) {
+        return String.format("CtsSynthetic%05dTestCases", index);
+    }
+
+    private static String getCaseName(int index) {
+        return "android.synthetic.cts.SyntheticTest" + index;
+    }
+
+    private static String getTestName(int index) {
+        return "testSynthetic" + index;
+    }
+
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
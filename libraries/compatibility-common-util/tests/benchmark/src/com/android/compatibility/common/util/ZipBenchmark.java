@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Benchmark comparing the time of zipping a results directory with {@link
+ * ZipUtil#createZip(File, File)} and with {@link ZipUtil#createZip(File, File, int)}.
+ *
+ * <p>A synthetic results directory is generated with, for every module, a host log, a logcat, a
+ * screenshot and, for one module in ten, a bugreport zip and a perfetto trace. The log files are
+ * text that deflates like real logs; the other files are random bytes like compressed ones.
+ * For example:
+ *
+ * <pre>java -cp compatibility-common-util-benchmarks.jar \
+ *     com.android.compatibility.common.util.ZipBenchmark 500 32</pre>
+ *
+ * <p>The arguments are the number of modules, 200 by default, and the number of threads, all the
+ * available processors by default.
+ */
+public final class ZipBenchmark {
+
+    private static final int LOGCAT_LINES = 20000;
+    private static final int HOST_LOG_LINES = 2000;
+    private static final int SCREENSHOT_SIZE = 200 * 1024;
+    private static final int BUGREPORT_SIZE = 8 * 1024 * 1024;
+    private static final int TRACE_SIZE = 4 * 1024 * 1024;
+    private static final int BUGREPORT_INTERVAL = 10;
+    private static final String[] TAGS = {
+        "ActivityManager", "WindowManager", "TestRunner", "PackageManager", "ModuleListener"
+    };
+
+    private ZipBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int moduleCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int parallelism = args.length > 1
+                ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        File root = Files.createTempDirectory("zip-benchmark").toFile();
+        try {
+            File resultDir = new File(root, "2023.01.01_00.00.00");
+            long size = writeResultsTree(resultDir, moduleCount, new Random(0));
+            System.err.println(String.format("Generated %d modules, %d MB", moduleCount,
+                    size >> 20));
+
+            File serialZip = new File(root, "serial.zip");
+            long start = System.nanoTime();
+            ZipUtil.createZip(resultDir, serialZip);
+            long serialMs = (System.nanoTime() - start) / 1000000;
+            System.err.println(String.format("createZip: %d ms, %d MB", serialMs,
+                    serialZip.length() >> 20));
+
+            File parallelZip = new File(root, "parallel.zip");
+            start = System.nanoTime();
+            ZipUtil.createZip(resultDir, parallelZip, parallelism);
+            long parallelMs = (System.nanoTime() - start) / 1000000;
+            System.err.println(String.format("createZip with %d threads: %d ms, %d MB",
+                    parallelism, parallelMs, parallelZip.length() >> 20));
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    /** Writes the synthetic results directory and returns the total size of its files. */
+    private static long writeResultsTree(File resultDir, int moduleCount, Random random)
+            throws IOException {
+        long size = 0;
+        for (int m = 0; m < moduleCount; m++) {
+            String module = String.format("CtsSynthetic%05dTestCases", m);
+            File logDir = new File(resultDir, "logs/" + module);
+            logDir.mkdirs();
+            size += writeLog(new File(logDir, "host_log.txt"), HOST_LOG_LINES, random);
+            size += writeLog(new File(logDir, "logcat.txt"), LOGCAT_LINES, random);
+            size += writeRandom(new File(logDir, "screenshot.png"), SCREENSHOT_SIZE, random);
+            if (m % BUGREPORT_INTERVAL == 0) {
+                size += writeRandom(new File(logDir, "bugreport.zip"), BUGREPORT_SIZE, random);
+                size += writeRandom(new File(logDir, "trace.perfetto-trace"), TRACE_SIZE, random);
+            }
+        }
+        return size;
+    }
+
+    private static long writeLog(File file, int lines, Random random) throws IOException {
+        try (BufferedWriter writer =
+                Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write(String.format(
+                        "01-01 00:%02d:%02d.%03d %5d %5d I %s: event %d value %x",
+                        i / 60000 % 60, i / 1000 % 60, i % 1000, 1000 + random.nextInt(30000),
+                        1000 + random.nextInt(30000), TAGS[random.nextInt(TAGS.length)], i,
+                        random.nextInt()));
+                writer.newLine();
+            }
+        }
+        return file.length();
+    }
+
+    private static long writeRandom(File file, int size, Random random) throws IOException {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        Files.write(file.toPath(), content);
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
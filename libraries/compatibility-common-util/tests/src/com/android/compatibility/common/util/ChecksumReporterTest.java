@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/** Tests for {@link ChecksumReporter}. */
+@RunWith(JUnit4.class)
+public class ChecksumReporterTest {
+    private static final short VERSION = 1;
+    private static final String FINGERPRINT = "generic/aosp_arm64/generic:14/UP1A/1:userdebug/test";
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mResultDir;
+    private File mLog;
+    private File mScreenshot;
+
+    @Before
+    public void setUp() throws Exception {
+        mResultDir = mTemporaryFolder.newFolder("2023.01.01_00.00.00");
+        mLog = writeFile(new File(mResultDir, "logs/module/logcat.txt"), 1000);
+        // Large enough to be hashed from a memory mapped file.
+        mScreenshot = writeFile(new File(mResultDir, "logs/module/nested/screenshot.png"),
+                3 << 20);
+    }
+
+    @Test
+    public void testCalculateFileChecksum_largeFile() throws Exception {
+        byte[] expected = MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(mScreenshot.toPath()));
+
+        assertArrayEquals(expected, ChecksumReporter.calculateFileChecksum(mScreenshot));
+    }
+
+    @Test
+    public void testAddDirectory_parallel() throws Exception {
+        ChecksumReporter serial = new ChecksumReporter(1, 0.05, VERSION);
+        serial.addDirectory(mResultDir, 1);
+        ChecksumReporter parallel = new ChecksumReporter(1, 0.05, VERSION);
+        parallel.addDirectory(mResultDir, 4);
+
+        String logPath = mResultDir.getName() + "/logs/module";
+        String screenshotPath = logPath + "/nested";
+        assertTrue(serial.containsFile(mLog, logPath));
+        assertTrue(serial.containsFile(mScreenshot, screenshotPath));
+        assertTrue(parallel.containsFile(mLog, logPath));
+        assertTrue(parallel.containsFile(mScreenshot, screenshotPath));
+        assertFalse(parallel.containsFile(mLog, screenshotPath));
+    }
+
+    @Test
+    public void testContainsFile_afterLoad() throws Exception {
+        ChecksumReporter reporter = new ChecksumReporter(1, 0.05, VERSION);
+        reporter.addDirectory(mResultDir);
+        reporter.saveToFile(mResultDir);
+        String logPath = mResultDir.getName() + "/logs/module";
+
+        ChecksumReporter loaded = ChecksumReporter.load(mResultDir);
+        assertTrue(loaded.containsFile(mLog, logPath));
+
+        // Same size, but a different modification time: the file is hashed again.
+        writeFile(mLog, 1000);
+        mLog.setLastModified(mLog.lastModified() - 10000);
+        assertFalse(loaded.containsFile(mLog, logPath));
+    }
+
+    @Test
+    public void testSaveToFile_binaryFormat() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            files.add(writeFile(new File(mResultDir, "logs/module" + i % 3 + "/log" + i), 10));
+        }
+        files.add(mLog);
+        IModuleResult module = new ModuleResult("arm64-v8a CtsFooTestCases");
+        ITestResult test =
+                module.getOrCreateResult("android.foo.FooTest").getOrCreateResult("testFoo");
+        test.setResultStatus(TestStatus.PASS);
+        ChecksumReporter reporter = new ChecksumReporter(10, 0.05, VERSION);
+        reporter.addModuleResult(module, FINGERPRINT);
+        reporter.addTestResult(test, module, FINGERPRINT);
+        reporter.addDirectory(mResultDir);
+        reporter.saveToFile(mResultDir);
+
+        try (DataInputStream input = new DataInputStream(
+                new FileInputStream(new File(mResultDir, ChecksumReporter.NAME)))) {
+            assertEquals(ChecksumReporter.BINARY_FORMAT_CODE, input.readShort());
+        }
+        ChecksumReporter loaded = ChecksumReporter.load(mResultDir);
+        for (File file : files) {
+            String path = mResultDir.getParentFile().toPath()
+                    .relativize(file.getParentFile().toPath()).toString();
+            assertTrue(path, loaded.containsFile(file, path));
+        }
+        assertFalse(loaded.containsFile(new File("aaa"), mResultDir.getName()));
+        assertFalse(
+                loaded.containsFile(new File("log400"), mResultDir.getName() + "/logs/module0"));
+        assertFalse(loaded.containsFile(new File("zzz"), mResultDir.getName() + "/logs"));
+        assertTrue(loaded.containsModuleResult(module, FINGERPRINT));
+        assertTrue(loaded.containsTestResult(test, module, FINGERPRINT));
+    }
+
+    @Test
+    public void testSaveToFile_afterLoad() throws Exception {
+        ChecksumReporter reporter = new ChecksumReporter(1, 0.05, VERSION);
+        reporter.addDirectory(mResultDir);
+        reporter.saveToFile(mResultDir);
+        File retryDir = mTemporaryFolder.newFolder("retry");
+        File bugreport = writeFile(new File(retryDir, "bugreport.zip"), 100);
+
+        ChecksumReporter loaded = ChecksumReporter.load(mResultDir);
+        loaded.addFile(bugreport, retryDir.getName());
+        loaded.saveToFile(retryDir);
+
+        ChecksumReporter reloaded = ChecksumReporter.load(retryDir);
+        assertTrue(reloaded.containsFile(mLog, mResultDir.getName() + "/logs/module"));
+        assertTrue(reloaded.containsFile(bugreport, retryDir.getName()));
+    }
+
+    @Test
+    public void testSaveToFile_overwritesLoadedFile() throws Exception {
+        ChecksumReporter reporter = new ChecksumReporter(1, 0.05, VERSION);
+        reporter.addDirectory(mResultDir);
+        reporter.saveToFile(mResultDir);
+        String logPath = mResultDir.getName() + "/logs/module";
+        File bugreport = writeFile(new File(mResultDir, "bugreport.zip"), 100);
+
+        // The loaded files are looked up in the file that is rewritten.
+        ChecksumReporter loaded = ChecksumReporter.load(mResultDir);
+        loaded.addFile(bugreport, mResultDir.getName());
+        loaded.saveToFile(mResultDir);
+
+        assertTrue(loaded.containsFile(mLog, logPath));
+        assertTrue(loaded.containsFile(mScreenshot, logPath + "/nested"));
+        assertTrue(loaded.containsFile(bugreport, mResultDir.getName()));
+        loaded.saveToFile(mResultDir);
+        ChecksumReporter reloaded = ChecksumReporter.load(mResultDir);
+        assertTrue(reloaded.containsFile(mLog, logPath));
+        assertTrue(reloaded.containsFile(bugreport, mResultDir.getName()));
+    }
+
+    @Test
+    public void testLoad_serializedFormat() throws Exception {
+        BloomFilter<CharSequence> resultChecksum =
+                BloomFilter.create(Funnels.unencodedCharsFunnel(), 10, 0.05);
+        IModuleResult module = new ModuleResult("arm64-v8a CtsFooTestCases");
+        ITestResult test =
+                module.getOrCreateResult("android.foo.FooTest").getOrCreateResult("testFoo");
+        test.setResultStatus(TestStatus.FAIL);
+        resultChecksum.put(ChecksumReporter.generateTestResultSignature(test, module, FINGERPRINT));
+        HashMap<String, byte[]> fileChecksum = new HashMap<>();
+        String logPath = mResultDir.getName() + "/logs/module";
+        fileChecksum.put(logPath + "/" + mLog.getName(),
+                ChecksumReporter.calculateFileChecksum(mLog));
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new FileOutputStream(new File(mResultDir, ChecksumReporter.NAME)))) {
+            output.writeShort(ChecksumReporter.SERIALIZED_FORMAT_CODE);
+            output.writeShort(VERSION);
+            output.writeObject(resultChecksum);
+            output.writeObject(fileChecksum);
+        }
+
+        ChecksumReporter loaded = ChecksumReporter.load(mResultDir);
+
+        assertTrue(loaded.containsTestResult(test, module, FINGERPRINT));
+        assertTrue(loaded.containsFile(mLog, logPath));
+        assertFalse(loaded.containsFile(mScreenshot, logPath + "/nested"));
+    }
+
+    private static File writeFile(File file, int size) throws IOException {
+        file.getParentFile().mkdirs();
+        byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
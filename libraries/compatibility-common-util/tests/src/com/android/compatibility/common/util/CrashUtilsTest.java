@@ -19,8 +19,11 @@ package com.android.compatibility.common.util;
 import com.android.compatibility.common.util.CrashUtils.Config.BacktraceFilterPattern;
 import com.google.common.collect.ImmutableList;
 import java.io.BufferedReader;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -36,6 +39,7 @@ import java.util.regex.Pattern;
 @RunWith(JUnit4.class)
 public class CrashUtilsTest {
 
+    private String mLogcat;
     private JSONArray mCrashes;
 
     @Before
@@ -49,7 +53,8 @@ public class CrashUtilsTest {
             while ((tmp = txtReader.readLine()) != null) {
                 input.append(tmp + "\n");
             }
-            mCrashes = CrashUtils.addAllCrashes(input.toString(), new JSONArray());
+            mLogcat = input.toString();
+            mCrashes = CrashUtils.addAllCrashes(mLogcat, new JSONArray());
         }
     }
 
@@ -798,4 +803,30 @@ public class CrashUtilsTest {
                                 .setBacktraceIncludes(
                                         new BacktraceFilterPattern("libaudioutils", "strlen"))));
     }
+
+    @Test
+    public void testAddAllCrashesFromReader() throws Exception {
+        try (Reader reader =
+                new InputStreamReader(
+                        getClass().getClassLoader().getResourceAsStream("logcat.txt"))) {
+            JSONArray crashes = CrashUtils.addAllCrashes(reader, new JSONArray());
+            Assert.assertEquals(mCrashes.toString(), crashes.toString());
+        }
+    }
+
+    @Test
+    public void testAddAllCrashesFromReader_shortReads() throws Exception {
+        // Every line spans several reads, and the last line has no newline.
+        String logcat = mLogcat.trim();
+        Reader reader =
+                new FilterReader(new StringReader(logcat)) {
+                    @Override
+                    public int read(char[] buffer, int offset, int length) throws IOException {
+                        return super.read(buffer, offset, Math.min(length, 7));
+                    }
+                };
+        JSONArray crashes = CrashUtils.addAllCrashes(reader, new JSONArray());
+        Assert.assertEquals(
+                CrashUtils.addAllCrashes(logcat, new JSONArray()).toString(), crashes.toString());
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Tests for {@link ElfImageScanner}. */
+@RunWith(JUnit4.class)
+public class ElfImageScannerTest {
+    private static final String TEST_SO_ARM64B = "arm64_libdl.so";
+    private static final String TEST_EXE_X8664B = "x86app_process64";
+    /**
+     * Defines LIBVERSIONED_1 and LIBVERSIONED_2 and needs several glibc versions, built with gcc
+     * -shared and a version script from a file calling sscanf, malloc, memcpy, exp and log.
+     */
+    private static final String TEST_SO_VERSIONED_X8664B = "x86_64_libversioned.so";
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testScanIndexesElfFilesOnly() throws Exception {
+        File root = mTemporaryFolder.getRoot();
+        File lib = copyResource(TEST_SO_ARM64B, new File(root, "lib64/libdl.so"));
+        File exe = copyResource(TEST_EXE_X8664B, new File(root, "bin/app_process64"));
+        File text = new File(root, "etc/init.rc");
+        text.getParentFile().mkdirs();
+        Files.write(text.toPath(), "service foo /system/bin/foo".getBytes(StandardCharsets.UTF_8));
+
+        ElfImageScanner.Index index = ElfImageScanner.scan(root, /* parallelism= */ 2);
+
+        assertEquals(2, index.getFiles().size());
+        assertTrue(index.getFailures().isEmpty());
+        assertNotNull(index.getFile(lib));
+        assertNotNull(index.getFile(exe));
+        assertEquals(1, index.getFilesByName("libdl.so").size());
+    }
+
+    @Test
+    public void testScanCollectsDynamicLinkingInfo() throws Exception {
+        File root = mTemporaryFolder.getRoot();
+        File lib = copyResource(TEST_SO_ARM64B, new File(root, "libdl.so"));
+
+        ElfImageScanner.ElfFile elf = ElfImageScanner.scan(root).getFile(lib);
+
+        assertEquals(ReadElf.ARCH_ARM, elf.getArchitecture());
+        assertEquals(64, elf.getBits());
+        assertEquals(Collections.singletonList("ld-android.so"), elf.getNeededLibraries());
+        assertTrue(elf.getExportedSymbols().contains("dlopen"));
+        assertTrue(elf.getWeakUndefinedSymbols().contains("__loader_android_dlopen_ext"));
+        assertFalse(elf.getUndefinedSymbols().contains("__loader_android_dlopen_ext"));
+        assertEquals(
+                new HashSet<>(Arrays.asList("LIBC", "LIBC_N", "LIBC_OMR1", "LIBC_PLATFORM")),
+                elf.getVersionDefinitions());
+        assertTrue(elf.getVersionNeeds().isEmpty());
+    }
+
+    @Test
+    public void testScanMapsSymbolVersionsThroughBothVersionTables() throws Exception {
+        File root = mTemporaryFolder.getRoot();
+        File lib = copyResource(TEST_SO_VERSIONED_X8664B, new File(root, "libversioned.so"));
+
+        ElfImageScanner.ElfFile elf = ElfImageScanner.scan(root).getFile(lib);
+
+        assertEquals(
+                new HashSet<>(Arrays.asList("LIBVERSIONED_1", "LIBVERSIONED_2")),
+                elf.getVersionDefinitions());
+        Map<String, Set<String>> expectedNeeds = new HashMap<>();
+        expectedNeeds.put(
+                "libc.so.6",
+                new HashSet<>(Arrays.asList("GLIBC_2.2.5", "GLIBC_2.7", "GLIBC_2.14")));
+        expectedNeeds.put("libm.so.6", Collections.singleton("GLIBC_2.29"));
+        assertEquals(expectedNeeds, elf.getVersionNeeds());
+    }
+
+    @Test
+    public void testUnresolvedSymbols() throws Exception {
+        File root = mTemporaryFolder.getRoot();
+        File exe = copyResource(TEST_EXE_X8664B, new File(root, "app_process64"));
+        // The arm64 libdl.so must not be used to resolve the needed libdl.so of an x86 binary.
+        copyResource(TEST_SO_ARM64B, new File(root, "libdl.so"));
+
+        ElfImageScanner.Index index = ElfImageScanner.scan(root);
+        ElfImageScanner.ElfFile elf = index.getFile(exe);
+        Set<String> missing = index.getMissingDependencies(elf);
+        Set<String> unresolved = index.getUnresolvedSymbols(elf);
+
+        assertTrue(missing.containsAll(Arrays.asList("libc.so", "libdl.so")));
+        assertTrue(index.getDependencies(elf).isEmpty());
+        assertTrue(unresolved.contains("__libc_init"));
+        assertEquals(unresolved, index.getUnresolvedSymbols().get(exe));
+    }
+
+    @Test
+    public void testScanSingleFile() throws Exception {
+        File lib = copyResource(TEST_SO_ARM64B, mTemporaryFolder.newFile("libdl.so"));
+
+        ElfImageScanner.Index index = ElfImageScanner.scan(lib);
+
+        assertEquals(Collections.singleton(lib), index.getFiles().keySet());
+        assertTrue(index.getUnresolvedSymbols().isEmpty());
+    }
+
+    private File copyResource(String fileName, File destination) throws IOException {
+        destination.getParentFile().mkdirs();
+        try (InputStream input = getClass().getResourceAsStream("/" + fileName)) {
+            assertNotNull(input);
+            Files.copy(input, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return destination;
+    }
+}
@@ -94,6 +94,48 @@ public class ReadElfTest {
                 TEST_EXE_X8664B, TEST_EXE_X8664B_READELF, ReadElf.ARCH_X86, 64, ReadElf.ET_DYN);
     }
 
+    /**
+     * Test {@link ReadElf#readMapped(File)} returns the same results as {@link ReadElf#read(File)}
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReadMappedMatchesRead() throws Exception {
+        for (String elfFileName :
+                new String[] {TEST_SO_ARM32B, TEST_SO_ARM64B, TEST_EXE_X8632B, TEST_EXE_X8664B}) {
+            File targetFile = getResrouceFile(elfFileName);
+            try (ReadElf elf = ReadElf.read(targetFile);
+                    ReadElf mappedElf = ReadElf.readMapped(targetFile)) {
+                assertEquals("getBits() " + elfFileName, elf.getBits(), mappedElf.getBits());
+                assertEquals("getType() " + elfFileName, elf.getType(), mappedElf.getType());
+                assertEquals("isPIE() " + elfFileName, elf.isPIE(), mappedElf.isPIE());
+                assertSymbolsEqual(elfFileName, elf.getDynSymArr(), mappedElf.getDynSymArr());
+                assertSymbolsEqual(elfFileName, elf.getSymArr(), mappedElf.getSymArr());
+                assertEquals(
+                        "getDynamicDependencies() " + elfFileName,
+                        elf.getDynamicDependencies(),
+                        mappedElf.getDynamicDependencies());
+                assertEquals(
+                        "getRoStrings() " + elfFileName,
+                        elf.getRoStrings(),
+                        mappedElf.getRoStrings());
+            }
+        }
+    }
+
+    private static void assertSymbolsEqual(
+            String elfFileName, ReadElf.Symbol[] expected, ReadElf.Symbol[] actual) {
+        assertEquals("symbol count " + elfFileName, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(
+                    "symbol " + i + " " + elfFileName,
+                    expected[i].toString(),
+                    actual[i].toString());
+            assertEquals("symbol value " + elfFileName, expected[i].value, actual[i].value);
+            assertEquals("symbol size " + elfFileName, expected[i].size, actual[i].size);
+        }
+    }
+
     /**
      * Compares {@link ReadElf} returns same results with Linux readelf cmd on the same ELF file
      *
@@ -422,6 +422,110 @@ public class ResultHandlerTest extends TestCase {
         checkLightResult(lightResult);
     }
 
+    public void testGetLightResults_fromSummary() throws Exception {
+        IInvocationResult result = new InvocationResult();
+        result.addDeviceSerial(DEVICE_A);
+        result.addDeviceSerial(DEVICE_B);
+        result.addInvocationInfo(BUILD_ID, EXAMPLE_BUILD_ID);
+        result.addInvocationInfo(BUILD_PRODUCT, EXAMPLE_BUILD_PRODUCT);
+        IModuleResult moduleA = result.getOrCreateModule(ID_A);
+        moduleA.setDone(false);
+        moduleA.getOrCreateResult(CLASS_A).getOrCreateResult(METHOD_1)
+                .setResultStatus(TestStatus.PASS);
+        IModuleResult moduleB = result.getOrCreateModule(ID_B);
+        moduleB.setDone(true);
+        ICaseResult moduleBCase = moduleB.getOrCreateResult(CLASS_B);
+        moduleBCase.getOrCreateResult(METHOD_3).setResultStatus(TestStatus.FAIL);
+        moduleBCase.getOrCreateResult(METHOD_4).setResultStatus(TestStatus.PASS);
+        moduleBCase.getOrCreateResult(METHOD_5).skipped();
+        ResultHandler.writeResults(SUITE_NAME, SUITE_VERSION, SUITE_PLAN, SUITE_BUILD, result,
+                resultDir, START_MS, END_MS, REFERENCE_URL, LOG_URL, COMMAND_LINE_ARGS, null);
+        File summaryFile = new File(resultDir, ResultHandler.TEST_RESULT_SUMMARY_FILE_NAME);
+        assertTrue("Missing summary", summaryFile.exists());
+
+        List<IInvocationResult> lightResults = ResultHandler.getLightResults(resultsDir);
+        assertEquals("Expected one result", 1, lightResults.size());
+        checkLightResult(lightResults.get(0));
+        assertEquals(COMMAND_LINE_ARGS, lightResults.get(0).getCommandLineArgs());
+
+        // The result file is scanned instead when the summary is missing.
+        summaryFile.delete();
+        checkLightResult(ResultHandler.getLightResults(resultsDir).get(0));
+    }
+
+    public void testGetLightResults_ignoresOutdatedSummary() throws Exception {
+        File resultDir = writeResultDir(resultsDir, false);
+        File summaryFile = new File(resultDir, ResultHandler.TEST_RESULT_SUMMARY_FILE_NAME);
+        FileUtil.writeToFile("{\"version\":1,\"result_length\":0}", summaryFile);
+
+        List<IInvocationResult> lightResults = ResultHandler.getLightResults(resultsDir);
+        assertEquals("Expected one result", 1, lightResults.size());
+        checkLightResult(lightResults.get(0));
+    }
+
+    public void testMergeResults() throws Exception {
+        File previousDir = writeResultDir(resultsDir, false);
+        IInvocationResult newResult = new InvocationResult();
+        IModuleResult moduleB = newResult.getOrCreateModule(ID_B);
+        moduleB.setDone(true);
+        moduleB.addRuntime(50);
+        ICaseResult moduleBCase = moduleB.getOrCreateResult(CLASS_B);
+        moduleBCase.getOrCreateResult(METHOD_2).setResultStatus(TestStatus.PASS);
+        moduleBCase.getOrCreateResult(METHOD_3).setResultStatus(TestStatus.PASS);
+        IModuleResult moduleC = newResult.getOrCreateModule(AbiUtils.createId(ABI, "Module0"));
+        moduleC.setDone(true);
+        ITestResult failure = moduleC.getOrCreateResult(CLASS_A).getOrCreateResult(METHOD_1);
+        failure.failed(STACK_TRACE);
+        File mergedDir = FileUtil.createTempDir("merged", resultsDir);
+
+        ResultHandler.mergeResults(previousDir, newResult, mergedDir, START_MS, END_MS);
+
+        IInvocationResult expected = ResultHandler.getResultFromDir(previousDir);
+        for (IModuleResult module : newResult.getModules()) {
+            expected.mergeModuleResult(module);
+        }
+        IInvocationResult merged = ResultHandler.getResultFromDir(mergedDir, true);
+        assertEquals("Checksum not written", RetryChecksumStatus.RetryWithChecksum,
+                merged.getRetryChecksumStatus());
+        assertEquals(5, merged.countResults(TestStatus.PASS));
+        assertEquals(1, merged.countResults(TestStatus.FAIL));
+        assertEquals(expected.getModuleCompleteCount(), merged.getModuleCompleteCount());
+        assertEquals(expected.getModules().size(), merged.getModules().size());
+        for (IModuleResult expectedModule : expected.getModules()) {
+            IModuleResult module = merged.getOrCreateModule(expectedModule.getId());
+            assertEquals(expectedModule.isDone(), module.isDone());
+            assertEquals(expectedModule.getRuntime(), module.getRuntime());
+            for (ICaseResult expectedCase : expectedModule.getResults()) {
+                ICaseResult mergedCase = module.getResult(expectedCase.getName());
+                assertEquals(expectedCase.getResults().size(), mergedCase.getResults().size());
+                for (ITestResult expectedTest : expectedCase.getResults()) {
+                    ITestResult test = mergedCase.getResult(expectedTest.getName());
+                    assertEquals(expectedTest.getResultStatus(), test.getResultStatus());
+                    assertEquals(expectedTest.isSkipped(), test.isSkipped());
+                    assertEquals(expectedTest.getStackTrace(), test.getStackTrace());
+                    assertEquals(expectedTest.getLog(), test.getLog());
+                }
+            }
+        }
+
+        IInvocationResult lightResult = ResultHandler.getLightResultFromDir(mergedDir);
+        assertEquals(5, lightResult.countResults(TestStatus.PASS));
+        assertEquals(1, lightResult.countResults(TestStatus.FAIL));
+        assertEquals(3, lightResult.getModules().size());
+        assertEquals(START_MS, lightResult.getStartTime());
+    }
+
+    public void testMergeResults_intoItself() throws Exception {
+        File previousDir = writeResultDir(resultsDir, false);
+        try {
+            ResultHandler.mergeResults(
+                    previousDir, new InvocationResult(), previousDir, START_MS, END_MS);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
     static File writeResultDir(File resultsDir, boolean newTestFormat) throws IOException {
         String buildInfo = String.format(XML_BUILD_INFO, EXAMPLE_BUILD_FINGERPRINT,
                 EXAMPLE_BUILD_ID, EXAMPLE_BUILD_PRODUCT);
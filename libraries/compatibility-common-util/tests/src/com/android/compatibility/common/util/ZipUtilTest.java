@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.compatibility.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/** Tests for {@link ZipUtil}. */
+@RunWith(JUnit4.class)
+public class ZipUtilTest {
+
+    @Rule public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mResultDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mResultDir = mTemporaryFolder.newFolder("2023.01.01_00.00.00");
+        StringBuilder logcat = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            logcat.append("01-01 00:00:00.000  1000  1000 I ActivityManager: line ").append(i)
+                    .append('\n');
+        }
+        // Large enough to be deflated into a temporary file.
+        writeFile(new File(mResultDir, "logs/module/logcat.txt"),
+                logcat.toString().getBytes(StandardCharsets.UTF_8));
+        writeFile(new File(mResultDir, "test_result.xml"),
+                "<Result></Result>".getBytes(StandardCharsets.UTF_8));
+        writeFile(new File(mResultDir, "logs/module/screenshot.png"), randomBytes(10000));
+        writeFile(new File(mResultDir, "logs/module/random.txt"), randomBytes(10000));
+        writeFile(new File(mResultDir, "logs/empty.txt"), new byte[0]);
+        new File(mResultDir, "logs/empty_dir").mkdirs();
+    }
+
+    @Test
+    public void testCreateZip_parallel() throws Exception {
+        File serialZip = new File(mTemporaryFolder.getRoot(), "serial.zip");
+        File parallelZip = new File(mTemporaryFolder.getRoot(), "parallel.zip");
+
+        ZipUtil.createZip(mResultDir, serialZip);
+        ZipUtil.createZip(mResultDir, parallelZip, 4);
+
+        try (ZipFile serial = new ZipFile(serialZip);
+                ZipFile parallel = new ZipFile(parallelZip)) {
+            List<String> names = getNames(serial);
+            assertEquals(names, getNames(parallel));
+            for (String name : names) {
+                assertArrayEquals(name, readEntry(serial, name), readEntry(parallel, name));
+            }
+            assertEquals(ZipEntry.DEFLATED,
+                    parallel.getEntry(mResultDir.getName() + "/logs/module/logcat.txt")
+                            .getMethod());
+            // Already compressed, or not made smaller by deflate.
+            assertEquals(ZipEntry.STORED,
+                    parallel.getEntry(mResultDir.getName() + "/logs/module/screenshot.png")
+                            .getMethod());
+            assertEquals(ZipEntry.STORED,
+                    parallel.getEntry(mResultDir.getName() + "/logs/module/random.txt")
+                            .getMethod());
+        }
+        // No temporary file is left next to the zip file.
+        assertEquals(Arrays.asList(mResultDir.getName(), "parallel.zip", "serial.zip"),
+                listSorted(mTemporaryFolder.getRoot()));
+    }
+
+    @Test
+    public void testCreateZip_parallelMissingFile() throws Exception {
+        File zip = new File(mTemporaryFolder.getRoot(), "missing.zip");
+
+        try {
+            ZipUtil.createZip(Collections.singletonList(new File(mResultDir, "missing.txt")),
+                    zip, 2);
+            fail("Expected an IOException for a missing file");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertFalse(zip.exists());
+        assertEquals(Collections.singletonList(mResultDir.getName()),
+                listSorted(mTemporaryFolder.getRoot()));
+    }
+
+    @Test
+    public void testCreateZip_parallelMultipleFiles() throws Exception {
+        File zip = new File(mTemporaryFolder.getRoot(), "files.zip");
+        File xml = new File(mResultDir, "test_result.xml");
+        File logs = new File(mResultDir, "logs");
+
+        ZipUtil.createZip(Arrays.asList(xml, logs), zip, 2);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            List<String> names = getNames(zipFile);
+            assertEquals("test_result.xml", names.get(0));
+            assertEquals("logs/", names.get(1));
+            assertTrue(names.contains("logs/empty_dir/"));
+            assertEquals(0, readEntry(zipFile, "logs/empty.txt").length);
+            assertArrayEquals(Files.readAllBytes(xml.toPath()),
+                    readEntry(zipFile, "test_result.xml"));
+        }
+    }
+
+    private static List<String> getNames(ZipFile zipFile) {
+        List<String> names = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return names;
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, String name) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = zipFile.getInputStream(zipFile.getEntry(name))) {
+            StreamUtil.copyStreams(input, output);
+        }
+        return output.toByteArray();
+    }
+
+    private static List<String> listSorted(File dir) {
+        List<String> names = new ArrayList<>(Arrays.asList(dir.list()));
+        Collections.sort(names);
+        return names;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        return content;
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+    }
+}
@@ -21,11 +21,15 @@ import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.helpers.ICollectorHelper;
+import com.android.helpers.IMetricSeriesCollectorHelper;
+import com.android.helpers.MetricSeries;
+import com.android.helpers.ProcessTable;
 
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -66,7 +70,12 @@ public class BaseCollectionListener<T> extends BaseMetricListener {
 
         if (mIsCollectPerRun) {
             Function<String, Boolean> filter = getFilter(description);
-            testStart(filter, description);
+            enterCollectionBoundary("testRunStart", description);
+            try {
+                testStart(filter, description);
+            } finally {
+                exitCollectionBoundary();
+            }
         }
     }
 
@@ -88,7 +97,12 @@ public class BaseCollectionListener<T> extends BaseMetricListener {
         mIsTestFailed = false;
         if (!mIsCollectPerRun) {
             Function<String, Boolean> filter = getFilter(description);
-            testStart(filter, description);
+            enterCollectionBoundary("testStart", description);
+            try {
+                testStart(filter, description);
+            } finally {
+                exitCollectionBoundary();
+            }
         }
     }
 
@@ -100,6 +114,7 @@ public class BaseCollectionListener<T> extends BaseMetricListener {
     @Override
     public void onTestEnd(DataRecord testData, Description description) {
         if (!mIsCollectPerRun) {
+            enterCollectionBoundary("testEnd", description);
             try {
                 // Skip adding the metrics collected during the test failure
                 // if the skip metrics on test failure flag is enabled and the
@@ -111,6 +126,7 @@ public class BaseCollectionListener<T> extends BaseMetricListener {
                     collectMetrics(testData);
                 }
             } finally {
+                exitCollectionBoundary();
                 mHelper.stopCollecting();
             }
         }
@@ -119,14 +135,28 @@ public class BaseCollectionListener<T> extends BaseMetricListener {
     @Override
     public void onTestRunEnd(DataRecord runData, Result result) {
         if (mIsCollectPerRun) {
+            enterCollectionBoundary("testRunEnd", result);
             try {
                 collectMetrics(runData);
             } finally {
+                exitCollectionBoundary();
                 mHelper.stopCollecting();
             }
         }
     }
 
+    /**
+     * Lets the collectors of every listener notified of the same callback share one process table
+     * snapshot, the callback and its description or result identifying the boundary.
+     */
+    private static void enterCollectionBoundary(String callback, Object event) {
+        ProcessTable.getInstance().enterCollectionBoundary(Arrays.asList(callback, event));
+    }
+
+    private static void exitCollectionBoundary() {
+        ProcessTable.getInstance().exitCollectionBoundary();
+    }
+
     public void testStart(Function<String, Boolean> filter, Description description) {
         if (filter == null) {
             mHelper.startCollecting();
@@ -140,6 +170,15 @@ public class BaseCollectionListener<T> extends BaseMetricListener {
     }
 
     protected void collectMetrics(DataRecord data) {
+        if (mHelper instanceof IMetricSeriesCollectorHelper) {
+            // Format each series once, straight from its primitive samples.
+            Map<String, MetricSeries> series =
+                    ((IMetricSeriesCollectorHelper) mHelper).getMetricSeries();
+            for (Map.Entry<String, MetricSeries> entry : series.entrySet()) {
+                data.addStringMetric(entry.getKey(), entry.getValue().toString());
+            }
+            return;
+        }
         Map<String, T> metrics = mHelper.getMetrics();
         for (Map.Entry<String, T> entry : metrics.entrySet()) {
             data.addStringMetric(entry.getKey(), entry.getValue().toString());
@@ -43,6 +43,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base implementation of a device metric listener that will capture and output metrics for each
@@ -87,6 +88,13 @@ public class BaseMetricListener extends InstrumentationRunListener {
     // to 3. Metric will not be collected for 1st,2nd and 3rd iteration.
     public static final String SKIP_METRIC_UNTIL_ITERATION = "skip_metric_until_iteration";
 
+    // Stream the run metrics to a file once their estimated size in bytes reaches the given
+    // threshold, so long runs do not hold every metric in memory. Disabled by default.
+    public static final String STREAMING_METRICS_THRESHOLD = "streaming_metrics_threshold_bytes";
+    private static final String STREAMED_METRICS_DIR = "run_listeners/streamed_metrics";
+    // Source of the per-instance ids that keep the stream files of the listeners apart.
+    private static final AtomicInteger sNextStreamId = new AtomicInteger();
+
     private static final String NAMESPACE_SEPARATOR = ":";
 
     private DataRecord mRunData;
@@ -100,6 +108,8 @@ public class BaseMetricListener extends InstrumentationRunListener {
     private Map<String, Integer> mTestIdInvocationCount = new HashMap<>();
     private int mCollectIterationInterval = 1;
     private int mSkipMetricUntilIteration = 0;
+    private long mStreamingThresholdBytes = 0;
+    private final int mStreamId = sNextStreamId.getAndIncrement();
 
     // Whether to report the results as instrumentation results. Used by metric collector rules,
     // which do not have the information to invoke InstrumentationRunFinished() to report metrics.
@@ -126,6 +136,9 @@ public class BaseMetricListener extends InstrumentationRunListener {
         if (!mLogOnly) {
             try {
                 mRunData = createDataRecord();
+                if (mStreamingThresholdBytes > 0) {
+                    enableStreaming(mRunData);
+                }
                 onTestRunStart(mRunData, description);
             } catch (RuntimeException e) {
                 // Prevent exception from reporting events.
@@ -244,6 +257,26 @@ public class BaseMetricListener extends InstrumentationRunListener {
         return new DataRecord();
     }
 
+    /** Stream the run metrics of this listener to a file under external storage. */
+    private void enableStreaming(DataRecord runData) {
+        File destDir = createDirectory(STREAMED_METRICS_DIR, false);
+        if (destDir == null) {
+            Log.e(getTag(), "Streaming disabled, keeping the run metrics in memory.");
+            return;
+        }
+        String name = getStreamName();
+        runData.enableStreaming(new File(destDir, name + ".bin"), name, mStreamingThresholdBytes);
+    }
+
+    /**
+     * Returns the name of the stream file and the prefix of its index keys. The instance id keeps
+     * two listeners of the same class from overwriting each other's file and keys.
+     */
+    @VisibleForTesting
+    String getStreamName() {
+        return getClass().getSimpleName() + "_" + mStreamId;
+    }
+
     // ---------- Interfaces that can be implemented to set up and clean up metric collection.
 
     /** Called if custom set-up is needed for this metric collector. */
@@ -435,6 +468,13 @@ public class BaseMetricListener extends InstrumentationRunListener {
             // Reset to collect for all the iterations.
             mCollectIterationInterval = 1;
         }
+        try {
+            mStreamingThresholdBytes =
+                    Long.parseLong(args.getString(STREAMING_METRICS_THRESHOLD, "0"));
+        } catch (NumberFormatException e) {
+            Log.e(getTag(), "Invalid streaming metrics threshold, keeping metrics in memory.", e);
+            mStreamingThresholdBytes = 0;
+        }
         String logOnly = args.getString(ARGUMENT_LOG_ONLY);
         if (logOnly != null) {
             mLogOnly = Boolean.parseBoolean(logOnly);
@@ -16,21 +16,88 @@
 package android.device.collectors;
 
 import android.os.Bundle;
+import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Object to hold all the data collected by metric collectors.
+ *
+ * <p>In streaming mode, string and binary metrics are appended to a file once their estimated size
+ * reaches a threshold, and the {@link Bundle} only reports the file and the number of records it
+ * holds, under index keys prefixed with the stream name so that the indexes of several records
+ * can be merged in one result. Each metric is written as a type byte, then the key and the value
+ * as an int length followed by that many bytes, with strings encoded in UTF-8. A key written
+ * several times takes its last value. Use {@link #readStreamedMetrics(File, DataRecord)} to load
+ * the file back.
  */
 public class DataRecord {
+    private static final String TAG = DataRecord.class.getSimpleName();
+
+    // Suffixes of the index keys reported in the Bundle once metrics have been streamed to a
+    // file, see getStreamedMetricsKey().
+    public static final String STREAMED_METRICS_FILE_KEY = "streamed_metrics_file";
+    public static final String STREAMED_RECORD_COUNT_KEY = "streamed_record_count";
+
+    // Record types of the streamed metrics file.
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_BINARY = 1;
+
     // TODO: expend type supports to more complex type: Object,etc.
     private LinkedHashMap<String, String> mCurrentStringMetrics = new LinkedHashMap<>();
     private LinkedHashMap<String, File> mCurrentFileMetrics = new LinkedHashMap<>();
     private LinkedHashMap<String, byte[]> mCurrentBinaryMetrics = new LinkedHashMap<>();
 
+    // Streaming mode state, mStreamFile is null when streaming is disabled.
+    private File mStreamFile;
+    private String mStreamName;
+    private long mStreamThresholdBytes;
+    private long mPendingBytes;
+    // Number of records written to the stream file. A key written several times is counted
+    // each time.
+    private int mStreamedRecordCount;
+
+    /**
+     * Enable streaming of the string and binary metrics to {@code streamFile}.
+     *
+     * @param streamFile append-only file receiving the metrics, any previous content is dropped
+     * @param name prefix of the index keys reported in the {@link Bundle}, unique per record
+     * @param thresholdBytes estimated size of the metrics kept in memory before they are flushed
+     */
+    public void enableStreaming(File streamFile, String name, long thresholdBytes) {
+        streamFile.delete();
+        mStreamFile = streamFile;
+        mStreamName = name;
+        mStreamThresholdBytes = thresholdBytes;
+        mPendingBytes = 0;
+        mStreamedRecordCount = 0;
+    }
+
+    /**
+     * Returns the key under which the {@link Bundle} reports an index value of a streaming
+     * record.
+     *
+     * @param name the name given to {@link #enableStreaming(File, String, long)}
+     * @param suffix {@link #STREAMED_METRICS_FILE_KEY} or {@link #STREAMED_RECORD_COUNT_KEY}
+     */
+    public static String getStreamedMetricsKey(String name, String suffix) {
+        return name + "_" + suffix;
+    }
+
     /**
      * Add a metric to be tracked by a key.
      *
@@ -39,6 +106,7 @@ public class DataRecord {
      */
     public void addStringMetric(String key, String value) {
         mCurrentStringMetrics.put(key, value);
+        onMetricAdded(key, value == null ? 0 : 2L * value.length());
     }
 
     /**
@@ -60,6 +128,7 @@ public class DataRecord {
      */
     public void addBinaryMetric(String key, byte[] value) {
         mCurrentBinaryMetrics.put(key, value);
+        onMetricAdded(key, value == null ? 0 : value.length);
     }
 
     /**
@@ -67,7 +136,7 @@ public class DataRecord {
      */
     public boolean hasMetrics() {
         return (mCurrentStringMetrics.size() + mCurrentFileMetrics.size()
-                + mCurrentBinaryMetrics.size()) > 0;
+                + mCurrentBinaryMetrics.size() + mStreamedRecordCount) > 0;
     }
 
     /**
@@ -88,8 +157,21 @@ public class DataRecord {
      * available.
      */
     final Bundle createBundleFromMetrics() {
+        if (mStreamedRecordCount > 0) {
+            // Keep all the streamed metrics in one place, anything that fails to be written is
+            // still reported below.
+            flushToStream();
+        }
         Map<String, String> map = getStringMetrics();
         Bundle b = createBundle();
+        if (mStreamedRecordCount > 0) {
+            b.putString(
+                    getStreamedMetricsKey(mStreamName, STREAMED_METRICS_FILE_KEY),
+                    mStreamFile.getAbsolutePath());
+            b.putString(
+                    getStreamedMetricsKey(mStreamName, STREAMED_RECORD_COUNT_KEY),
+                    String.valueOf(mStreamedRecordCount));
+        }
         for (String key : map.keySet()) {
             b.putString(key, map.get(key));
         }
@@ -111,5 +193,127 @@ public class DataRecord {
         mCurrentStringMetrics.clear();
         mCurrentFileMetrics.clear();
         mCurrentBinaryMetrics.clear();
+        if (mStreamFile != null) {
+            mStreamFile.delete();
+        }
+        mPendingBytes = 0;
+        mStreamedRecordCount = 0;
+    }
+
+    /**
+     * Load the metrics streamed to {@code streamFile} into {@code record}.
+     *
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static void readStreamedMetrics(File streamFile, DataRecord record) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(streamFile)))) {
+            while (true) {
+                int type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                String key = new String(readBytes(in), StandardCharsets.UTF_8);
+                byte[] value = readBytes(in);
+                if (type == TYPE_STRING) {
+                    record.addStringMetric(key, new String(value, StandardCharsets.UTF_8));
+                } else if (type == TYPE_BINARY) {
+                    record.addBinaryMetric(key, value);
+                } else {
+                    throw new IOException(
+                            String.format("Unknown record type %d in %s", type, streamFile));
+                }
+            }
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void onMetricAdded(String key, long valueBytes) {
+        if (mStreamFile == null) {
+            return;
+        }
+        mPendingBytes += 2L * key.length() + valueBytes;
+        if (mPendingBytes >= mStreamThresholdBytes) {
+            flushToStream();
+        }
+    }
+
+    /**
+     * Append the string and binary metrics held in memory to the stream file. The metrics are
+     * appended as a whole: on failure the file is truncated back to its previous length, the
+     * metrics stay in memory and no more flushes are triggered by the threshold.
+     */
+    private void flushToStream() {
+        if (mCurrentStringMetrics.isEmpty() && mCurrentBinaryMetrics.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(mStreamFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer batch = ByteBuffer.wrap(serializeMetrics());
+            long streamLength = channel.size();
+            channel.position(streamLength);
+            try {
+                writeToStream(channel, batch);
+            } catch (IOException e) {
+                // Do not leave a partial batch that readStreamedMetrics() cannot parse.
+                try {
+                    channel.truncate(streamLength);
+                } catch (IOException truncateException) {
+                    e.addSuppressed(truncateException);
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to stream metrics to " + mStreamFile, e);
+            mStreamThresholdBytes = Long.MAX_VALUE;
+            return;
+        }
+        mStreamedRecordCount += mCurrentStringMetrics.size() + mCurrentBinaryMetrics.size();
+        mCurrentStringMetrics.clear();
+        mCurrentBinaryMetrics.clear();
+        mPendingBytes = 0;
+    }
+
+    /**
+     * Write {@code batch} at the current position of {@code channel}. Exposed for testing.
+     */
+    @VisibleForTesting
+    void writeToStream(FileChannel channel, ByteBuffer batch) throws IOException {
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+    }
+
+    private byte[] serializeMetrics() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : mCurrentStringMetrics.entrySet()) {
+                String value = entry.getValue() == null ? "" : entry.getValue();
+                writeRecord(out, TYPE_STRING, entry.getKey(),
+                        value.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Map.Entry<String, byte[]> entry : mCurrentBinaryMetrics.entrySet()) {
+                byte[] value = entry.getValue() == null ? new byte[0] : entry.getValue();
+                writeRecord(out, TYPE_BINARY, entry.getKey(), value);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, String key, byte[] value)
+            throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(value.length);
+        out.write(value);
     }
 }
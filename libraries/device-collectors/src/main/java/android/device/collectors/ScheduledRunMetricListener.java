@@ -15,6 +15,7 @@
  */
 package android.device.collectors;
 
+import android.device.collectors.util.CollectionScheduler;
 import android.os.Bundle;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
@@ -22,21 +23,38 @@ import android.util.Log;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
  * Implementation of {@link BaseMetricListener} that allows to run a periodic collection during the
  * instrumentation run. Implementing {@link #collect(DataRecord, Description)} as the periodic task
  * running. It is possible to run some actions before and at the end of the periodic run using
  * {@link #onStart(DataRecord, Description)} and {@link #onEnd(DataRecord, Result)}.
+ *
+ * <p>Ticks that overrun the next deadline are skipped rather than run back to back. The number of
+ * ticks, skipped ticks and failed ticks, and the mean, p50, p99 and max of the tick latency and
+ * jitter, are reported in the run metrics under the {@link #SCHEDULER_METRIC_PREFIX} prefix.
  */
 public abstract class ScheduledRunMetricListener extends BaseMetricListener {
 
     public static final String INTERVAL_ARG_KEY = "interval";
+    // "fixed-rate" (default) or "fixed-delay".
+    public static final String SCHEDULE_MODE_ARG_KEY = "schedule-mode";
+    // Run on the scheduler thread shared with the other scheduled listeners.
+    public static final String SHARED_SCHEDULER_ARG_KEY = "shared-scheduler";
     private static final long DEFAULT_INTERVAL_MS = 60 * 1000L; // 1 min
 
-    private Timer mTimer;
+    public static final String SCHEDULER_METRIC_PREFIX = "scheduler_";
+    static final String TICKS_METRIC = "ticks";
+    static final String SKIPPED_TICKS_METRIC = "skipped_ticks";
+    static final String FAILED_TICKS_METRIC = "failed_ticks";
+    static final String TICK_LATENCY_METRIC = "tick_latency";
+    static final String TICK_JITTER_METRIC = "tick_jitter";
+    static final String MEAN_MS_SUFFIX = "_mean_ms";
+    static final String P50_MS_SUFFIX = "_p50_ms";
+    static final String P99_MS_SUFFIX = "_p99_ms";
+    static final String MAX_MS_SUFFIX = "_max_ms";
+
+    private CollectionScheduler mScheduler;
+    private CollectionScheduler.ScheduledTask mScheduledTask;
 
     public ScheduledRunMetricListener() {}
 
@@ -49,30 +67,25 @@ public abstract class ScheduledRunMetricListener extends BaseMetricListener {
     public final void onTestRunStart(final DataRecord runData, final Description description) {
         Log.d(getTag(), "Starting");
         onStart(runData, description);
-        // TODO: could this be done with Handlers ?
-        mTimer = new Timer();
-        TimerTask timerTask =
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        try {
-                            collect(runData, description);
-                        } catch (InterruptedException e) {
-                            mTimer.cancel();
-                            Thread.currentThread().interrupt();
-                            Log.e(getTag(), "Interrupted exception thrown from task:", e);
-                        }
-                    }
-                };
-
-        mTimer.scheduleAtFixedRate(timerTask, 0, getIntervalFromArgs());
+        if (Boolean.parseBoolean(getArgsBundle().getString(SHARED_SCHEDULER_ARG_KEY))) {
+            mScheduler = CollectionScheduler.getShared();
+        } else {
+            mScheduler = CollectionScheduler.create(getClass().getSimpleName());
+        }
+        mScheduledTask =
+                mScheduler.schedule(
+                        () -> collect(runData, description),
+                        getIntervalFromArgs(),
+                        getModeFromArgs());
     }
 
     @Override
     public final void onTestRunEnd(DataRecord runData, Result result) {
-        if (mTimer != null) {
-            mTimer.cancel();
-            mTimer.purge();
+        if (mScheduledTask != null) {
+            mScheduledTask.cancel();
+            mScheduler.shutdown();
+            addSchedulerMetrics(runData, mScheduledTask);
+            mScheduledTask = null;
         }
         onEnd(runData, result);
         Log.d(getTag(), "Finished");
@@ -108,6 +121,42 @@ public abstract class ScheduledRunMetricListener extends BaseMetricListener {
     public abstract void collect(DataRecord runData, Description description)
             throws InterruptedException;
 
+    private void addSchedulerMetrics(
+            DataRecord runData, CollectionScheduler.ScheduledTask scheduledTask) {
+        // Anonymous listeners have no simple name.
+        String name = getClass().getSimpleName().isEmpty() ? "" : getClass().getSimpleName() + "_";
+        String prefix = SCHEDULER_METRIC_PREFIX + name;
+        runData.addStringMetric(
+                prefix + TICKS_METRIC, String.valueOf(scheduledTask.getTickCount()));
+        runData.addStringMetric(
+                prefix + SKIPPED_TICKS_METRIC, String.valueOf(scheduledTask.getSkippedTicks()));
+        runData.addStringMetric(
+                prefix + FAILED_TICKS_METRIC, String.valueOf(scheduledTask.getFailedTicks()));
+        addSummaryMetrics(
+                runData, prefix + TICK_LATENCY_METRIC, scheduledTask.getLatencySummaryMs());
+        addSummaryMetrics(runData, prefix + TICK_JITTER_METRIC, scheduledTask.getJitterSummaryMs());
+    }
+
+    private void addSummaryMetrics(
+            DataRecord runData, String key, CollectionScheduler.Summary summary) {
+        runData.addStringMetric(key + MEAN_MS_SUFFIX, String.valueOf(summary.getMean()));
+        runData.addStringMetric(key + P50_MS_SUFFIX, String.valueOf(summary.getP50()));
+        runData.addStringMetric(key + P99_MS_SUFFIX, String.valueOf(summary.getP99()));
+        runData.addStringMetric(key + MAX_MS_SUFFIX, String.valueOf(summary.getMax()));
+    }
+
+    /** Extract the schedule mode from the instrumentation arguments, fixed rate by default. */
+    private CollectionScheduler.Mode getModeFromArgs() {
+        String mode = getArgsBundle().getString(SCHEDULE_MODE_ARG_KEY, "fixed-rate");
+        if ("fixed-delay".equals(mode)) {
+            return CollectionScheduler.Mode.FIXED_DELAY;
+        }
+        if (!"fixed-rate".equals(mode)) {
+            Log.e(getTag(), String.format("Unknown schedule mode %s, using fixed-rate.", mode));
+        }
+        return CollectionScheduler.Mode.FIXED_RATE;
+    }
+
     /**
      * Extract the interval from the instrumentation arguments or use the default interval value.
      */
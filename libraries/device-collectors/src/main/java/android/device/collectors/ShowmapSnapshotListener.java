@@ -37,6 +37,9 @@ import java.util.Map;
  * -e metric-index [rss:2,pss:3,privatedirty:7] : memory metric name corresponding
  * -e gc-precollect [true | false] : whether it needs to run a GC prior to collecting memory
  * metrics. to index in the showmap output.
+ * -e streaming-parse [true | false] : whether showmap output is parsed while it is read instead
+ * of being buffered per process.
+ * -e showmap_parallelism [n] : number of processes collected concurrently, defaults to 1.
  */
 @OptionClass(alias = "showmapsnapshot-collector")
 public class ShowmapSnapshotListener extends BaseCollectionListener<String> {
@@ -50,6 +53,8 @@ public class ShowmapSnapshotListener extends BaseCollectionListener<String> {
   @VisibleForTesting static final String OUTPUT_DIR_KEY = "test-output-dir";
   @VisibleForTesting static final String GC_PRECOLLECT_KEY = "gc-precollect";
     @VisibleForTesting static final String COUNT_THREADS_KEY = "count-threads";
+  @VisibleForTesting static final String STREAMING_PARSE_KEY = "streaming-parse";
+  @VisibleForTesting static final String PARALLELISM_KEY = "showmap_parallelism";
 
   private ShowmapSnapshotHelper mShowmapSnapshotHelper = new ShowmapSnapshotHelper();
   private final Map<String, Integer> dropCacheValues = Map.of(
@@ -124,5 +129,19 @@ public class ShowmapSnapshotListener extends BaseCollectionListener<String> {
 
         boolean runCountThreads = "true".equals(args.getString(COUNT_THREADS_KEY, "false"));
         mShowmapSnapshotHelper.setCountThreadsOption(runCountThreads);
+
+    boolean streamingParse = "true".equals(args.getString(STREAMING_PARSE_KEY, "false"));
+    mShowmapSnapshotHelper.setStreamingParseOption(streamingParse);
+
+    String parallelismValue = args.getString(PARALLELISM_KEY);
+    if (parallelismValue != null) {
+      try {
+        if (!mShowmapSnapshotHelper.setParallelism(Integer.parseInt(parallelismValue))) {
+          Log.e(TAG, "Value for \"" + PARALLELISM_KEY + "\" parameter is invalid");
+        }
+      } catch (NumberFormatException e) {
+        Log.e(TAG, "Value for \"" + PARALLELISM_KEY + "\" parameter is invalid", e);
+      }
+    }
   }
 }
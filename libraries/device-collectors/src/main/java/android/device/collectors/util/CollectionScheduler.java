@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors.util;
+
+import android.util.Log;
+
+import com.android.helpers.MetricSeries;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler running periodic metric collection tasks.
+ *
+ * <p>Unlike {@code Timer.scheduleAtFixedRate}, a tick that runs past the next deadline does not
+ * cause a burst of catch-up runs: the missed ticks are skipped and counted. A task throwing an
+ * exception is logged and keeps being scheduled. Each task records the latency of every tick and
+ * its jitter, the delay between the deadline and the actual start.
+ *
+ * <p>Several tasks can share one scheduler thread through {@link #getShared()}, in which case a
+ * slow task delays the others.
+ */
+public class CollectionScheduler {
+    private static final String TAG = CollectionScheduler.class.getSimpleName();
+
+    /** How the next deadline is computed after a tick. */
+    public enum Mode {
+        /** Deadlines are multiples of the interval from the first tick. */
+        FIXED_RATE,
+        /** The next deadline is one interval after the end of the previous tick. */
+        FIXED_DELAY,
+    }
+
+    /** A periodic task, interrupting it cancels the schedule. */
+    public interface Task {
+        void run() throws InterruptedException;
+    }
+
+    private static CollectionScheduler sShared;
+
+    private final ScheduledExecutorService mExecutor;
+    private final boolean mIsShared;
+
+    private CollectionScheduler(String threadName, boolean isShared) {
+        mExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, threadName);
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        mIsShared = isShared;
+    }
+
+    /** Returns the scheduler whose thread is shared by all the callers. */
+    public static synchronized CollectionScheduler getShared() {
+        if (sShared == null) {
+            sShared = new CollectionScheduler(TAG + "-shared", true);
+        }
+        return sShared;
+    }
+
+    /** Returns a new scheduler with its own thread, to be released with {@link #shutdown()}. */
+    public static CollectionScheduler create(String name) {
+        return new CollectionScheduler(TAG + "-" + name, false);
+    }
+
+    /**
+     * Schedule {@code task} to run now and then every {@code intervalMs}.
+     *
+     * @return the handle used to cancel the task and read its statistics
+     */
+    public ScheduledTask schedule(Task task, long intervalMs, Mode mode) {
+        ScheduledTask scheduledTask = new ScheduledTask(task, intervalMs, mode);
+        scheduledTask.scheduleAt(System.nanoTime());
+        return scheduledTask;
+    }
+
+    /** Stop the scheduler thread. Does nothing on the shared scheduler. */
+    public void shutdown() {
+        if (!mIsShared) {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    /** A task scheduled on a {@link CollectionScheduler}. */
+    public class ScheduledTask {
+        private final Task mTask;
+        private final long mIntervalNs;
+        private final Mode mMode;
+
+        // Guarded by this, so that cancel() waits for a running tick.
+        private ScheduledFuture<?> mFuture;
+        private boolean mCancelled;
+        private int mSkippedTicks;
+        private int mFailedTicks;
+        private final MetricSeries mLatenciesMs = new MetricSeries();
+        private final MetricSeries mJittersMs = new MetricSeries();
+
+        private ScheduledTask(Task task, long intervalMs, Mode mode) {
+            mTask = task;
+            mIntervalNs = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+            mMode = mode;
+        }
+
+        private synchronized void scheduleAt(long deadlineNs) {
+            if (mCancelled) {
+                return;
+            }
+            long delayNs = Math.max(0, deadlineNs - System.nanoTime());
+            mFuture = mExecutor.schedule(() -> tick(deadlineNs), delayNs, TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void tick(long deadlineNs) {
+            if (mCancelled) {
+                return;
+            }
+            long startNs = System.nanoTime();
+            try {
+                mTask.run();
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted exception thrown from task:", e);
+                mCancelled = true;
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Exception thrown from task:", e);
+                mFailedTicks++;
+            }
+            long endNs = System.nanoTime();
+            mJittersMs.add(TimeUnit.NANOSECONDS.toMillis(startNs - deadlineNs));
+            mLatenciesMs.add(TimeUnit.NANOSECONDS.toMillis(endNs - startNs));
+
+            long nextDeadlineNs;
+            if (mMode == Mode.FIXED_DELAY) {
+                nextDeadlineNs = endNs + mIntervalNs;
+            } else {
+                nextDeadlineNs = deadlineNs + mIntervalNs;
+                if (nextDeadlineNs <= endNs) {
+                    // Skip the deadlines that already passed instead of catching up.
+                    long missed = (endNs - nextDeadlineNs) / mIntervalNs + 1;
+                    mSkippedTicks += missed;
+                    nextDeadlineNs += missed * mIntervalNs;
+                }
+            }
+            scheduleAt(nextDeadlineNs);
+        }
+
+        /** Cancel the task, waiting for the tick in progress if any. */
+        public synchronized void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        /** Returns the number of ticks that ran. */
+        public synchronized int getTickCount() {
+            return mLatenciesMs.size();
+        }
+
+        /** Returns the number of ticks skipped because a previous tick overran them. */
+        public synchronized int getSkippedTicks() {
+            return mSkippedTicks;
+        }
+
+        /** Returns the number of ticks that threw an exception. */
+        public synchronized int getFailedTicks() {
+            return mFailedTicks;
+        }
+
+        /** Returns the statistics of the duration of the ticks in ms. */
+        public synchronized Summary getLatencySummaryMs() {
+            return new Summary(mLatenciesMs);
+        }
+
+        /** Returns the statistics of the delay between the deadline and the start of the ticks. */
+        public synchronized Summary getJitterSummaryMs() {
+            return new Summary(mJittersMs);
+        }
+    }
+
+    /**
+     * Fixed size statistics of the samples of a task, so that long runs do not report every
+     * sample. All the values are 0 when there are no samples.
+     */
+    public static class Summary {
+        private final long mMean;
+        private final long mP50;
+        private final long mP99;
+        private final long mMax;
+
+        private Summary(MetricSeries series) {
+            long[] sorted = new long[series.size()];
+            long sum = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = series.getLong(i);
+                sum += sorted[i];
+            }
+            Arrays.sort(sorted);
+            mMean = sorted.length == 0 ? 0 : sum / sorted.length;
+            mP50 = percentile(sorted, 50);
+            mP99 = percentile(sorted, 99);
+            mMax = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+        }
+
+        /** Returns the nearest-rank {@code percent} percentile of the sorted samples. */
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        public long getMean() {
+            return mMean;
+        }
+
+        public long getP50() {
+            return mP50;
+        }
+
+        public long getP99() {
+            return mP99;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+    }
+}
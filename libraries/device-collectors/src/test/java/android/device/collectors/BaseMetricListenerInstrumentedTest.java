@@ -773,4 +773,14 @@ public class BaseMetricListenerInstrumentedTest {
                         Mockito.eq(SendToInstrumentation.INST_STATUS_IN_PROGRESS),
                         Mockito.any(Bundle.class));
     }
+
+    /** Test that two listeners of the same class stream to distinct files and index keys. */
+    @Test
+    public void testStreamNameIsUniquePerInstance() {
+        BaseMetricListener first = new StubTestMetricListener();
+        BaseMetricListener second = new StubTestMetricListener();
+        assertTrue(first.getStreamName().startsWith("StubTestMetricListener_"));
+        assertTrue(second.getStreamName().startsWith("StubTestMetricListener_"));
+        assertFalse(first.getStreamName().equals(second.getStreamName()));
+    }
 }
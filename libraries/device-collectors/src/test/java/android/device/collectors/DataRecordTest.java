@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors;
+
+import android.os.Bundle;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Android Unit Tests for {@link DataRecord}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DataRecordTest {
+    private static final String STREAM_NAME = "TestListener";
+
+    private File mStreamFile;
+
+    @Before
+    public void setUp() {
+        mStreamFile = new File(
+                InstrumentationRegistry.getTargetContext().getCacheDir(), "data_record_test.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mStreamFile.delete();
+    }
+
+    /** Test the metrics are reported in the bundle when streaming is disabled. */
+    @Test
+    public void testBundleWithoutStreaming() {
+        DataRecord record = new DataRecord();
+        record.addStringMetric("key", "value");
+        record.addBinaryMetric("binary", new byte[] {1, 2});
+        record.addFileMetric("file", mStreamFile);
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals("value", bundle.getString("key"));
+        assertArrayEquals(new byte[] {1, 2}, bundle.getByteArray("binary"));
+        assertEquals(mStreamFile.getAbsolutePath(), bundle.getString("file"));
+        assertNull(
+                bundle.getString(
+                        DataRecord.getStreamedMetricsKey(
+                                STREAM_NAME, DataRecord.STREAMED_METRICS_FILE_KEY)));
+    }
+
+    /** Test the metrics are streamed once the threshold is reached and only indexed. */
+    @Test
+    public void testStreaming() throws Exception {
+        DataRecord record = new DataRecord();
+        record.enableStreaming(mStreamFile, STREAM_NAME, 100);
+        for (int i = 0; i < 50; i++) {
+            record.addStringMetric("key_" + i, "value_" + i);
+        }
+        record.addBinaryMetric("binary", new byte[] {1, 2});
+        record.addFileMetric("file", mStreamFile);
+        assertTrue(mStreamFile.length() > 0);
+        assertTrue(record.hasMetrics());
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals(
+                mStreamFile.getAbsolutePath(),
+                bundle.getString(
+                        DataRecord.getStreamedMetricsKey(
+                                STREAM_NAME, DataRecord.STREAMED_METRICS_FILE_KEY)));
+        assertEquals(
+                "51",
+                bundle.getString(
+                        DataRecord.getStreamedMetricsKey(
+                                STREAM_NAME, DataRecord.STREAMED_RECORD_COUNT_KEY)));
+        assertEquals(mStreamFile.getAbsolutePath(), bundle.getString("file"));
+        assertFalse(bundle.containsKey("key_49"));
+
+        DataRecord loaded = new DataRecord();
+        DataRecord.readStreamedMetrics(mStreamFile, loaded);
+        Bundle loadedBundle = loaded.createBundleFromMetrics();
+        assertEquals(51, loadedBundle.size());
+        assertEquals("value_0", loadedBundle.getString("key_0"));
+        assertEquals("value_49", loadedBundle.getString("key_49"));
+        assertArrayEquals(new byte[] {1, 2}, loadedBundle.getByteArray("binary"));
+    }
+
+    /** Test a failed flush leaves the stream file readable and the metrics in the bundle. */
+    @Test
+    public void testStreamingWriteFailure() throws Exception {
+        AtomicBoolean failWrites = new AtomicBoolean();
+        DataRecord record =
+                new DataRecord() {
+                    @Override
+                    void writeToStream(FileChannel channel, ByteBuffer batch)
+                            throws IOException {
+                        if (failWrites.get()) {
+                            // Write half of the batch before failing.
+                            batch.limit(batch.position() + batch.remaining() / 2);
+                            super.writeToStream(channel, batch);
+                            throw new IOException("Injected write failure");
+                        }
+                        super.writeToStream(channel, batch);
+                    }
+                };
+        record.enableStreaming(mStreamFile, STREAM_NAME, 1);
+        record.addStringMetric("streamed", "value");
+        long streamLength = mStreamFile.length();
+        failWrites.set(true);
+        record.addStringMetric("pending", "pending_value");
+        record.addBinaryMetric("binary", new byte[] {1, 2});
+        assertEquals(streamLength, mStreamFile.length());
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals(streamLength, mStreamFile.length());
+        assertEquals(
+                "1",
+                bundle.getString(
+                        DataRecord.getStreamedMetricsKey(
+                                STREAM_NAME, DataRecord.STREAMED_RECORD_COUNT_KEY)));
+        assertEquals("pending_value", bundle.getString("pending"));
+        assertArrayEquals(new byte[] {1, 2}, bundle.getByteArray("binary"));
+        assertFalse(bundle.containsKey("streamed"));
+
+        DataRecord loaded = new DataRecord();
+        DataRecord.readStreamedMetrics(mStreamFile, loaded);
+        Bundle loadedBundle = loaded.createBundleFromMetrics();
+        assertEquals(1, loadedBundle.size());
+        assertEquals("value", loadedBundle.getString("streamed"));
+    }
+
+    /** Test the indexes of several streaming records survive being merged in one bundle. */
+    @Test
+    public void testStreamingIndexesPerName() throws Exception {
+        File otherStreamFile = new File(mStreamFile.getParentFile(), "data_record_test_other.bin");
+        try {
+            DataRecord record = new DataRecord();
+            record.enableStreaming(mStreamFile, STREAM_NAME, 1);
+            record.addStringMetric("key", "value");
+            DataRecord otherRecord = new DataRecord();
+            otherRecord.enableStreaming(otherStreamFile, "OtherListener", 1);
+            otherRecord.addStringMetric("other_key", "other_value");
+            otherRecord.addStringMetric("other_key", "last_value");
+
+            Bundle results = new Bundle();
+            results.putAll(record.createBundleFromMetrics());
+            results.putAll(otherRecord.createBundleFromMetrics());
+            assertEquals(
+                    mStreamFile.getAbsolutePath(),
+                    results.getString(
+                            DataRecord.getStreamedMetricsKey(
+                                    STREAM_NAME, DataRecord.STREAMED_METRICS_FILE_KEY)));
+            assertEquals(
+                    otherStreamFile.getAbsolutePath(),
+                    results.getString(
+                            DataRecord.getStreamedMetricsKey(
+                                    "OtherListener", DataRecord.STREAMED_METRICS_FILE_KEY)));
+            // Both values of the key written twice are records of the file.
+            assertEquals(
+                    "2",
+                    results.getString(
+                            DataRecord.getStreamedMetricsKey(
+                                    "OtherListener", DataRecord.STREAMED_RECORD_COUNT_KEY)));
+        } finally {
+            otherStreamFile.delete();
+        }
+    }
+
+    /** Test clearing a streaming record drops the streamed metrics. */
+    @Test
+    public void testClearStreaming() {
+        DataRecord record = new DataRecord();
+        record.enableStreaming(mStreamFile, STREAM_NAME, 1);
+        record.addStringMetric("key", "value");
+        assertTrue(mStreamFile.exists());
+
+        record.clear();
+        assertFalse(record.hasMetrics());
+        assertFalse(mStreamFile.exists());
+    }
+}
@@ -27,7 +27,16 @@ import org.junit.runner.Result;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static android.device.collectors.ScheduledRunMetricListener.MAX_MS_SUFFIX;
+import static android.device.collectors.ScheduledRunMetricListener.MEAN_MS_SUFFIX;
+import static android.device.collectors.ScheduledRunMetricListener.P50_MS_SUFFIX;
+import static android.device.collectors.ScheduledRunMetricListener.P99_MS_SUFFIX;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Android Unit tests for {@link ScheduledRunMetricListener}.
@@ -37,6 +46,7 @@ public class ScheduledRunMetricListenerTest {
 
     private static final String TEST_RUN_KEY = "periodic_key";
     private static final String TEST_RUN_VALUE = "periodic_value";
+    private static final long TICK_TIMEOUT_SECONDS = 30;
 
     private ScheduledRunMetricListener mListener;
 
@@ -72,4 +82,115 @@ public class ScheduledRunMetricListenerTest {
         assertEquals(TEST_RUN_VALUE + "1", resultBundle.getString(TEST_RUN_KEY + "1"));
         assertEquals(TEST_RUN_VALUE + "2", resultBundle.getString(TEST_RUN_KEY + "2"));
     }
+
+    /** Test the scheduler statistics are reported with the run metrics. */
+    @Test
+    public void testSchedulerMetrics() throws Exception {
+        CountDownLatch ticked = new CountDownLatch(3);
+        Bundle resultBundle = runUntil(createListener(ticked::countDown), ticked);
+        String prefix = ScheduledRunMetricListener.SCHEDULER_METRIC_PREFIX;
+        int ticks =
+                Integer.parseInt(
+                        resultBundle.getString(
+                                prefix + ScheduledRunMetricListener.TICKS_METRIC));
+        assertTrue(ticks >= 3);
+        // The latency and jitter are summarized instead of reported for every tick.
+        for (String metric :
+                new String[] {
+                    ScheduledRunMetricListener.TICK_LATENCY_METRIC,
+                    ScheduledRunMetricListener.TICK_JITTER_METRIC
+                }) {
+            long p50 = getLong(resultBundle, prefix + metric + P50_MS_SUFFIX);
+            long p99 = getLong(resultBundle, prefix + metric + P99_MS_SUFFIX);
+            long max = getLong(resultBundle, prefix + metric + MAX_MS_SUFFIX);
+            assertTrue(getLong(resultBundle, prefix + metric + MEAN_MS_SUFFIX) <= max);
+            assertTrue(p50 <= p99);
+            assertTrue(p99 <= max);
+            assertFalse(resultBundle.containsKey(prefix + metric));
+        }
+        assertEquals(
+                "0",
+                resultBundle.getString(prefix + ScheduledRunMetricListener.FAILED_TICKS_METRIC));
+    }
+
+    /** Test ticks overrunning the interval are skipped instead of run back to back. */
+    @Test
+    public void testOverrunSkipsTicks() throws Exception {
+        CountDownLatch ticked = new CountDownLatch(2);
+        ScheduledRunMetricListener listener =
+                createListener(
+                        () -> {
+                            Thread.sleep(250L);
+                            ticked.countDown();
+                        });
+        Bundle resultBundle = runUntil(listener, ticked);
+        String prefix = ScheduledRunMetricListener.SCHEDULER_METRIC_PREFIX;
+        int ticks =
+                Integer.parseInt(
+                        resultBundle.getString(
+                                prefix + ScheduledRunMetricListener.TICKS_METRIC));
+        int skipped =
+                Integer.parseInt(
+                        resultBundle.getString(
+                                prefix + ScheduledRunMetricListener.SKIPPED_TICKS_METRIC));
+        // Each tick lasts at least 250ms, so it overruns at least 2 deadlines of 100ms.
+        assertTrue(ticks >= 2);
+        assertTrue(skipped >= 2 * ticks);
+    }
+
+    /** Test a failing tick does not stop the periodic collection. */
+    @Test
+    public void testFailingTickKeepsRunning() throws Exception {
+        CountDownLatch ticked = new CountDownLatch(3);
+        ScheduledRunMetricListener listener =
+                createListener(
+                        () -> {
+                            ticked.countDown();
+                            throw new IllegalStateException("collection failed");
+                        });
+        Bundle resultBundle = runUntil(listener, ticked);
+        String prefix = ScheduledRunMetricListener.SCHEDULER_METRIC_PREFIX;
+        int failed =
+                Integer.parseInt(
+                        resultBundle.getString(
+                                prefix + ScheduledRunMetricListener.FAILED_TICKS_METRIC));
+        assertTrue(failed >= 3);
+    }
+
+    private static long getLong(Bundle bundle, String key) {
+        return Long.parseLong(bundle.getString(key));
+    }
+
+    private interface Collection {
+        void run() throws InterruptedException;
+    }
+
+    private ScheduledRunMetricListener createListener(Collection collection) {
+        Bundle b = new Bundle();
+        b.putString(ScheduledRunMetricListener.INTERVAL_ARG_KEY, "100");
+        ScheduledRunMetricListener listener =
+                new ScheduledRunMetricListener(b) {
+                    @Override
+                    public void collect(DataRecord runData, Description desc)
+                            throws InterruptedException {
+                        collection.run();
+                    }
+                };
+        listener.setInstrumentation(Mockito.mock(Instrumentation.class));
+        return listener;
+    }
+
+    /**
+     * Run {@code listener} until {@code ticked} reaches zero. Ending the run waits for the tick in
+     * progress, so the reported statistics include every tick counted on the latch.
+     */
+    private Bundle runUntil(ScheduledRunMetricListener listener, CountDownLatch ticked)
+            throws Exception {
+        listener.testRunStarted(Description.createSuiteDescription("run"));
+        assertTrue(ticked.await(TICK_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        listener.testRunFinished(new Result());
+        Bundle resultBundle = new Bundle();
+        listener.instrumentationRunFinished(System.out, resultBundle, new Result());
+        return resultBundle;
+    }
 }
@@ -19,8 +19,10 @@ package android.device.collectors;
 import static android.device.collectors.ShowmapSnapshotListener.DROP_CACHE_KEY;
 import static android.device.collectors.ShowmapSnapshotListener.METRIC_NAME_INDEX;
 import static android.device.collectors.ShowmapSnapshotListener.OUTPUT_DIR_KEY;
+import static android.device.collectors.ShowmapSnapshotListener.PARALLELISM_KEY;
 import static android.device.collectors.ShowmapSnapshotListener.PROCESS_NAMES_KEY;
 import static android.device.collectors.ShowmapSnapshotListener.PROCESS_SEPARATOR;
+import static android.device.collectors.ShowmapSnapshotListener.STREAMING_PARSE_KEY;
 import static org.mockito.Mockito.verify;
 
 import android.app.Instrumentation;
@@ -92,4 +94,30 @@ public class ShowmapSnapshotListenerTest {
     // DROP_CACHE_KEY values: "pagecache" = 1, "slab" = 2, "all" = 3
     verify(mShowmapSnapshotHelper).setDropCacheOption(3);
   }
+
+  @Test
+  public void testStreamingParseOption() throws Exception {
+    Bundle b = new Bundle();
+    b.putString(PROCESS_NAMES_KEY, "process1");
+    b.putString(OUTPUT_DIR_KEY, VALID_OUTPUT_DIR);
+    b.putString(STREAMING_PARSE_KEY, "true");
+    mListener = initListener(b);
+
+    mListener.testRunStarted(mRunDesc);
+
+    verify(mShowmapSnapshotHelper).setStreamingParseOption(true);
+  }
+
+  @Test
+  public void testParallelismOption() throws Exception {
+    Bundle b = new Bundle();
+    b.putString(PROCESS_NAMES_KEY, "process1");
+    b.putString(OUTPUT_DIR_KEY, VALID_OUTPUT_DIR);
+    b.putString(PARALLELISM_KEY, "4");
+    mListener = initListener(b);
+
+    mListener.testRunStarted(mRunDesc);
+
+    verify(mShowmapSnapshotHelper).setParallelism(4);
+  }
 }
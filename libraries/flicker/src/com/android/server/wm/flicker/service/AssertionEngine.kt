@@ -104,8 +104,8 @@ class AssertionEngine(
         wmTrace: WindowManagerTrace,
         layersTrace: LayersTrace
     ): Pair<WindowManagerTrace, LayersTrace> {
-        val filteredWmTrace = wmTrace.filter(tag.startTimestamp, tag.endTimestamp)
-        val filteredLayersTrace = layersTrace.filter(tag.startTimestamp, tag.endTimestamp)
+        val filteredWmTrace = wmTrace.subTrace(tag.startTimestamp, tag.endTimestamp)
+        val filteredLayersTrace = layersTrace.subTrace(tag.startTimestamp, tag.endTimestamp)
         return Pair(filteredWmTrace, filteredLayersTrace)
     }
 
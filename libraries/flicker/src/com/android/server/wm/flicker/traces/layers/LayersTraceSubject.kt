@@ -269,7 +269,7 @@ class LayersTraceSubject private constructor(
      * Run the assertions for all trace entries within the specified time range
      */
     fun forRange(startTime: Long, endTime: Long) {
-        val subjectsInRange = subjects.filter { it.entry.timestamp in startTime..endTime }
+        val subjectsInRange = subjects.slice(trace.indicesBetween(startTime, endTime))
         assertionsChecker.test(subjectsInRange)
     }
 
@@ -279,7 +279,9 @@ class LayersTraceSubject private constructor(
      * @param timestamp of the entry
      */
     fun entry(timestamp: Long): LayerTraceEntrySubject =
-        subjects.first { it.entry.timestamp == timestamp }
+        subjects.getOrNull(trace.indexOfFirstAtOrAfter(timestamp))
+            ?.takeIf { it.entry.timestamp == timestamp }
+            ?: throw NoSuchElementException("No entry at timestamp $timestamp")
 
     companion object {
         /**
@@ -400,7 +400,7 @@ class WindowManagerTraceSubject private constructor(
      * Run the assertions for all trace entries within the specified time range
      */
     fun forRange(startTime: Long, endTime: Long) {
-        val subjectsInRange = subjects.filter { it.wmState.timestamp in startTime..endTime }
+        val subjectsInRange = subjects.slice(trace.indicesBetween(startTime, endTime))
         assertionsChecker.test(subjectsInRange)
     }
 
@@ -410,7 +410,9 @@ class WindowManagerTraceSubject private constructor(
      * @param timestamp of the entry
      */
     fun entry(timestamp: Long): WindowManagerStateSubject =
-        subjects.first { it.wmState.timestamp == timestamp }
+        subjects.getOrNull(trace.indexOfFirstAtOrAfter(timestamp))
+            ?.takeIf { it.wmState.timestamp == timestamp }
+            ?: throw NoSuchElementException("No entry at timestamp $timestamp")
 
     companion object {
         /**
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.traces.common
+
+/**
+ * Trace whose entries are ordered by timestamp, as they were recorded, so that its entries are
+ * looked up with a binary search instead of a scan of the whole trace.
+ */
+interface ITimeOrderedTrace<Entry : ITraceEntry> : ITrace<Entry> {
+    override fun getEntry(timestamp: Long): Entry {
+        return entries.getOrNull(indexOfFirstAtOrAfter(timestamp))
+            ?.takeIf { it.timestamp == timestamp }
+            ?: throw RuntimeException("Entry does not exist for timestamp $timestamp")
+    }
+
+    /**
+     * @return the last entry with a timestamp lower than or equal to [timestamp], or null if all
+     * entries are after it
+     */
+    fun entryAtOrBefore(timestamp: Long): Entry? =
+        entries.getOrNull(indexOfFirstAfter(timestamp) - 1)
+
+    /**
+     * @return the indices of the entries with a timestamp between [from] and [to], both included
+     */
+    fun indicesBetween(from: Long, to: Long): IntRange =
+        indexOfFirstAtOrAfter(from) until indexOfFirstAfter(to)
+
+    /**
+     * @return the index of the first entry with a timestamp greater than or equal to
+     * [timestamp], or the number of entries if there is none
+     */
+    fun indexOfFirstAtOrAfter(timestamp: Long): Int = search(timestamp, inclusive = true)
+
+    /**
+     * @return the index of the first entry with a timestamp greater than [timestamp], or the
+     * number of entries if there is none
+     */
+    fun indexOfFirstAfter(timestamp: Long): Int = search(timestamp, inclusive = false)
+
+    private fun search(timestamp: Long, inclusive: Boolean): Int {
+        var low = 0
+        var high = entries.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            val entryTimestamp = entries[mid].timestamp
+            if (entryTimestamp < timestamp || (!inclusive && entryTimestamp == timestamp)) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return low
+    }
+}
@@ -16,7 +16,7 @@
 
 package com.android.server.wm.traces.common.layers
 
-import com.android.server.wm.traces.common.ITrace
+import com.android.server.wm.traces.common.ITimeOrderedTrace
 
 /**
  * Contains a collection of parsed Layers trace entries and assertions to apply over a single entry.
@@ -29,7 +29,7 @@ import com.android.server.wm.traces.common.ITrace
  */
 data class LayersTrace(
     override val entries: Array<BaseLayerTraceEntry>
-) : ITrace<BaseLayerTraceEntry>, List<BaseLayerTraceEntry> by entries.toList() {
+) : ITimeOrderedTrace<BaseLayerTraceEntry>, List<BaseLayerTraceEntry> by entries.asList() {
     constructor(entry: BaseLayerTraceEntry): this(arrayOf(entry))
 
     override fun toString(): String {
@@ -58,12 +58,22 @@ data class LayersTrace(
      * @param to the end timestamp
      * @return the subtrace trace(from, to)
      */
-    fun filter(from: Long, to: Long): LayersTrace {
-        return LayersTrace(
-            this.entries
-                .dropWhile { it.timestamp < from }
-                .dropLastWhile { it.timestamp > to }
-                .toTypedArray()
-        )
+    fun filter(from: Long, to: Long): LayersTrace = subTrace(from, to)
+
+    /**
+     * Split the trace by the start and end timestamp. The bounds are found with a binary search
+     * and only the entries in between are copied, or none if the whole trace is in range.
+     *
+     * @param from the start timestamp
+     * @param to the end timestamp
+     * @return the subtrace trace(from, to)
+     */
+    fun subTrace(from: Long, to: Long): LayersTrace {
+        val indices = indicesBetween(from, to)
+        return when {
+            indices.isEmpty() -> LayersTrace(arrayOf())
+            indices.first == 0 && indices.last == entries.lastIndex -> this
+            else -> LayersTrace(entries.copyOfRange(indices.first, indices.last + 1))
+        }
     }
 }
\ No newline at end of file
@@ -38,8 +38,10 @@ class Region(rects: Array<Rect> = arrayOf()) {
         if (rects.isEmpty()) {
             setEmpty()
         } else {
+            // the unions share one operation buffer, dropped once the region is built
+            val scratch = if (rects.size > 1) RunArray() else null
             for (rect in rects) {
-                union(rect)
+                oper(this, from(rect), Op.UNION, scratch)
             }
         }
     }
@@ -111,10 +113,10 @@ class Region(rects: Array<Rect> = arrayOf()) {
         }
         require(this.isComplex())
 
-        val runs = fRunHead!!.findScanline(y)
+        val runs = fRunHead!!.readonlyRuns
 
         // Skip the Bottom and IntervalCount
-        var runsIndex = 2
+        var runsIndex = fRunHead!!.findScanline(y) + 2
 
         // Just walk this scanline, checking each interval. The X-sentinel will
         // appear as a left-interval (runs[0]) and should abort the search.
@@ -139,7 +141,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
     class Iterator(private val rgn: Region) {
         private var done: Boolean
         private var rect: Rect
-        private var fRuns: List<Int>? = null
+        private var fRuns: IntArray? = null
         private var fRunsIndex = 0
 
         init {
@@ -249,7 +251,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
         return bounds.toRectF()
     }
 
-    private fun oper(rgnA: Region, rgnB: Region, op: Op): Boolean {
+    private fun oper(rgnA: Region, rgnB: Region, op: Op, scratch: RunArray?): Boolean {
         // simple cases
         when (op) {
             Op.REPLACE -> {
@@ -258,7 +260,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
             }
             Op.REVERSE_DIFFERENCE -> {
                 // collapse difference and reverse-difference into just difference
-                return this.oper(rgnB, rgnA, Op.DIFFERENCE)
+                return this.oper(rgnB, rgnA, Op.DIFFERENCE, scratch)
             }
             Op.DIFFERENCE -> {
                 if (rgnA.isEmpty) {
@@ -330,7 +332,9 @@ class Region(rects: Array<Rect> = arrayOf()) {
             }
         }
 
-        val array = RunArray()
+        // rgnA or rgnB may be this region, so the result is built in a separate buffer and then
+        // copied into our runs
+        val array = scratch ?: RunArray()
         val count = operate(rgnA.getRuns(), rgnB.getRuns(), array, op)
         require(count <= array.count)
         return this.setRuns(array, count)
@@ -338,7 +342,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
 
     class RunArray {
         private val kRunArrayStackCount = 256
-        var runs: MutableList<Int> = MutableList(kRunArrayStackCount) { 0 }
+        var runs: IntArray = IntArray(kRunArrayStackCount)
         private var fCount: Int = kRunArrayStackCount
 
         val count: Int get() = fCount
@@ -352,11 +356,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
             if (count > fCount) {
                 // leave at least 50% extra space for future growth.
                 count += count shr 1
-                val newRuns = MutableList(count) { 0 }
-                runs.forEachIndexed { index, value ->
-                    newRuns[index] = value
-                }
-                runs = newRuns
+                runs = runs.copyOf(count)
                 fCount = count
             }
         }
@@ -365,20 +365,17 @@ class Region(rects: Array<Rect> = arrayOf()) {
             runs[i] = value
         }
 
-        fun subList(startIndex: Int, stopIndex: Int): RunArray {
-            val subRuns = RunArray()
-            subRuns.resizeToAtLeast(this.fCount)
-            for (i in startIndex until stopIndex) {
-                subRuns.runs[i - startIndex] = this.runs[i]
+        /**
+         * Returns true if the [length] values starting at [index] are the same as the ones
+         * starting at [otherIndex]
+         */
+        fun rangeEquals(index: Int, otherIndex: Int, length: Int): Boolean {
+            for (i in 0 until length) {
+                if (runs[index + i] != runs[otherIndex + i]) {
+                    return false
+                }
             }
-            return subRuns
-        }
-
-        fun clone(): RunArray {
-            val clone = RunArray()
-            clone.runs = runs.toMutableList()
-            clone.fCount = fCount
-            return clone
+            return true
         }
     }
 
@@ -387,13 +384,21 @@ class Region(rects: Array<Rect> = arrayOf()) {
      * regions. Return true if the result is not empty.
      */
     fun op(rgnA: Region, rgnB: Region, op: Op): Boolean {
-        return this.oper(rgnA, rgnB, op)
+        return this.oper(rgnA, rgnB, op, scratch = null)
+    }
+
+    /**
+     * Same as [op], building the result in [scratch] before copying it into this region, so that
+     * a caller running many operations allocates the buffer once. [scratch] is not retained.
+     */
+    fun op(rgnA: Region, rgnB: Region, op: Op, scratch: RunArray): Boolean {
+        return this.oper(rgnA, rgnB, op, scratch)
     }
 
-    private fun getRuns(): List<Int> {
-        val runs: List<Int>
+    private fun getRuns(): IntArray {
+        val runs: IntArray
         if (this.isEmpty) {
-            runs = MutableList(kRectRegionRuns) { 0 }
+            runs = IntArray(kRectRegionRuns)
             runs[0] = SkRegion_kRunTypeSentinel
         } else if (this.isRect()) {
             runs = buildRectRuns(fBounds)
@@ -404,8 +409,8 @@ class Region(rects: Array<Rect> = arrayOf()) {
         return runs
     }
 
-    private fun buildRectRuns(bounds: Rect): List<Int> {
-        val runs = MutableList(kRectRegionRuns) { 0 }
+    private fun buildRectRuns(bounds: Rect): IntArray {
+        val runs = IntArray(kRectRegionRuns)
         runs[0] = bounds.top
         runs[1] = bounds.bottom
         runs[2] = 1 // 1 interval for this scanline
@@ -417,8 +422,15 @@ class Region(rects: Array<Rect> = arrayOf()) {
     }
 
     class RunHead(val isEmptyHead: Boolean = false) {
-        fun setRuns(runs: RunArray, count: Int) {
-            this.runs = runs
+        /**
+         * Copies the [count] values of [runs] starting at [startIndex], reusing the current
+         * buffer when it is large enough
+         */
+        fun setRuns(runs: RunArray, startIndex: Int, count: Int) {
+            if (this.runs.size < count) {
+                this.runs = IntArray(count)
+            }
+            runs.runs.copyInto(this.runs, 0, startIndex, startIndex + count)
             this.fRunCount = count
         }
 
@@ -476,7 +488,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
             val clone = RunHead(isEmptyHead)
             clone.fIntervalCount = fIntervalCount
             clone.fYSpanCount = fYSpanCount
-            clone.runs = runs.clone()
+            clone.runs = runs.copyOf(fRunCount)
             clone.fRunCount = fRunCount
             return clone
         }
@@ -486,9 +498,10 @@ class Region(rects: Array<Rect> = arrayOf()) {
          *  value is already known to be contained within the bounds of the region,
          *  and so this routine never returns nullptr.
          *
-         *  It returns the beginning of the scanline, starting with its Bottom value.
+         *  It returns the index of the beginning of the scanline in [readonlyRuns], starting
+         *  with its Bottom value.
          */
-        fun findScanline(y: Int): List<Int> {
+        fun findScanline(y: Int): Int {
             val runs = readonlyRuns
 
             // if the top-check fails, we didn't do a quick check on the bounds
@@ -505,7 +518,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
                 }
                 runsIndex = SkipEntireScanline(runsIndex)
             }
-            return runs.subList(runsIndex, runs.size - runsIndex)
+            return runsIndex
         }
 
         /**
@@ -527,10 +540,10 @@ class Region(rects: Array<Rect> = arrayOf()) {
 
         private var fIntervalCount: Int = 0
         private var fYSpanCount: Int = 0
-        var runs = RunArray()
+        var runs = IntArray(0)
         var fRunCount: Int = 0
 
-        val readonlyRuns: List<Int> get() = runs.runs
+        val readonlyRuns: IntArray get() = runs
     }
 
     private fun setRuns(runs: RunArray, _count: Int): Boolean {
@@ -545,7 +558,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
 
         // trim off any empty spans from the top and bottom
         // weird I should need this, perhaps op() could be smarter...
-        var trimmedRuns = runs
+        var startIndex = 0
         if (count > kRectRegionRuns) {
             var stopIndex = count
             assert_sentinel(runs[0], false) // top
@@ -571,15 +584,13 @@ class Region(rects: Array<Rect> = arrayOf()) {
                 trimRight = true
             }
 
-            var startIndex = 0
             if (trimLeft) {
-                startIndex += 3
-                trimmedRuns = trimmedRuns.subList(startIndex, count) // skip empty initial span
-                trimmedRuns[0] = runs[1] // set new top to prev bottom
+                startIndex += 3 // skip empty initial span
+                runs[startIndex] = runs[1] // set new top to prev bottom
             }
             if (trimRight) {
                 // kill empty last span
-                trimmedRuns[stopIndex - 4] = SkRegion_kRunTypeSentinel
+                runs[stopIndex - 4] = SkRegion_kRunTypeSentinel
                 stopIndex -= 3
                 assert_sentinel(runs[stopIndex - 1], true)    // last y-sentinel
                 assert_sentinel(runs[stopIndex - 2], true)    // last x-sentinel
@@ -587,7 +598,6 @@ class Region(rects: Array<Rect> = arrayOf()) {
                 assert_sentinel(runs[stopIndex - 4], false)   // last left
                 assert_sentinel(runs[stopIndex - 5], false)   // last interval-count
                 assert_sentinel(runs[stopIndex - 6], false)   // last bottom
-                trimmedRuns = trimmedRuns.subList(startIndex, stopIndex)
             }
 
             count = stopIndex - startIndex
@@ -595,23 +605,22 @@ class Region(rects: Array<Rect> = arrayOf()) {
 
         require(count >= kRectRegionRuns)
 
-        if (runsAreARect(trimmedRuns, count)) {
-            fBounds = Rect(trimmedRuns[3], trimmedRuns[0], trimmedRuns[4], trimmedRuns[1])
+        if (runsAreARect(runs, startIndex, count)) {
+            fBounds = Rect(runs[startIndex + 3], runs[startIndex], runs[startIndex + 4],
+                runs[startIndex + 1])
             return this.setRect(fBounds)
         }
 
         //  if we get here, we need to become a complex region
-        if (!this.isComplex() || fRunHead!!.fRunCount != count) {
+        if (!this.isComplex()) {
             fRunHead = RunHead()
-            fRunHead!!.fRunCount = count
             require(this.isComplex())
         }
 
-        // must call this before we can write directly into runs()
-        // in case we are sharing the buffer with another region (copy on write)
-        // fRunHead = fRunHead->ensureWritable();
+        // the run head is never shared with another region (set() clones it), so we can write
+        // directly into its runs
         // memcpy(fRunHead, runs, count * sizeof(RunType))
-        fRunHead!!.setRuns(trimmedRuns, count)
+        fRunHead!!.setRuns(runs, startIndex, count)
         fBounds = fRunHead!!.computeRunBounds()
 
         // Our computed bounds might be too large, so we have to check here.
@@ -636,19 +645,20 @@ class Region(rects: Array<Rect> = arrayOf()) {
         return count <= 2
     }
 
-    private fun runsAreARect(runs: RunArray, count: Int): Boolean {
+    private fun runsAreARect(runs: RunArray, startIndex: Int, count: Int): Boolean {
         require(count >= kRectRegionRuns)
 
         if (count == kRectRegionRuns) {
-            assert_sentinel(runs[1], false) // bottom
-            require(1 == runs[2])
-            assert_sentinel(runs[3], false)    // left
-            assert_sentinel(runs[4], false)    // right
-            assert_sentinel(runs[5], true)
-            assert_sentinel(runs[6], true)
+            val i = startIndex
+            assert_sentinel(runs[i + 1], false) // bottom
+            require(1 == runs[i + 2])
+            assert_sentinel(runs[i + 3], false)    // left
+            assert_sentinel(runs[i + 4], false)    // right
+            assert_sentinel(runs[i + 5], true)
+            assert_sentinel(runs[i + 6], true)
 
-            require(runs[0] < runs[1])    // valid height
-            require(runs[3] < runs[4])    // valid width
+            require(runs[i] < runs[i + 1])    // valid height
+            require(runs[i + 3] < runs[i + 4])    // valid width
 
             return true
         }
@@ -665,8 +675,8 @@ class Region(rects: Array<Rect> = arrayOf()) {
 
         fun addSpan(
             bottom: Int,
-            aRuns: List<Int>,
-            bRuns: List<Int>,
+            aRuns: IntArray,
+            bRuns: IntArray,
             aRunsIndex: Int,
             bRunsIndex: Int
         ) {
@@ -682,8 +692,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
             // Assert memcmp won't exceed fArray->count().
             require(runArray.count >= start + len - 1)
             if (fPrevLen == len &&
-                (1 == len || runArray.subList(fPrevDst, fPrevDst + len).runs
-                    == runArray.subList(start, start + len).runs)) {
+                (1 == len || runArray.rangeEquals(fPrevDst, start, len))) {
                 // update Y value
                 runArray[fPrevDst - 2] = bottom
             } else { // accept the new span
@@ -707,8 +716,8 @@ class Region(rects: Array<Rect> = arrayOf()) {
         }
 
         class SpanRect(
-            private val aRuns: List<Int>,
-            private val bRuns: List<Int>,
+            private val aRuns: IntArray,
+            private val bRuns: IntArray,
             aIndex: Int,
             bIndex: Int
         ) {
@@ -814,8 +823,8 @@ class Region(rects: Array<Rect> = arrayOf()) {
         }
 
         private fun operateOnSpan(
-            a_runs: List<Int>,
-            b_runs: List<Int>,
+            a_runs: IntArray,
+            b_runs: IntArray,
             a_run_index: Int,
             b_run_index: Int,
             array: RunArray,
@@ -859,7 +868,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
             return dstIndex // dst - &(*array)[0]
         }
 
-        private fun distance_to_sentinel(runs: List<Int>, startIndex: Int): Int {
+        private fun distance_to_sentinel(runs: IntArray, startIndex: Int): Int {
             var index = startIndex
             if (runs.size <= index) {
                 println("We fucked up...")
@@ -876,8 +885,8 @@ class Region(rects: Array<Rect> = arrayOf()) {
     }
 
     private fun operate(
-        aRuns: List<Int>,
-        bRuns: List<Int>,
+        aRuns: IntArray,
+        bRuns: IntArray,
         dst: RunArray,
         op: Op,
         _aRunsIndex: Int = 0,
@@ -898,19 +907,6 @@ class Region(rects: Array<Rect> = arrayOf()) {
         aRunsIndex++ // skip the intervalCount
         bRunsIndex++ // skip the intervalCount
 
-        val gEmptyScanline: List<Int> = listOf(
-            0, // fake bottom value
-            0, // zero intervals
-            SkRegion_kRunTypeSentinel,
-            // just need a 2nd value, since spanRec.init() reads 2 values, even
-            // though if the first value is the sentinel, it ignores the 2nd value.
-            // w/o the 2nd value here, we might read uninitialized memory.
-            // This happens when we are using gSentinel, which is pointing at
-            // our sentinel value.
-            0
-        )
-        val gSentinel = 2
-
         // Now aRuns and bRuns to their intervals (or sentinel)
 
         assert_sentinel(aTop, false)
@@ -1005,7 +1001,7 @@ class Region(rects: Array<Rect> = arrayOf()) {
         return oper.flush()
     }
 
-    private fun skipIntervals(runs: List<Int>, index: Int): Int {
+    private fun skipIntervals(runs: IntArray, index: Int): Int {
         val intervals = runs[index - 1]
         return index + intervals * 2 + 1
     }
@@ -1055,6 +1051,19 @@ class Region(rects: Array<Rect> = arrayOf()) {
 
         const val kRectRegionRuns = 7
 
+        private val gEmptyScanline = intArrayOf(
+            0, // fake bottom value
+            0, // zero intervals
+            SkRegion_kRunTypeSentinel,
+            // just need a 2nd value, since spanRec.init() reads 2 values, even
+            // though if the first value is the sentinel, it ignores the 2nd value.
+            // w/o the 2nd value here, we might read uninitialized memory.
+            // This happens when we are using gSentinel, which is pointing at
+            // our sentinel value.
+            0
+        )
+        private const val gSentinel = 2
+
         class MinMax(val min: Int, val max: Int)
 
         val gOpMinMax = mapOf(
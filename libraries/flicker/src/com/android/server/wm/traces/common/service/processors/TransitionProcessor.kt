@@ -100,11 +100,8 @@ abstract class TransitionProcessor(internal val logger: (String) -> Unit) : ITag
             val fullTimestamps = setOf(*wmTimestamps, *layersTimestamps).sorted()
 
             return fullTimestamps.map { baseTimestamp ->
-                val wmState = wmTrace
-                    .lastOrNull { it.timestamp <= baseTimestamp }
-                    ?: wmTrace.first()
-                val layerState = layersTrace
-                    .lastOrNull { it.timestamp <= baseTimestamp }
+                val wmState = wmTrace.entryAtOrBefore(baseTimestamp) ?: wmTrace.first()
+                val layerState = layersTrace.entryAtOrBefore(baseTimestamp)
                     ?: layersTrace.first()
                 DeviceStateDump(wmState, layerState)
             }.distinctBy { Pair(it.wmState.timestamp, it.layerState.timestamp) }
@@ -47,7 +47,7 @@ open class WindowManagerState(
     val isHomeRecentsComponent: Boolean,
     val isDisplayFrozen: Boolean,
     val pendingActivities: Array<String>,
-    val root: RootWindowContainer,
+    open val root: RootWindowContainer,
     val keyguardControllerState: KeyguardControllerState,
     _timestamp: String = "0"
 ) : ITraceEntry {
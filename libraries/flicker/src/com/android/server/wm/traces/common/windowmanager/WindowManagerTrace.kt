@@ -16,7 +16,7 @@
 
 package com.android.server.wm.traces.common.windowmanager
 
-import com.android.server.wm.traces.common.ITrace
+import com.android.server.wm.traces.common.ITimeOrderedTrace
 
 /**
  * Contains a collection of parsed WindowManager trace entries and assertions to apply over a single
@@ -30,8 +30,8 @@ import com.android.server.wm.traces.common.ITrace
  */
 data class WindowManagerTrace(
     override val entries: Array<WindowManagerState>
-) : ITrace<WindowManagerState>,
-    List<WindowManagerState> by entries.toList() {
+) : ITimeOrderedTrace<WindowManagerState>,
+    List<WindowManagerState> by entries.asList() {
     override fun toString(): String {
         return "WindowManagerTrace(Start: ${entries.firstOrNull()}, " +
             "End: ${entries.lastOrNull()})"
@@ -57,11 +57,22 @@ data class WindowManagerTrace(
      * @param to the end timestamp
      * @return the subtrace trace(from, to)
      */
-    fun filter(from: Long, to: Long): WindowManagerTrace {
-        return WindowManagerTrace(
-            this.entries
-                .dropWhile { it.timestamp < from }
-                .dropLastWhile { it.timestamp > to }
-                .toTypedArray())
+    fun filter(from: Long, to: Long): WindowManagerTrace = subTrace(from, to)
+
+    /**
+     * Split the trace by the start and end timestamp. The bounds are found with a binary search
+     * and only the entries in between are copied, or none if the whole trace is in range.
+     *
+     * @param from the start timestamp
+     * @param to the end timestamp
+     * @return the subtrace trace(from, to)
+     */
+    fun subTrace(from: Long, to: Long): WindowManagerTrace {
+        val indices = indicesBetween(from, to)
+        return when {
+            indices.isEmpty() -> WindowManagerTrace(arrayOf())
+            indices.first == 0 && indices.last == entries.lastIndex -> this
+            else -> WindowManagerTrace(entries.copyOfRange(indices.first, indices.last + 1))
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.traces.parser
+
+import android.util.Log
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.max
+import kotlin.system.measureNanoTime
+import kotlin.system.measureTimeMillis
+
+/**
+ * Builds a trace entry from each of [protos] with [parseEntry], in the order of [protos].
+ *
+ * Trace entries don't depend on each other, so when [parallelism] is greater than 1 they are
+ * built concurrently on that many threads. With a [parallelism] of 1 they are built one after
+ * the other on the calling thread.
+ *
+ * @param traceName name of the trace type in the log
+ * @param protos the trace entry protos
+ * @param parallelism maximum number of entries built at the same time
+ * @param parseEntry builds a trace entry from its proto
+ */
+internal fun <Proto, Entry> parseTraceEntries(
+    traceName: String,
+    protos: Array<Proto>,
+    parallelism: Int,
+    parseEntry: (Proto) -> Entry
+): List<Entry> {
+    require(parallelism > 0) { "Parallelism must be positive, was $parallelism" }
+    val entryParseTime = AtomicLong()
+    val timedParseEntry = { proto: Proto ->
+        val entry: Entry
+        entryParseTime.addAndGet(measureNanoTime { entry = parseEntry(proto) })
+        entry
+    }
+    val entries: List<Entry>
+    val traceParseTime = measureTimeMillis {
+        entries = if (parallelism == 1 || protos.size < 2) {
+            protos.map(timedParseEntry)
+        } else {
+            parseConcurrently(protos, parallelism, timedParseEntry)
+        }
+    }
+    val entryParseTimeMs = entryParseTime.get() / 1_000_000
+    Log.v(LOG_TAG, "Parsing duration ($traceName): ${traceParseTime}ms " +
+        "(avg ${entryParseTimeMs / max(entries.size, 1)}ms per entry, " +
+        "${entryParseTimeMs}ms in total on $parallelism thread(s))")
+    return entries
+}
+
+private fun <Proto, Entry> parseConcurrently(
+    protos: Array<Proto>,
+    parallelism: Int,
+    parseEntry: (Proto) -> Entry
+): List<Entry> {
+    val executor = Executors.newFixedThreadPool(minOf(parallelism, protos.size))
+    try {
+        // invokeAll returns the futures in the order of the tasks
+        val futures = executor.invokeAll(protos.map { Callable { parseEntry(it) } })
+        return futures.map { future ->
+            try {
+                future.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+    } finally {
+        executor.shutdownNow()
+    }
+}
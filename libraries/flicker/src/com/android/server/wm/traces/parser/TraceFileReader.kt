@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.traces.parser
+
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * Reads the `entry` field of a `LayersTraceFileProto` or `WindowManagerTraceFileProto` from a
+ * memory-mapped file, without parsing the whole file proto.
+ *
+ * Both file protos store their entries in the repeated field 2, and the entries store their
+ * `elapsed_realtime_nanos` timestamp in field 1, so the entries outside of the timestamp window
+ * are skipped without being copied or parsed. The entries are expected in timestamp order, as
+ * they are recorded, so reading stops at the first entry after [to].
+ *
+ * @param file trace file
+ * @param from timestamp of the first entry to read, included
+ * @param to timestamp of the last entry to read, included
+ * @return the serialized entry protos, read one at a time as the sequence is iterated
+ */
+internal fun readTraceEntries(
+    file: File,
+    from: Long = Long.MIN_VALUE,
+    to: Long = Long.MAX_VALUE
+): Sequence<ByteArray> {
+    val mappedFile = FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+        require(channel.size() <= Int.MAX_VALUE) {
+            "Trace file is too large to be mapped: ${channel.size()} bytes"
+        }
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+    }
+    return readTraceEntries(mappedFile, from, to)
+}
+
+/**
+ * Reads the `entry` field of a serialized trace file proto held in [data], from its position to
+ * its limit, as [readTraceEntries] does for a file. The position of [data] is left unchanged.
+ *
+ * @param data serialized trace file proto
+ * @param from timestamp of the first entry to read, included
+ * @param to timestamp of the last entry to read, included
+ * @return the serialized entry protos, read one at a time as the sequence is iterated
+ */
+internal fun readTraceEntries(
+    data: ByteBuffer,
+    from: Long = Long.MIN_VALUE,
+    to: Long = Long.MAX_VALUE
+): Sequence<ByteArray> {
+    return sequence {
+        // Each iteration reads from its own position. Fixed size fields are little endian
+        val buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        while (buffer.hasRemaining()) {
+            val tag = buffer.readVarint().toInt()
+            if (tag ushr 3 != ENTRY_FIELD || tag and 7 != WIRETYPE_LENGTH_DELIMITED) {
+                buffer.skipField(tag)
+                continue
+            }
+            val length = buffer.readVarint().toInt()
+            val start = buffer.position()
+            val end = start + length
+            val timestamp = buffer.readTimestamp(end)
+            if (timestamp > to) {
+                break
+            }
+            if (timestamp >= from) {
+                val entry = ByteArray(length)
+                buffer.position(start)
+                buffer.get(entry)
+                yield(entry)
+            }
+            buffer.position(end)
+        }
+    }
+}
+
+private const val ENTRY_FIELD = 2
+private const val TIMESTAMP_FIELD = 1
+
+private const val WIRETYPE_VARINT = 0
+private const val WIRETYPE_FIXED64 = 1
+private const val WIRETYPE_LENGTH_DELIMITED = 2
+private const val WIRETYPE_FIXED32 = 5
+
+private fun ByteBuffer.readVarint(): Long {
+    var result = 0L
+    var shift = 0
+    while (shift < 64) {
+        val byte = get().toInt()
+        result = result or ((byte and 0x7F).toLong() shl shift)
+        if (byte and 0x80 == 0) {
+            return result
+        }
+        shift += 7
+    }
+    throw IllegalStateException("Malformed varint at ${position()}")
+}
+
+private fun ByteBuffer.skipField(tag: Int) {
+    when (tag and 7) {
+        WIRETYPE_VARINT -> readVarint()
+        WIRETYPE_FIXED64 -> position(position() + 8)
+        WIRETYPE_LENGTH_DELIMITED -> {
+            val length = readVarint().toInt()
+            position(position() + length)
+        }
+        WIRETYPE_FIXED32 -> position(position() + 4)
+        else -> throw IllegalStateException("Unsupported wire type in tag $tag")
+    }
+}
+
+/**
+ * Reads the timestamp of the entry starting at the current position and ending at [end], or
+ * 0 when it isn't set, as the proto default
+ */
+private fun ByteBuffer.readTimestamp(end: Int): Long {
+    while (position() < end) {
+        val tag = readVarint().toInt()
+        if (tag ushr 3 == TIMESTAMP_FIELD) {
+            when (tag and 7) {
+                WIRETYPE_FIXED64 -> return long
+                WIRETYPE_VARINT -> return readVarint()
+            }
+        }
+        skipField(tag)
+    }
+    return 0
+}
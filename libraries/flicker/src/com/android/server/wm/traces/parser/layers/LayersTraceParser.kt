@@ -23,8 +23,11 @@ import com.android.server.wm.traces.common.layers.Layer
 import com.android.server.wm.traces.common.layers.BaseLayerTraceEntry
 import com.android.server.wm.traces.common.layers.LayersTrace
 import com.android.server.wm.traces.parser.LOG_TAG
+import com.android.server.wm.traces.parser.parseTraceEntries
+import com.android.server.wm.traces.parser.readTraceEntries
 import com.google.protobuf.nano.InvalidProtocolBufferNanoException
-import kotlin.math.max
+import java.io.File
+import java.nio.ByteBuffer
 import kotlin.system.measureTimeMillis
 
 /**
@@ -36,7 +39,13 @@ class LayersTraceParser {
          * Parses [LayersTrace] from [data] and uses the proto to generates a list
          * of trace entries, storing the flattened layers into its hierarchical structure.
          *
+         * With a [parallelism] greater than 1, the entry protos are decoded and their layer
+         * hierarchies built on that many threads, instead of the hierarchies being built the
+         * first time each entry is accessed. [orphanLayerCallback] may then be called
+         * concurrently.
+         *
          * @param data binary proto data
+         * @param parallelism number of entries parsed concurrently, 1 to parse them serially
          * @param orphanLayerCallback a callback to handle any unexpected orphan layers
          */
         @JvmOverloads
@@ -45,8 +54,28 @@ class LayersTraceParser {
             data: ByteArray,
             ignoreLayersStackMatchNoDisplay: Boolean = true,
             ignoreLayersInVirtualDisplay: Boolean = true,
+            parallelism: Int = 1,
             orphanLayerCallback: ((Layer) -> Boolean)? = null
         ): LayersTrace {
+            if (parallelism > 1) {
+                // Decoding the entries is most of the work of parsing the file proto, so the
+                // serialized entries are split without decoding them and decoded in parallel
+                val serializedEntries =
+                    readTraceEntries(ByteBuffer.wrap(data)).toList().toTypedArray()
+                val entries: List<BaseLayerTraceEntry> = parseTraceEntries(
+                    "Layers Trace", serializedEntries, parallelism
+                ) { serializedEntry ->
+                    val entry = newEntry(
+                        parseEntryProto(serializedEntry),
+                        ignoreLayersStackMatchNoDisplay,
+                        ignoreLayersInVirtualDisplay,
+                        orphanLayerCallback
+                    )
+                    entry.flattenedLayers
+                    entry
+                }
+                return LayersTrace(entries.toTypedArray())
+            }
             var fileProto: Layerstrace.LayersTraceFileProto? = null
             try {
                 measureTimeMillis {
@@ -62,16 +91,40 @@ class LayersTraceParser {
                     it,
                     ignoreLayersStackMatchNoDisplay,
                     ignoreLayersInVirtualDisplay,
+                    parallelism,
                     orphanLayerCallback
                 )
             } ?: error("Unable to read trace file")
         }
 
+        /**
+         * Parses [LayersTrace] from [data] serially. Keeps the signature Java callers used before
+         * the parallelism argument was added.
+         */
+        @JvmStatic
+        fun parseFromTrace(
+            data: ByteArray,
+            ignoreLayersStackMatchNoDisplay: Boolean,
+            ignoreLayersInVirtualDisplay: Boolean,
+            orphanLayerCallback: ((Layer) -> Boolean)?
+        ): LayersTrace = parseFromTrace(
+            data,
+            ignoreLayersStackMatchNoDisplay,
+            ignoreLayersInVirtualDisplay,
+            parallelism = 1,
+            orphanLayerCallback = orphanLayerCallback
+        )
+
         /**
          * Parses [LayersTrace] from [proto] and uses the proto to generates a list
          * of trace entries, storing the flattened layers into its hierarchical structure.
          *
+         * With a [parallelism] greater than 1, the layer hierarchies of the entries are built on
+         * that many threads, instead of the first time each entry is accessed.
+         * [orphanLayerCallback] may then be called concurrently.
+         *
          * @param proto Parsed proto data
+         * @param parallelism number of entries parsed concurrently, 1 to parse them serially
          * @param orphanLayerCallback a callback to handle any unexpected orphan layers
          */
         @JvmOverloads
@@ -80,33 +133,101 @@ class LayersTraceParser {
             proto: Layerstrace.LayersTraceFileProto,
             ignoreLayersStackMatchNoDisplay: Boolean = true,
             ignoreLayersInVirtualDisplay: Boolean = true,
+            parallelism: Int = 1,
             orphanLayerCallback: ((Layer) -> Boolean)? = null
         ): LayersTrace {
-            val entries: MutableList<BaseLayerTraceEntry> = ArrayList()
-            var traceParseTime = 0L
-            for (traceProto: Layerstrace.LayersTraceProto in proto.entry) {
-                val entryParseTime = measureTimeMillis {
-                    val entry = LayerTraceEntryLazy(
-                        traceProto.elapsedRealtimeNanos,
-                        traceProto.hwcBlob,
-                        traceProto.where,
-                        ignoreLayersStackMatchNoDisplay,
-                        ignoreLayersInVirtualDisplay,
-                        traceProto.displays,
-                        traceProto.layers.layers,
-                        orphanLayerCallback
-                    )
-                    entries.add(entry)
+            val entries: List<BaseLayerTraceEntry> = parseTraceEntries(
+                "Layers Trace", proto.entry, parallelism
+            ) { traceProto ->
+                val entry = newEntry(
+                    traceProto,
+                    ignoreLayersStackMatchNoDisplay,
+                    ignoreLayersInVirtualDisplay,
+                    orphanLayerCallback
+                )
+                if (parallelism > 1) {
+                    // Creating the lazy entry alone is too little work to be worth a thread
+                    entry.flattenedLayers
                 }
-                traceParseTime += entryParseTime
+                entry
             }
-            Log.v(
-                LOG_TAG, "Parsing duration (Layers Trace): ${traceParseTime}ms " +
-                    "(avg ${traceParseTime / max(entries.size, 1)}ms per entry)"
-            )
             return LayersTrace(entries.toTypedArray())
         }
 
+        /**
+         * Parses [LayersTrace] from [proto] serially. Keeps the signature Java callers used before
+         * the parallelism argument was added.
+         */
+        @JvmStatic
+        fun parseFromTrace(
+            proto: Layerstrace.LayersTraceFileProto,
+            ignoreLayersStackMatchNoDisplay: Boolean,
+            ignoreLayersInVirtualDisplay: Boolean,
+            orphanLayerCallback: ((Layer) -> Boolean)?
+        ): LayersTrace = parseFromTrace(
+            proto,
+            ignoreLayersStackMatchNoDisplay,
+            ignoreLayersInVirtualDisplay,
+            parallelism = 1,
+            orphanLayerCallback = orphanLayerCallback
+        )
+
+        /**
+         * Reads the entries of the layers trace in [file] one at a time, as the sequence is
+         * iterated, instead of parsing the whole trace file proto at once. Use it for traces
+         * that don't fit in memory as a single proto.
+         *
+         * @param file layers trace file
+         * @param from timestamp of the first entry to read, included
+         * @param to timestamp of the last entry to read, included
+         * @param orphanLayerCallback a callback to handle any unexpected orphan layers
+         */
+        @JvmOverloads
+        @JvmStatic
+        fun readEntries(
+            file: File,
+            from: Long = Long.MIN_VALUE,
+            to: Long = Long.MAX_VALUE,
+            ignoreLayersStackMatchNoDisplay: Boolean = true,
+            ignoreLayersInVirtualDisplay: Boolean = true,
+            orphanLayerCallback: ((Layer) -> Boolean)? = null
+        ): Sequence<BaseLayerTraceEntry> {
+            return readTraceEntries(file, from, to).map { data ->
+                newEntry(
+                    parseEntryProto(data),
+                    ignoreLayersStackMatchNoDisplay,
+                    ignoreLayersInVirtualDisplay,
+                    orphanLayerCallback
+                )
+            }
+        }
+
+        private fun parseEntryProto(data: ByteArray): Layerstrace.LayersTraceProto {
+            return try {
+                Layerstrace.LayersTraceProto.parseFrom(data)
+            } catch (e: InvalidProtocolBufferNanoException) {
+                throw RuntimeException(e)
+            }
+        }
+
+        private fun newEntry(
+            traceProto: Layerstrace.LayersTraceProto,
+            ignoreLayersStackMatchNoDisplay: Boolean,
+            ignoreLayersInVirtualDisplay: Boolean,
+            orphanLayerCallback: ((Layer) -> Boolean)?
+        ): LayerTraceEntryLazy {
+            return LayerTraceEntryLazy(
+                traceProto.elapsedRealtimeNanos,
+                traceProto.hwcBlob,
+                traceProto.where,
+                ignoreLayersStackMatchNoDisplay,
+                ignoreLayersInVirtualDisplay,
+                traceProto.displays,
+                traceProto.layers.layers,
+                orphanLayerCallback
+            )
+        }
+
         /**
          * Parses [LayersTrace] from [proto] and uses the proto to generates
          * a list of trace entries.
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.traces.parser.windowmanager
+
+import com.android.server.wm.nano.RootWindowContainerProto
+import com.android.server.wm.nano.WindowManagerServiceDumpProto
+import com.android.server.wm.traces.common.windowmanager.WindowManagerState
+import com.android.server.wm.traces.common.windowmanager.windows.ConfigurationContainer
+import com.android.server.wm.traces.common.windowmanager.windows.RootWindowContainer
+import com.android.server.wm.traces.common.windowmanager.windows.WindowContainer
+
+/**
+ * [WindowManagerState] that only builds its window hierarchy the first time it is accessed.
+ *
+ * The policy, focus and keyguard fields are read from the proto right away. The root window
+ * container proto is kept until the hierarchy is built and is dropped afterwards.
+ */
+class WindowManagerStateLazy(
+    proto: WindowManagerServiceDumpProto,
+    timestamp: Long,
+    where: String
+) : WindowManagerState(
+    where = where,
+    policy = WindowManagerTraceParser.newWindowManagerPolicy(proto.policy),
+    focusedApp = proto.focusedApp,
+    focusedDisplayId = proto.focusedDisplayId,
+    focusedWindow = proto.focusedWindow?.title ?: "",
+    inputMethodWindowAppToken = if (proto.inputMethodWindow != null) {
+        Integer.toHexString(proto.inputMethodWindow.hashCode)
+    } else {
+        ""
+    },
+    isHomeRecentsComponent = proto.rootWindowContainer.isHomeRecentsComponent,
+    isDisplayFrozen = proto.displayFrozen,
+    pendingActivities = proto.rootWindowContainer.pendingActivities
+        .map { it.title }.toTypedArray(),
+    root = PLACEHOLDER_ROOT,
+    keyguardControllerState = WindowManagerTraceParser.newKeyguardControllerState(
+        proto.rootWindowContainer.keyguardController),
+    _timestamp = timestamp.toString()
+) {
+    private var rootProto: RootWindowContainerProto? = proto.rootWindowContainer
+
+    override val root: RootWindowContainer by lazy {
+        val rootProto = rootProto ?: error("Root window container proto already dropped")
+        this.rootProto = null
+        WindowManagerTraceParser.newRootWindowContainer(rootProto)
+    }
+
+    companion object {
+        // Passed to the WindowManagerState constructor, never returned by [root]
+        private val PLACEHOLDER_ROOT = RootWindowContainer(
+            WindowContainer(
+                title = "",
+                token = "",
+                orientation = 0,
+                layerId = 0,
+                _isVisible = false,
+                configurationContainer = ConfigurationContainer(null, null, null),
+                children = emptyArray()
+            )
+        )
+    }
+}
@@ -36,6 +36,7 @@ import com.android.server.wm.nano.WindowContainerProto
 import com.android.server.wm.nano.WindowManagerPolicyProto
 import com.android.server.wm.nano.WindowManagerServiceDumpProto
 import com.android.server.wm.nano.WindowManagerTraceFileProto
+import com.android.server.wm.nano.WindowManagerTraceProto
 import com.android.server.wm.nano.WindowStateProto
 import com.android.server.wm.nano.WindowTokenProto
 import com.android.server.wm.traces.common.Rect
@@ -58,8 +59,11 @@ import com.android.server.wm.traces.common.windowmanager.windows.WindowManagerPo
 import com.android.server.wm.traces.common.windowmanager.windows.WindowState
 import com.android.server.wm.traces.common.windowmanager.windows.WindowToken
 import com.android.server.wm.traces.parser.LOG_TAG
+import com.android.server.wm.traces.parser.parseTraceEntries
+import com.android.server.wm.traces.parser.readTraceEntries
 import com.google.protobuf.nano.InvalidProtocolBufferNanoException
-import kotlin.math.max
+import java.io.File
+import java.nio.ByteBuffer
 import kotlin.system.measureTimeMillis
 
 object WindowManagerTraceParser {
@@ -83,13 +87,32 @@ object WindowManagerTraceParser {
      * Parses [WindowManagerTraceFileProto] from [data] and uses the proto to generates
      * a list of trace entries.
      *
+     * With a [parallelism] greater than 1, the entry protos are decoded and their window
+     * hierarchies built on that many threads, instead of the hierarchies being built the first
+     * time each entry is accessed.
+     *
      * @param data binary proto data
+     * @param parallelism number of entries parsed concurrently, 1 to parse them serially
      */
     @JvmOverloads
     @JvmStatic
     fun parseFromTrace(
-        data: ByteArray?
+        data: ByteArray?,
+        parallelism: Int = 1
     ): WindowManagerTrace {
+        if (parallelism > 1 && data != null) {
+            // Decoding the entries is most of the work of parsing the file proto, so the
+            // serialized entries are split without decoding them and decoded in parallel
+            val serializedEntries =
+                readTraceEntries(ByteBuffer.wrap(data)).toList().toTypedArray()
+            val entries: List<WindowManagerState> = parseTraceEntries(
+                "WM Trace", serializedEntries, parallelism) { serializedEntry ->
+                val entry = newEntry(parseEntryProto(serializedEntry))
+                entry.root
+                entry
+            }
+            return WindowManagerTrace(entries.toTypedArray())
+        }
         var fileProto: WindowManagerTraceFileProto? = null
         try {
             measureTimeMillis {
@@ -101,36 +124,69 @@ object WindowManagerTraceParser {
             throw RuntimeException(e)
         }
 
-        return fileProto?.let { parseFromTrace(it) }
+        return fileProto?.let { parseFromTrace(it, parallelism) }
                 ?: error("Unable to read trace file")
     }
 
     /**
      * Uses the proto to generates a list of trace entries.
      *
+     * With a [parallelism] greater than 1, the window hierarchies of the entries are built on
+     * that many threads, instead of the first time each entry is accessed.
+     *
      * @param proto Parsed proto data
+     * @param parallelism number of entries parsed concurrently, 1 to parse them serially
      */
     @JvmOverloads
     @JvmStatic
     fun parseFromTrace(
-        proto: WindowManagerTraceFileProto
+        proto: WindowManagerTraceFileProto,
+        parallelism: Int = 1
     ): WindowManagerTrace {
-        val entries = mutableListOf<WindowManagerState>()
-        var traceParseTime = 0L
-        for (entryProto in proto.entry) {
-            val entryParseTime = measureTimeMillis {
-                val entry = newTraceEntry(entryProto.windowManagerService,
-                    entryProto.elapsedRealtimeNanos, entryProto.where)
-                entries.add(entry)
+        val entries: List<WindowManagerState> = parseTraceEntries(
+            "WM Trace", proto.entry, parallelism) { entryProto ->
+            val entry = newEntry(entryProto)
+            if (parallelism > 1) {
+                // Creating the lazy entry alone is too little work to be worth a thread
+                entry.root
             }
-            traceParseTime += entryParseTime
+            entry
         }
-
-        Log.v(LOG_TAG, "Parsing duration (WM Trace): ${traceParseTime}ms " +
-            "(avg ${traceParseTime / max(entries.size, 1)}ms per entry)")
         return WindowManagerTrace(entries.toTypedArray())
     }
 
+    /**
+     * Reads the entries of the WM trace in [file] one at a time, as the sequence is iterated,
+     * instead of parsing the whole trace file proto at once. Use it for traces that don't fit in
+     * memory as a single proto.
+     *
+     * @param file WM trace file
+     * @param from timestamp of the first entry to read, included
+     * @param to timestamp of the last entry to read, included
+     */
+    @JvmOverloads
+    @JvmStatic
+    fun readEntries(
+        file: File,
+        from: Long = Long.MIN_VALUE,
+        to: Long = Long.MAX_VALUE
+    ): Sequence<WindowManagerState> {
+        return readTraceEntries(file, from, to).map { newEntry(parseEntryProto(it)) }
+    }
+
+    private fun parseEntryProto(data: ByteArray): WindowManagerTraceProto {
+        return try {
+            WindowManagerTraceProto.parseFrom(data)
+        } catch (e: InvalidProtocolBufferNanoException) {
+            throw RuntimeException(e)
+        }
+    }
+
+    private fun newEntry(entryProto: WindowManagerTraceProto): WindowManagerStateLazy {
+        return WindowManagerStateLazy(entryProto.windowManagerService,
+            entryProto.elapsedRealtimeNanos, entryProto.where)
+    }
+
     /**
      * Parses [WindowManagerServiceDumpProto] from [proto] dump and uses the proto to generates
      * a list of trace entries.
@@ -140,7 +196,7 @@ object WindowManagerTraceParser {
     @JvmStatic
     fun parseFromDump(proto: WindowManagerServiceDumpProto): WindowManagerTrace {
         return WindowManagerTrace(
-                arrayOf(newTraceEntry(proto, timestamp = 0, where = "")))
+                arrayOf(WindowManagerStateLazy(proto, timestamp = 0, where = "")))
     }
 
     /**
@@ -159,34 +215,7 @@ object WindowManagerTraceParser {
         return parseFromDump(fileProto)
     }
 
-    private fun newTraceEntry(
-        proto: WindowManagerServiceDumpProto,
-        timestamp: Long,
-        where: String
-    ): WindowManagerState {
-        return WindowManagerState(
-            where = where,
-            policy = newWindowManagerPolicy(proto.policy),
-            focusedApp = proto.focusedApp,
-            focusedDisplayId = proto.focusedDisplayId,
-            focusedWindow = proto.focusedWindow?.title ?: "",
-            inputMethodWindowAppToken = if (proto.inputMethodWindow != null) {
-                Integer.toHexString(proto.inputMethodWindow.hashCode)
-            } else {
-                ""
-            },
-            isHomeRecentsComponent = proto.rootWindowContainer.isHomeRecentsComponent,
-            isDisplayFrozen = proto.displayFrozen,
-            pendingActivities = proto.rootWindowContainer.pendingActivities
-                .map { it.title }.toTypedArray(),
-            root = newRootWindowContainer(proto.rootWindowContainer),
-            keyguardControllerState = newKeyguardControllerState(
-                proto.rootWindowContainer.keyguardController),
-            _timestamp = timestamp.toString()
-        )
-    }
-
-    private fun newWindowManagerPolicy(proto: WindowManagerPolicyProto): WindowManagerPolicy {
+    internal fun newWindowManagerPolicy(proto: WindowManagerPolicyProto): WindowManagerPolicy {
         return WindowManagerPolicy(
             focusedAppToken = proto.focusedAppToken ?: "",
             forceStatusBar = proto.forceStatusBar,
@@ -204,7 +233,7 @@ object WindowManagerTraceParser {
         )
     }
 
-    private fun newRootWindowContainer(proto: RootWindowContainerProto): RootWindowContainer {
+    internal fun newRootWindowContainer(proto: RootWindowContainerProto): RootWindowContainer {
         return RootWindowContainer(
             newWindowContainer(
                 proto.windowContainer,
@@ -214,7 +243,7 @@ object WindowManagerTraceParser {
         )
     }
 
-    private fun newKeyguardControllerState(
+    internal fun newKeyguardControllerState(
         proto: KeyguardControllerProto?
     ): KeyguardControllerState {
         return KeyguardControllerState(
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.flicker
+
+import android.util.Log
+import com.android.server.wm.traces.parser.layers.LayersTraceParser
+import com.android.server.wm.traces.parser.windowmanager.WindowManagerTraceParser
+import org.junit.Assert.assertEquals
+import org.junit.FixMethodOrder
+import org.junit.Test
+import org.junit.runners.MethodSorters
+
+/**
+ * Compares the serial and parallel parsing of recorded layers and WM traces. The parse time of
+ * each parallelism level, in total and per layer or window, and its speedup over the serial
+ * parsing are logged with the [TAG] tag. To run this test:
+ * `atest FlickerLibBenchmark:TraceParserParallelBenchmark`
+ *
+ * Each iteration parses the traces and reads the layer or window hierarchy of every entry. The
+ * serial parser builds the hierarchies lazily, on that read, while the parallel parser builds
+ * them on its threads, so every parallelism level does the same work.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+class TraceParserParallelBenchmark {
+    @Test
+    fun benchmarkLayersTrace() {
+        val data = LAYERS_TRACES.map { readTestFile(it) }
+        measure("layers") { parallelism ->
+            data.sumOf { trace ->
+                LayersTraceParser.parseFromTrace(trace, parallelism = parallelism).entries
+                    .sumOf { it.flattenedLayers.size }
+            }
+        }
+    }
+
+    @Test
+    fun benchmarkWindowManagerTrace() {
+        val data = WM_TRACES.map { readTestFile(it) }
+        measure("wm") { parallelism ->
+            data.sumOf { trace ->
+                WindowManagerTraceParser.parseFromTrace(trace, parallelism).entries
+                    .sumOf { it.windowStates.size }
+            }
+        }
+    }
+
+    /**
+     * @param parse parses all the traces with the given parallelism, reads the hierarchy of
+     * every entry and returns the total number of layers or windows
+     */
+    private fun measure(name: String, parse: (Int) -> Int) {
+        val elements = parse(1)
+        repeat(WARM_UP_ITERATIONS) { PARALLELISM.forEach { parse(it) } }
+        var serialElapsed = 0L
+        for (parallelism in PARALLELISM) {
+            val start = System.nanoTime()
+            repeat(ITERATIONS) { assertEquals(elements, parse(parallelism)) }
+            val elapsed = (System.nanoTime() - start) / ITERATIONS
+            if (parallelism == 1) {
+                serialElapsed = elapsed
+            }
+            Log.i(TAG, "$name, parallelism $parallelism: ${elapsed / 1_000_000} ms total, " +
+                "${elapsed / elements} ns per layer or window ($elements), " +
+                "speedup ${"%.2f".format(serialElapsed.toDouble() / elapsed)}x")
+        }
+    }
+
+    companion object {
+        private const val TAG = "TraceParserParallelBenchmark"
+        private const val WARM_UP_ITERATIONS = 3
+        private const val ITERATIONS = 10
+
+        private val PARALLELISM = listOf(1, 2, 4, Runtime.getRuntime().availableProcessors())
+            .distinct()
+
+        private val LAYERS_TRACES = listOf(
+            "layers_trace_openchrome.pb",
+            "layers_trace_pip_wmshell.pb",
+            "layers_trace_occluded.pb",
+            "layers_trace_splashscreen.pb"
+        )
+
+        private val WM_TRACES = listOf(
+            "wm_trace_valid_visible_windows.pb",
+            "wm_trace_open_and_close_chrome.pb",
+            "wm_trace_rotation.pb",
+            "wm_trace_open_recents.pb"
+        )
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.flicker.region
+
+import android.util.Log
+import com.android.server.wm.flicker.readLayerTraceFromFile
+import com.android.server.wm.traces.common.Rect
+import com.android.server.wm.traces.common.region.Region
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.FixMethodOrder
+import org.junit.Test
+import org.junit.runners.MethodSorters
+
+/**
+ * Measures the [Region] boolean operations on the layer rects of recorded layers traces, the
+ * way [com.android.server.wm.flicker.traces.region.RegionSubject] uses them. The time per trace
+ * entry of each operation is logged with the [TAG] tag. To run this test:
+ * `atest FlickerLibBenchmark:RegionBenchmark`
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+class RegionBenchmark {
+    @Test
+    fun benchmarkUnion() {
+        measure("union") { rects ->
+            val union = union(rects)
+            rects.forEach { assertTrue(union.bounds.contains(it)) }
+        }
+    }
+
+    @Test
+    fun benchmarkIntersect() {
+        measure("intersect") { rects ->
+            val union = union(rects)
+            for (rect in rects) {
+                // coversAtMost
+                val intersection = Region.from(rect)
+                intersection.op(union, Region.Op.INTERSECT)
+                assertFalse(intersection.op(rect, Region.Op.XOR))
+            }
+        }
+    }
+
+    @Test
+    fun benchmarkDifference() {
+        measure("difference") { rects ->
+            val remaining = union(rects)
+            for (rect in rects) {
+                remaining.op(rect, Region.Op.DIFFERENCE)
+            }
+            assertTrue(remaining.isEmpty)
+        }
+    }
+
+    @Test
+    fun benchmarkXor() {
+        measure("xor") { rects ->
+            val union = union(rects)
+            for (rect in rects) {
+                // coversExactly
+                val difference = Region.from(union)
+                difference.op(rect, Region.Op.XOR)
+            }
+            assertFalse(Region.from(union).op(union, Region.Op.XOR))
+        }
+    }
+
+    private fun union(rects: Array<Rect>): Region {
+        val result = Region()
+        rects.forEach { result.op(it, Region.Op.UNION) }
+        return result
+    }
+
+    private fun measure(name: String, operation: (Array<Rect>) -> Unit) {
+        repeat(WARM_UP_ITERATIONS) { workload.forEach(operation) }
+        val start = System.nanoTime()
+        repeat(ITERATIONS) { workload.forEach(operation) }
+        val elapsed = System.nanoTime() - start
+        Log.i(TAG, "$name: ${elapsed / (ITERATIONS * workload.size)} ns per trace entry " +
+            "(${workload.size} entries)")
+    }
+
+    companion object {
+        private const val TAG = "RegionBenchmark"
+        private const val WARM_UP_ITERATIONS = 5
+        private const val ITERATIONS = 20
+
+        private val TRACES = listOf(
+            "layers_trace_openchrome.pb",
+            "layers_trace_pip_wmshell.pb",
+            "layers_trace_occluded.pb",
+            "layers_trace_splashscreen.pb"
+        )
+
+        /** The screen bounds of the visible layers of each trace entry */
+        private val workload: List<Array<Rect>> by lazy {
+            TRACES.flatMap { trace ->
+                readLayerTraceFromFile(trace).entries.map { entry ->
+                    entry.visibleLayers.map { it.screenBounds.toRect() }.toTypedArray()
+                }
+            }.filter { it.isNotEmpty() }
+        }
+    }
+}
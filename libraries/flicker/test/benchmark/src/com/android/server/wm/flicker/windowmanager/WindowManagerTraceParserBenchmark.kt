@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wm.flicker.windowmanager
+
+import android.util.Log
+import com.android.server.wm.flicker.readTestFile
+import com.android.server.wm.traces.parser.windowmanager.WindowManagerStateLazy
+import com.android.server.wm.traces.parser.windowmanager.WindowManagerTraceParser
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Measures the parse time and the retained heap of recorded WM traces, before and after the
+ * window hierarchy of every [WindowManagerStateLazy] entry is built. The results are logged with
+ * the [TAG] tag. To run this test: `atest FlickerLibBenchmark:WindowManagerTraceParserBenchmark`
+ */
+class WindowManagerTraceParserBenchmark {
+    @Test
+    fun benchmarkParse() {
+        TRACES.forEach { trace ->
+            val data = readTestFile(trace)
+            val heapBefore = usedHeap()
+
+            var start = System.nanoTime()
+            val parsed = WindowManagerTraceParser.parseFromTrace(data)
+            val parseTime = System.nanoTime() - start
+            val heapParsed = usedHeap()
+
+            start = System.nanoTime()
+            parsed.entries.forEach { assertTrue(it.root.children.isNotEmpty()) }
+            val materializeTime = System.nanoTime() - start
+            val heapMaterialized = usedHeap()
+
+            Log.i(TAG, "$trace (${parsed.entries.size} entries, ${data.size / 1024} KB): " +
+                "parse ${parseTime / 1_000_000} ms, ${(heapParsed - heapBefore) / 1024} KB; " +
+                "hierarchy ${materializeTime / 1_000_000} ms, " +
+                "${(heapMaterialized - heapBefore) / 1024} KB")
+        }
+    }
+
+    private fun usedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) { runtime.gc() }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    companion object {
+        private const val TAG = "WindowManagerTraceParserBenchmark"
+
+        private val TRACES = listOf(
+            "wm_trace_valid_visible_windows.pb",
+            "wm_trace_open_and_close_chrome.pb",
+            "wm_trace_rotation.pb",
+            "wm_trace_open_recents.pb"
+        )
+    }
+}
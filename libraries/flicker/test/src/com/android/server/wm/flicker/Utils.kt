@@ -30,6 +30,7 @@ import com.google.common.io.ByteStreams
 import com.google.common.truth.ExpectFailure
 import com.google.common.truth.Truth
 import com.google.common.truth.TruthFailureSubject
+import java.io.File
 import java.io.FileInputStream
 import java.nio.file.Files
 import java.util.zip.ZipInputStream
@@ -80,6 +81,16 @@ internal fun readTestFile(relativePath: String): ByteArray {
     return ByteStreams.toByteArray(inputStream)
 }
 
+/**
+ * Copies a test asset to a temporary file, for the parsers that read from files
+ */
+internal fun copyTestFile(relativePath: String): File {
+    val file = File.createTempFile("testdata", relativePath)
+    file.deleteOnExit()
+    file.writeBytes(readTestFile(relativePath))
+    return file
+}
+
 /**
  * Runs `r` and asserts that an exception of type `expectedThrowable` is thrown.
  * @param expectedThrowable the type of throwable that is expected to be thrown
@@ -18,9 +18,12 @@ package com.android.server.wm.flicker.layers
 
 import com.android.server.wm.flicker.assertThatErrorContainsDebugInfo
 import com.android.server.wm.flicker.assertThrows
+import com.android.server.wm.flicker.copyTestFile
 import com.android.server.wm.flicker.readLayerTraceFromFile
+import com.android.server.wm.flicker.readTestFile
 import com.android.server.wm.flicker.traces.layers.LayersTraceSubject
 import com.android.server.wm.traces.common.layers.LayersTrace
+import com.android.server.wm.traces.parser.layers.LayersTraceParser
 import com.google.common.truth.Truth
 import org.junit.FixMethodOrder
 import org.junit.Test
@@ -146,4 +149,78 @@ class LayersTraceTest {
 
         Truth.assertThat(splitLayersTrace).isEmpty()
     }
-}
\ No newline at end of file
+
+    @Test
+    fun canSubTrace() {
+        val trace = readLayerTraceFromFile("layers_trace_openchrome.pb")
+        val subTrace = trace.subTrace(71607477186189, 71607812120180)
+
+        Truth.assertThat(trace.indicesBetween(71607477186189, 71607812120180))
+            .isEqualTo(1..13)
+        Truth.assertThat(subTrace.entries).hasLength(13)
+        Truth.assertThat(subTrace.entries.first().timestamp).isEqualTo(71607477186189)
+        Truth.assertThat(subTrace.entries.last().timestamp).isEqualTo(71607812120180)
+        Truth.assertThat(subTrace.entries.toList()).containsExactlyElementsIn(
+            trace.entries
+                .dropWhile { it.timestamp < 71607477186189 }
+                .dropLastWhile { it.timestamp > 71607812120180 }
+        ).inOrder()
+        Truth.assertThat(subTrace.entryAtOrBefore(71607812120181))
+            .isSameInstanceAs(trace.getEntry(71607812120180))
+        Truth.assertThat(trace.subTrace(0, Long.MAX_VALUE)).isSameInstanceAs(trace)
+    }
+
+    @Test
+    fun canSubTrace_emptyRange() {
+        val trace = readLayerTraceFromFile("layers_trace_openchrome.pb")
+
+        // Between two consecutive entries, reversed bounds, before and after the trace
+        Truth.assertThat(trace.indicesBetween(71607477186190, 71607503035305).isEmpty()).isTrue()
+        Truth.assertThat(trace.indicesBetween(71607812120180, 71607477186189).isEmpty()).isTrue()
+        Truth.assertThat(trace.indicesBetween(0, 71606687920328).isEmpty()).isTrue()
+        Truth.assertThat(trace.indicesBetween(71609208629695, Long.MAX_VALUE).isEmpty()).isTrue()
+        Truth.assertThat(trace.subTrace(71607477186190, 71607503035305).entries).isEmpty()
+        Truth.assertThat(trace.entryAtOrBefore(71606687920328)).isNull()
+        Truth.assertThat(trace.entryAtOrBefore(71607503035305))
+            .isSameInstanceAs(trace.getEntry(71607477186189))
+    }
+
+    @Test
+    fun canParseInParallel() {
+        val trace = readLayerTraceFromFile("layers_trace_openchrome.pb")
+        val parallelTrace = LayersTraceParser.parseFromTrace(
+            readTestFile("layers_trace_openchrome.pb"),
+            ignoreLayersStackMatchNoDisplay = false,
+            ignoreLayersInVirtualDisplay = false,
+            parallelism = 4
+        ) { true }
+
+        Truth.assertThat(parallelTrace.entries.map { it.timestamp })
+            .containsExactlyElementsIn(trace.entries.map { it.timestamp })
+            .inOrder()
+        Truth.assertThat(parallelTrace.entries.map { it.flattenedLayers.size })
+            .isEqualTo(trace.entries.map { it.flattenedLayers.size })
+    }
+
+    @Test
+    fun canReadEntriesFromFile() {
+        val trace = readLayerTraceFromFile("layers_trace_openchrome.pb")
+        val file = copyTestFile("layers_trace_openchrome.pb")
+        val entries = LayersTraceParser.readEntries(file,
+            ignoreLayersStackMatchNoDisplay = false,
+            ignoreLayersInVirtualDisplay = false
+        ) { true }.toList()
+
+        Truth.assertThat(entries.map { it.timestamp })
+            .containsExactlyElementsIn(trace.entries.map { it.timestamp })
+            .inOrder()
+        Truth.assertThat(entries.map { it.flattenedLayers.size })
+            .isEqualTo(trace.entries.map { it.flattenedLayers.size })
+
+        val window = LayersTraceParser.readEntries(file, 71607477186189, 71607812120180)
+        Truth.assertThat(window.map { it.timestamp }.toList())
+            .containsExactlyElementsIn(
+                trace.subTrace(71607477186189, 71607812120180).entries.map { it.timestamp })
+            .inOrder()
+    }
+}
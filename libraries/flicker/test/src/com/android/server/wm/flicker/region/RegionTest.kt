@@ -247,6 +247,24 @@ class RegionTest {
         verifyPointsOutsideRegion(UNION_WITHOUT3)
     }
 
+    @Test
+    fun testOpWithScratch() {
+        val regions = arrayOf(
+            Region.from(Rect(0, 0, 20, 20)),
+            Region(arrayOf(Rect(10, 10, 30, 30), Rect(40, 40, 60, 60))),
+            Region.from(Rect(5, 5, 50, 15)))
+        val scratch = Region.RunArray()
+        for (op in Region.Op.values()) {
+            val expected = Region.from(regions[0])
+            val actual = Region.from(regions[0])
+            for (region in regions.drop(1)) {
+                expected.op(expected, region, op)
+                actual.op(actual, region, op, scratch)
+            }
+            assertEquals(op.toString(), expected.toString(), actual.toString())
+        }
+    }
+
     @Test
     fun testContains() {
         mRegion.set(2, 2, 5, 5)
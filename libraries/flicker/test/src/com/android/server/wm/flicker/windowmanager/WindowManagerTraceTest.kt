@@ -16,11 +16,13 @@
 
 package com.android.server.wm.flicker.windowmanager
 
+import com.android.server.wm.flicker.copyTestFile
 import com.android.server.wm.flicker.readTestFile
 import com.android.server.wm.flicker.readWmTraceFromFile
 import com.android.server.wm.traces.common.windowmanager.WindowManagerTrace
 import com.android.server.wm.traces.common.windowmanager.WindowManagerState
 import com.android.server.wm.traces.common.windowmanager.windows.WindowContainer
+import com.android.server.wm.traces.parser.windowmanager.WindowManagerStateLazy
 import com.android.server.wm.traces.parser.windowmanager.WindowManagerTraceParser
 import com.google.common.truth.Truth.assertThat
 import com.google.common.truth.Truth.assertWithMessage
@@ -156,4 +158,61 @@ class WindowManagerTraceTest {
 
         assertThat(splitWmTrace).isEmpty()
     }
+
+    @Test
+    fun canGetEntryAtOrBefore() {
+        val entry = trace.getEntry(9215895891561)
+
+        assertThat(trace.entryAtOrBefore(9215895891561)).isSameInstanceAs(entry)
+        assertThat(trace.entryAtOrBefore(9215895891562)).isSameInstanceAs(entry)
+        assertThat(trace.entryAtOrBefore(trace.entries.first().timestamp - 1)).isNull()
+    }
+
+    @Test
+    fun canSubTrace_wholeTrace() {
+        val subTrace = trace.subTrace(trace.entries.first().timestamp, Long.MAX_VALUE)
+
+        assertThat(subTrace).isSameInstanceAs(trace)
+    }
+
+    @Test
+    fun canBuildHierarchyOnFirstAccess() {
+        val entries = WindowManagerTraceParser.parseFromTrace(
+            readTestFile("wm_trace_openchrome.pb")).entries
+
+        entries.forEach { assertThat(it).isInstanceOf(WindowManagerStateLazy::class.java) }
+        assertThat(entries.all { it.root.children.isNotEmpty() }).isTrue()
+        // Built once, the proto is dropped afterwards.
+        entries.forEach { assertThat(it.root).isSameInstanceAs(it.root) }
+    }
+
+    @Test
+    fun canParseInParallel() {
+        val parallelTrace = WindowManagerTraceParser.parseFromTrace(
+            readTestFile("wm_trace_openchrome.pb"), parallelism = 4)
+
+        assertThat(parallelTrace.entries.map { it.timestamp })
+            .containsExactlyElementsIn(trace.entries.map { it.timestamp })
+            .inOrder()
+        assertThat(parallelTrace.entries.map { it.windowStates.size })
+            .isEqualTo(trace.entries.map { it.windowStates.size })
+    }
+
+    @Test
+    fun canReadEntriesFromFile() {
+        val file = copyTestFile("wm_trace_openchrome.pb")
+        val entries = WindowManagerTraceParser.readEntries(file).toList()
+
+        assertThat(entries.map { it.timestamp })
+            .containsExactlyElementsIn(trace.entries.map { it.timestamp })
+            .inOrder()
+        assertThat(entries.map { it.windowStates.size })
+            .isEqualTo(trace.entries.map { it.windowStates.size })
+
+        val window = WindowManagerTraceParser.readEntries(file, 9215895891561, 9216093628925)
+        assertThat(window.map { it.timestamp }.toList())
+            .containsExactlyElementsIn(
+                trace.filter(9215895891561, 9216093628925).entries.map { it.timestamp })
+            .inOrder()
+    }
 }
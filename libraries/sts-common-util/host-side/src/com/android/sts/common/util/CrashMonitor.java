@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common.util;
+
+import com.android.server.os.TombstoneProtos.Tombstone;
+import com.android.sts.common.CommandUtil;
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails the logcat of a device in the background and indexes the tombstones as they are logged.
+ *
+ * <p>While a monitor is running for a device, {@link TombstoneUtils#withAssertNoSecurityCrashes}
+ * does not dump the logcat of that device when it can't read the tombstone files: only the
+ * tombstones logged since the start of the check that match its configuration are looked at. The
+ * logcat is still cleared at the start of the check, which does not affect the monitor, so that
+ * the dump used when the monitor fails to sync only holds the logs of the check. For example, in a
+ * test class:
+ *
+ * <pre>
+ * &#64;Before
+ * public void setUp() throws Exception {
+ *     mCrashMonitor = CrashMonitor.start(getDevice());
+ * }
+ *
+ * &#64;After
+ * public void tearDown() throws Exception {
+ *     mCrashMonitor.close();
+ * }
+ * </pre>
+ */
+public class CrashMonitor implements AutoCloseable {
+    private static final String LOG_TAG = "StsCrashMonitor";
+    private static final String SYNC_MARKER = "sts-crash-monitor-sync-";
+    private static final String STOP_MARKER = "sts-crash-monitor-stop";
+    private static final long SYNC_TIMEOUT_MS = 10_000;
+    private static final long STOP_TIMEOUT_MS = 5_000;
+
+    private static final Map<ITestDevice, CrashMonitor> sMonitors = new ConcurrentHashMap<>();
+
+    private final ITestDevice mDevice;
+    private final TombstoneIndex mIndex = new TombstoneIndex();
+    private final Thread mThread;
+    private final Object mSyncLock = new Object();
+    // the last sync marker read from logcat, guarded by mSyncLock
+    private String mLastSyncMarker;
+    private volatile boolean mClosed;
+
+    private CrashMonitor(ITestDevice device) {
+        mDevice = device;
+        LogcatReceiver receiver = new LogcatReceiver();
+        mThread =
+                new Thread(
+                        () -> {
+                            try {
+                                // "-T 1" skips the lines already in the buffer
+                                mDevice.executeShellCommand(
+                                        "logcat -v threadtime -T 1",
+                                        receiver,
+                                        /* maxTimeToOutputShellResponse */ 0,
+                                        TimeUnit.MILLISECONDS,
+                                        /* retryAttempts */ 0);
+                            } catch (DeviceNotAvailableException e) {
+                                CLog.w(e);
+                            } finally {
+                                sMonitors.remove(mDevice, this);
+                            }
+                        },
+                        "CrashMonitor-" + device.getSerialNumber());
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * Starts monitoring the crashes of the given device.
+     *
+     * @param device the device to monitor
+     * @return the running monitor, to be closed when done
+     * @throws IllegalStateException if a monitor is already running for the device
+     */
+    public static CrashMonitor start(ITestDevice device) {
+        CrashMonitor monitor = new CrashMonitor(device);
+        if (sMonitors.putIfAbsent(device, monitor) != null) {
+            throw new IllegalStateException(
+                    "crash monitor already running for " + device.getSerialNumber());
+        }
+        monitor.mThread.start();
+        return monitor;
+    }
+
+    /** Returns the monitor running for the given device, if any. */
+    public static Optional<CrashMonitor> getRunning(ITestDevice device) {
+        return Optional.ofNullable(sMonitors.get(device));
+    }
+
+    /** Returns the number of tombstones read so far, to be passed to getSecurityCrashes. */
+    public int getTombstoneCount() {
+        return mIndex.size();
+    }
+
+    /**
+     * Waits until all the tombstones written before this call are read.
+     *
+     * @return false if the monitor stopped or didn't catch up in time, in which case tombstones
+     *     may be missing
+     */
+    public boolean sync() throws DeviceNotAvailableException, InterruptedException {
+        if (mClosed || !mThread.isAlive()) {
+            return false;
+        }
+        TombstoneUtils.waitForCrashDumps(mDevice);
+        String marker = SYNC_MARKER + UUID.randomUUID();
+        CommandUtil.runAndCheck(mDevice, String.format("log -t %s %s", LOG_TAG, marker));
+        long endTime = System.currentTimeMillis() + SYNC_TIMEOUT_MS;
+        synchronized (mSyncLock) {
+            while (!marker.equals(mLastSyncMarker)) {
+                long remaining = endTime - System.currentTimeMillis();
+                if (remaining <= 0 || !mThread.isAlive()) {
+                    CLog.w("crash monitor didn't read the logcat in time");
+                    return false;
+                }
+                mSyncLock.wait(Math.min(remaining, 100));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the security crashes among the tombstones read since the given position.
+     *
+     * @param config crash detection configuration object
+     * @param from the value of {@link #getTombstoneCount()} at the start of the check
+     * @return a list of tombstones that are security-related
+     */
+    public List<Tombstone> getSecurityCrashes(TombstoneUtils.Config config, int from) {
+        return mIndex.getSecurityCrashes(config, from);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        mClosed = true;
+        sMonitors.remove(mDevice, this);
+        if (mThread.isAlive()) {
+            // the shell command stops at the next logcat output, which may not come on an idle
+            // device
+            try {
+                mDevice.executeShellCommand(String.format("log -t %s %s", LOG_TAG, STOP_MARKER));
+            } catch (DeviceNotAvailableException e) {
+                CLog.w(e);
+            }
+        }
+        mThread.join(STOP_TIMEOUT_MS);
+        if (mThread.isAlive()) {
+            CLog.w("crash monitor for %s didn't stop", mDevice.getSerialNumber());
+        }
+    }
+
+    private class LogcatReceiver extends TombstoneParser.LogcatParser {
+        LogcatReceiver() {
+            super(mIndex::add);
+        }
+
+        @Override
+        public void addLine(String line) {
+            int marker = line.indexOf(SYNC_MARKER);
+            if (marker < 0) {
+                super.addLine(line);
+                return;
+            }
+            // crash_dump was done before the marker was logged
+            endTombstone();
+            synchronized (mSyncLock) {
+                mLastSyncMarker = line.substring(marker).trim();
+                mSyncLock.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mClosed;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sts.common.util;
+
+import com.android.server.os.TombstoneProtos.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Tombstones indexed by process filename, signal name and abort message so that the security
+ * crashes for a {@link TombstoneUtils.Config} are found without checking every tombstone.
+ *
+ * <p>Tombstones are numbered in the order they are added. The index only narrows down the
+ * candidates, each of which is still checked with {@link TombstoneUtils#isSecurityCrash}, so the
+ * result is the same as {@link TombstoneUtils#getSecurityCrashes}.
+ */
+class TombstoneIndex {
+    private final List<Tombstone> mTombstones = new ArrayList<>();
+    private final Map<String, BitSet> mByProcess = new HashMap<>();
+    private final Map<String, BitSet> mBySignal = new HashMap<>();
+    // the abort message is "" for tombstones without one
+    private final Map<String, BitSet> mByAbortMessage = new HashMap<>();
+    // ASAN/HWASAN and MTE crashes, which don't need to match the signals or abort messages
+    private final BitSet mAlwaysSecurityCrashes = new BitSet();
+
+    public synchronized void add(Tombstone tombstone) {
+        int index = mTombstones.size();
+        mTombstones.add(tombstone);
+        Optional<String> processFilename = TombstoneUtils.getProcessFilename(tombstone);
+        if (processFilename.isPresent()) {
+            mByProcess.computeIfAbsent(processFilename.get(), k -> new BitSet()).set(index);
+        }
+        if (tombstone.hasSignalInfo()) {
+            mBySignal
+                    .computeIfAbsent(tombstone.getSignalInfo().getName(), k -> new BitSet())
+                    .set(index);
+        }
+        mByAbortMessage.computeIfAbsent(tombstone.getAbortMessage(), k -> new BitSet()).set(index);
+        if (TombstoneUtils.isAlwaysSecurityCrash(tombstone)) {
+            mAlwaysSecurityCrashes.set(index);
+        }
+    }
+
+    /** Returns the number of tombstones added so far. */
+    public synchronized int size() {
+        return mTombstones.size();
+    }
+
+    /**
+     * Returns the security crashes among the tombstones added since the given position, in the
+     * order they were added.
+     *
+     * @param config crash detection configuration object
+     * @param from the number of tombstones to skip, see {@link #size()}
+     */
+    public synchronized List<Tombstone> getSecurityCrashes(TombstoneUtils.Config config, int from) {
+        BitSet candidates = new BitSet();
+        candidates.set(from, mTombstones.size());
+
+        if (!config.getProcessPatterns().isEmpty()) {
+            BitSet processes = new BitSet();
+            for (Map.Entry<String, BitSet> entry : mByProcess.entrySet()) {
+                if (TombstoneUtils.matchesAny(entry.getKey(), config.getProcessPatterns())) {
+                    processes.or(entry.getValue());
+                }
+            }
+            candidates.and(processes);
+        }
+
+        if (!config.getSignals().isEmpty()) {
+            BitSet signals = (BitSet) mAlwaysSecurityCrashes.clone();
+            for (String signal : config.getSignals()) {
+                BitSet matches = mBySignal.get(signal);
+                if (matches != null) {
+                    signals.or(matches);
+                }
+            }
+            candidates.and(signals);
+        }
+
+        List<Pattern> abortMessageIncludes = config.getAbortMessageIncludes();
+        if (!abortMessageIncludes.isEmpty()) {
+            BitSet abortMessages = (BitSet) mAlwaysSecurityCrashes.clone();
+            for (Map.Entry<String, BitSet> entry : mByAbortMessage.entrySet()) {
+                if (abortMessageIncludes.stream().anyMatch(p -> p.matcher(entry.getKey()).find())) {
+                    abortMessages.or(entry.getValue());
+                }
+            }
+            candidates.and(abortMessages);
+        }
+
+        List<Tombstone> securityCrashes = new ArrayList<>();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Tombstone tombstone = mTombstones.get(i);
+            if (TombstoneUtils.isSecurityCrash(tombstone, config)) {
+                securityCrashes.add(tombstone);
+            }
+        }
+        return securityCrashes;
+    }
+}
@@ -16,9 +16,15 @@
 
 package com.android.sts.common.util;
 
+import com.android.ddmlib.MultiLineReceiver;
 import com.android.server.os.TombstoneProtos.*;
 import com.android.tradefed.log.LogUtil.CLog;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -32,8 +38,9 @@ public class TombstoneParser {
 
     private static final String TOMBSTONE_HEADER =
             "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***";
-    private static final Pattern TOMBSTONE_HEADER_PATTERN =
-            Pattern.compile(TOMBSTONE_HEADER.replace("*", "\\*"));
+    private static final String DEBUG_TAG = "DEBUG   :";
+    // logged by tombstoned once crash_dump has finished writing a tombstone
+    private static final String TOMBSTONE_WRITTEN = "Tombstone written to: ";
     private static final Pattern NATIVE_CRASH_TIME_PATTERN =
             Pattern.compile("Native Crash TIME: (?<time>\\d+)");
     private static final Pattern FINGERPRINT_PATTERN =
@@ -168,49 +175,117 @@ public class TombstoneParser {
 
     /** Parse a logcat snippet and build a list of tombstones */
     public static final List<Tombstone> parseLogcat(String logcat) {
-        String[] potentialTombstones = splitPattern(TOMBSTONE_HEADER_PATTERN).split(logcat);
-
         List<Tombstone> tombstones = new ArrayList<>();
-        for (String potentialTombstone : potentialTombstones) {
-            Tombstone.Builder tombstoneBuilder = Tombstone.newBuilder();
-            List<String> lines = lines(potentialTombstone);
-            if (lines.isEmpty()) {
-                continue;
+        try {
+            parseLogcat(new StringReader(logcat), tombstones::add);
+        } catch (IOException e) {
+            // StringReader does not throw
+            throw new UncheckedIOException(e);
+        }
+        return tombstones;
+    }
+
+    /**
+     * Parse logcat from a stream, such as a logcat file or the one of {@link
+     * com.android.tradefed.device.ITestDevice#getLogcat()}, and pass each tombstone to {@code
+     * onTombstone} as soon as it is complete. Only the lines of the current tombstone are held in
+     * memory.
+     *
+     * @param logcat the logcat to read, which is not closed
+     * @param onTombstone called with each tombstone, in the order of the logcat
+     */
+    public static void parseLogcat(Reader logcat, Consumer<Tombstone> onTombstone)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(logcat);
+        LogcatParser parser = new LogcatParser(onTombstone);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            parser.addLine(line);
+        }
+        parser.done();
+    }
+
+    /**
+     * Incrementally extracts tombstones from logcat lines as they are logged.
+     *
+     * <p>A tombstone starts at a line containing the tombstone header and is complete when
+     * tombstoned logs that it has written the tombstone, when the next tombstone starts or when
+     * {@link #endTombstone()} is called. As a {@link MultiLineReceiver}, it can be given to {@link
+     * com.android.tradefed.device.ITestDevice#executeShellCommand(String,
+     * com.android.ddmlib.IShellOutputReceiver)} to detect crashes while logcat is running.
+     */
+    public static class LogcatParser extends MultiLineReceiver {
+        private final Consumer<Tombstone> mOnTombstone;
+        // The DEBUG lines of the current tombstone without their logcat prefix, or null if not in
+        // a tombstone
+        private StringBuilder mTombstoneBlob;
+        private int mTombstoneLineCount;
+
+        public LogcatParser(Consumer<Tombstone> onTombstone) {
+            mOnTombstone = onTombstone;
+            // trailing spaces are part of some tombstone lines
+            setTrimLine(false);
+        }
+
+        /** Handles one logcat line, without its line terminator. */
+        public void addLine(String line) {
+            if (line.contains(TOMBSTONE_HEADER)) {
+                endTombstone();
+                mTombstoneBlob = new StringBuilder();
+                mTombstoneLineCount = 0;
+            } else if (mTombstoneBlob == null) {
+                return;
+            } else if (mTombstoneLineCount == 1 && NATIVE_CRASH_TIME_PATTERN.matcher(line).find()) {
+                CLog.d("ignoring crash time");
+                mTombstoneBlob = null;
+                return;
+            } else if (line.contains(TOMBSTONE_WRITTEN)) {
+                endTombstone();
+                return;
             }
-            if (!lines.get(0).contains(TOMBSTONE_HEADER)) {
-                continue;
+            mTombstoneLineCount++;
+            int tag = line.indexOf(DEBUG_TAG);
+            if (tag < 0) {
+                return;
             }
-            if (NATIVE_CRASH_TIME_PATTERN.matcher(lines.get(1)).find()) {
-                CLog.d("ignoring crash time");
-                continue;
+            // logcat removes trailing space after ":" in the case of empty lines
+            int start = tag + DEBUG_TAG.length();
+            if (line.startsWith(" ", start)) {
+                start++;
             }
+            mTombstoneBlob.append(line, start, line.length()).append('\n');
+        }
 
-            String tombstoneBlob =
-                    lines.stream()
-                            .filter(line -> line.contains("DEBUG   :"))
-                            .map(
-                                    line -> {
-                                        // logcat removes trailing space after ":" in the case of
-                                        // empty lines
-                                        String[] split = line.split("DEBUG   :(?: )?", 2);
-                                        return split.length == 2 ? split[1] : "<empty>";
-                                    })
-                            .collect(
-                                    StringBuilder::new,
-                                    (sb, line) -> {
-                                        sb.append(line);
-                                        sb.append('\n');
-                                    },
-                                    StringBuilder::append)
-                            .toString();
-
+        /** Parses the current tombstone, if any, and passes it on even if it is incomplete. */
+        public void endTombstone() {
+            if (mTombstoneBlob == null) {
+                return;
+            }
+            String tombstoneBlob = mTombstoneBlob.toString();
+            mTombstoneBlob = null;
+            Tombstone.Builder tombstoneBuilder = Tombstone.newBuilder();
             if (!parseTombstone(tombstoneBlob, tombstoneBuilder)) {
                 CLog.w("parsing tombstone failed: \n" + tombstoneBlob);
             }
-            Tombstone tombstone = tombstoneBuilder.build();
-            tombstones.add(tombstone);
+            mOnTombstone.accept(tombstoneBuilder.build());
+        }
+
+        @Override
+        public void processNewLines(String[] lines) {
+            for (String line : lines) {
+                addLine(line);
+            }
+        }
+
+        @Override
+        public void done() {
+            endTombstone();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
         }
-        return tombstones;
     }
 
     public static boolean parseTombstone(String tombstoneBlob, Tombstone.Builder tombstoneBuilder) {
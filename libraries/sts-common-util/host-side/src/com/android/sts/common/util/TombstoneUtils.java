@@ -77,8 +77,13 @@ public class TombstoneUtils {
         }
         final Collection<IFileEntry> excludeTombstoneFiles = existingDeviceTombstoneFiles;
 
+        // a running crash monitor already knows which tombstones are new
+        final CrashMonitor monitor =
+                useTombstoneFiles ? null : CrashMonitor.getRunning(device).orElse(null);
+        final int monitorStart = monitor != null ? monitor.getTombstoneCount() : 0;
         if (!useTombstoneFiles) {
-            // clear existing tombstones so we only check new ones
+            // clear existing tombstones so we only check new ones, even when the crash monitor is
+            // used since its reader streams from logcat and the fallback may still dump logcat
             CLog.d("Using logcat");
             CommandUtil.runAndCheck(device, "logcat -c");
         }
@@ -89,22 +94,7 @@ public class TombstoneUtils {
                     throws DeviceNotAvailableException, FileNotFoundException, IOException,
                             InvalidProtocolBufferException, TimeoutException, InterruptedException {
                 CLog.d("checking for tombstones");
-                // wait for crash_dump process to finish dumping the process to tombstoned
-                ProcessUtil.pidsOf(device, "^crash_dump.*$")
-                        .ifPresent(
-                                pidCommandMap -> {
-                                    pidCommandMap.keySet().stream()
-                                            .forEach(
-                                                    pid -> {
-                                                        try {
-                                                            ProcessUtil.waitPidExited(device, pid);
-                                                        } catch (TimeoutException
-                                                                | DeviceNotAvailableException
-                                                                | ProcessUtil.KillException e) {
-                                                            CLog.w(e);
-                                                        }
-                                                    });
-                                });
+                waitForCrashDumps(device);
 
                 // wait for temporary tombstone file to move
                 long endTime = System.currentTimeMillis() + 10_000; // 10 seconds from now
@@ -129,6 +119,13 @@ public class TombstoneUtils {
                             getTombstonesFromDeviceFiles(
                                     device, tombstonesPath, excludeTombstoneFiles);
                     CLog.d(String.format("got %d tombstones from files", tombstones.size()));
+                } else if (monitor != null && monitor.sync()) {
+                    // only the matching tombstones are looked at
+                    tombstones = monitor.getSecurityCrashes(config, monitorStart);
+                    CLog.d(
+                            String.format(
+                                    "got %d security crashes from crash monitor",
+                                    tombstones.size()));
                 } else {
                     // fallback to logcat
                     String logcat = CommandUtil.runAndCheck(device, "logcat -d").getStdout();
@@ -140,6 +137,25 @@ public class TombstoneUtils {
         };
     }
 
+    /** Waits for the crash_dump processes to finish dumping their process to tombstoned. */
+    static void waitForCrashDumps(ITestDevice device) throws DeviceNotAvailableException {
+        ProcessUtil.pidsOf(device, "^crash_dump.*$")
+                .ifPresent(
+                        pidCommandMap -> {
+                            pidCommandMap.keySet().stream()
+                                    .forEach(
+                                            pid -> {
+                                                try {
+                                                    ProcessUtil.waitPidExited(device, pid);
+                                                } catch (TimeoutException
+                                                        | DeviceNotAvailableException
+                                                        | ProcessUtil.KillException e) {
+                                                    CLog.w(e);
+                                                }
+                                            });
+                        });
+    }
+
     private static List<Tombstone> getTombstonesFromDeviceFiles(
             ITestDevice device, IFileEntry tombstoneDirectory, Collection<IFileEntry> excludeFiles)
             throws DeviceNotAvailableException, IOException, FileNotFoundException {
@@ -245,26 +261,9 @@ public class TombstoneUtils {
             }
         }
 
-        // always fail for ASAN/HWASAN crashes for our process
-        {
-            // ASAN abort message example:
-            // ==5661==ERROR: AddressSanitizer: heap-buffer-overflow on address 0x005354830382...
-            //
-            // HWASAN abort message example:
-            // ==13248==ERROR: HWAddressSanitizer: tag-mismatch on address 0x004d84460302...
-            String abortMessage = tombstone.getAbortMessage(); // empty proto field returns ""
-            if (abortMessage.contains("AddressSanitizer")) {
-                return true;
-            }
-        }
-
-        // always fail for MTE crashes for our process
-        if (tombstone.hasSignalInfo()) {
-            // https://patchwork.kernel.org/project/linux-mm/patch/20200715170844.30064-5-catalin.marinas@arm.com/
-            Signal signalInfo = tombstone.getSignalInfo();
-            if (List.of("SEGV_MTEAERR", "SEGV_MTESERR").contains(signalInfo.getName())) {
-                return true;
-            }
+        // always fail for ASAN/HWASAN and MTE crashes for our process
+        if (isAlwaysSecurityCrash(tombstone)) {
+            return true;
         }
 
         // match signal
@@ -345,8 +344,33 @@ public class TombstoneUtils {
         return true;
     }
 
+    /**
+     * Returns true for the crashes that are security-related whatever their signal and abort
+     * message filters are: ASAN/HWASAN and MTE crashes.
+     */
+    static boolean isAlwaysSecurityCrash(Tombstone tombstone) {
+        // ASAN abort message example:
+        // ==5661==ERROR: AddressSanitizer: heap-buffer-overflow on address 0x005354830382...
+        //
+        // HWASAN abort message example:
+        // ==13248==ERROR: HWAddressSanitizer: tag-mismatch on address 0x004d84460302...
+        String abortMessage = tombstone.getAbortMessage(); // empty proto field returns ""
+        if (abortMessage.contains("AddressSanitizer")) {
+            return true;
+        }
+
+        if (tombstone.hasSignalInfo()) {
+            // https://patchwork.kernel.org/project/linux-mm/patch/20200715170844.30064-5-catalin.marinas@arm.com/
+            Signal signalInfo = tombstone.getSignalInfo();
+            if (List.of("SEGV_MTEAERR", "SEGV_MTESERR").contains(signalInfo.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** returns true if the input matches any of the patterns. */
-    private static boolean matchesAny(String input, Collection<Pattern> patterns) {
+    static boolean matchesAny(String input, Collection<Pattern> patterns) {
         for (Pattern p : patterns) {
             if (p.matcher(input).matches()) {
                 return true;
@@ -416,6 +440,10 @@ public class TombstoneUtils {
             return this;
         }
 
+        public List<String> getSignals() {
+            return Collections.unmodifiableList(signals);
+        }
+
         public Config setAbortMessageIncludes(String... abortMessages) {
             this.abortMessageIncludes = new ArrayList<>(toPatterns(abortMessages));
             return this;
@@ -426,6 +454,10 @@ public class TombstoneUtils {
             return this;
         }
 
+        public List<Pattern> getAbortMessageIncludes() {
+            return Collections.unmodifiableList(abortMessageIncludes);
+        }
+
         public Config appendAbortMessageIncludes(String... abortMessages) {
             this.abortMessageIncludes.addAll(toPatterns(abortMessages));
             return this;
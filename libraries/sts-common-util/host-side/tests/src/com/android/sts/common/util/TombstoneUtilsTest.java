@@ -40,7 +40,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -610,4 +613,74 @@ public class TombstoneUtilsTest extends BaseHostJUnit4Test {
                 TombstoneUtils.isSecurityCrash(
                         Tombstone.newBuilder().build(), new TombstoneUtils.Config()));
     }
+
+    @Test
+    public void testParseLogcatFromReader() throws Exception {
+        List<Tombstone> tombstones = new ArrayList<>();
+        try (Reader reader =
+                new InputStreamReader(
+                        getClass().getClassLoader().getResourceAsStream("logcat.txt"))) {
+            TombstoneParser.parseLogcat(reader, tombstones::add);
+        }
+        assertThat(tombstones).isEqualTo(sTombstones);
+    }
+
+    @Test
+    public void testLogcatParserEndsTombstoneWhenWritten() throws Exception {
+        List<String> lines;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("logcat.txt")) {
+            lines = Arrays.asList(new String(is.readAllBytes()).split("\n"));
+        }
+        List<Tombstone> tombstones = new ArrayList<>();
+        TombstoneParser.LogcatParser parser = new TombstoneParser.LogcatParser(tombstones::add);
+
+        // the lines up to the second tombstone header contain only the first tombstone
+        int header = 0;
+        for (String line : lines) {
+            if (line.contains("*** *** ***") && ++header == 2) {
+                break;
+            }
+            parser.addLine(line);
+        }
+        assertThat(tombstones).isEmpty();
+        parser.addLine(
+                "09-03 17:48:06.070   359   359 E tombstoned: Tombstone written to:"
+                        + " /data/tombstones/tombstone_00");
+        assertThat(tombstones).containsExactly(sTombstones.get(0));
+
+        parser.done();
+        assertThat(tombstones).hasSize(1);
+    }
+
+    @Test
+    public void testTombstoneIndexMatchesGetSecurityCrashes() throws Exception {
+        TombstoneIndex index = new TombstoneIndex();
+        sTombstones.forEach(index::add);
+        List<TombstoneUtils.Config> configs =
+                Arrays.asList(
+                        new TombstoneUtils.Config(),
+                        new TombstoneUtils.Config().setProcessPatterns("synthetic_process_0"),
+                        new TombstoneUtils.Config()
+                                .setIgnoreLowFaultAddress(false)
+                                .setProcessPatterns(Pattern.compile("synthetic_process_\\d")),
+                        new TombstoneUtils.Config()
+                                .setSignals(TombstoneUtils.Signals.SIGABRT)
+                                .setAbortMessageIncludes("AddressSanitizer", "Check failed"),
+                        new TombstoneUtils.Config().setAbortMessageIncludes(".*"));
+        for (TombstoneUtils.Config config : configs) {
+            assertThat(index.getSecurityCrashes(config, 0))
+                    .containsExactlyElementsIn(
+                            TombstoneUtils.getSecurityCrashes(sTombstones, config))
+                    .inOrder();
+        }
+
+        // only the tombstones added after the given position are looked at
+        int from = sTombstones.size() / 2;
+        TombstoneUtils.Config config = new TombstoneUtils.Config();
+        assertThat(index.getSecurityCrashes(config, from))
+                .containsExactlyElementsIn(
+                        TombstoneUtils.getSecurityCrashes(
+                                sTombstones.subList(from, sTombstones.size()), config))
+                .inOrder();
+    }
 }